@@ -106,8 +106,17 @@ springBoot {
     mainClass.set("org.hasting.MP3OrgWebApplication")
 }
 
+// The fingerprint similarity kernel uses the incubating Vector API (jdk.incubator.vector).
+// It falls back to scalar code at runtime when the module is not added.
+val vectorModuleArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+tasks.withType<JavaCompile> {
+    options.compilerArgs.addAll(vectorModuleArgs)
+}
+
 tasks.test {
     useJUnitPlatform()
+    jvmArgs(vectorModuleArgs)
 }
 
 tasks.jar {
@@ -123,8 +132,9 @@ tasks.register<Exec>("killPrevious") {
     isIgnoreExitValue = true
 }
 
-tasks.named("bootRun") {
+tasks.named<JavaExec>("bootRun") {
     dependsOn("killPrevious")
+    jvmArgs(vectorModuleArgs)
 }
 
 // ============================================
@@ -188,6 +198,7 @@ val jreModules = listOf(
     "java.security.jgss",
     "java.sql",
     "jdk.crypto.ec",
+    "jdk.incubator.vector",
     "jdk.unsupported"
 ).joinToString(",")
 
@@ -245,7 +256,8 @@ tasks.register<Exec>("packageMac") {
         "--dest", jpackageDir.absolutePath,
         "--icon", "packaging/icon.icns",
         "--mac-package-name", "MP3Org",
-        "--java-options", "-Xmx512m"
+        "--java-options", "-Xmx512m",
+        "--java-options", "--add-modules=jdk.incubator.vector"
     )
 }
 
@@ -277,7 +289,8 @@ tasks.register<Exec>("packageWindows") {
         "--win-menu",
         "--win-shortcut",
         "--win-dir-chooser",
-        "--java-options", "-Xmx512m"
+        "--java-options", "-Xmx512m",
+        "--java-options", "--add-modules=jdk.incubator.vector"
     )
 }
 
@@ -308,7 +321,8 @@ tasks.register<Exec>("packageLinuxDeb") {
         "--icon", "packaging/icon.png",
         "--linux-shortcut",
         "--linux-menu-group", "AudioVideo",
-        "--java-options", "-Xmx512m"
+        "--java-options", "-Xmx512m",
+        "--java-options", "--add-modules=jdk.incubator.vector"
     )
 }
 
@@ -339,7 +353,8 @@ tasks.register<Exec>("packageLinuxRpm") {
         "--icon", "packaging/icon.png",
         "--linux-shortcut",
         "--linux-menu-group", "AudioVideo",
-        "--java-options", "-Xmx512m"
+        "--java-options", "-Xmx512m",
+        "--java-options", "--add-modules=jdk.incubator.vector"
     )
 }
 
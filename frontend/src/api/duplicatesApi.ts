@@ -1,4 +1,4 @@
-import type { DuplicateGroup, DuplicateScanStatus, CompareResult, MusicFile, AutoResolutionResult, AutoResolutionPreview, DirectoryConflict, DirectoryResolutionPreview, DirectoryResolutionResult } from '../types/music';
+import type { DuplicateGroup, DuplicateScanStatus, CompareResult, MusicFile, AutoResolutionResult, AutoResolutionPreview, DirectoryConflict, DirectoryResolutionPreview, DirectoryResolutionResult, PageResponse, DuplicateGroupDelta, AlbumMatch } from '../types/music';
 
 const API_BASE = '/api/v1/duplicates';
 
@@ -9,6 +9,7 @@ export interface DuplicateGroupsResponse {
   totalGroups: number;
   totalPages: number;
   hasMore: boolean;
+  resultVersion: number;  // Pass to fetchDuplicateGroupDelta to get later changes
 }
 
 /**
@@ -23,6 +24,16 @@ export async function fetchDuplicateGroups(
   return response.json();
 }
 
+/**
+ * Fetches the groups added, changed or removed since a result version.
+ * Group ids are stable across results, so the changes can be applied in place.
+ */
+export async function fetchDuplicateGroupDelta(since: number): Promise<DuplicateGroupDelta> {
+  const response = await fetch(`${API_BASE}/delta?since=${since}`);
+  if (!response.ok) throw new Error('Failed to fetch duplicate group changes');
+  return response.json();
+}
+
 /**
  * Gets the count of duplicate groups.
  */
@@ -103,14 +114,18 @@ export async function refreshDuplicates(): Promise<void> {
 
 /**
  * Keeps one file from a duplicate group and deletes the rest.
+ * Pass the resultVersion the group came from to refuse the action if the groups changed since.
  */
 export async function keepFileDeleteOthers(
   groupId: number,
-  keepFileId: number
+  keepFileId: number,
+  resultVersion?: number
 ): Promise<{ keptFileId: number; deletedCount: number }> {
-  const response = await fetch(`${API_BASE}/${groupId}/keep/${keepFileId}`, {
+  const query = resultVersion !== undefined ? `?resultVersion=${resultVersion}` : '';
+  const response = await fetch(`${API_BASE}/${groupId}/keep/${keepFileId}${query}`, {
     method: 'DELETE',
   });
+  if (response.status === 409) throw new Error('Duplicate group changed; refresh and try again');
   if (!response.ok) throw new Error('Failed to process duplicate group');
   return response.json();
 }
@@ -179,14 +194,32 @@ export async function openFileFolder(filePath: string): Promise<{ success: boole
 // ============================================================
 
 /**
- * Gets all directory conflicts - pairs of directories containing duplicate files.
+ * Gets one page of directory conflicts - pairs of directories containing duplicate files.
+ * Sorted by number of duplicate pairs (largest first) unless told otherwise.
  */
-export async function getDirectoryConflicts(): Promise<DirectoryConflict[]> {
-  const response = await fetch(`${API_BASE}/by-directory`);
+export async function getDirectoryConflicts(
+  page = 0,
+  size = 50,
+  sort: 'pairs' | 'files' | 'directory' = 'pairs',
+  direction: 'asc' | 'desc' = 'desc'
+): Promise<PageResponse<DirectoryConflict>> {
+  const params = new URLSearchParams({ page: String(page), size: String(size), sort, direction });
+  const response = await fetch(`${API_BASE}/by-directory?${params}`);
   if (!response.ok) throw new Error('Failed to fetch directory conflicts');
   return response.json();
 }
 
+/**
+ * Gets directory pairs that hold the same album, most similar first.
+ * Each pair can be passed to the directory resolution functions below.
+ */
+export async function getDuplicateAlbums(minSimilarity = 0.3, limit = 100): Promise<AlbumMatch[]> {
+  const params = new URLSearchParams({ minSimilarity: String(minSimilarity), limit: String(limit) });
+  const response = await fetch(`${API_BASE}/albums?${params}`);
+  if (!response.ok) throw new Error('Failed to fetch duplicate albums');
+  return response.json();
+}
+
 /**
  * Previews what would happen when resolving a directory conflict.
  */
@@ -1,16 +1,20 @@
-import type { BrowseResponse } from '../types/music';
+import type { BrowseResponse, ScanPipelineMetrics } from '../types/music';
 
 const API_BASE = 'http://localhost:9090/api/v1/scanning';
 
 /**
  * Starts a directory scan.
+ * A rescan reads only new and changed files and removes files gone from disk.
  * Returns session ID for WebSocket subscription.
  */
-export async function startScan(directories: string[]): Promise<{ sessionId: string; message: string }> {
+export async function startScan(
+  directories: string[],
+  rescan = false
+): Promise<{ sessionId: string; message: string }> {
   const response = await fetch(`${API_BASE}/start`, {
     method: 'POST',
     headers: { 'Content-Type': 'application/json' },
-    body: JSON.stringify({ directories }),
+    body: JSON.stringify({ directories, rescan }),
   });
 
   if (!response.ok) {
@@ -27,10 +31,12 @@ export async function startScan(directories: string[]): Promise<{ sessionId: str
 export async function getScanStatus(sessionId: string): Promise<{
   sessionId: string;
   directories: string[];
+  rescan: boolean;
   startTime: number;
   filesFound: number;
   cancelled: boolean;
   completed: boolean;
+  pipeline?: ScanPipelineMetrics;
 }> {
   const response = await fetch(`${API_BASE}/status/${sessionId}`);
 
@@ -54,6 +60,19 @@ export async function cancelScan(sessionId: string): Promise<void> {
   }
 }
 
+/**
+ * Gets the files most recently removed by rescans, newest first.
+ */
+export async function getRemovedFiles(limit = 100): Promise<string[]> {
+  const response = await fetch(`${API_BASE}/removed?limit=${limit}`);
+
+  if (!response.ok) {
+    throw new Error('Failed to get removed files');
+  }
+
+  return response.json();
+}
+
 /**
  * Gets the list of previously scanned directories.
  */
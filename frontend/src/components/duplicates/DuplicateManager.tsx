@@ -1,7 +1,8 @@
 import { useState, useEffect, useCallback, useRef } from 'react';
-import type { DuplicateGroup, DuplicateFile, MusicFile, DuplicateScanStatus, AutoResolutionResult, AutoResolutionPreview, DirectoryConflict, DirectoryResolutionPreview } from '../../types/music';
+import type { DuplicateGroup, DuplicateGroupDelta, DuplicateFile, MusicFile, DuplicateScanStatus, AutoResolutionResult, AutoResolutionPreview, DirectoryConflict, DirectoryResolutionPreview } from '../../types/music';
 import {
   fetchDuplicateGroups,
+  fetchDuplicateGroupDelta,
   deleteFile,
   startDuplicateScan,
   refreshDuplicates,
@@ -21,6 +22,22 @@ import { duplicatesHelp } from '../common/helpContent';
 
 type ViewMode = 'similarity' | 'directory';
 
+const DIRECTORY_PAGE_SIZE = 50;
+
+/**
+ * Applies a duplicate group delta to the groups held by the client, keeping their order.
+ */
+function applyGroupDelta(groups: DuplicateGroup[], delta: DuplicateGroupDelta): DuplicateGroup[] {
+  const removed = new Set(delta.removedGroupIds);
+  const changed = new Map(delta.changed.map(group => [group.groupId, group]));
+  return [
+    ...groups
+      .filter(group => !removed.has(group.groupId))
+      .map(group => changed.get(group.groupId) ?? group),
+    ...delta.added,
+  ];
+}
+
 interface ComparisonDetail {
   file1: MusicFile;
   file2: MusicFile;
@@ -38,6 +55,8 @@ export default function DuplicateManager() {
   const [scanSessionId, setScanSessionId] = useState<string | null>(null);
   const [comparison, setComparison] = useState<ComparisonDetail | null>(null);
   const [duplicateCount, setDuplicateCount] = useState(0);
+  // Result version of the groups held, or null if they did not come from a full load
+  const resultVersion = useRef<number | null>(null);
 
   // Auto-resolution state
   const [autoResolving, setAutoResolving] = useState(false);
@@ -61,6 +80,7 @@ export default function DuplicateManager() {
   // View mode state (Issue #92)
   const [viewMode, setViewMode] = useState<ViewMode>('similarity');
   const [directoryConflicts, setDirectoryConflicts] = useState<DirectoryConflict[]>([]);
+  const [directoryConflictTotal, setDirectoryConflictTotal] = useState(0);
   const [selectedConflict, setSelectedConflict] = useState<DirectoryConflict | null>(null);
   const [preferredDirectory, setPreferredDirectory] = useState<string | null>(null);
   const [directoryPreview, setDirectoryPreview] = useState<DirectoryResolutionPreview | null>(null);
@@ -106,22 +126,35 @@ export default function DuplicateManager() {
       setLoading(true);
       setError(null);
 
-      // Load first page immediately
-      const firstPage = await fetchDuplicateGroups(0, 25);
-      setGroups(firstPage.groups);
-      setDuplicateCount(firstPage.totalGroups);
-      setLoading(false); // Show first results immediately
-
-      // Load remaining pages progressively in background
-      if (firstPage.hasMore) {
-        let currentPage = 1;
-        let allGroups = [...firstPage.groups];
-
-        while (currentPage < firstPage.totalPages) {
-          const nextPage = await fetchDuplicateGroups(currentPage, 25);
-          allGroups = [...allGroups, ...nextPage.groups];
-          setGroups(allGroups);
-          currentPage++;
+      // Only fetch what changed if the server still knows the result we hold
+      const delta = resultVersion.current !== null
+        ? await fetchDuplicateGroupDelta(resultVersion.current)
+        : null;
+
+      if (delta && !delta.fullRefresh) {
+        resultVersion.current = delta.resultVersion;
+        setGroups(currentGroups => applyGroupDelta(currentGroups, delta));
+        setDuplicateCount(count => count + delta.added.length - delta.removedGroupIds.length);
+        setLoading(false);
+      } else {
+        // Load first page immediately
+        const firstPage = await fetchDuplicateGroups(0, 25);
+        resultVersion.current = firstPage.resultVersion;
+        setGroups(firstPage.groups);
+        setDuplicateCount(firstPage.totalGroups);
+        setLoading(false); // Show first results immediately
+
+        // Load remaining pages progressively in background
+        if (firstPage.hasMore) {
+          let currentPage = 1;
+          let allGroups = [...firstPage.groups];
+
+          while (currentPage < firstPage.totalPages) {
+            const nextPage = await fetchDuplicateGroups(currentPage, 25);
+            allGroups = [...allGroups, ...nextPage.groups];
+            setGroups(allGroups);
+            currentPage++;
+          }
         }
       }
 
@@ -153,6 +186,7 @@ export default function DuplicateManager() {
       setScanning(true);
       setError(null);
       setGroups([]); // Clear existing groups for fresh scan
+      resultVersion.current = null; // Groups no longer match a loaded result
       setDuplicateCount(0);
       setSelectedGroup(null);
       setSelectedFileId(null);
@@ -180,8 +214,9 @@ export default function DuplicateManager() {
     try {
       setDirectoryLoading(true);
       setError(null);
-      const conflicts = await getDirectoryConflicts();
-      setDirectoryConflicts(conflicts);
+      const firstPage = await getDirectoryConflicts(0, DIRECTORY_PAGE_SIZE);
+      setDirectoryConflicts(firstPage.content);
+      setDirectoryConflictTotal(firstPage.totalElements);
     } catch (err) {
       setError(err instanceof Error ? err.message : 'Failed to load directory conflicts');
     } finally {
@@ -189,6 +224,18 @@ export default function DuplicateManager() {
     }
   }, []);
 
+  // Conflicts are paginated server-side; fetch the next page on demand
+  const loadMoreDirectoryConflicts = useCallback(async () => {
+    try {
+      const nextPage = await getDirectoryConflicts(
+        Math.floor(directoryConflicts.length / DIRECTORY_PAGE_SIZE), DIRECTORY_PAGE_SIZE);
+      setDirectoryConflicts(current => [...current, ...nextPage.content]);
+      setDirectoryConflictTotal(nextPage.totalElements);
+    } catch (err) {
+      setError(err instanceof Error ? err.message : 'Failed to load directory conflicts');
+    }
+  }, [directoryConflicts.length]);
+
   const handleSelectConflict = useCallback((conflict: DirectoryConflict) => {
     setSelectedConflict(conflict);
     setPreferredDirectory(null);
@@ -442,6 +489,7 @@ export default function DuplicateManager() {
       // If there are "hold my hand" groups, show them
       if (result.holdMyHandGroups.length > 0) {
         setGroups(result.holdMyHandGroups);
+        resultVersion.current = null; // Groups no longer match a loaded result
         setDuplicateCount(result.holdMyHandGroups.length);
       } else {
         // All resolved, refresh the list
@@ -988,7 +1036,7 @@ export default function DuplicateManager() {
             <div className="duplicate-content directory-view">
               <div className="duplicate-list">
                 <div className="list-header">
-                  <h3>Directory Conflicts ({directoryConflicts.length})</h3>
+                  <h3>Directory Conflicts ({directoryConflictTotal})</h3>
                 </div>
                 <div className="group-list">
                   {directoryConflicts.map((conflict, index) => (
@@ -1011,6 +1059,11 @@ export default function DuplicateManager() {
                       </div>
                     </div>
                   ))}
+                  {directoryConflicts.length < directoryConflictTotal && (
+                    <button className="action-button refresh" onClick={loadMoreDirectoryConflicts}>
+                      Load more ({directoryConflictTotal - directoryConflicts.length} remaining)
+                    </button>
+                  )}
                 </div>
               </div>
 
@@ -45,6 +45,34 @@ export interface ScanProgress {
   error: string | null;
 }
 
+export interface ScanStageMetrics {
+  items: number;
+  errors: number;
+  waitMs: number;
+  itemsPerSecond: number;
+}
+
+export interface ScanChanges {
+  added: number;
+  changed: number;
+  removed: number;
+  unchanged: number;
+}
+
+export interface ScanPipelineMetrics {
+  discovery: ScanStageMetrics;
+  extraction: ScanStageMetrics;
+  persistence: ScanStageMetrics;
+  changes: ScanChanges;
+  commits: number;
+  pathQueueDepth: number;
+  fileQueueDepth: number;
+  rootsCompleted: number;
+  currentFile: string;
+  elapsedMs: number;
+  cancelled: boolean;
+}
+
 export interface DirectoryEntry {
   path: string;
   name: string;
@@ -71,6 +99,15 @@ export interface DuplicateGroup {
   representativeArtist: string;
 }
 
+export interface DuplicateGroupDelta {
+  sinceVersion: number;
+  resultVersion: number;
+  fullRefresh: boolean;  // sinceVersion was unknown; 'added' holds every group
+  added: DuplicateGroup[];
+  changed: DuplicateGroup[];
+  removedGroupIds: number[];
+}
+
 export interface DuplicateScanStatus {
   sessionId: string;
   stage: 'starting' | 'loading' | 'scanning' | 'completed' | 'cancelled' | 'error';
@@ -98,9 +135,17 @@ export interface AutoResolutionResult {
   filesDeleted: number;
   filesKept: number;
   holdMyHandGroups: DuplicateGroup[];  // Groups needing manual review
+  deletions: FileDeletionResult[];     // Per-file outcome of removing losers from disk
   summary: string;
 }
 
+export interface FileDeletionResult {
+  fileId: number;
+  filePath: string;
+  deleted: boolean;
+  error: string | null;
+}
+
 export interface ResolutionItem {
   groupId: number;
   fileToDelete: MusicFile;
@@ -133,6 +178,15 @@ export interface DirectoryConflict {
   pairs: DuplicatePair[];
 }
 
+export interface AlbumMatch {
+  directoryA: string;
+  directoryB: string;
+  tracksInA: number;
+  tracksInB: number;
+  similarity: number;
+  byFingerprint: boolean;
+}
+
 export interface DirectoryResolutionPreview {
   directoryToKeep: string;
   directoryToDelete: string;
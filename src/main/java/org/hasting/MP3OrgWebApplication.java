@@ -1,5 +1,6 @@
 package org.hasting;
 
+import org.hasting.service.FingerprintIndexService;
 import org.hasting.service.FingerprintService;
 import org.hasting.util.DatabaseManager;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +23,9 @@ public class MP3OrgWebApplication {
     @Autowired
     private FingerprintService fingerprintService;
 
+    @Autowired
+    private FingerprintIndexService fingerprintIndexService;
+
     public static void main(String[] args) {
         SpringApplication.run(MP3OrgWebApplication.class, args);
     }
@@ -41,6 +45,9 @@ public class MP3OrgWebApplication {
             System.out.println("Database initialized: " + DatabaseManager.getMusicFileCount() + " music files");
             System.out.println("Database location: " + DatabaseManager.getConfig().getDatabasePath());
 
+            // Load fingerprints for "find similar" queries without delaying startup
+            fingerprintIndexService.warmAsync();
+
             // Check fingerprint capabilities
             if (fingerprintService.isFpcalcAvailable()) {
                 long withFingerprints = fingerprintService.getFilesWithFingerprintsCount();
@@ -1,5 +1,6 @@
 package org.hasting.controller;
 
+import org.hasting.dto.AlbumMatchDTO;
 import org.hasting.dto.AutoResolutionPreviewDTO;
 import org.hasting.dto.AutoResolutionResultDTO;
 import org.hasting.dto.DirectoryConflictDTO;
@@ -7,14 +8,26 @@ import org.hasting.dto.DirectoryResolutionPreviewDTO;
 import org.hasting.dto.DirectoryResolutionRequest;
 import org.hasting.dto.DirectoryResolutionResultDTO;
 import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.DuplicateGroupDeltaDTO;
 import org.hasting.dto.MusicFileDTO;
+import org.hasting.dto.PageResponse;
+import org.hasting.dto.SimilarFileDTO;
 import org.hasting.service.DuplicateService;
 import org.hasting.service.DuplicateService.DuplicateScanStatus;
+import org.hasting.util.DuplicateIndex;
+import org.hasting.util.FingerprintMatcher;
+import org.hasting.util.SimilarityGraph;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.awt.Desktop;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -26,8 +39,11 @@ import java.util.Set;
  * Endpoints:
  * - GET  /api/v1/duplicates              - Get all duplicate groups
  * - GET  /api/v1/duplicates/count        - Get count of duplicate groups
+ * - GET  /api/v1/duplicates/delta?since= - Groups changed since a result version
+ * - GET  /api/v1/duplicates/stream       - Stream all groups as newline-delimited JSON
  * - GET  /api/v1/duplicates/{groupId}    - Get specific duplicate group
  * - GET  /api/v1/duplicates/similar/{id} - Find files similar to a specific file
+ * - GET  /api/v1/duplicates/similar/{id}/nearest - Top-k nearest files by fingerprint, with scores
  * - POST /api/v1/duplicates/compare      - Compare two files
  * - POST /api/v1/duplicates/scan         - Start async duplicate scan
  * - GET  /api/v1/duplicates/scan/{id}    - Get scan status
@@ -35,27 +51,42 @@ import java.util.Set;
  * - POST /api/v1/duplicates/refresh      - Invalidate cache and refresh
  * - DELETE /api/v1/duplicates/{groupId}/keep/{fileId} - Keep one file, delete others
  * - DELETE /api/v1/duplicates/file/{fileId} - Delete a single file
+ * - GET  /api/v1/duplicates/fingerprint-index/recall - Measure LSH index recall vs brute force
+ * - GET  /api/v1/duplicates/fingerprint-comparisons/stats - Early-exit counters for fingerprint comparisons
+ * - GET  /api/v1/duplicates/index/verify  - Compare the duplicate index with a full recompute
+ * - POST /api/v1/duplicates/index/rebuild - Rebuild the duplicate index from scratch
+ * - GET  /api/v1/duplicates/albums       - Directory pairs holding the same album, by MinHash overlap
+ * - GET  /api/v1/duplicates/similarity-graph/sweep - Preview group counts across a range of thresholds
+ * - POST /api/v1/duplicates/similarity-graph/rebuild - Rebuild the similarity graph from scratch
  */
 @RestController
 @RequestMapping("/api/v1/duplicates")
 public class DuplicateController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int STREAM_FLUSH_INTERVAL = 25; // Flush streamed groups in batches
+
     private final DuplicateService duplicateService;
+    private final ObjectMapper objectMapper;
 
-    public DuplicateController(DuplicateService duplicateService) {
+    public DuplicateController(DuplicateService duplicateService, ObjectMapper objectMapper) {
         this.duplicateService = duplicateService;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * Get duplicate groups with pagination.
      * @param page Page number (0-indexed), default 0
      * @param size Page size, default 25
+     * @param allowStale Serve the previous groups while they are recomputed, default false
      */
     @GetMapping
     public ResponseEntity<DuplicateGroupsResponse> getDuplicateGroups(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "25") int size) {
-        List<DuplicateGroupDTO> allGroups = duplicateService.getDuplicateGroups();
+            @RequestParam(defaultValue = "25") int size,
+            @RequestParam(defaultValue = "false") boolean allowStale) {
+        List<DuplicateGroupDTO> allGroups = duplicateService.getDuplicateGroups(allowStale);
+        long resultVersion = duplicateService.getResultVersion(allGroups);
         int totalGroups = allGroups.size();
         int totalPages = (int) Math.ceil((double) totalGroups / size);
 
@@ -67,7 +98,7 @@ public class DuplicateController {
             : List.of();
 
         return ResponseEntity.ok(new DuplicateGroupsResponse(
-            pageGroups, page, size, totalGroups, totalPages, page < totalPages - 1
+            pageGroups, page, size, totalGroups, totalPages, page < totalPages - 1, resultVersion
         ));
     }
 
@@ -80,9 +111,56 @@ public class DuplicateController {
         int size,
         int totalGroups,
         int totalPages,
-        boolean hasMore
+        boolean hasMore,
+        long resultVersion
     ) {}
 
+    /**
+     * Stream all duplicate groups as newline-delimited JSON, one group per line.
+     * Groups are written while grouping runs; writes block while the client falls
+     * behind, so the server never holds more than a batch of serialized groups.
+     * @param allowStale Replay the previous groups if the library has changed, default false
+     */
+    @GetMapping(value = "/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamDuplicateGroups(
+            @RequestParam(defaultValue = "false") boolean allowStale) {
+        ObjectWriter writer = objectMapper.writerFor(DuplicateGroupDTO.class);
+        StreamingResponseBody stream = outputStream -> {
+            int[] written = {0};
+            try {
+                duplicateService.streamDuplicateGroups(group -> {
+                    try {
+                        outputStream.write(writer.writeValueAsBytes(group));
+                        outputStream.write('\n');
+                        if (++written[0] % STREAM_FLUSH_INTERVAL == 0) {
+                            outputStream.flush();
+                        }
+                    } catch (IOException e) {
+                        // The client went away; stop grouping
+                        throw new UncheckedIOException(e);
+                    }
+                }, allowStale);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            outputStream.flush();
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(stream);
+    }
+
+    /**
+     * Get the groups added, changed or removed since a result version.
+     * Group ids are stable, so clients can patch the groups they hold.
+     * @param since resultVersion from an earlier response
+     * @param allowStale Compare against the previous groups while they are recomputed, default false
+     */
+    @GetMapping("/delta")
+    public ResponseEntity<DuplicateGroupDeltaDTO> getDuplicateGroupDelta(
+            @RequestParam long since,
+            @RequestParam(defaultValue = "false") boolean allowStale) {
+        return ResponseEntity.ok(duplicateService.getDuplicateGroupDelta(since, allowStale));
+    }
+
     /**
      * Get count of duplicate groups.
      */
@@ -111,6 +189,23 @@ public class DuplicateController {
         return ResponseEntity.ok(similar);
     }
 
+    /**
+     * Find the files closest to a specific file by fingerprint, with similarity scores.
+     * Returns 503 while the fingerprint index is warming and 404 if the file has no fingerprint.
+     */
+    @GetMapping("/similar/{fileId}/nearest")
+    public ResponseEntity<List<SimilarFileDTO>> findNearestFiles(
+            @PathVariable long fileId,
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(defaultValue = "0.7") double minSimilarity) {
+        if (!duplicateService.isFingerprintIndexReady()) {
+            return ResponseEntity.status(503).build();
+        }
+        return duplicateService.findNearestByFingerprint(fileId, Math.max(1, Math.min(k, 1000)), minSimilarity)
+            .map(ResponseEntity::ok)
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     /**
      * Compare two files and get similarity details.
      */
@@ -123,6 +218,75 @@ public class DuplicateController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Measure how many brute-force fingerprint matches the LSH candidate index finds.
+     * Runs a full brute-force comparison, so this is slow on large libraries.
+     */
+    @GetMapping("/fingerprint-index/recall")
+    public ResponseEntity<FingerprintMatcher.IndexRecallReport> measureFingerprintIndexRecall() {
+        return ResponseEntity.ok(duplicateService.measureFingerprintIndexRecall());
+    }
+
+    /**
+     * Get how many fingerprint comparisons stopped early because they could no longer
+     * reach the similarity threshold.
+     */
+    @GetMapping("/fingerprint-comparisons/stats")
+    public ResponseEntity<FingerprintMatcher.ComparisonStats> getFingerprintComparisonStats() {
+        return ResponseEntity.ok(FingerprintMatcher.getComparisonStats());
+    }
+
+    /**
+     * Compare the persistent duplicate index with a full recompute.
+     * Recomputes every group, so this is slow on large libraries.
+     */
+    @GetMapping("/index/verify")
+    public ResponseEntity<DuplicateIndex.VerifyReport> verifyDuplicateIndex(
+            @RequestParam(defaultValue = "false") boolean repair) {
+        try {
+            return ResponseEntity.ok(duplicateService.verifyDuplicateIndex(repair));
+        } catch (IllegalStateException e) {
+            // Too large for the index; duplicates are found on disk instead
+            return ResponseEntity.status(409).build();
+        }
+    }
+
+    /**
+     * Discard the persistent duplicate index and rebuild it from every file.
+     */
+    @PostMapping("/index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildDuplicateIndex() {
+        try {
+            int groups = duplicateService.rebuildDuplicateIndex();
+            return ResponseEntity.ok(Map.of("status", "rebuilt", "groups", groups));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Preview the number of duplicate groups at each threshold from {@code from} to {@code to}.
+     */
+    @GetMapping("/similarity-graph/sweep")
+    public ResponseEntity<List<SimilarityGraph.SweepPoint>> sweepThresholds(
+            @RequestParam(defaultValue = "0.6") double from,
+            @RequestParam(defaultValue = "0.95") double to,
+            @RequestParam(defaultValue = "0.05") double step) {
+        if (step <= 0 || from > to) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(duplicateService.sweepThresholds(from, to, step));
+    }
+
+    /**
+     * Discard the similarity graph and rebuild it from every file.
+     */
+    @PostMapping("/similarity-graph/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSimilarityGraph() {
+        int edges = duplicateService.rebuildSimilarityGraph();
+        return ResponseEntity.ok(Map.of("status", "rebuilt", "edges", edges));
+    }
+
     /**
      * Start an asynchronous duplicate detection scan.
      */
@@ -165,12 +329,21 @@ public class DuplicateController {
 
     /**
      * Keep one file from a duplicate group and delete the rest.
+     * Returns 409 if the file is no longer in the group, or if resultVersion is given
+     * and the groups have changed since, so a stale request never deletes the wrong files.
+     * @param resultVersion resultVersion of the response the group came from, optional
      */
     @DeleteMapping("/{groupId}/keep/{fileId}")
     public ResponseEntity<Map<String, Object>> keepFileDeleteOthers(
             @PathVariable int groupId,
-            @PathVariable long fileId) {
-        int deletedCount = duplicateService.keepFileDeleteOthers(groupId, fileId);
+            @PathVariable long fileId,
+            @RequestParam(required = false) Long resultVersion) {
+        int deletedCount;
+        try {
+            deletedCount = duplicateService.keepFileDeleteOthers(groupId, fileId, resultVersion);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
         if (deletedCount == 0) {
             return ResponseEntity.notFound().build();
         }
@@ -285,12 +458,34 @@ public class DuplicateController {
     // ============================================================
 
     /**
-     * Get all directory conflicts.
+     * Get directory conflicts with pagination.
      * Returns pairs of directories that contain duplicate files.
+     * @param page Page number (0-indexed), default 0
+     * @param size Page size, default 50
+     * @param sort Sort field: pairs, files or directory, default pairs
+     * @param direction asc or desc, default desc
      */
     @GetMapping("/by-directory")
-    public ResponseEntity<List<DirectoryConflictDTO>> getDirectoryConflicts() {
-        return ResponseEntity.ok(duplicateService.getDirectoryConflicts());
+    public ResponseEntity<PageResponse<DirectoryConflictDTO>> getDirectoryConflicts(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(defaultValue = "pairs") String sort,
+            @RequestParam(defaultValue = "desc") String direction) {
+        return ResponseEntity.ok(duplicateService.getDirectoryConflicts(
+            page, size, sort, "asc".equalsIgnoreCase(direction)));
+    }
+
+    /**
+     * Get albums stored in two directories, ranked by estimated track overlap.
+     * Any returned pair can be passed to the resolve-directory endpoints.
+     * @param minSimilarity smallest estimated overlap, from 0 to 1, default 0.3
+     * @param limit maximum number of pairs, default 100
+     */
+    @GetMapping("/albums")
+    public ResponseEntity<List<AlbumMatchDTO>> getDuplicateAlbums(
+            @RequestParam(defaultValue = "0.3") double minSimilarity,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(duplicateService.getDuplicateAlbums(minSimilarity, limit));
     }
 
     /**
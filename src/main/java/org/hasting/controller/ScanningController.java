@@ -30,7 +30,10 @@ public class ScanningController {
      * Starts a new directory scan.
      *
      * POST /api/v1/scanning/start
-     * Body: { "directories": ["/path/to/music", "/another/path"] }
+     * Body: { "directories": ["/path/to/music", "/another/path"], "rescan": false }
+     *
+     * With "rescan": true, only new and changed files are read and files gone from
+     * disk are removed.
      *
      * @return Session ID for tracking progress via WebSocket
      */
@@ -42,12 +45,14 @@ public class ScanningController {
             ));
         }
 
-        String sessionId = scanningService.startScan(request.directories());
+        boolean rescan = Boolean.TRUE.equals(request.rescan());
+        String sessionId = scanningService.startScan(request.directories(), rescan);
 
         Map<String, Object> response = new HashMap<>();
         response.put("sessionId", sessionId);
         response.put("message", "Scan started. Subscribe to WebSocket topic /topic/scanning/" + sessionId + " for progress updates.");
         response.put("directories", request.directories());
+        response.put("rescan", rescan);
 
         return ResponseEntity.ok(response);
     }
@@ -64,10 +69,14 @@ public class ScanningController {
                 Map<String, Object> response = new HashMap<>();
                 response.put("sessionId", session.sessionId);
                 response.put("directories", session.directories);
+                response.put("rescan", session.rescan);
                 response.put("startTime", session.startTime);
                 response.put("filesFound", session.filesFound);
                 response.put("cancelled", session.cancelled);
                 response.put("completed", session.completed);
+                if (session.metrics != null) {
+                    response.put("pipeline", session.metrics);
+                }
                 return ResponseEntity.ok(response);
             })
             .orElse(ResponseEntity.notFound().build());
@@ -92,6 +101,16 @@ public class ScanningController {
         }
     }
 
+    /**
+     * Gets the files most recently removed by rescans because they were gone from disk.
+     *
+     * GET /api/v1/scanning/removed?limit=100
+     */
+    @GetMapping("/removed")
+    public ResponseEntity<List<String>> getRemovedFiles(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(scanningService.getRemovedFiles(Math.min(Math.max(limit, 1), 1000)));
+    }
+
     /**
      * Gets the list of previously scanned directories.
      *
@@ -153,7 +172,7 @@ public class ScanningController {
     /**
      * Request body for starting a scan.
      */
-    public record ScanRequest(List<String> directories) {}
+    public record ScanRequest(List<String> directories, Boolean rescan) {}
 
     /**
      * Request body for creating a directory.
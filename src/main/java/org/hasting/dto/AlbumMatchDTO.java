@@ -0,0 +1,14 @@
+package org.hasting.dto;
+
+/**
+ * Two directories whose contents look like the same album, ranked by the estimated
+ * overlap of their tracks.
+ */
+public record AlbumMatchDTO(
+    String directoryA,
+    String directoryB,
+    int tracksInA,
+    int tracksInB,
+    double similarity,
+    boolean byFingerprint
+) {}
@@ -11,6 +11,7 @@ public record AutoResolutionResultDTO(
     int filesDeleted,
     int filesKept,
     List<DuplicateGroupDTO> holdMyHandGroups,  // Groups that couldn't be auto-resolved
+    List<FileDeletionResultDTO> deletions,     // Per-file outcome of removing the losers from disk
     String summary
 ) {
     /**
@@ -20,7 +21,8 @@ public record AutoResolutionResultDTO(
             int groupsProcessed,
             int filesDeleted,
             int filesKept,
-            List<DuplicateGroupDTO> holdMyHandGroups) {
+            List<DuplicateGroupDTO> holdMyHandGroups,
+            List<FileDeletionResultDTO> deletions) {
 
         String summary;
         if (filesDeleted == 0 && holdMyHandGroups.isEmpty()) {
@@ -34,6 +36,6 @@ public record AutoResolutionResultDTO(
                 groupsProcessed - holdMyHandGroups.size(), filesDeleted, filesKept, holdMyHandGroups.size());
         }
 
-        return new AutoResolutionResultDTO(groupsProcessed, filesDeleted, filesKept, holdMyHandGroups, summary);
+        return new AutoResolutionResultDTO(groupsProcessed, filesDeleted, filesKept, holdMyHandGroups, deletions, summary);
     }
 }
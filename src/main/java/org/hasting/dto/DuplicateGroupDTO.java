@@ -61,4 +61,35 @@ public record DuplicateGroupDTO(
             representative.artist() != null ? representative.artist() : ""
         );
     }
+
+    /**
+     * Creates a DuplicateGroupDTO whose id is derived from its members (see {@link #stableGroupId(List)}).
+     */
+    public static DuplicateGroupDTO fromFiles(List<MusicFileDTO> files) {
+        return fromFiles(stableGroupId(files), files);
+    }
+
+    /**
+     * Creates a DuplicateGroupDTO with similarity scores whose id is derived from its members.
+     */
+    public static DuplicateGroupDTO fromFilesWithSimilarity(List<MusicFileDTO> files, List<Double> similarities) {
+        return fromFilesWithSimilarity(stableGroupId(files), files, similarities);
+    }
+
+    /**
+     * Returns an id for a group that stays the same across recomputes as long as its
+     * smallest file id does. Groups never share files, so the smallest file id is unique;
+     * it is the id itself for ids up to {@code Integer.MAX_VALUE} and a hash beyond.
+     */
+    public static int stableGroupId(List<MusicFileDTO> files) {
+        long minimumId = Long.MAX_VALUE;
+        if (files != null) {
+            for (MusicFileDTO file : files) {
+                if (file.id() != null && file.id() < minimumId) {
+                    minimumId = file.id();
+                }
+            }
+        }
+        return minimumId == Long.MAX_VALUE ? 0 : Long.hashCode(minimumId) & Integer.MAX_VALUE;
+    }
 }
@@ -0,0 +1,16 @@
+package org.hasting.dto;
+
+import java.util.List;
+
+/**
+ * Changes to the duplicate groups between two result versions.
+ * Groups are matched by their stable group id.
+ */
+public record DuplicateGroupDeltaDTO(
+    long sinceVersion,
+    long resultVersion,
+    boolean fullRefresh,               // sinceVersion is unknown; 'added' holds every current group
+    List<DuplicateGroupDTO> added,
+    List<DuplicateGroupDTO> changed,   // Same group id, different files or metadata
+    List<Integer> removedGroupIds
+) {}
@@ -0,0 +1,19 @@
+package org.hasting.dto;
+
+/**
+ * Outcome of removing one file from disk after its database record was deleted.
+ */
+public record FileDeletionResultDTO(
+    Long fileId,
+    String filePath,
+    boolean deleted,
+    String error  // Why the file could not be removed, null on success
+) {
+    public static FileDeletionResultDTO success(Long fileId, String filePath) {
+        return new FileDeletionResultDTO(fileId, filePath, true, null);
+    }
+
+    public static FileDeletionResultDTO failure(Long fileId, String filePath, String error) {
+        return new FileDeletionResultDTO(fileId, filePath, false, error);
+    }
+}
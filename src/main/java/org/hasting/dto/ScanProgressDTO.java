@@ -76,6 +76,19 @@ public record ScanProgressDTO(
         );
     }
 
+    /**
+     * Creates a completion message for a rescan, reporting what changed.
+     */
+    public static ScanProgressDTO rescanCompleted(String sessionId, long added, long changed,
+                                                  long removed, long unchanged) {
+        int totalFiles = (int) (added + changed + unchanged);
+        return new ScanProgressDTO(
+            sessionId, "completed", "", "", totalFiles, totalFiles, 0, 0, 100,
+            "Rescan complete: " + added + " added, " + changed + " changed, " + removed + " removed, "
+                + unchanged + " unchanged", true, false, null
+        );
+    }
+
     /**
      * Creates a cancellation message.
      */
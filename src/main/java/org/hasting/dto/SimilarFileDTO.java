@@ -0,0 +1,9 @@
+package org.hasting.dto;
+
+/**
+ * A file found by a nearest-neighbour fingerprint query, with its similarity to the query file.
+ */
+public record SimilarFileDTO(
+    MusicFileDTO file,
+    double similarity
+) {}
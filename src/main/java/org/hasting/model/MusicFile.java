@@ -5,6 +5,8 @@ import org.hasting.util.MusicFileComparator;
 import org.hasting.util.ArtistStatisticsManager;
 import org.hasting.util.FileOrganizer;
 import org.hasting.util.MetadataExtractor;
+import org.hasting.util.FingerprintCodec;
+import org.hasting.util.FingerprintMatcher;
 import com.log4rich.Log4Rich;
 import com.log4rich.core.Logger;
 
@@ -67,7 +69,13 @@ public class MusicFile {
     private Date lastModified;
     private Date dateAdded;
     private String fingerprint;
+    private int[] fingerprintSegments;
     private Integer fingerprintDuration;
+    // Normalized comparison keys, valid only while metadataKeyVersion matches the fuzzy config
+    private String titleKey;
+    private String artistKey;
+    private String albumKey;
+    private int metadataKeyVersion;
     private boolean isModified = false;
     
     // Field for testing file organization paths without actual file copying
@@ -323,6 +331,7 @@ public class MusicFile {
     public void setTitle(String title) {
         this.title = title;
         this.isModified = true;
+        this.metadataKeyVersion = 0;
     }
 
     public String getArtist() {
@@ -340,6 +349,7 @@ public class MusicFile {
     public void setArtist(String artist) {
         this.artist = artist;
         this.isModified = true;
+        this.metadataKeyVersion = 0;
         if (artist != null)
             ArtistStatisticsManager.addArtist(artist);  // Add artist to set of known artists
     }
@@ -351,6 +361,7 @@ public class MusicFile {
     public void setAlbum(String album) {
         this.album = album;
         this.isModified = true;
+        this.metadataKeyVersion = 0;
     }
 
     public String getGenre() {
@@ -446,10 +457,14 @@ public class MusicFile {
     /**
      * Gets the audio fingerprint for this music file.
      * The fingerprint is a comma-separated string of 32-bit integers generated by Chromaprint.
+     * When the fingerprint was loaded in packed form, the text is built on first access.
      *
      * @return the audio fingerprint, or null if not yet generated
      */
     public String getFingerprint() {
+        if (fingerprint == null && fingerprintSegments != null) {
+            fingerprint = FingerprintCodec.format(fingerprintSegments);
+        }
         return fingerprint;
     }
 
@@ -460,6 +475,35 @@ public class MusicFile {
      */
     public void setFingerprint(String fingerprint) {
         this.fingerprint = fingerprint;
+        this.fingerprintSegments = null;
+        this.isModified = true;
+    }
+
+    /**
+     * Gets the fingerprint as an array of 32-bit segments.
+     * Packed fingerprints loaded from the database are returned directly; a text
+     * fingerprint is parsed once and cached.
+     *
+     * @return the fingerprint segments, or an empty array if there is no fingerprint
+     */
+    public int[] getFingerprintSegments() {
+        if (fingerprintSegments == null) {
+            if (fingerprint == null || fingerprint.isEmpty()) {
+                return new int[0];
+            }
+            fingerprintSegments = FingerprintMatcher.parseFingerprint(fingerprint);
+        }
+        return fingerprintSegments;
+    }
+
+    /**
+     * Sets the fingerprint from its packed segment form.
+     *
+     * @param fingerprintSegments the Chromaprint fingerprint segments
+     */
+    public void setFingerprintSegments(int[] fingerprintSegments) {
+        this.fingerprintSegments = fingerprintSegments;
+        this.fingerprint = null;
         this.isModified = true;
     }
 
@@ -488,9 +532,67 @@ public class MusicFile {
      * @return true if a fingerprint exists, false otherwise
      */
     public boolean hasFingerprint() {
+        if (fingerprintSegments != null) {
+            return fingerprintSegments.length > 0;
+        }
         return fingerprint != null && !fingerprint.isEmpty();
     }
 
+    /**
+     * Gets the normalized title used for fuzzy comparison.
+     *
+     * @return the title key, or null if keys were never computed
+     * @see #getMetadataKeyVersion()
+     */
+    public String getTitleKey() {
+        return titleKey;
+    }
+
+    /**
+     * Gets the normalized artist used for fuzzy comparison.
+     *
+     * @return the artist key, or null if keys were never computed
+     */
+    public String getArtistKey() {
+        return artistKey;
+    }
+
+    /**
+     * Gets the normalized album used for fuzzy comparison.
+     *
+     * @return the album key, or null if keys were never computed
+     */
+    public String getAlbumKey() {
+        return albumKey;
+    }
+
+    /**
+     * Gets the normalization settings the metadata keys were computed with, as encoded by
+     * {@link org.hasting.util.FuzzyMatcher#metadataKeyVersion(org.hasting.util.FuzzySearchConfig)}.
+     * Changing the title, artist or album resets it to 0, which no configuration uses.
+     *
+     * @return the key version, or 0 if the keys are missing or stale
+     */
+    public int getMetadataKeyVersion() {
+        return metadataKeyVersion;
+    }
+
+    /**
+     * Sets the normalized comparison keys. Does not mark the file as modified,
+     * since the keys are derived from the title, artist and album.
+     *
+     * @param titleKey normalized title
+     * @param artistKey normalized artist
+     * @param albumKey normalized album
+     * @param version the normalization settings the keys were computed with
+     */
+    public void setMetadataKeys(String titleKey, String artistKey, String albumKey, int version) {
+        this.titleKey = titleKey;
+        this.artistKey = artistKey;
+        this.albumKey = albumKey;
+        this.metadataKeyVersion = version;
+    }
+
     /**
      * Checks if this music file has been modified since creation or last save.
      * 
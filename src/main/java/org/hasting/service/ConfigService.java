@@ -1,6 +1,7 @@
 package org.hasting.service;
 
 import org.hasting.util.DatabaseConfig;
+import org.hasting.util.DatabaseManager;
 import org.hasting.util.DatabaseProfile;
 import org.hasting.util.DatabaseProfileManager;
 import org.hasting.util.FuzzySearchConfig;
@@ -76,6 +77,7 @@ public class ConfigService {
 
         // Save the profile
         profileManager.updateProfile(activeProfile);
+        DatabaseManager.fuzzySearchConfigChanged();
 
         logger.info("Updated fuzzy search configuration: {}", config.getConfigName());
         return toFuzzySearchConfigDTO(config);
@@ -93,6 +95,7 @@ public class ConfigService {
         FuzzySearchConfig config = new FuzzySearchConfig();
         activeProfile.setFuzzySearchConfig(config);
         profileManager.updateProfile(activeProfile);
+        DatabaseManager.fuzzySearchConfigChanged();
 
         logger.info("Reset fuzzy search configuration to defaults");
         return toFuzzySearchConfigDTO(config);
@@ -115,6 +118,7 @@ public class ConfigService {
 
         activeProfile.setFuzzySearchConfig(config);
         profileManager.updateProfile(activeProfile);
+        DatabaseManager.fuzzySearchConfigChanged();
 
         logger.info("Applied fuzzy search preset: {}", presetName);
         return toFuzzySearchConfigDTO(config);
@@ -0,0 +1,214 @@
+package org.hasting.service;
+
+import org.hasting.dto.DirectoryConflictDTO;
+import org.hasting.dto.DuplicateFileDTO;
+import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.DuplicatePairDTO;
+import org.hasting.dto.PageResponse;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory conflicts of one duplicate result, indexed by directory pair (Issue #92).
+ *
+ * <p>Each directory is interned to an int id the first time it is seen, so a pair of
+ * directories is a single long key and the parent of every file is worked out once.
+ * The index is built from a duplicate group list and never changes; a new duplicate
+ * result gets a new index. Sorted views are computed on first use and kept.
+ */
+public final class DirectoryConflictIndex {
+
+    /**
+     * Orders for the paginated conflict list.
+     */
+    public enum SortField {
+        /** Duplicate pairs between the two directories (the default, largest first). */
+        PAIRS(Comparator.comparingInt(DirectoryConflictDTO::totalDuplicatePairs)),
+        /** Files in whichever directory holds more of them. */
+        FILES(Comparator.comparingInt(c -> Math.max(c.filesInA(), c.filesInB()))),
+        /** First directory, then second, alphabetically. */
+        DIRECTORY(Comparator.comparing(DirectoryConflictDTO::directoryA)
+            .thenComparing(DirectoryConflictDTO::directoryB));
+
+        private final Comparator<DirectoryConflictDTO> comparator;
+
+        SortField(Comparator<DirectoryConflictDTO> comparator) {
+            this.comparator = comparator;
+        }
+
+        /**
+         * Parses a sort parameter, falling back to {@link #PAIRS} for unknown values.
+         */
+        public static SortField fromParameter(String value) {
+            if (value != null) {
+                for (SortField field : values()) {
+                    if (field.name().equalsIgnoreCase(value)) {
+                        return field;
+                    }
+                }
+            }
+            return PAIRS;
+        }
+    }
+
+    private final List<DuplicateGroupDTO> source;
+    private final Map<String, Integer> directoryIds = new HashMap<>();
+    private final List<String> directories = new ArrayList<>();
+    private final Map<Long, DirectoryConflictDTO> conflictsByPair = new HashMap<>();
+    private final Map<String, List<DirectoryConflictDTO>> sortedViews = new ConcurrentHashMap<>();
+
+    /**
+     * Pairs and distinct files of one directory pair while the index is built.
+     */
+    private static final class Builder {
+        final List<DuplicatePairDTO> pairs = new ArrayList<>();
+        final Set<Long> filesInA = new HashSet<>();
+        final Set<Long> filesInB = new HashSet<>();
+    }
+
+    private DirectoryConflictIndex(List<DuplicateGroupDTO> groups) {
+        this.source = groups;
+        Map<Long, Builder> builders = new HashMap<>();
+
+        for (DuplicateGroupDTO group : groups) {
+            List<DuplicateFileDTO> files = group.files();
+            int[] dirIds = new int[files.size()];
+            for (int i = 0; i < dirIds.length; i++) {
+                dirIds[i] = intern(parentDirectory(files.get(i).file().filePath()));
+            }
+
+            // Compare each pair of files in the group; only cross-directory pairs conflict
+            for (int i = 0; i < dirIds.length; i++) {
+                for (int j = i + 1; j < dirIds.length; j++) {
+                    if (dirIds[i] == dirIds[j]) {
+                        continue;
+                    }
+                    Builder builder = builders.computeIfAbsent(pairKey(dirIds[i], dirIds[j]), k -> new Builder());
+                    builder.pairs.add(new DuplicatePairDTO(files.get(i).file(), files.get(j).file(),
+                        files.get(i).similarity()));
+                    // directoryA is the alphabetically first of the two
+                    boolean iIsA = isDirectoryA(dirIds[i], dirIds[j]);
+                    (iIsA ? builder.filesInA : builder.filesInB).add(files.get(i).file().id());
+                    (iIsA ? builder.filesInB : builder.filesInA).add(files.get(j).file().id());
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Builder> entry : builders.entrySet()) {
+            int low = (int) (entry.getKey() >>> 32);
+            int high = (int) (long) entry.getKey();
+            boolean lowIsA = isDirectoryA(low, high);
+            Builder builder = entry.getValue();
+            conflictsByPair.put(entry.getKey(), new DirectoryConflictDTO(
+                directories.get(lowIsA ? low : high),
+                directories.get(lowIsA ? high : low),
+                builder.filesInA.size(),
+                builder.filesInB.size(),
+                builder.pairs.size(),
+                builder.pairs));
+        }
+    }
+
+    /**
+     * Builds the index for a duplicate group list.
+     */
+    public static DirectoryConflictIndex build(List<DuplicateGroupDTO> groups) {
+        return new DirectoryConflictIndex(groups);
+    }
+
+    /**
+     * Returns true if this index was built from exactly this group list.
+     */
+    public boolean isBuiltFrom(List<DuplicateGroupDTO> groups) {
+        return source == groups;
+    }
+
+    /**
+     * Returns the number of directory pairs with duplicates between them.
+     */
+    public int size() {
+        return conflictsByPair.size();
+    }
+
+    /**
+     * Returns the conflict between two directories, in either order.
+     *
+     * @return the conflict, or null if the directories share no duplicates
+     */
+    public DirectoryConflictDTO find(String directory1, String directory2) {
+        Integer id1 = directoryIds.get(directory1);
+        Integer id2 = directoryIds.get(directory2);
+        if (id1 == null || id2 == null || id1.equals(id2)) {
+            return null;
+        }
+        return conflictsByPair.get(pairKey(id1, id2));
+    }
+
+    /**
+     * Returns every conflict in the given order.
+     */
+    public List<DirectoryConflictDTO> sorted(SortField field, boolean ascending) {
+        return sortedViews.computeIfAbsent(field + (ascending ? ":asc" : ":desc"), key -> {
+            Comparator<DirectoryConflictDTO> comparator = ascending ? field.comparator : field.comparator.reversed();
+            // Directory names break ties, so pages are stable
+            if (field != SortField.DIRECTORY) {
+                comparator = comparator.thenComparing(SortField.DIRECTORY.comparator);
+            }
+            List<DirectoryConflictDTO> list = new ArrayList<>(conflictsByPair.values());
+            list.sort(comparator);
+            return List.copyOf(list);
+        });
+    }
+
+    /**
+     * Returns one page of conflicts in the given order.
+     */
+    public PageResponse<DirectoryConflictDTO> page(int page, int size, SortField field, boolean ascending) {
+        return PageResponse.of(sorted(field, ascending), Math.max(0, page), Math.max(1, size));
+    }
+
+    /**
+     * Returns the parent directory of a file path, or "" if it has none.
+     */
+    static String parentDirectory(String filePath) {
+        if (filePath == null) {
+            return "";
+        }
+        try {
+            Path parent = Paths.get(filePath).getParent();
+            return parent != null ? parent.toString() : "";
+        } catch (InvalidPathException e) {
+            return "";
+        }
+    }
+
+    private int intern(String directory) {
+        Integer id = directoryIds.get(directory);
+        if (id == null) {
+            id = directories.size();
+            directoryIds.put(directory, id);
+            directories.add(directory);
+        }
+        return id;
+    }
+
+    private boolean isDirectoryA(int id, int other) {
+        return directories.get(id).compareTo(directories.get(other)) < 0;
+    }
+
+    private static long pairKey(int id1, int id2) {
+        int low = Math.min(id1, id2);
+        int high = Math.max(id1, id2);
+        return (long) low << 32 | high;
+    }
+}
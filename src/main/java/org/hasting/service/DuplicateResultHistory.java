@@ -0,0 +1,103 @@
+package org.hasting.service;
+
+import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.DuplicateGroupDeltaDTO;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers successive duplicate results and remembers the last few, so clients can ask
+ * for what changed since the result they hold instead of fetching every group again.
+ *
+ * <p>A result is a group list as returned by the duplicate group cache; the same list
+ * instance always gets the same version. Versions start from the clock when the server
+ * starts, so a version held by a client from before a restart is not mistaken for a
+ * current one.
+ */
+public final class DuplicateResultHistory {
+
+    /** Results kept for delta requests; older versions get a full refresh. */
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private final int capacity;
+    // Oldest first, guarded by 'this'
+    private final Deque<Snapshot> snapshots = new ArrayDeque<>();
+    private long lastVersion = System.currentTimeMillis();
+
+    private record Snapshot(long version, List<DuplicateGroupDTO> groups, Map<Integer, DuplicateGroupDTO> byId) {}
+
+    public DuplicateResultHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DuplicateResultHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Returns the version of a result, numbering it if it has not been seen before.
+     */
+    public synchronized long versionOf(List<DuplicateGroupDTO> groups) {
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.groups() == groups) {
+                return snapshot.version();
+            }
+        }
+        Map<Integer, DuplicateGroupDTO> byId = new HashMap<>();
+        for (DuplicateGroupDTO group : groups) {
+            byId.put(group.groupId(), group);
+        }
+        Snapshot snapshot = new Snapshot(++lastVersion, groups, byId);
+        snapshots.addLast(snapshot);
+        if (snapshots.size() > capacity) {
+            snapshots.removeFirst();
+        }
+        return snapshot.version();
+    }
+
+    /**
+     * Returns the groups added, changed and removed between an earlier version and
+     * the current result. If the earlier version is no longer remembered, the delta is
+     * a full refresh holding every current group.
+     *
+     * @param sinceVersion version the client holds
+     * @param current the current result
+     */
+    public DuplicateGroupDeltaDTO delta(long sinceVersion, List<DuplicateGroupDTO> current) {
+        long currentVersion = versionOf(current);
+        Snapshot since = find(sinceVersion);
+        if (since == null) {
+            return new DuplicateGroupDeltaDTO(sinceVersion, currentVersion, true,
+                current, List.of(), List.of());
+        }
+
+        List<DuplicateGroupDTO> added = new ArrayList<>();
+        List<DuplicateGroupDTO> changed = new ArrayList<>();
+        Map<Integer, DuplicateGroupDTO> remaining = new HashMap<>(since.byId());
+        for (DuplicateGroupDTO group : current) {
+            DuplicateGroupDTO previous = remaining.remove(group.groupId());
+            if (previous == null) {
+                added.add(group);
+            } else if (!previous.equals(group)) {
+                changed.add(group);
+            }
+        }
+        List<Integer> removed = new ArrayList<>(remaining.keySet());
+        removed.sort(null);
+        return new DuplicateGroupDeltaDTO(sinceVersion, currentVersion, false, added, changed, removed);
+    }
+
+    private synchronized Snapshot find(long version) {
+        for (Snapshot snapshot : snapshots) {
+            if (snapshot.version() == version) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+}
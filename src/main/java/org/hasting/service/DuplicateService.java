@@ -1,5 +1,6 @@
 package org.hasting.service;
 
+import org.hasting.dto.AlbumMatchDTO;
 import org.hasting.dto.AutoResolutionPreviewDTO;
 import org.hasting.dto.AutoResolutionResultDTO;
 import org.hasting.dto.DirectoryConflictDTO;
@@ -7,24 +8,44 @@ import org.hasting.dto.DirectoryResolutionPreviewDTO;
 import org.hasting.dto.DirectoryResolutionResultDTO;
 import org.hasting.dto.DuplicateFileDTO;
 import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.DuplicateGroupDeltaDTO;
 import org.hasting.dto.DuplicatePairDTO;
+import org.hasting.dto.FileDeletionResultDTO;
 import org.hasting.dto.MusicFileDTO;
+import org.hasting.dto.PageResponse;
+import org.hasting.dto.SimilarFileDTO;
 import org.hasting.model.MusicFile;
+import org.hasting.util.AlbumSignatureIndex;
 import org.hasting.util.DatabaseManager;
+import org.hasting.util.DuplicateIndex;
+import org.hasting.util.DurationWindow;
+import org.hasting.util.ExternalDuplicateDetector;
+import org.hasting.util.FingerprintCorpus;
 import org.hasting.util.FingerprintMatcher;
+import org.hasting.util.FingerprintSimilarityIndex;
 import org.hasting.util.FuzzyMatcher;
 import org.hasting.util.FuzzySearchConfig;
+import org.hasting.util.MetadataBlocker;
+import org.hasting.util.MetadataDictionary;
+import org.hasting.util.SimilarityGraph;
+import org.hasting.util.TiledMetadataScan;
+import org.hasting.util.VersionedCache;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import com.log4rich.core.Logger;
 import com.log4rich.Log4Rich;
 
-import java.nio.file.Path;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -37,35 +58,144 @@ public class DuplicateService {
     private static final Logger logger = Log4Rich.getLogger(DuplicateService.class);
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final FingerprintIndexService fingerprintIndexService;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Removes resolved duplicates from disk; deletes wait on I/O, so use more threads than cores
+    private final ExecutorService fileDeleteExecutor = Executors.newFixedThreadPool(FILE_DELETE_THREADS, r -> {
+        Thread thread = new Thread(r, "duplicate-file-delete");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // Track active duplicate detection sessions
     private final Map<String, DuplicateSession> activeSessions = new ConcurrentHashMap<>();
 
-    // Cache for duplicate groups (refreshed on demand)
-    private List<DuplicateGroupDTO> cachedDuplicateGroups = null;
-    private long cacheTimestamp = 0;
-    private static final long CACHE_TTL_MS = 60000; // 1 minute cache
+    // Duplicate groups, valid until the library changes
+    private final VersionedCache<List<DuplicateGroupDTO>> duplicateGroupsCache =
+        new VersionedCache<>(DatabaseManager::getLibraryVersion);
+    // Numbers duplicate results so clients can fetch only what changed
+    private final DuplicateResultHistory resultHistory = new DuplicateResultHistory();
+    // Directory conflicts of the cached duplicate groups, rebuilt when the groups change
+    private volatile DirectoryConflictIndex directoryConflictIndex = null;
+    private final Object directoryConflictLock = new Object();
+    // Album MinHash signatures, valid until the library changes
+    private final VersionedCache<AlbumSignatureIndex> albumSignatureCache =
+        new VersionedCache<>(DatabaseManager::getLibraryVersion);
     private static final int GROUP_BATCH_SIZE = 25; // Send groups to frontend every 25 found
+    private static final long PROGRESS_INTERVAL_MS = 250; // Throttle progress broadcasts from scan workers
+    private static final int FILE_DELETE_THREADS = 8;
+    private static final int GROUP_LOAD_BATCH = 1000; // Id groups loaded per query when handing groups on in slices
 
-    public DuplicateService(SimpMessagingTemplate messagingTemplate) {
+    public DuplicateService(SimpMessagingTemplate messagingTemplate,
+                            FingerprintIndexService fingerprintIndexService) {
         this.messagingTemplate = messagingTemplate;
+        this.fingerprintIndexService = fingerprintIndexService;
     }
 
     /**
      * Gets all duplicate groups from the database.
      * Uses fingerprint-based matching for accurate duplicate detection.
      * Falls back to metadata matching if fingerprints are not available.
+     *
+     * <p>Groups come from the persistent {@link DuplicateIndex}, which only compares
+     * files changed since its last refresh. If the index fails, groups are recomputed
+     * from the corpus or the full library. Libraries too large for the heap skip the
+     * index, which loads the library to rebuild, and use {@link ExternalDuplicateDetector}.
+     *
+     * <p>The result is cached until the library changes. Concurrent callers share one
+     * computation.
      */
     public List<DuplicateGroupDTO> getDuplicateGroups() {
-        // Check cache validity
-        if (cachedDuplicateGroups != null &&
-            System.currentTimeMillis() - cacheTimestamp < CACHE_TTL_MS) {
-            logger.debug("Returning cached duplicate groups");
-            return cachedDuplicateGroups;
+        return getDuplicateGroups(false);
+    }
+
+    /**
+     * Gets all duplicate groups.
+     *
+     * @param allowStale if true, return the previous groups while a recompute for the
+     *                   changed library runs in the background
+     */
+    public List<DuplicateGroupDTO> getDuplicateGroups(boolean allowStale) {
+        return duplicateGroupsCache.get(this::computeDuplicateGroups, allowStale);
+    }
+
+    /**
+     * Returns the result version of a group list returned by {@link #getDuplicateGroups(boolean)}.
+     */
+    public long getResultVersion(List<DuplicateGroupDTO> groups) {
+        return resultHistory.versionOf(groups);
+    }
+
+    /**
+     * Gets the groups added, changed or removed since a result version. Group ids are
+     * derived from the group members, so they match across results.
+     *
+     * @param sinceVersion result version the caller holds
+     * @param allowStale if true, compare against the previous groups while they are recomputed
+     */
+    public DuplicateGroupDeltaDTO getDuplicateGroupDelta(long sinceVersion, boolean allowStale) {
+        return resultHistory.delta(sinceVersion, getDuplicateGroups(allowStale));
+    }
+
+    /**
+     * Passes every duplicate group to {@code sink}, one at a time. Fresh cached groups
+     * are replayed. Otherwise groups are not kept: id groups from the duplicate index,
+     * the fingerprint corpus or external detection are loaded {@value #GROUP_LOAD_BATCH}
+     * at a time and each slice is handed over before the next is loaded, so memory use
+     * does not grow with the files of the groups. Only the last-resort path, taken when
+     * neither the index nor the corpus is available, loads the whole library to group it.
+     * Groups streamed this way are not cached.
+     *
+     * @param sink receives the groups; it may block to slow grouping down
+     * @param allowStale if true, replay the previous groups when the library has changed
+     */
+    public void streamDuplicateGroups(Consumer<DuplicateGroupDTO> sink, boolean allowStale) {
+        List<DuplicateGroupDTO> cached = duplicateGroupsCache.peek(allowStale);
+        if (cached != null) {
+            cached.forEach(sink);
+            return;
         }
+        logger.info("Streaming duplicate groups...");
+        computeDuplicateGroups(sink);
+    }
 
+    private List<DuplicateGroupDTO> computeDuplicateGroups() {
         logger.info("Computing duplicate groups...");
+        List<DuplicateGroupDTO> duplicateGroups = new ArrayList<>();
+        computeDuplicateGroups(duplicateGroups::add);
+        logger.info("Found {} duplicate groups", duplicateGroups.size());
+        return duplicateGroups;
+    }
+
+    private void computeDuplicateGroups(Consumer<DuplicateGroupDTO> sink) {
+        int totalFiles = DatabaseManager.getMusicFileCount();
+        if (useExternalDetection(totalFiles)) {
+            // Too large for the heap, which the duplicate index would load while rebuilding:
+            // sort blocking keys on disk and load only the duplicates
+            emitGroups(ExternalDuplicateDetector.findDuplicates(DatabaseManager.activeFuzzySearchConfig()).groups(),
+                false, sink);
+            return;
+        }
+
+        List<List<Long>> idGroups = null;
+        boolean usingFingerprints = false;
+        try {
+            idGroups = DuplicateIndex.refresh();
+            usingFingerprints = DuplicateIndex.currentMode() == DuplicateIndex.Mode.FINGERPRINT;
+        } catch (RuntimeException e) {
+            logger.warn("Duplicate index unavailable, recomputing groups: {}", e.getMessage());
+        }
+
+        if (idGroups == null) {
+            // Prefer the memory-mapped fingerprint corpus, which avoids loading the whole library
+            idGroups = groupDuplicateIdsFromCorpus(totalFiles);
+            usingFingerprints = idGroups != null;
+        }
+
+        if (idGroups != null) {
+            emitGroups(idGroups, usingFingerprints, sink);
+            return;
+        }
 
         List<MusicFile> allFiles = DatabaseManager.getAllMusicFiles();
 
@@ -73,42 +203,45 @@ public class DuplicateService {
         long filesWithFingerprints = allFiles.stream().filter(MusicFile::hasFingerprint).count();
         logger.info("Files with fingerprints: {}/{}", filesWithFingerprints, allFiles.size());
 
-        List<List<MusicFile>> groups;
-
         if (filesWithFingerprints > allFiles.size() / 2) {
             // Use fingerprint matching if majority of files have fingerprints
             logger.info("Using fingerprint-based duplicate detection");
-            groups = FingerprintMatcher.groupDuplicates(allFiles);
+            for (List<MusicFile> group : FingerprintMatcher.groupDuplicates(allFiles)) {
+                sink.accept(toGroupDTO(group, true));
+            }
         } else {
-            // Fall back to metadata matching
+            // Fall back to metadata matching, handing each group on as soon as it is complete
             logger.info("Using metadata-based duplicate detection (fingerprints not available for most files)");
-            FuzzySearchConfig config = new FuzzySearchConfig();
-            groups = FuzzyMatcher.groupDuplicates(allFiles, config);
+            FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+            FuzzyMatcher.groupDuplicates(allFiles, config, group -> sink.accept(toGroupDTO(group, false)));
         }
+    }
 
-        AtomicInteger groupId = new AtomicInteger(1);
-        final boolean usingFingerprints = filesWithFingerprints > allFiles.size() / 2;
-
-        cachedDuplicateGroups = groups.stream()
-            .map(group -> {
-                List<MusicFileDTO> fileDTOs = group.stream()
-                    .map(MusicFileDTO::fromEntity)
-                    .collect(Collectors.toList());
+    /**
+     * Loads the files of the id groups {@value #GROUP_LOAD_BATCH} groups at a time and
+     * passes each slice to {@code sink} before loading the next.
+     */
+    private void emitGroups(List<List<Long>> idGroups, boolean fingerprintGroups, Consumer<DuplicateGroupDTO> sink) {
+        for (int from = 0; from < idGroups.size(); from += GROUP_LOAD_BATCH) {
+            for (List<MusicFile> group : loadGroups(
+                    idGroups.subList(from, Math.min(idGroups.size(), from + GROUP_LOAD_BATCH)))) {
+                sink.accept(toGroupDTO(group, fingerprintGroups));
+            }
+        }
+    }
 
-                if (usingFingerprints) {
-                    // Compute similarity scores for fingerprint-based groups
-                    List<Double> similarities = FingerprintMatcher.computeGroupSimilarities(group);
-                    return DuplicateGroupDTO.fromFilesWithSimilarity(groupId.getAndIncrement(), fileDTOs, similarities);
-                } else {
-                    return DuplicateGroupDTO.fromFiles(groupId.getAndIncrement(), fileDTOs);
-                }
-            })
+    private static DuplicateGroupDTO toGroupDTO(List<MusicFile> group, boolean fingerprintGroup) {
+        List<MusicFileDTO> fileDTOs = group.stream()
+            .map(MusicFileDTO::fromEntity)
             .collect(Collectors.toList());
 
-        cacheTimestamp = System.currentTimeMillis();
-
-        logger.info("Found {} duplicate groups", cachedDuplicateGroups.size());
-        return cachedDuplicateGroups;
+        if (fingerprintGroup) {
+            // Compute similarity scores for fingerprint-based groups
+            List<Double> similarities = FingerprintMatcher.computeGroupSimilarities(group);
+            return DuplicateGroupDTO.fromFilesWithSimilarity(fileDTOs, similarities);
+        } else {
+            return DuplicateGroupDTO.fromFiles(fileDTOs);
+        }
     }
 
     /**
@@ -130,8 +263,16 @@ public class DuplicateService {
     /**
      * Finds files similar to a specific file.
      * Uses fingerprint matching when available, falls back to metadata matching.
+     * Fingerprint matches come from the resident {@link FingerprintIndexService} once it
+     * is warm, so only the matching files are loaded.
      */
     public List<MusicFileDTO> findSimilarFiles(long fileId) {
+        Optional<List<SimilarFileDTO>> indexed = findNearestByFingerprint(fileId, Integer.MAX_VALUE,
+            FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD);
+        if (indexed.isPresent()) {
+            return indexed.get().stream().map(SimilarFileDTO::file).collect(Collectors.toList());
+        }
+
         MusicFile target = DatabaseManager.getMusicFileById(fileId);
         if (target == null) {
             return List.of();
@@ -148,7 +289,7 @@ public class DuplicateService {
         }
 
         // Fall back to metadata matching
-        FuzzySearchConfig config = new FuzzySearchConfig();
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
         return allFiles.stream()
             .filter(f -> f.getId() != fileId)
             .filter(f -> FuzzyMatcher.areDuplicates(target, f, config))
@@ -156,6 +297,33 @@ public class DuplicateService {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Returns true once the resident fingerprint index has been loaded.
+     */
+    public boolean isFingerprintIndexReady() {
+        return fingerprintIndexService.isReady();
+    }
+
+    /**
+     * Finds the files closest to a specific file by fingerprint, with their similarity.
+     *
+     * @param fileId the file to compare against
+     * @param k maximum number of results
+     * @param minSimilarity results below this similarity are left out
+     * @return the nearest files, most similar first, or empty if the fingerprint index
+     *         is still warming or the file has no fingerprint
+     */
+    public Optional<List<SimilarFileDTO>> findNearestByFingerprint(long fileId, int k, double minSimilarity) {
+        return fingerprintIndexService.findNearest(fileId, k, minSimilarity).map(neighbours -> {
+            Map<Long, MusicFile> filesById = DatabaseManager.getMusicFilesByIds(
+                neighbours.stream().map(FingerprintSimilarityIndex.Neighbour::fileId).collect(Collectors.toList()));
+            return neighbours.stream()
+                .filter(n -> filesById.containsKey(n.fileId()))
+                .map(n -> new SimilarFileDTO(MusicFileDTO.fromEntity(filesById.get(n.fileId())), n.similarity()))
+                .collect(Collectors.toList());
+        });
+    }
+
     /**
      * Compares two files and returns similarity details.
      */
@@ -167,7 +335,7 @@ public class DuplicateService {
             return Map.of("error", "One or both files not found");
         }
 
-        FuzzySearchConfig config = new FuzzySearchConfig();
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
 
         double similarity = FuzzyMatcher.calculateSimilarity(file1, file2, config);
         boolean areDuplicates = FuzzyMatcher.areDuplicates(file1, file2, config);
@@ -182,6 +350,74 @@ public class DuplicateService {
         );
     }
 
+    /**
+     * Measures the recall of the fingerprint LSH index against a brute-force pass.
+     * Expensive on large libraries; intended for tuning and diagnostics.
+     */
+    public FingerprintMatcher.IndexRecallReport measureFingerprintIndexRecall() {
+        List<MusicFile> allFiles = DatabaseManager.getAllMusicFiles();
+        return FingerprintMatcher.measureIndexRecall(allFiles, FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD);
+    }
+
+    /**
+     * Compares the duplicate index against a full recompute.
+     * Expensive on large libraries; intended for diagnostics.
+     *
+     * @param repair true to rebuild the index when it differs
+     * @throws IllegalStateException if the library is too large for the index
+     */
+    public DuplicateIndex.VerifyReport verifyDuplicateIndex(boolean repair) {
+        requireInMemoryIndex();
+        DuplicateIndex.VerifyReport report = DuplicateIndex.verify(repair);
+        if (report.repaired()) {
+            invalidateCache();
+        }
+        return report;
+    }
+
+    /**
+     * Discards the duplicate index and rebuilds it from every file.
+     *
+     * @return the number of duplicate groups after the rebuild
+     * @throws IllegalStateException if the library is too large for the index
+     */
+    public int rebuildDuplicateIndex() {
+        requireInMemoryIndex();
+        int groups = DuplicateIndex.rebuild().size();
+        invalidateCache();
+        return groups;
+    }
+
+    private static void requireInMemoryIndex() {
+        if (useExternalDetection(DatabaseManager.getMusicFileCount())) {
+            throw new IllegalStateException(
+                "The library is too large for the duplicate index; duplicates are found on disk instead");
+        }
+    }
+
+    /**
+     * Previews how many duplicate groups each threshold in a range would produce,
+     * evaluated over the stored similarity graph.
+     *
+     * @param from lowest threshold as a fraction
+     * @param to highest threshold as a fraction
+     * @param step distance between thresholds
+     */
+    public List<SimilarityGraph.SweepPoint> sweepThresholds(double from, double to, double step) {
+        return SimilarityGraph.sweep(from, to, step);
+    }
+
+    /**
+     * Discards the similarity graph and rebuilds it from every file.
+     *
+     * @return the number of stored edges
+     */
+    public int rebuildSimilarityGraph() {
+        int edges = SimilarityGraph.rebuild();
+        invalidateCache();
+        return edges;
+    }
+
     /**
      * Starts an asynchronous duplicate detection scan.
      * Progress is broadcast via WebSocket.
@@ -223,8 +459,8 @@ public class DuplicateService {
      * Invalidates the duplicate cache, forcing a refresh on next request.
      */
     public void invalidateCache() {
-        cachedDuplicateGroups = null;
-        cacheTimestamp = 0;
+        duplicateGroupsCache.invalidate();
+        albumSignatureCache.invalidate();
         logger.info("Duplicate cache invalidated");
     }
 
@@ -245,27 +481,43 @@ public class DuplicateService {
 
     /**
      * Keeps one file from a duplicate group and deletes the rest.
+     *
+     * <p>Group ids are derived from the group members, so a group can gain or lose files
+     * between the time a client fetched it and the time it acts on it. Nothing is
+     * deleted unless the file to keep is still a member of the group, and, when the
+     * client passes the result version it fetched, unless the groups are unchanged.
+     *
+     * @param expectedResultVersion result version the client fetched, or null to skip the check
+     * @return the number of files deleted, or 0 if the group doesn't exist
+     * @throws IllegalStateException if the groups changed since the expected version or
+     *                               the file to keep is not in the group
      */
-    public int keepFileDeleteOthers(int groupId, long keepFileId) {
-        Optional<DuplicateGroupDTO> groupOpt = getDuplicateGroup(groupId);
+    public int keepFileDeleteOthers(int groupId, long keepFileId, Long expectedResultVersion) {
+        List<DuplicateGroupDTO> groups = getDuplicateGroups();
+        if (expectedResultVersion != null && getResultVersion(groups) != expectedResultVersion) {
+            throw new IllegalStateException("Duplicate groups changed since result version " + expectedResultVersion);
+        }
+        Optional<DuplicateGroupDTO> groupOpt = groups.stream()
+            .filter(g -> g.groupId() == groupId)
+            .findFirst();
         if (groupOpt.isEmpty()) {
             return 0;
         }
 
         DuplicateGroupDTO group = groupOpt.get();
-        int deletedCount = 0;
-
-        for (DuplicateFileDTO dupFile : group.files()) {
-            MusicFileDTO file = dupFile.file();
-            if (file.id() != keepFileId) {
-                MusicFile musicFile = DatabaseManager.getMusicFileById(file.id());
-                if (musicFile != null && DatabaseManager.deleteMusicFile(musicFile)) {
-                    deletedCount++;
-                }
-            }
+        if (group.files().stream().noneMatch(dupFile -> dupFile.file().id() == keepFileId)) {
+            // Deleting "the others" would delete every file in the group
+            throw new IllegalStateException("File " + keepFileId + " is not in duplicate group " + groupId);
         }
+        List<Long> deleteIds = group.files().stream()
+            .map(dupFile -> dupFile.file().id())
+            .filter(id -> id != keepFileId)
+            .collect(Collectors.toList());
+        List<MusicFile> losers = new ArrayList<>(DatabaseManager.getMusicFilesByIds(deleteIds).values());
 
-        if (deletedCount > 0) {
+        List<FileDeletionResultDTO> deletions = deleteFiles(losers);
+        int deletedCount = (int) deletions.stream().filter(FileDeletionResultDTO::deleted).count();
+        if (!losers.isEmpty()) {
             invalidateCache();
         }
 
@@ -285,22 +537,13 @@ public class DuplicateService {
     public AutoResolutionResultDTO autoResolveDuplicates() {
         List<DuplicateGroupDTO> allGroups = getDuplicateGroups();
 
-        int filesDeleted = 0;
         int filesKept = 0;
         List<DuplicateGroupDTO> holdMyHandGroups = new ArrayList<>();
+        List<MusicFile> losers = new ArrayList<>();
 
-        for (DuplicateGroupDTO group : allGroups) {
-            if (group.files().size() < 2) continue;
-
-            // Load actual MusicFile entities for comparison
-            List<MusicFile> files = group.files().stream()
-                .map(df -> DatabaseManager.getMusicFileById(df.file().id()))
-                .filter(f -> f != null)
-                .collect(Collectors.toList());
-
-            if (files.size() < 2) continue;
-
-            MusicFile winner = selectWinnerFile(files);
+        for (GroupResolution resolution : planAutoResolution(allGroups)) {
+            DuplicateGroupDTO group = resolution.group();
+            MusicFile winner = resolution.winner();
 
             if (winner == null) {
                 // No clear winner - needs manual review
@@ -311,13 +554,11 @@ public class DuplicateService {
             }
 
             // Delete all files except the winner
-            for (MusicFile file : files) {
+            for (MusicFile file : resolution.files()) {
                 if (!file.getId().equals(winner.getId())) {
-                    if (DatabaseManager.deleteMusicFile(file)) {
-                        filesDeleted++;
-                        logger.debug("Auto-deleted: {} (bitrate: {}, metadata score: {})",
-                            file.getFilePath(), file.getBitRate(), calculateMetadataScore(file));
-                    }
+                    losers.add(file);
+                    logger.debug("Auto-deleting: {} (bitrate: {}, metadata score: {})",
+                        file.getFilePath(), file.getBitRate(), calculateMetadataScore(file));
                 }
             }
             filesKept++;
@@ -325,14 +566,16 @@ public class DuplicateService {
                 winner.getFilePath(), winner.getBitRate(), calculateMetadataScore(winner));
         }
 
-        if (filesDeleted > 0) {
+        List<FileDeletionResultDTO> deletions = deleteFiles(losers);
+        int filesDeleted = (int) deletions.stream().filter(FileDeletionResultDTO::deleted).count();
+        if (!losers.isEmpty()) {
             invalidateCache();
         }
 
         logger.info("Auto-resolution complete: {} deleted, {} kept, {} need review",
             filesDeleted, filesKept, holdMyHandGroups.size());
 
-        return AutoResolutionResultDTO.create(allGroups.size(), filesDeleted, filesKept, holdMyHandGroups);
+        return AutoResolutionResultDTO.create(allGroups.size(), filesDeleted, filesKept, holdMyHandGroups, deletions);
     }
 
     /**
@@ -347,18 +590,10 @@ public class DuplicateService {
         List<AutoResolutionPreviewDTO.ResolutionItem> resolutions = new ArrayList<>();
         List<DuplicateGroupDTO> holdMyHandGroups = new ArrayList<>();
 
-        for (DuplicateGroupDTO group : allGroups) {
-            if (group.files().size() < 2) continue;
-
-            // Load actual MusicFile entities for comparison
-            List<MusicFile> files = group.files().stream()
-                .map(df -> DatabaseManager.getMusicFileById(df.file().id()))
-                .filter(f -> f != null)
-                .collect(Collectors.toList());
-
-            if (files.size() < 2) continue;
-
-            MusicFile winner = selectWinnerFile(files);
+        for (GroupResolution resolution : planAutoResolution(allGroups)) {
+            DuplicateGroupDTO group = resolution.group();
+            List<MusicFile> files = resolution.files();
+            MusicFile winner = resolution.winner();
 
             if (winner == null) {
                 // No clear winner - needs manual review
@@ -377,7 +612,7 @@ public class DuplicateService {
                     Double similarity = null;
                     if (winner.hasFingerprint() && file.hasFingerprint()) {
                         similarity = FingerprintMatcher.calculateSimilarity(
-                            winner.getFingerprint(), file.getFingerprint());
+                            winner.getFingerprintSegments(), file.getFingerprintSegments());
                     }
 
                     resolutions.add(new AutoResolutionPreviewDTO.ResolutionItem(
@@ -408,59 +643,132 @@ public class DuplicateService {
     public AutoResolutionResultDTO executeAutoResolution(Set<Long> excludeFileIds) {
         List<DuplicateGroupDTO> allGroups = getDuplicateGroups();
 
-        int filesDeleted = 0;
-        int filesKept = 0;
         List<DuplicateGroupDTO> holdMyHandGroups = new ArrayList<>();
+        List<MusicFile> losers = new ArrayList<>();
+        // Range of each resolved group's files in 'losers'
+        List<int[]> loserRanges = new ArrayList<>();
 
-        for (DuplicateGroupDTO group : allGroups) {
-            if (group.files().size() < 2) continue;
-
-            // Load actual MusicFile entities for comparison
-            List<MusicFile> files = group.files().stream()
-                .map(df -> DatabaseManager.getMusicFileById(df.file().id()))
-                .filter(f -> f != null)
-                .collect(Collectors.toList());
-
-            if (files.size() < 2) continue;
-
-            MusicFile winner = selectWinnerFile(files);
+        for (GroupResolution resolution : planAutoResolution(allGroups)) {
+            MusicFile winner = resolution.winner();
 
             if (winner == null) {
                 // No clear winner - needs manual review
-                holdMyHandGroups.add(group);
+                holdMyHandGroups.add(resolution.group());
                 continue;
             }
 
             // Delete all files except the winner AND excluded files
-            boolean deletedAny = false;
-            for (MusicFile file : files) {
+            int from = losers.size();
+            for (MusicFile file : resolution.files()) {
                 if (!file.getId().equals(winner.getId())) {
                     if (excludeFileIds != null && excludeFileIds.contains(file.getId())) {
                         logger.info("Skipping excluded file: {}", file.getFilePath());
                         continue;
                     }
-                    if (DatabaseManager.deleteMusicFile(file)) {
-                        filesDeleted++;
-                        deletedAny = true;
-                        logger.debug("Auto-deleted: {}", file.getFilePath());
-                    }
+                    losers.add(file);
+                    logger.debug("Auto-deleting: {}", file.getFilePath());
                 }
             }
-            if (deletedAny || files.stream().allMatch(f ->
-                    f.getId().equals(winner.getId()) ||
-                    (excludeFileIds != null && excludeFileIds.contains(f.getId())))) {
-                filesKept++;
-            }
+            loserRanges.add(new int[] { from, losers.size() });
         }
 
-        if (filesDeleted > 0) {
+        List<FileDeletionResultDTO> deletions = deleteFiles(losers);
+        int filesDeleted = (int) deletions.stream().filter(FileDeletionResultDTO::deleted).count();
+        // A group counts as kept unless every removal in it failed
+        int filesKept = (int) loserRanges.stream()
+            .filter(range -> range[0] == range[1]
+                || deletions.subList(range[0], range[1]).stream().anyMatch(FileDeletionResultDTO::deleted))
+            .count();
+
+        if (!losers.isEmpty()) {
             invalidateCache();
         }
 
         logger.info("Auto-resolution executed: {} deleted, {} kept, {} need review",
             filesDeleted, filesKept, holdMyHandGroups.size());
 
-        return AutoResolutionResultDTO.create(allGroups.size(), filesDeleted, filesKept, holdMyHandGroups);
+        return AutoResolutionResultDTO.create(allGroups.size(), filesDeleted, filesKept, holdMyHandGroups, deletions);
+    }
+
+    /**
+     * A duplicate group with its files loaded and the file auto-resolution would keep,
+     * or a null winner if the group needs manual review.
+     */
+    private record GroupResolution(DuplicateGroupDTO group, List<MusicFile> files, MusicFile winner) {}
+
+    /**
+     * Loads the files of every group with batched id queries and picks each group's
+     * winner. Groups with fewer than two files left in the database are skipped.
+     */
+    private List<GroupResolution> planAutoResolution(List<DuplicateGroupDTO> groups) {
+        Set<Long> ids = new HashSet<>();
+        for (DuplicateGroupDTO group : groups) {
+            if (group.files().size() >= 2) {
+                group.files().forEach(df -> ids.add(df.file().id()));
+            }
+        }
+        Map<Long, MusicFile> filesById = DatabaseManager.getMusicFilesByIds(ids);
+
+        List<GroupResolution> resolutions = new ArrayList<>();
+        for (DuplicateGroupDTO group : groups) {
+            if (group.files().size() < 2) continue;
+
+            List<MusicFile> files = group.files().stream()
+                .map(df -> filesById.get(df.file().id()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+            if (files.size() < 2) continue;
+
+            resolutions.add(new GroupResolution(group, files, selectWinnerFile(files)));
+        }
+        return resolutions;
+    }
+
+    /**
+     * Deletes the database records of the given files in one transaction, then
+     * removes the files from disk in parallel.
+     *
+     * @return the outcome for each file, in the order given
+     */
+    private List<FileDeletionResultDTO> deleteFiles(List<MusicFile> files) {
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Deleting the records clears the ids, so capture them first
+        List<Long> ids = files.stream().map(MusicFile::getId).collect(Collectors.toList());
+        List<String> paths = files.stream().map(MusicFile::getFilePath).collect(Collectors.toList());
+        DatabaseManager.deleteMusicFiles(files);
+
+        List<CompletableFuture<FileDeletionResultDTO>> removals = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            String path = paths.get(i);
+            removals.add(CompletableFuture.supplyAsync(() -> removeFromDisk(id, path), fileDeleteExecutor));
+        }
+        List<FileDeletionResultDTO> results = removals.stream()
+            .map(CompletableFuture::join)
+            .collect(Collectors.toList());
+        logger.info("Removed {}/{} duplicate files from disk",
+            results.stream().filter(FileDeletionResultDTO::deleted).count(), results.size());
+        return results;
+    }
+
+    private static FileDeletionResultDTO removeFromDisk(Long fileId, String filePath) {
+        if (filePath == null) {
+            return FileDeletionResultDTO.failure(fileId, null, "No file path");
+        }
+        try {
+            if (Files.deleteIfExists(Paths.get(filePath))) {
+                logger.debug("Deleted file: {}", filePath);
+                return FileDeletionResultDTO.success(fileId, filePath);
+            }
+            logger.warn("File does not exist: {}", filePath);
+            return FileDeletionResultDTO.failure(fileId, filePath, "File does not exist");
+        } catch (IOException | InvalidPathException | SecurityException e) {
+            logger.error("Failed to delete file: {} - {}", filePath, e.getMessage());
+            return FileDeletionResultDTO.failure(fileId, filePath, e.getMessage());
+        }
     }
 
     /**
@@ -618,117 +926,208 @@ public class DuplicateService {
 
     // Private helper methods
 
+    /**
+     * Loads the files of each id group, dropping groups left with fewer than two files.
+     */
+    private List<List<MusicFile>> loadGroups(List<List<Long>> idGroups) {
+        Map<Long, MusicFile> filesById = DatabaseManager.getMusicFilesByIds(
+            idGroups.stream().flatMap(List::stream).collect(Collectors.toList()));
+
+        List<List<MusicFile>> groups = new ArrayList<>();
+        for (List<Long> ids : idGroups) {
+            List<MusicFile> group = ids.stream()
+                .map(filesById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Returns true if metadata duplicates of a library this size should be found with
+     * {@link ExternalDuplicateDetector}. Libraries mostly fingerprinted still load, since
+     * only fingerprint matching suits them.
+     */
+    private static boolean useExternalDetection(int totalFiles) {
+        if (!ExternalDuplicateDetector.appliesTo(totalFiles)) {
+            return false;
+        }
+        int fingerprinted = DatabaseManager.getFingerprintedFileCount();
+        if (fingerprinted > totalFiles / 2) {
+            return false;
+        }
+        logger.info("Using external-memory metadata duplicate detection ({} files, cap {} bytes)",
+            totalFiles, ExternalDuplicateDetector.memoryCapBytes());
+        return true;
+    }
+
+    /**
+     * Groups fingerprint duplicates from the memory-mapped corpus without loading any
+     * files; callers load only the files that ended up in a group.
+     *
+     * @param totalFiles number of files in the library under the current file type filter
+     * @return the ids of each duplicate group, or null if the corpus is unavailable or most
+     *         files lack fingerprints (callers then load the library and decide themselves)
+     */
+    private List<List<Long>> groupDuplicateIdsFromCorpus(int totalFiles) {
+        try (FingerprintCorpus.Snapshot snapshot = DatabaseManager.snapshotFingerprintCorpus()) {
+            if (snapshot == null || totalFiles <= 0 || snapshot.size() <= totalFiles / 2) {
+                return null;
+            }
+            logger.info("Using fingerprint corpus for duplicate detection ({}/{} files fingerprinted)",
+                snapshot.size(), totalFiles);
+
+            // The corpus holds only segments, so durations for pruning come from the database
+            Map<Long, Integer> durationsById = DatabaseManager.getFingerprintDurations();
+            int[] durations = new int[snapshot.size()];
+            for (int i = 0; i < durations.length; i++) {
+                durations[i] = durationsById.getOrDefault(snapshot.fileId(i), DurationWindow.UNKNOWN);
+            }
+
+            return FingerprintMatcher.groupDuplicateIds(snapshot, durations,
+                FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD, FingerprintMatcher.getDefaultMatchingMode());
+        }
+    }
+
     private void runDuplicateScan(DuplicateSession session) {
         try {
             session.setStage("loading");
             broadcastProgress(session);
 
-            List<MusicFile> allFiles = DatabaseManager.getAllMusicFiles();
-            FuzzySearchConfig config = new FuzzySearchConfig();
-
-            // Determine if we should use fingerprint matching
-            long filesWithFingerprints = allFiles.stream().filter(MusicFile::hasFingerprint).count();
-            boolean useFingerprints = filesWithFingerprints > allFiles.size() / 2;
-
-            logger.info("Duplicate scan: {} files, {} with fingerprints, using {} matching",
-                allFiles.size(), filesWithFingerprints, useFingerprints ? "fingerprint" : "metadata");
-
-            session.setTotalFiles(allFiles.size());
+            // Stamp the cached result with the version it was computed from
+            long libraryVersion = DatabaseManager.getLibraryVersion();
+            int totalFiles = DatabaseManager.getMusicFileCount();
+            session.setTotalFiles(Math.max(totalFiles, 0));
             session.setStage("scanning");
             broadcastProgress(session);
 
-            List<List<MusicFile>> duplicateGroups;
+            // Try the memory-mapped fingerprint corpus first; only load the library if it can't be used
+            List<List<Long>> corpusGroups = groupDuplicateIdsFromCorpus(totalFiles);
+            List<List<MusicFile>> duplicateGroups = corpusGroups == null ? null : loadGroups(corpusGroups);
+            boolean useFingerprints = duplicateGroups != null;
+            List<MusicFile> allFiles = List.of();
+            FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+            boolean external = duplicateGroups == null && useExternalDetection(totalFiles);
+
+            if (external) {
+                duplicateGroups = loadGroups(ExternalDuplicateDetector.findDuplicates(config).groups());
+            } else if (duplicateGroups == null) {
+                allFiles = DatabaseManager.getAllMusicFiles();
+
+                // Determine if we should use fingerprint matching
+                long filesWithFingerprints = allFiles.stream().filter(MusicFile::hasFingerprint).count();
+                useFingerprints = filesWithFingerprints > allFiles.size() / 2;
+
+                logger.info("Duplicate scan: {} files, {} with fingerprints, using {} matching",
+                    allFiles.size(), filesWithFingerprints, useFingerprints ? "fingerprint" : "metadata");
+
+                session.setTotalFiles(allFiles.size());
+                if (useFingerprints) {
+                    // Use fingerprint-based matching (parallel, efficient)
+                    duplicateGroups = FingerprintMatcher.groupDuplicates(allFiles);
+                }
+            }
 
             if (useFingerprints) {
-                // Use fingerprint-based matching (parallel, efficient)
-                duplicateGroups = FingerprintMatcher.groupDuplicates(allFiles);
                 session.setGroupsFound(duplicateGroups.size());
 
                 // Broadcast all groups at once for fingerprint matching, with similarity scores
-                AtomicInteger groupIdCounter = new AtomicInteger(1);
                 List<DuplicateGroupDTO> allGroupDTOs = duplicateGroups.stream()
                     .map(group -> {
                         List<MusicFileDTO> fileDTOs = group.stream()
                             .map(MusicFileDTO::fromEntity)
                             .collect(Collectors.toList());
                         List<Double> similarities = FingerprintMatcher.computeGroupSimilarities(group);
-                        return DuplicateGroupDTO.fromFilesWithSimilarity(groupIdCounter.getAndIncrement(), fileDTOs, similarities);
+                        return DuplicateGroupDTO.fromFilesWithSimilarity(fileDTOs, similarities);
                     })
                     .collect(Collectors.toList());
 
                 if (!allGroupDTOs.isEmpty()) {
                     broadcastGroups(session, allGroupDTOs);
                 }
+            } else if (external) {
+                session.setGroupsFound(duplicateGroups.size());
+                session.setFilesProcessed(totalFiles);
+                List<DuplicateGroupDTO> groupDTOs = duplicateGroups.stream()
+                    .map(group -> toGroupDTO(group, false))
+                    .collect(Collectors.toList());
+                for (int from = 0; from < groupDTOs.size(); from += GROUP_BATCH_SIZE) {
+                    broadcastGroups(session, groupDTOs.subList(from, Math.min(groupDTOs.size(), from + GROUP_BATCH_SIZE)));
+                }
             } else {
                 // Fall back to metadata-based fuzzy matching
-                duplicateGroups = new ArrayList<>();
-                Set<MusicFile> processed = new HashSet<>();
-                AtomicInteger groupIdCounter = new AtomicInteger(1);
-                int lastBroadcastedGroupCount = 0;
-
-                session.setTotalComparisons((allFiles.size() * (allFiles.size() - 1)) / 2);
-
-                for (int i = 0; i < allFiles.size() && !session.isCancelled(); i++) {
-                    MusicFile file1 = allFiles.get(i);
-                    if (processed.contains(file1)) continue;
-
-                    List<MusicFile> group = new ArrayList<>();
-                    group.add(file1);
-                    processed.add(file1);
-
-                    for (int j = i + 1; j < allFiles.size() && !session.isCancelled(); j++) {
-                        MusicFile file2 = allFiles.get(j);
-                        if (processed.contains(file2)) continue;
-
-                        if (FuzzyMatcher.areDuplicates(file1, file2, config)) {
-                            group.add(file2);
-                            processed.add(file2);
-                        }
-
-                        session.incrementComparisons();
+                // Large libraries only score the pairs proposed by blocking; otherwise skip
+                // pairs whose durations already rule them out, when the config allows it.
+                // These are the candidates of FuzzyMatcher.metadataCandidates, built here
+                // step by step to report the blocking stage and its statistics
+                IntFunction<int[]> candidatesAfter = null;
+                if (MetadataBlocker.appliesTo(allFiles.size())) {
+                    session.setStage("blocking");
+                    broadcastProgress(session);
+                    MetadataBlocker.Candidates blocked = MetadataBlocker.candidates(allFiles, config);
+                    session.setBlockingStats(blocked.stats());
+                    session.setStage("scanning");
+                    session.setTotalComparisons(blocked.pairCount());
+                    candidatesAfter = blocked::candidatesAfter;
+                } else {
+                    DurationWindow.Candidates durationCandidates = FuzzyMatcher.durationCandidates(allFiles, config);
+                    session.setTotalComparisons(durationCandidates != null
+                        ? durationCandidates.pairCount()
+                        : ((long) allFiles.size() * (allFiles.size() - 1)) / 2);
+                    if (durationCandidates != null) {
+                        candidatesAfter = durationCandidates::candidatesAfter;
                     }
+                }
 
-                    if (group.size() > 1) {
-                        duplicateGroups.add(group);
-                        session.setGroupsFound(duplicateGroups.size());
-
-                        // Broadcast new groups in batches of GROUP_BATCH_SIZE
-                        if (duplicateGroups.size() - lastBroadcastedGroupCount >= GROUP_BATCH_SIZE) {
-                            List<DuplicateGroupDTO> newGroups = duplicateGroups
-                                .subList(lastBroadcastedGroupCount, duplicateGroups.size())
-                                .stream()
-                                .map(g -> DuplicateGroupDTO.fromFiles(
-                                    groupIdCounter.getAndIncrement(),
-                                    g.stream().map(MusicFileDTO::fromEntity).collect(Collectors.toList())
-                                ))
-                                .collect(Collectors.toList());
-
-                            broadcastGroups(session, newGroups);
-                            lastBroadcastedGroupCount = duplicateGroups.size();
+                // Encode repeated values once so equal ones compare by id and scores are memoized
+                MetadataDictionary dictionary = MetadataDictionary.encode(allFiles, config);
+                session.setSimilarityCache(dictionary);
+
+                // Compare in parallel tiles and stream each group as soon as it can no longer grow
+                List<MusicFile> files = allFiles;
+                List<List<MusicFile>> streamedGroups = new ArrayList<>();
+                TiledMetadataScan.Result result = TiledMetadataScan.run(dictionary, candidatesAfter,
+                    session::isCancelled, new TiledMetadataScan.Listener() {
+                        private final AtomicLong lastBroadcast = new AtomicLong();
+
+                        @Override
+                        public void onTileCompleted(long comparisons, int settledFiles) {
+                            session.setComparisonsCompleted(comparisons);
+                            session.setFilesProcessed(settledFiles);
+                            long now = System.currentTimeMillis();
+                            long last = lastBroadcast.get();
+                            if (now - last >= PROGRESS_INTERVAL_MS && lastBroadcast.compareAndSet(last, now)) {
+                                broadcastProgress(session);
+                            }
                         }
-                    }
 
-                    session.setFilesProcessed(i + 1);
-
-                    // Broadcast progress every 100 files
-                    if (i % 100 == 0) {
-                        broadcastProgress(session);
-                    }
-                }
+                        @Override
+                        public void onGroupsSettled(List<int[]> settled) {
+                            List<DuplicateGroupDTO> newGroups = new ArrayList<>(settled.size());
+                            for (int[] members : settled) {
+                                List<MusicFile> group = new ArrayList<>(members.length);
+                                for (int i : members) {
+                                    group.add(files.get(i));
+                                }
+                                streamedGroups.add(group);
+                                newGroups.add(DuplicateGroupDTO.fromFiles(
+                                    group.stream().map(MusicFileDTO::fromEntity).collect(Collectors.toList())));
+                            }
+                            session.setGroupsFound(streamedGroups.size());
+                            for (int from = 0; from < newGroups.size(); from += GROUP_BATCH_SIZE) {
+                                broadcastGroups(session,
+                                    newGroups.subList(from, Math.min(newGroups.size(), from + GROUP_BATCH_SIZE)));
+                            }
+                        }
+                    });
 
-                // Broadcast any remaining groups that weren't in a full batch
-                if (duplicateGroups.size() > lastBroadcastedGroupCount) {
-                    List<DuplicateGroupDTO> remainingGroups = duplicateGroups
-                        .subList(lastBroadcastedGroupCount, duplicateGroups.size())
-                        .stream()
-                        .map(g -> DuplicateGroupDTO.fromFiles(
-                            groupIdCounter.getAndIncrement(),
-                            g.stream().map(MusicFileDTO::fromEntity).collect(Collectors.toList())
-                        ))
-                        .collect(Collectors.toList());
-
-                    broadcastGroups(session, remainingGroups);
-                }
+                session.setComparisonsCompleted(result.comparisons());
+                session.releaseSimilarityCache();
+                logger.info("Metadata similarity cache: {}", dictionary.stats());
+                duplicateGroups = streamedGroups;
             }
 
             if (session.isCancelled()) {
@@ -737,14 +1136,11 @@ public class DuplicateService {
                 session.setStage("completed");
 
                 // Update cache with results
-                AtomicInteger cacheGroupId = new AtomicInteger(1);
-                cachedDuplicateGroups = duplicateGroups.stream()
+                duplicateGroupsCache.put(duplicateGroups.stream()
                     .map(group -> DuplicateGroupDTO.fromFiles(
-                        cacheGroupId.getAndIncrement(),
                         group.stream().map(MusicFileDTO::fromEntity).collect(Collectors.toList())
                     ))
-                    .collect(Collectors.toList());
-                cacheTimestamp = System.currentTimeMillis();
+                    .collect(Collectors.toList()), libraryVersion);
             }
 
             broadcastProgress(session);
@@ -785,102 +1181,158 @@ public class DuplicateService {
     // ============================================================
 
     /**
-     * Helper record to represent a pair of directories for grouping.
-     * Ensures consistent ordering (alphabetically) for map keys.
+     * Gets duplicate files grouped by directory pairs.
+     * Shows which directories have overlapping (duplicate) content.
+     *
+     * @return List of directory conflicts, sorted by number of duplicate pairs (descending)
+     */
+    public List<DirectoryConflictDTO> getDirectoryConflicts() {
+        return getDirectoryConflictIndex().sorted(DirectoryConflictIndex.SortField.PAIRS, false);
+    }
+
+    /**
+     * Gets one page of directory conflicts.
+     *
+     * @param page page number (0-indexed)
+     * @param size page size
+     * @param sort sort field, see {@link DirectoryConflictIndex.SortField}
+     * @param ascending true for ascending order
      */
-    private record DirectoryPair(String dirA, String dirB) {
-        DirectoryPair {
-            // Ensure consistent ordering for map keys
-            if (dirA.compareTo(dirB) > 0) {
-                String temp = dirA;
-                dirA = dirB;
-                dirB = temp;
+    public PageResponse<DirectoryConflictDTO> getDirectoryConflicts(int page, int size, String sort, boolean ascending) {
+        return getDirectoryConflictIndex().page(page, size,
+            DirectoryConflictIndex.SortField.fromParameter(sort), ascending);
+    }
+
+    /**
+     * Returns the directory conflict index for the current duplicate groups, building
+     * it once per duplicate result.
+     */
+    private DirectoryConflictIndex getDirectoryConflictIndex() {
+        List<DuplicateGroupDTO> groups = getDuplicateGroups();
+        DirectoryConflictIndex index = directoryConflictIndex;
+        if (index != null && index.isBuiltFrom(groups)) {
+            return index;
+        }
+        synchronized (directoryConflictLock) {
+            index = directoryConflictIndex;
+            if (index == null || !index.isBuiltFrom(groups)) {
+                logger.info("Computing directory conflicts...");
+                index = DirectoryConflictIndex.build(groups);
+                directoryConflictIndex = index;
+                logger.info("Found {} directory conflicts", index.size());
             }
+            return index;
         }
     }
 
     /**
-     * Gets duplicate files grouped by directory pairs.
-     * Shows which directories have overlapping (duplicate) content.
+     * Finds albums stored twice, such as the same rip in two formats, by comparing
+     * MinHash signatures of whole directories rather than individual tracks.
      *
-     * @return List of directory conflicts, sorted by number of duplicate pairs (descending)
+     * @param minSimilarity smallest estimated overlap to report, from 0 to 1
+     * @param limit maximum number of matches to return
+     * @return matching directory pairs, most similar first
      */
-    public List<DirectoryConflictDTO> getDirectoryConflicts() {
-        logger.info("Computing directory conflicts...");
+    public List<AlbumMatchDTO> getDuplicateAlbums(double minSimilarity, int limit) {
+        return getAlbumSignatureIndex().findDuplicateAlbums(minSimilarity).stream()
+            .limit(Math.max(0, limit))
+            .map(match -> new AlbumMatchDTO(match.directoryA(), match.directoryB(), match.tracksInA(),
+                match.tracksInB(), match.similarity(), match.byFingerprint()))
+            .collect(Collectors.toList());
+    }
 
-        // Get all duplicate groups first
-        List<DuplicateGroupDTO> groups = getDuplicateGroups();
+    private AlbumSignatureIndex getAlbumSignatureIndex() {
+        return albumSignatureCache.get(() -> {
+            logger.info("Computing album signatures...");
+            AlbumSignatureIndex.Builder builder = AlbumSignatureIndex.builder(DatabaseManager.activeFuzzySearchConfig());
+            DatabaseManager.forEachMusicFile(file ->
+                builder.add(DirectoryConflictIndex.parentDirectory(file.getFilePath()), file));
+            AlbumSignatureIndex index = builder.build();
+            logger.info("Computed signatures of {} albums", index.size());
+            return index;
+        });
+    }
 
-        // Build map: (dirA, dirB) → List<DuplicatePair>
-        Map<DirectoryPair, List<DuplicatePairDTO>> conflicts = new HashMap<>();
+    /**
+     * Returns the conflict between two directories from the duplicate groups, or, if
+     * the groups link none of their files, from matching the two albums track by track.
+     */
+    private DirectoryConflictDTO findDirectoryConflict(String directory1, String directory2) {
+        DirectoryConflictDTO conflict = getDirectoryConflictIndex().find(directory1, directory2);
+        if (conflict != null || directory1 == null || directory2 == null || directory1.equals(directory2)) {
+            return conflict;
+        }
+        AlbumSignatureIndex albums = getAlbumSignatureIndex();
+        long[] ids1 = albums.fileIds(directory1);
+        long[] ids2 = albums.fileIds(directory2);
+        if (ids1.length == 0 || ids2.length == 0) {
+            return null;
+        }
 
-        for (DuplicateGroupDTO group : groups) {
-            List<DuplicateFileDTO> files = group.files();
-
-            // Compare each pair of files in the group
-            for (int i = 0; i < files.size(); i++) {
-                for (int j = i + 1; j < files.size(); j++) {
-                    String dirA = getParentDirectory(files.get(i).file().filePath());
-                    String dirB = getParentDirectory(files.get(j).file().filePath());
-
-                    // Only consider cross-directory duplicates
-                    if (!dirA.equals(dirB)) {
-                        DirectoryPair key = new DirectoryPair(dirA, dirB);
-                        conflicts.computeIfAbsent(key, k -> new ArrayList<>())
-                            .add(new DuplicatePairDTO(
-                                files.get(i).file(),
-                                files.get(j).file(),
-                                files.get(i).similarity()
-                            ));
-                    }
+        List<Long> ids = new ArrayList<>(ids1.length + ids2.length);
+        for (long id : ids1) ids.add(id);
+        for (long id : ids2) ids.add(id);
+        Map<Long, MusicFile> filesById = DatabaseManager.getMusicFilesByIds(ids);
+        boolean firstIsA = directory1.compareTo(directory2) < 0;
+        List<MusicFile> filesA = loadAlbum(firstIsA ? ids1 : ids2, filesById);
+        List<MusicFile> filesB = loadAlbum(firstIsA ? ids2 : ids1, filesById);
+
+        // Pair each track with its best unpaired match in the other album
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+        boolean[] paired = new boolean[filesB.size()];
+        List<DuplicatePairDTO> pairs = new ArrayList<>();
+        for (MusicFile fileA : filesA) {
+            int best = -1;
+            double bestScore = 0.0;
+            for (int j = 0; j < filesB.size(); j++) {
+                if (paired[j]) continue;
+                double score = trackMatchScore(fileA, filesB.get(j), config);
+                if (score > bestScore) {
+                    best = j;
+                    bestScore = score;
                 }
             }
+            if (best >= 0) {
+                paired[best] = true;
+                MusicFile fileB = filesB.get(best);
+                pairs.add(new DuplicatePairDTO(MusicFileDTO.fromEntity(fileA), MusicFileDTO.fromEntity(fileB),
+                    fileA.hasFingerprint() && fileB.hasFingerprint() ? bestScore : null));
+            }
         }
+        if (pairs.isEmpty()) {
+            return null;
+        }
+        logger.info("Matched {} tracks between albums '{}' and '{}'", pairs.size(), directory1, directory2);
+        return new DirectoryConflictDTO(firstIsA ? directory1 : directory2, firstIsA ? directory2 : directory1,
+            pairs.size(), pairs.size(), pairs.size(), pairs);
+    }
 
-        // Convert to DTOs with counts
-        List<DirectoryConflictDTO> result = conflicts.entrySet().stream()
-            .map(e -> {
-                DirectoryPair pair = e.getKey();
-                List<DuplicatePairDTO> pairs = e.getValue();
-
-                // Count unique files in each directory
-                Set<Long> filesInA = new HashSet<>();
-                Set<Long> filesInB = new HashSet<>();
-
-                for (DuplicatePairDTO p : pairs) {
-                    String fileADir = getParentDirectory(p.fileA().filePath());
-                    if (fileADir.equals(pair.dirA())) {
-                        filesInA.add(p.fileA().id());
-                        filesInB.add(p.fileB().id());
-                    } else {
-                        filesInB.add(p.fileA().id());
-                        filesInA.add(p.fileB().id());
-                    }
-                }
-
-                return new DirectoryConflictDTO(
-                    pair.dirA(),
-                    pair.dirB(),
-                    filesInA.size(),
-                    filesInB.size(),
-                    pairs.size(),
-                    pairs
-                );
-            })
-            .sorted(Comparator.comparingInt(DirectoryConflictDTO::totalDuplicatePairs).reversed())
-            .collect(Collectors.toList());
-
-        logger.info("Found {} directory conflicts", result.size());
-        return result;
+    private static List<MusicFile> loadAlbum(long[] ids, Map<Long, MusicFile> filesById) {
+        List<MusicFile> files = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            MusicFile file = filesById.get(id);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
     }
 
     /**
-     * Gets the parent directory of a file path.
+     * Scores two tracks of matched albums: their fingerprint similarity if both have
+     * one, otherwise their metadata similarity if they are metadata duplicates. Returns
+     * 0 for tracks that don't match.
      */
-    private String getParentDirectory(String filePath) {
-        Path path = Paths.get(filePath);
-        Path parent = path.getParent();
-        return parent != null ? parent.toString() : "";
+    private static double trackMatchScore(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
+        if (file1.hasFingerprint() && file2.hasFingerprint()) {
+            double similarity = FingerprintMatcher.calculateSimilarity(
+                file1.getFingerprintSegments(), file2.getFingerprintSegments());
+            return similarity >= FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD ? similarity : 0.0;
+        }
+        if (!FuzzyMatcher.areDuplicates(file1, file2, config)) {
+            return 0.0;
+        }
+        return FuzzyMatcher.calculateSimilarity(file1, file2, config) / 100.0;
     }
 
     /**
@@ -898,8 +1350,7 @@ public class DuplicateService {
             directoryToKeep, directoryToDelete);
 
         // Find the conflict between these directories
-        List<DirectoryConflictDTO> allConflicts = getDirectoryConflicts();
-        DirectoryConflictDTO conflict = findConflict(allConflicts, directoryToKeep, directoryToDelete);
+        DirectoryConflictDTO conflict = findDirectoryConflict(directoryToKeep, directoryToDelete);
 
         if (conflict == null) {
             logger.warn("No conflict found between directories: {} and {}", directoryToKeep, directoryToDelete);
@@ -922,7 +1373,7 @@ public class DuplicateService {
             MusicFileDTO fileA = pair.fileA();
             MusicFileDTO fileB = pair.fileB();
 
-            String dirA = getParentDirectory(fileA.filePath());
+            String dirA = DirectoryConflictIndex.parentDirectory(fileA.filePath());
 
             if (dirA.equals(directoryToDelete)) {
                 if (deleteIds.add(fileA.id())) {
@@ -968,19 +1419,11 @@ public class DuplicateService {
         // Get the preview to know which files to delete
         DirectoryResolutionPreviewDTO preview = previewDirectoryResolution(directoryToKeep, directoryToDelete);
 
-        int deleted = 0;
         int attempted = preview.filesToDelete().size();
-
-        for (MusicFileDTO file : preview.filesToDelete()) {
-            try {
-                if (deleteFile(file.id())) {
-                    deleted++;
-                    logger.debug("Deleted file: {}", file.filePath());
-                }
-            } catch (Exception e) {
-                logger.error("Failed to delete file {}: {}", file.filePath(), e.getMessage());
-            }
-        }
+        List<Long> deleteIds = preview.filesToDelete().stream().map(MusicFileDTO::id).collect(Collectors.toList());
+        List<FileDeletionResultDTO> deletions =
+            deleteFiles(new ArrayList<>(DatabaseManager.getMusicFilesByIds(deleteIds).values()));
+        int deleted = (int) deletions.stream().filter(FileDeletionResultDTO::deleted).count();
 
         // Invalidate cache since we modified files
         invalidateCache();
@@ -995,23 +1438,6 @@ public class DuplicateService {
         );
     }
 
-    /**
-     * Finds a conflict between two specific directories.
-     */
-    private DirectoryConflictDTO findConflict(
-            List<DirectoryConflictDTO> conflicts,
-            String dir1,
-            String dir2) {
-
-        for (DirectoryConflictDTO conflict : conflicts) {
-            if ((conflict.directoryA().equals(dir1) && conflict.directoryB().equals(dir2)) ||
-                (conflict.directoryA().equals(dir2) && conflict.directoryB().equals(dir1))) {
-                return conflict;
-            }
-        }
-        return null;
-    }
-
     // ============================================================
     // End of directory-based duplicate grouping
     // ============================================================
@@ -1021,14 +1447,17 @@ public class DuplicateService {
      */
     private static class DuplicateSession {
         private final String sessionId;
-        private String stage = "starting";
-        private int totalFiles = 0;
-        private int filesProcessed = 0;
-        private long totalComparisons = 0;
-        private long comparisonsCompleted = 0;
-        private int groupsFound = 0;
+        private volatile String stage = "starting";
+        private volatile int totalFiles = 0;
+        private final AtomicInteger filesProcessed = new AtomicInteger();
+        private volatile long totalComparisons = 0;
+        private final AtomicLong comparisonsCompleted = new AtomicLong();
+        private volatile int groupsFound = 0;
+        private volatile MetadataBlocker.Stats blockingStats = null;
+        private volatile MetadataDictionary similarityCache = null;
+        private volatile MetadataDictionary.Stats similarityCacheStats = null;
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
-        private String error = null;
+        private volatile String error = null;
 
         DuplicateSession(String sessionId) {
             this.sessionId = sessionId;
@@ -1037,26 +1466,43 @@ public class DuplicateService {
         String getSessionId() { return sessionId; }
         void setStage(String stage) { this.stage = stage; }
         void setTotalFiles(int total) { this.totalFiles = total; }
-        void setFilesProcessed(int processed) { this.filesProcessed = processed; }
+        void setFilesProcessed(int processed) { this.filesProcessed.accumulateAndGet(processed, Math::max); }
         void setTotalComparisons(long total) { this.totalComparisons = total; }
-        void incrementComparisons() { this.comparisonsCompleted++; }
+        void setComparisonsCompleted(long completed) { this.comparisonsCompleted.accumulateAndGet(completed, Math::max); }
         void setGroupsFound(int groups) { this.groupsFound = groups; }
+        void setBlockingStats(MetadataBlocker.Stats stats) { this.blockingStats = stats; }
+        void setSimilarityCache(MetadataDictionary dictionary) { this.similarityCache = dictionary; }
+        void releaseSimilarityCache() {
+            // Keep the final numbers but let the dictionary and its files be collected
+            MetadataDictionary dictionary = similarityCache;
+            if (dictionary != null) {
+                similarityCacheStats = dictionary.stats();
+                similarityCache = null;
+            }
+        }
         void setError(String error) { this.error = error; }
         void cancel() { this.cancelled.set(true); }
         boolean isCancelled() { return cancelled.get(); }
 
         DuplicateScanStatus getStatus() {
+            long completed = comparisonsCompleted.get();
             int percentComplete = totalComparisons > 0
-                ? (int) ((comparisonsCompleted * 100) / totalComparisons)
+                ? (int) ((completed * 100) / totalComparisons)
                 : 0;
 
             return new DuplicateScanStatus(
-                sessionId, stage, totalFiles, filesProcessed,
-                totalComparisons, comparisonsCompleted, groupsFound,
+                sessionId, stage, totalFiles, filesProcessed.get(),
+                totalComparisons, completed, groupsFound,
                 percentComplete, cancelled.get(),
-                stage.equals("completed"), error
+                stage.equals("completed"), error, blockingStats,
+                currentSimilarityCacheStats()
             );
         }
+
+        private MetadataDictionary.Stats currentSimilarityCacheStats() {
+            MetadataDictionary dictionary = similarityCache;
+            return dictionary != null ? dictionary.stats() : similarityCacheStats;
+        }
     }
 
     /**
@@ -1073,6 +1519,8 @@ public class DuplicateService {
         int percentComplete,
         boolean isCancelled,
         boolean isComplete,
-        String error
+        String error,
+        MetadataBlocker.Stats blockingStats,
+        MetadataDictionary.Stats similarityCacheStats
     ) {}
 }
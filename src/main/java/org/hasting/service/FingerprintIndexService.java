@@ -0,0 +1,167 @@
+package org.hasting.service;
+
+import org.hasting.model.MusicFile;
+import org.hasting.util.DatabaseManager;
+import org.hasting.util.DurationWindow;
+import org.hasting.util.FingerprintChangeListener;
+import org.hasting.util.FingerprintCorpus;
+import org.hasting.util.FingerprintSimilarityIndex;
+import org.springframework.stereotype.Service;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps every fingerprint of the library in a memory-resident {@link FingerprintSimilarityIndex}
+ * so "find similar" queries don't have to load and parse the whole library.
+ *
+ * <p>The index is warmed in the background once the database is initialized and then kept
+ * current through {@link DatabaseManager} fingerprint updates and deletions. Changes that
+ * arrive while the index is warming are replayed on top of the loaded fingerprints.
+ */
+@Service
+public class FingerprintIndexService implements FingerprintChangeListener {
+
+    private static final Logger logger = Log4Rich.getLogger(FingerprintIndexService.class);
+
+    private final FingerprintSimilarityIndex index = new FingerprintSimilarityIndex();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "fingerprint-index-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this; changes received during warm-up, replayed once loading finishes
+    private List<Runnable> changesDuringWarmup = null;
+    private volatile boolean ready = false;
+
+    /**
+     * Starts loading every fingerprint into the index on a background thread.
+     * Queries return nothing from the index until loading finishes.
+     */
+    public void warmAsync() {
+        DatabaseManager.addFingerprintChangeListener(this);
+        synchronized (this) {
+            if (changesDuringWarmup != null) {
+                return; // already warming
+            }
+            changesDuringWarmup = new ArrayList<>();
+            ready = false;
+        }
+        executor.submit(this::warm);
+    }
+
+    private void warm() {
+        long startTime = System.currentTimeMillis();
+        try {
+            load();
+        } catch (RuntimeException e) {
+            logger.error("Failed to warm fingerprint similarity index", e);
+            synchronized (this) {
+                changesDuringWarmup = null;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            changesDuringWarmup.forEach(Runnable::run);
+            changesDuringWarmup = null;
+            ready = true;
+        }
+        logger.info("Fingerprint similarity index ready with {} fingerprints in {}ms",
+            index.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private void load() {
+        try (FingerprintCorpus.Snapshot snapshot = DatabaseManager.snapshotFingerprintCorpus()) {
+            if (snapshot != null) {
+                Map<Long, Integer> durationsById = DatabaseManager.getFingerprintDurations();
+                int n = snapshot.size();
+                long[] ids = new long[n];
+                int[][] segments = new int[n][];
+                int[] durations = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = snapshot.fileId(i);
+                    // Copy out of the mapping so the snapshot can be released
+                    IntBuffer view = snapshot.segments(i);
+                    segments[i] = new int[view.limit()];
+                    view.duplicate().position(0).get(segments[i]);
+                    durations[i] = durationsById.getOrDefault(ids[i], DurationWindow.UNKNOWN);
+                }
+                index.replaceAll(ids, segments, durations);
+                return;
+            }
+        }
+
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles().stream()
+            .filter(MusicFile::hasFingerprint)
+            .collect(Collectors.toList());
+        long[] ids = new long[files.size()];
+        int[][] segments = new int[files.size()][];
+        int[] durations = new int[files.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = files.get(i).getId();
+            segments[i] = files.get(i).getFingerprintSegments();
+            durations[i] = DurationWindow.fingerprintDuration(files.get(i));
+        }
+        index.replaceAll(ids, segments, durations);
+    }
+
+    /**
+     * Returns true once the index has been loaded.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Returns the number of fingerprints in the index.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Finds the files most similar to the given one by fingerprint.
+     *
+     * @param fileId database ID of the query file
+     * @param k maximum number of results
+     * @param minSimilarity results below this similarity are left out
+     * @return neighbours, most similar first, or empty if the index is not ready
+     *         or the file has no fingerprint
+     */
+    public Optional<List<FingerprintSimilarityIndex.Neighbour>> findNearest(long fileId, int k, double minSimilarity) {
+        if (!ready || !index.contains(fileId)) {
+            return Optional.empty();
+        }
+        return Optional.of(index.findNearest(fileId, k, minSimilarity));
+    }
+
+    @Override
+    public void onFingerprintUpdated(long fileId, int[] segments, int duration) {
+        apply(() -> index.put(fileId, segments, duration));
+    }
+
+    @Override
+    public void onMusicFileDeleted(long fileId) {
+        apply(() -> index.remove(fileId));
+    }
+
+    @Override
+    public void onAllMusicFilesDeleted() {
+        apply(index::clear);
+    }
+
+    private synchronized void apply(Runnable change) {
+        if (changesDuringWarmup != null) {
+            changesDuringWarmup.add(change);
+        } else {
+            change.run();
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package org.hasting.service;
 
 import org.hasting.dto.ScanProgressDTO;
-import org.hasting.model.MusicFile;
 import org.hasting.util.DatabaseManager;
 import org.hasting.util.MusicFileScanner;
+import org.hasting.util.ScanPipeline;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -15,7 +18,7 @@ import java.util.concurrent.Executors;
 
 /**
  * Service for managing directory scanning operations with real-time WebSocket progress.
- * Wraps the existing MusicFileScanner to provide web-friendly scanning capabilities.
+ * Runs scans through a {@link ScanPipeline} to provide web-friendly scanning capabilities.
  *
  * Part of Issue #69 - Web UI Migration (Phase 2)
  */
@@ -32,26 +35,33 @@ public class ScanningService {
     public static class ScanSession {
         public final String sessionId;
         public final List<String> directories;
+        public final boolean rescan;
         public final long startTime;
         public volatile boolean cancelled = false;
         public volatile boolean completed = false;
         public volatile int filesFound = 0;
-        private MusicFileScanner scanner;
+        public volatile ScanPipeline.Metrics metrics;
+        private volatile ScanPipeline pipeline;
 
-        public ScanSession(String sessionId, List<String> directories) {
+        public ScanSession(String sessionId, List<String> directories, boolean rescan) {
             this.sessionId = sessionId;
             this.directories = directories;
+            this.rescan = rescan;
             this.startTime = System.currentTimeMillis();
         }
 
-        public void setScanner(MusicFileScanner scanner) {
-            this.scanner = scanner;
+        public void setPipeline(ScanPipeline pipeline) {
+            this.pipeline = pipeline;
+            if (cancelled) {
+                pipeline.cancel();
+            }
         }
 
         public void cancel() {
             this.cancelled = true;
-            if (scanner != null) {
-                scanner.requestStop();
+            ScanPipeline current = pipeline;
+            if (current != null) {
+                current.cancel();
             }
         }
     }
@@ -63,12 +73,17 @@ public class ScanningService {
     /**
      * Starts a new scanning session asynchronously.
      *
+     * <p>A rescan compares each file's size and modification time with the library and
+     * reads tags only from new and changed files; stored files that are gone from disk
+     * are tombstoned.
+     *
      * @param directories List of directory paths to scan
+     * @param rescan Whether to rescan rather than add new files only
      * @return The session ID for tracking progress
      */
-    public String startScan(List<String> directories) {
+    public String startScan(List<String> directories, boolean rescan) {
         String sessionId = UUID.randomUUID().toString();
-        ScanSession session = new ScanSession(sessionId, directories);
+        ScanSession session = new ScanSession(sessionId, directories, rescan);
         activeSessions.put(sessionId, session);
 
         // Send initial progress
@@ -82,65 +97,84 @@ public class ScanningService {
 
     /**
      * Performs the actual scanning operation.
+     *
+     * <p>Runs a {@link ScanPipeline}: directories are walked, tags are read in parallel,
+     * and files are committed to the database in batches as they are read, so a large
+     * scan never holds the whole library in memory and a cancelled scan keeps the
+     * files already read.
      */
     private void performScan(ScanSession session) {
         String sessionId = session.sessionId;
-        MusicFileScanner scanner = new MusicFileScanner();
-        session.setScanner(scanner);
-
-        List<MusicFile> allFiles = new ArrayList<>();
+        ScanPipeline pipeline = session.rescan ? ScanPipeline.forLibraryRescan() : ScanPipeline.forLibrary();
+        int totalDirectories = session.directories.size();
 
         try {
-            // Set up progress callbacks
-            scanner.setDetailedProgressCallback(progress -> {
-                if (session.cancelled) return;
-
-                ScanProgressDTO dto;
-                if ("scanning".equals(progress.stage)) {
-                    dto = ScanProgressDTO.scanning(
-                        sessionId, progress.currentDirectory, progress.filesFound,
-                        progress.totalDirectories, progress.directoriesProcessed
-                    );
-                } else {
-                    dto = ScanProgressDTO.readingTags(
-                        sessionId, progress.currentDirectory, progress.currentFile,
-                        progress.filesFound, progress.filesProcessed,
-                        progress.totalDirectories, progress.directoriesProcessed
-                    );
+            List<Path> roots = new ArrayList<>();
+            for (String directory : session.directories) {
+                try {
+                    roots.add(Paths.get(directory.trim()));
+                } catch (InvalidPathException e) {
+                    // Reported by the walk as an invalid directory
+                }
+                sendProgress(ScanProgressDTO.scanning(sessionId, directory, 0, totalDirectories, 0));
+            }
+
+            pipeline.setListener(new ScanPipeline.Listener() {
+                @Override
+                public void onProgress(ScanPipeline.Metrics metrics) {
+                    session.metrics = metrics;
+                    session.filesFound = (int) metrics.discovery().items();
+                    if (session.cancelled) return;
+
+                    Path current = metrics.currentFile().isEmpty() ? null : Paths.get(metrics.currentFile());
+                    if (current == null) {
+                        sendProgress(ScanProgressDTO.scanning(sessionId, "", session.filesFound,
+                            totalDirectories, metrics.rootsCompleted()));
+                    } else {
+                        Path parent = current.getParent();
+                        sendProgress(ScanProgressDTO.readingTags(sessionId,
+                            parent != null ? parent.toString() : "", String.valueOf(current.getFileName()),
+                            session.filesFound, (int) metrics.extraction().items(),
+                            totalDirectories, metrics.rootsCompleted()));
+                    }
                 }
-                session.filesFound = progress.filesFound;
-                sendProgress(dto);
             });
+            session.setPipeline(pipeline);
 
-            // Perform the scan
-            List<MusicFile> files = scanner.findAllMusicFilesWithProgress(session.directories);
+            ScanPipeline.Metrics metrics = pipeline.run(roots, MusicFileScanner.getEnabledExtensions());
+            session.metrics = metrics;
+            int filesCommitted = (int) metrics.persistence().items();
 
             if (session.cancelled) {
-                sendProgress(ScanProgressDTO.cancelled(sessionId, session.filesFound));
+                sendProgress(ScanProgressDTO.cancelled(sessionId, filesCommitted));
                 return;
             }
 
-            allFiles.addAll(files);
-
-            // Save to database
-            if (!allFiles.isEmpty()) {
-                sendProgress(ScanProgressDTO.saving(sessionId, allFiles.size()));
-
-                // Use batch save for performance
-                int savedCount = DatabaseManager.saveMusicFilesBatch(allFiles);
-
-                // Record the scan directories
+            // Record the scan directories
+            if (filesCommitted > 0) {
                 for (String dir : session.directories) {
                     DatabaseManager.recordScanDirectory(dir);
                 }
             }
+            if (session.rescan) {
+                for (String dir : session.directories) {
+                    DatabaseManager.updateScanDirectoryRescanTime(dir);
+                }
+            }
 
             // Mark complete
             session.completed = true;
-            session.filesFound = allFiles.size();
-            sendProgress(ScanProgressDTO.completed(sessionId, allFiles.size()));
+            session.filesFound = filesCommitted;
+            if (session.rescan) {
+                ScanPipeline.Changes changes = metrics.changes();
+                sendProgress(ScanProgressDTO.rescanCompleted(sessionId, changes.added(), changes.changed(),
+                    changes.removed(), changes.unchanged()));
+            } else {
+                sendProgress(ScanProgressDTO.completed(sessionId, filesCommitted));
+            }
 
         } catch (Exception e) {
+            session.metrics = pipeline.snapshot();
             sendProgress(ScanProgressDTO.error(sessionId, e.getMessage()));
         } finally {
             // Clean up after a delay to allow clients to receive final message
@@ -175,6 +209,13 @@ public class ScanningService {
         return Optional.ofNullable(activeSessions.get(sessionId));
     }
 
+    /**
+     * Gets the paths of the files most recently removed by rescans, newest first.
+     */
+    public List<String> getRemovedFiles(int limit) {
+        return DatabaseManager.getTombstonedPaths(limit);
+    }
+
     /**
      * Gets all previously scanned directories from the database.
      */
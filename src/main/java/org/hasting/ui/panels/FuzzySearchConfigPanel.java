@@ -441,6 +441,7 @@ public class FuzzySearchConfigPanel extends VBox {
             // Update the profile
             activeProfile.setFuzzySearchConfig(config);
             DatabaseManager.getProfileManager().updateProfile(activeProfile);
+            DatabaseManager.fuzzySearchConfigChanged();
             
             statusLabel.setText("Fuzzy search configuration updated successfully");
             statusLabel.setStyle("-fx-text-fill: green;");
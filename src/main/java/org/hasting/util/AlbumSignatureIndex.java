@@ -0,0 +1,378 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MinHash signatures of whole albums, for finding albums that were ripped or copied
+ * twice without comparing their tracks one by one.
+ *
+ * <p>An album is the set of files in one directory. Each album gets two sketches:
+ * <ul>
+ *   <li>a title sketch over the normalized title of every track, paired with its
+ *       duration so generic titles such as "Track 01" only match tracks of the same
+ *       length. Each track adds two tokens from duration buckets offset by half a
+ *       bucket, so a one-second difference never splits a pair;</li>
+ *   <li>a fingerprint sketch over every byte of the first
+ *       {@value #FINGERPRINT_POSITIONS} fingerprint segments of every track, keyed by
+ *       position like {@link FingerprintLshIndex}. Two encodings of the same track
+ *       share most of these bytes, unrelated tracks about one in 256.</li>
+ * </ul>
+ *
+ * <p>Sketches use one-permutation hashing: a token's hash picks one of
+ * {@value #SKETCH_SIZE} bins and each bin keeps its smallest hash, so building costs one
+ * hash per token. Empty bins are filled from the next non-empty bin (rotation
+ * densification), which keeps the share of equal bins an unbiased estimate of the
+ * Jaccard similarity of the token sets.
+ *
+ * <p>Candidate album pairs come from banding: each sketch is cut into bands of
+ * {@value #ROWS_PER_BAND} bins, and albums sharing any band are compared. A pair's
+ * similarity is the larger of its two estimates, counting the fingerprint sketch only
+ * when both albums have one. The index is immutable once built.
+ */
+public final class AlbumSignatureIndex {
+
+    private static final Logger logger = Log4Rich.getLogger(AlbumSignatureIndex.class);
+
+    /** Bins per sketch; a power of two. */
+    public static final int SKETCH_SIZE = 128;
+
+    /** Bins per LSH band; about 40% Jaccard gives even odds of sharing a band. */
+    static final int ROWS_PER_BAND = 3;
+
+    /** Fingerprint segments per track that contribute tokens (about two seconds). */
+    public static final int FINGERPRINT_POSITIONS = 16;
+
+    /** Directories with fewer files than this are not albums. */
+    public static final int MIN_TRACKS = 2;
+
+    /** Default estimated Jaccard similarity for two albums to be reported. */
+    public static final double DEFAULT_MIN_SIMILARITY = 0.3;
+
+    /** Buckets shared by more albums than this are skipped as uninformative. */
+    static final int MAX_BUCKET_SIZE = 512;
+
+    /** Width of the duration buckets paired with titles, in seconds. */
+    private static final int DURATION_BUCKET_SECONDS = 4;
+
+    private static final int BANDS = SKETCH_SIZE / ROWS_PER_BAND;
+    private static final int BIN_SHIFT = 64 - Integer.numberOfTrailingZeros(SKETCH_SIZE);
+    private static final long VALUE_MASK = -1L >>> Integer.numberOfTrailingZeros(SKETCH_SIZE);
+    private static final long EMPTY = Long.MAX_VALUE;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final long FINGERPRINT_SALT = 0x5DEECE66DL;
+    private static final int ALBUM_BITS = 24;
+
+    private final String[] directories;
+    private final Map<String, Integer> albumIds;
+    private final long[][] fileIds;
+    private final long[][] titleSketches;
+    private final long[][] fingerprintSketches;
+
+    /**
+     * Two albums whose sketches agree.
+     *
+     * @param directoryA the alphabetically first directory
+     * @param directoryB the other directory
+     * @param tracksInA files in directoryA
+     * @param tracksInB files in directoryB
+     * @param similarity estimated Jaccard similarity, from 0 to 1
+     * @param byFingerprint true if the fingerprint sketches gave the estimate
+     */
+    public record Match(String directoryA, String directoryB, int tracksInA, int tracksInB,
+                        double similarity, boolean byFingerprint) {}
+
+    private AlbumSignatureIndex(Builder builder) {
+        List<Integer> kept = new ArrayList<>();
+        for (int album = 0; album < builder.directories.size(); album++) {
+            if (builder.fileIds.get(album).size() >= MIN_TRACKS) {
+                kept.add(album);
+            }
+        }
+        int n = kept.size();
+        directories = new String[n];
+        albumIds = new HashMap<>(n * 2);
+        fileIds = new long[n][];
+        titleSketches = new long[n][];
+        fingerprintSketches = new long[n][];
+        for (int i = 0; i < n; i++) {
+            int album = kept.get(i);
+            directories[i] = builder.directories.get(album);
+            albumIds.put(directories[i], i);
+            fileIds[i] = builder.fileIds.get(album).stream().mapToLong(Long::longValue).toArray();
+            titleSketches[i] = densify(builder.titleSketches.get(album));
+            fingerprintSketches[i] = densify(builder.fingerprintSketches.get(album));
+        }
+    }
+
+    /**
+     * Starts an index; files are added with {@link Builder#add(String, MusicFile)}.
+     *
+     * @param config fuzzy matching configuration, for title normalization
+     */
+    public static Builder builder(FuzzySearchConfig config) {
+        return new Builder(config);
+    }
+
+    /**
+     * Collects the tokens of each directory's files into its sketches.
+     */
+    public static final class Builder {
+        private final FuzzySearchConfig config;
+        private final int keyVersion;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> directories = new ArrayList<>();
+        private final List<List<Long>> fileIds = new ArrayList<>();
+        private final List<long[]> titleSketches = new ArrayList<>();
+        private final List<long[]> fingerprintSketches = new ArrayList<>();
+
+        private Builder(FuzzySearchConfig config) {
+            this.config = config;
+            this.keyVersion = FuzzyMatcher.metadataKeyVersion(config);
+        }
+
+        /**
+         * Adds a file to the album of its directory. Its normalized metadata keys are
+         * computed first if missing or stale.
+         */
+        public Builder add(String directory, MusicFile file) {
+            Integer album = ids.get(directory);
+            if (album == null) {
+                album = directories.size();
+                ids.put(directory, album);
+                directories.add(directory);
+                fileIds.add(new ArrayList<>());
+                titleSketches.add(null);
+                fingerprintSketches.add(null);
+            }
+            fileIds.get(album).add(file.getId());
+
+            if (file.getMetadataKeyVersion() != keyVersion) {
+                FuzzyMatcher.computeMetadataKeys(file, config);
+            }
+            String title = file.getTitleKey();
+            if (title != null && !title.isBlank()) {
+                long[] sketch = sketch(titleSketches, album);
+                long titleHash = hash(title);
+                Integer duration = file.getDurationSeconds();
+                if (duration == null || duration < 0) {
+                    update(sketch, mix(titleHash));
+                } else {
+                    update(sketch, mix(titleHash + GOLDEN * (2L * (duration / DURATION_BUCKET_SECONDS) + 1)));
+                    update(sketch, mix(titleHash + GOLDEN * (2L * ((duration + DURATION_BUCKET_SECONDS / 2)
+                        / DURATION_BUCKET_SECONDS) + 2)));
+                }
+            }
+
+            if (file.hasFingerprint()) {
+                int[] segments = file.getFingerprintSegments();
+                long[] sketch = sketch(fingerprintSketches, album);
+                for (int p = 0; p < Math.min(FINGERPRINT_POSITIONS, segments.length); p++) {
+                    for (int b = 0; b < Integer.BYTES; b++) {
+                        int value = (segments[p] >>> (8 * b)) & 0xFF;
+                        update(sketch, mix(FINGERPRINT_SALT + (((long) p << 10) | ((long) b << 8) | value)));
+                    }
+                }
+            }
+            return this;
+        }
+
+        private static long[] sketch(List<long[]> sketches, int album) {
+            long[] sketch = sketches.get(album);
+            if (sketch == null) {
+                sketch = new long[SKETCH_SIZE];
+                Arrays.fill(sketch, EMPTY);
+                sketches.set(album, sketch);
+            }
+            return sketch;
+        }
+
+        public AlbumSignatureIndex build() {
+            return new AlbumSignatureIndex(this);
+        }
+    }
+
+    private static void update(long[] sketch, long hash) {
+        int bin = (int) (hash >>> BIN_SHIFT);
+        long value = hash & VALUE_MASK;
+        if (value < sketch[bin]) {
+            sketch[bin] = value;
+        }
+    }
+
+    /**
+     * Fills each empty bin from the next non-empty bin to its right, offset by the
+     * distance, so two sketches of the same set fill identically.
+     */
+    private static long[] densify(long[] sketch) {
+        if (sketch == null) {
+            return null;
+        }
+        long[] dense = sketch.clone();
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (sketch[i] != EMPTY) continue;
+            for (int distance = 1; distance < SKETCH_SIZE; distance++) {
+                long source = sketch[(i + distance) & (SKETCH_SIZE - 1)];
+                if (source != EMPTY) {
+                    dense[i] = mix(source + GOLDEN * distance) & VALUE_MASK;
+                    break;
+                }
+            }
+        }
+        return dense;
+    }
+
+    /**
+     * Returns the number of albums indexed.
+     */
+    public int size() {
+        return directories.length;
+    }
+
+    /**
+     * Returns the ids of the files in a directory, or an empty array if it isn't an album.
+     */
+    public long[] fileIds(String directory) {
+        Integer album = albumIds.get(directory);
+        return album != null ? fileIds[album] : new long[0];
+    }
+
+    /**
+     * Returns the estimated similarity of two directories, or 0 if either isn't an album.
+     */
+    public double similarity(String directory1, String directory2) {
+        Integer a = albumIds.get(directory1);
+        Integer b = albumIds.get(directory2);
+        if (a == null || b == null || a.equals(b)) {
+            return 0.0;
+        }
+        return Math.max(estimate(titleSketches[a], titleSketches[b]),
+            estimate(fingerprintSketches[a], fingerprintSketches[b]));
+    }
+
+    private static double estimate(long[] sketch1, long[] sketch2) {
+        if (sketch1 == null || sketch2 == null) {
+            return 0.0;
+        }
+        int equal = 0;
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (sketch1[i] == sketch2[i]) equal++;
+        }
+        return equal / (double) SKETCH_SIZE;
+    }
+
+    /**
+     * Finds album pairs with at least the given estimated similarity, most similar first.
+     *
+     * @param minSimilarity smallest estimated Jaccard similarity to report
+     * @return the matching album pairs
+     */
+    public List<Match> findDuplicateAlbums(double minSimilarity) {
+        long startTime = System.currentTimeMillis();
+        long[] candidates = candidatePairs();
+
+        List<Match> matches = new ArrayList<>();
+        for (long pair : candidates) {
+            int a = (int) (pair >>> 32);
+            int b = (int) pair;
+            double byTitle = estimate(titleSketches[a], titleSketches[b]);
+            double byFingerprint = estimate(fingerprintSketches[a], fingerprintSketches[b]);
+            double similarity = Math.max(byTitle, byFingerprint);
+            if (similarity < minSimilarity) continue;
+            boolean aFirst = directories[a].compareTo(directories[b]) < 0;
+            int first = aFirst ? a : b;
+            int second = aFirst ? b : a;
+            matches.add(new Match(directories[first], directories[second], fileIds[first].length,
+                fileIds[second].length, similarity, byFingerprint >= byTitle));
+        }
+        matches.sort(Comparator.comparingDouble(Match::similarity).reversed()
+            .thenComparing(Match::directoryA)
+            .thenComparing(Match::directoryB));
+
+        logger.info("Album signatures: {} albums, {} candidate pairs, {} matches in {}ms",
+            directories.length, candidates.length, matches.size(), System.currentTimeMillis() - startTime);
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * Returns the distinct album pairs sharing a band in either sketch, each encoded
+     * as {@code (lower << 32) | higher}.
+     */
+    long[] candidatePairs() {
+        int n = directories.length;
+        long[] entries = new long[2 * BANDS * n];
+        int count = 0;
+        for (int kind = 0; kind < 2; kind++) {
+            long[][] sketches = kind == 0 ? titleSketches : fingerprintSketches;
+            for (int album = 0; album < n; album++) {
+                long[] sketch = sketches[album];
+                if (sketch == null) continue;
+                for (int band = 0; band < BANDS; band++) {
+                    long h = mix(GOLDEN * (kind * BANDS + band + 1));
+                    for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+                        h = mix(h ^ sketch[row]);
+                    }
+                    entries[count++] = (h << ALBUM_BITS) | album;
+                }
+            }
+        }
+        Arrays.sort(entries, 0, count);
+
+        long albumMask = (1L << ALBUM_BITS) - 1;
+        long[] pairs = new long[Math.max(16, count)];
+        int pairCount = 0;
+        for (int start = 0; start < count; ) {
+            long bucket = entries[start] >>> ALBUM_BITS;
+            int end = start + 1;
+            while (end < count && entries[end] >>> ALBUM_BITS == bucket) end++;
+            if (end - start > 1 && end - start <= MAX_BUCKET_SIZE) {
+                for (int i = start; i < end; i++) {
+                    for (int j = i + 1; j < end; j++) {
+                        long a = entries[i] & albumMask;
+                        long b = entries[j] & albumMask;
+                        if (a == b) continue;
+                        if (pairCount == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        pairs[pairCount++] = Math.min(a, b) << 32 | Math.max(a, b);
+                    }
+                }
+            }
+            start = end;
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        int distinct = 0;
+        for (int p = 0; p < pairCount; p++) {
+            if (p == 0 || pairs[p] != pairs[p - 1]) {
+                pairs[distinct++] = pairs[p];
+            }
+        }
+        return Arrays.copyOf(pairs, distinct);
+    }
+
+    private static long hash(String value) {
+        // 64-bit FNV-1a over the UTF-16 code units
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    private static long mix(long z) {
+        // SplitMix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
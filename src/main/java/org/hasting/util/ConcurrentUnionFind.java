@@ -0,0 +1,127 @@
+package org.hasting.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find (disjoint set) over the integers {@code 0..n-1}, used to
+ * merge matching pairs found by parallel duplicate comparisons.
+ *
+ * <p>Parent links live in an {@link AtomicIntegerArray}. {@link #union(int, int)}
+ * links the root with the larger index under the root with the smaller index
+ * using a single compare-and-set, retrying if another thread changed either root
+ * first. {@link #find(int)} is iterative and halves the path as it walks, also
+ * with compare-and-set, so long chains never recurse.
+ *
+ * <p>Every parent link points to a smaller or equal index, which rules out cycles
+ * and makes the root of each set its smallest member. The final sets, and the
+ * order {@link #groups(int)} returns them in, therefore depend only on which pairs
+ * were united, not on thread scheduling.
+ */
+public class ConcurrentUnionFind {
+
+    private final AtomicIntegerArray parent;
+
+    /**
+     * Creates {@code n} singleton sets.
+     *
+     * @param n number of elements
+     */
+    public ConcurrentUnionFind(int n) {
+        parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of elements.
+     */
+    public int size() {
+        return parent.length();
+    }
+
+    /**
+     * Returns the root of the set containing {@code x}, halving the path on the way.
+     *
+     * @param x element index
+     * @return the smallest index in the set as of the end of the walk
+     */
+    public int find(int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            int grandparent = parent.get(p);
+            if (p != grandparent) {
+                // Skip a level; losing the race is harmless because both values are ancestors
+                parent.compareAndSet(x, p, grandparent);
+            }
+            x = grandparent;
+        }
+    }
+
+    /**
+     * Merges the sets containing {@code a} and {@code b}.
+     *
+     * @return true if the sets were separate and are now merged
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return false;
+            }
+            int small = Math.min(rootA, rootB);
+            int large = Math.max(rootA, rootB);
+            if (parent.compareAndSet(large, large, small)) {
+                return true;
+            }
+            // Another thread linked 'large' first; retry from the new roots
+        }
+    }
+
+    /**
+     * Returns true if {@code a} and {@code b} are in the same set.
+     * Only stable once no unions are running concurrently.
+     */
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * Returns every set with at least {@code minSize} members, ordered by smallest
+     * member, with members in ascending order. Call after all unions have completed.
+     *
+     * @param minSize minimum set size to include
+     * @return the sets as arrays of element indices
+     */
+    public List<int[]> groups(int minSize) {
+        int n = size();
+        int[] roots = new int[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = find(i);
+            counts[roots[i]]++;
+        }
+
+        int[][] members = new int[n][];
+        List<int[]> groups = new ArrayList<>();
+        int[] filled = new int[n];
+        for (int i = 0; i < n; i++) {
+            int root = roots[i];
+            if (counts[root] < minSize) {
+                continue;
+            }
+            if (members[root] == null) {
+                members[root] = new int[counts[root]];
+                groups.add(members[root]);
+            }
+            members[root][filled[root]++] = i;
+        }
+        return groups;
+    }
+}
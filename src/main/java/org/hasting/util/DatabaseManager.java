@@ -4,10 +4,18 @@ import org.hasting.model.MusicFile;
 import com.log4rich.Log4Rich;
 import com.log4rich.core.Logger;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Central database management class providing all database operations for the MP3Org application.
@@ -46,7 +54,24 @@ public class DatabaseManager {
     private static DatabaseConfig config;
     private static Connection connection;
     private static DatabaseConnectionPool connectionPool;
+    private static FingerprintCorpus fingerprintCorpus;
+    private static final List<FingerprintChangeListener> fingerprintListeners = new CopyOnWriteArrayList<>();
     private static final ConcurrentHashMap<String, Long> filePathsMap = new ConcurrentHashMap<>();  // Load all paths for quick lookups  issue#41
+    private static final int FINGERPRINT_MIGRATION_BATCH_SIZE = 1000;
+    private static final int ID_QUERY_BATCH_SIZE = 500;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    private static final AtomicLong libraryVersion = new AtomicLong();
+
+    /**
+     * The stored identity of a music file on disk, as compared by rescans.
+     *
+     * @param id the database id
+     * @param filePath the absolute path
+     * @param fileSizeBytes the size when the file was last read, or null if unknown
+     * @param lastModified the modification time in milliseconds when the file was last
+     *                     read, or null if unknown
+     */
+    public record FileState(long id, String filePath, Long fileSizeBytes, Long lastModified) {}
     static {
         // Initialize configuration
         config = DatabaseConfig.getInstance();
@@ -91,9 +116,17 @@ public class DatabaseManager {
                 createMusicFilesTable();
                 createScanDirectoriesTable();
                 migrateFingerprintColumns();
+                migrateFingerprintBlobColumn();
+                migrateMetadataKeyColumns();
+                createDuplicateIndexTables();
+                createSimilarityGraphTables();
+                createTombstoneTable();
+                createFingerprintCorpusTables();
+                openFingerprintCorpus();
                 
                 // Initialize file path cache for performance  issue#41
                 initFilePathCacheWithRetry();
+                libraryChanged();
             } catch (Exception e) {
                 logger.error(String.format("Failed to initialize database connection: {}", e.getMessage()), e);
                 throw new RuntimeException("Failed to initialize database connection", e);
@@ -186,6 +219,7 @@ public class DatabaseManager {
                 try (Statement stmt = connection.createStatement()) {
                     stmt.executeUpdate(sql);
                 }
+                libraryChanged();
                 connection.close();
                 connection = null;
         } catch (SQLException e) {
@@ -242,7 +276,12 @@ public class DatabaseManager {
                 "last_modified TEXT, " +
                 "date_added TEXT DEFAULT CURRENT_TIMESTAMP, " +
                 "fingerprint TEXT, " +
-                "fingerprint_duration INTEGER" +
+                "fingerprint_duration INTEGER, " +
+                "fingerprint_blob BLOB, " +
+                "title_key TEXT, " +
+                "artist_key TEXT, " +
+                "album_key TEXT, " +
+                "metadata_key_version INTEGER" +
                 ")";
 
         try (Statement stmt = connection.createStatement()) {
@@ -335,6 +374,400 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Migrates fingerprints from the comma-separated TEXT column to the packed
+     * {@code fingerprint_blob} column, adding the column if it doesn't exist.
+     * Rows are converted in batches, each in its own transaction, and the TEXT value
+     * is cleared once its blob is written so an interrupted migration resumes cleanly.
+     */
+    private static synchronized void migrateFingerprintBlobColumn() {
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT fingerprint_blob FROM music_files WHERE 1=0");
+            rs.close();
+        } catch (SQLException e) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE music_files ADD COLUMN fingerprint_blob BLOB");
+                logger.info("Added fingerprint_blob column");
+            } catch (SQLException ex) {
+                logger.error("Failed to add fingerprint_blob column: " + ex.getMessage());
+                return;
+            }
+        }
+
+        String selectSql = "SELECT id, fingerprint FROM music_files WHERE fingerprint IS NOT NULL LIMIT " +
+                FINGERPRINT_MIGRATION_BATCH_SIZE;
+        String updateSql = "UPDATE music_files SET fingerprint_blob = ?, fingerprint = NULL WHERE id = ?";
+        int converted = 0;
+        try {
+            boolean originalAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(selectSql);
+                 PreparedStatement update = connection.prepareStatement(updateSql)) {
+                int batchCount;
+                do {
+                    batchCount = 0;
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            String text = rs.getString("fingerprint");
+                            byte[] packed = text == null || text.isEmpty()
+                                    ? null
+                                    : FingerprintCodec.pack(FingerprintMatcher.parseFingerprint(text));
+                            update.setBytes(1, packed);
+                            update.setLong(2, rs.getLong("id"));
+                            update.addBatch();
+                            batchCount++;
+                        }
+                    }
+                    if (batchCount > 0) {
+                        update.executeBatch();
+                        connection.commit();
+                        converted += batchCount;
+                    }
+                } while (batchCount == FINGERPRINT_MIGRATION_BATCH_SIZE);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to migrate fingerprints to binary storage: " + e.getMessage(), e);
+        }
+        if (converted > 0) {
+            logger.info("Converted " + converted + " fingerprints to binary storage");
+        }
+    }
+
+    /**
+     * Adds the normalized metadata key columns and their indexes if they don't exist, then
+     * recomputes the keys of every row whose keys were computed with other normalization
+     * settings (see {@link FuzzyMatcher#metadataKeyVersion(FuzzySearchConfig)}). Rows are
+     * converted in batches, each in its own transaction, like the fingerprint migration.
+     */
+    private static synchronized void migrateMetadataKeyColumns() {
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT metadata_key_version FROM music_files WHERE 1=0");
+            rs.close();
+        } catch (SQLException e) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("ALTER TABLE music_files ADD COLUMN title_key TEXT");
+                stmt.executeUpdate("ALTER TABLE music_files ADD COLUMN artist_key TEXT");
+                stmt.executeUpdate("ALTER TABLE music_files ADD COLUMN album_key TEXT");
+                stmt.executeUpdate("ALTER TABLE music_files ADD COLUMN metadata_key_version INTEGER");
+                logger.info("Added normalized metadata key columns");
+            } catch (SQLException ex) {
+                logger.error("Failed to add normalized metadata key columns: " + ex.getMessage());
+                return;
+            }
+        }
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_music_files_title_key ON music_files(title_key)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_music_files_artist_key ON music_files(artist_key)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS idx_music_files_album_key ON music_files(album_key)");
+        } catch (SQLException e) {
+            logger.error("Failed to create metadata key indexes: " + e.getMessage());
+        }
+
+        refreshMetadataKeys();
+    }
+
+    /**
+     * Recomputes the normalized metadata keys of every file whose keys were computed with
+     * other normalization settings than those of {@link #activeFuzzySearchConfig()}. Call
+     * it after the fuzzy search settings change, so the stored keys match the settings
+     * duplicate detection compares with. Rows are converted in batches, each in its own
+     * transaction.
+     *
+     * @return the number of files whose keys were recomputed
+     */
+    public static synchronized int refreshMetadataKeys() {
+        Connection conn = getConnection();
+        FuzzySearchConfig config = activeFuzzySearchConfig();
+        int version = FuzzyMatcher.metadataKeyVersion(config);
+        String selectSql = "SELECT id, title, artist, album FROM music_files " +
+                "WHERE metadata_key_version IS NOT ? LIMIT " + FINGERPRINT_MIGRATION_BATCH_SIZE;
+        String updateSql = "UPDATE music_files SET title_key = ?, artist_key = ?, album_key = ?, " +
+                "metadata_key_version = ? WHERE id = ?";
+        int converted = 0;
+        try {
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement select = conn.prepareStatement(selectSql);
+                 PreparedStatement update = conn.prepareStatement(updateSql)) {
+                select.setInt(1, version);
+                int batchCount;
+                do {
+                    batchCount = 0;
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            String[] keys = FuzzyMatcher.metadataKeys(rs.getString("title"),
+                                rs.getString("artist"), rs.getString("album"), config);
+                            setMetadataKeyParameters(update, 1, keys, version);
+                            update.setLong(5, rs.getLong("id"));
+                            update.addBatch();
+                            batchCount++;
+                        }
+                    }
+                    if (batchCount > 0) {
+                        update.executeBatch();
+                        conn.commit();
+                        converted += batchCount;
+                    }
+                } while (batchCount == FINGERPRINT_MIGRATION_BATCH_SIZE);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to compute normalized metadata keys: " + e.getMessage(), e);
+        }
+        if (converted > 0) {
+            logger.info("Computed normalized metadata keys for " + converted + " files");
+        }
+        return converted;
+    }
+
+    /**
+     * Brings the library up to date with changed fuzzy search settings: recomputes the
+     * metadata keys they affect and bumps the library version, since duplicate results
+     * derived from the old settings are stale.
+     */
+    public static void fuzzySearchConfigChanged() {
+        refreshMetadataKeys();
+        libraryChanged();
+    }
+
+    /**
+     * Returns the fuzzy search configuration of the active profile, or the defaults.
+     * Metadata keys are stored with it and every duplicate comparison uses it, so the
+     * stored keys stay usable.
+     */
+    public static FuzzySearchConfig activeFuzzySearchConfig() {
+        DatabaseProfile activeProfile = getActiveProfile();
+        return activeProfile != null && activeProfile.getFuzzySearchConfig() != null
+            ? activeProfile.getFuzzySearchConfig()
+            : new FuzzySearchConfig();
+    }
+
+    /**
+     * Sets the title, artist and album keys and their version on four consecutive
+     * parameters, starting at {@code first}.
+     */
+    private static void setMetadataKeyParameters(PreparedStatement pstmt, int first, String[] keys, int version)
+            throws SQLException {
+        pstmt.setString(first, keys[0]);
+        pstmt.setString(first + 1, keys[1]);
+        pstmt.setString(first + 2, keys[2]);
+        pstmt.setInt(first + 3, version);
+    }
+
+    /**
+     * Computes the metadata keys of a file being written, stores them on the file and
+     * sets them on four consecutive parameters, starting at {@code first}.
+     */
+    private static void setMetadataKeyParameters(PreparedStatement pstmt, int first, MusicFile musicFile)
+            throws SQLException {
+        FuzzyMatcher.computeMetadataKeys(musicFile, activeFuzzySearchConfig());
+        setMetadataKeyParameters(pstmt, first,
+            new String[] { musicFile.getTitleKey(), musicFile.getArtistKey(), musicFile.getAlbumKey() },
+            musicFile.getMetadataKeyVersion());
+    }
+
+    /**
+     * Creates the tables behind the persistent {@link DuplicateIndex} if they don't exist.
+     *
+     * <p>{@code duplicate_edges} holds every matching pair with {@code file_a < file_b}.
+     * Triggers on {@code music_files} record inserted files, and files whose matching
+     * fields changed, in {@code duplicate_index_pending}, and drop the edges of deleted
+     * files. The metadata that deleted files, and files whose blocking keys changed, had
+     * before is kept in {@code duplicate_index_departures}. Because the triggers live in the database they also cover batch inserts on
+     * pooled connections and changes made while no index refresh was running.
+     */
+    private static synchronized void createDuplicateIndexTables() {
+        String[] statements = {
+            "CREATE TABLE IF NOT EXISTS duplicate_edges (" +
+                "file_a INTEGER NOT NULL, " +
+                "file_b INTEGER NOT NULL, " +
+                "similarity REAL, " +
+                "PRIMARY KEY (file_a, file_b))",
+            "CREATE INDEX IF NOT EXISTS idx_duplicate_edges_file_b ON duplicate_edges(file_b)",
+            // AUTOINCREMENT keeps sequence numbers increasing, so a file changed again while
+            // a refresh is running gets a newer entry that the refresh will not clear
+            "CREATE TABLE IF NOT EXISTS duplicate_index_pending (" +
+                "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "file_id INTEGER NOT NULL UNIQUE)",
+            "CREATE TABLE IF NOT EXISTS duplicate_index_state (" +
+                "state_key TEXT PRIMARY KEY, " +
+                "state_value TEXT)",
+            "CREATE TRIGGER IF NOT EXISTS trg_duplicate_index_insert AFTER INSERT ON music_files " +
+                "BEGIN INSERT OR REPLACE INTO duplicate_index_pending (file_id) VALUES (NEW.id); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_duplicate_index_update AFTER UPDATE ON music_files " +
+                "WHEN OLD.title IS NOT NEW.title OR OLD.artist IS NOT NEW.artist " +
+                "OR OLD.album IS NOT NEW.album OR OLD.track_number IS NOT NEW.track_number " +
+                "OR OLD.duration_seconds IS NOT NEW.duration_seconds OR OLD.file_type IS NOT NEW.file_type " +
+                "OR OLD.fingerprint IS NOT NEW.fingerprint OR OLD.fingerprint_blob IS NOT NEW.fingerprint_blob " +
+                "OR OLD.fingerprint_duration IS NOT NEW.fingerprint_duration " +
+                "BEGIN INSERT OR REPLACE INTO duplicate_index_pending (file_id) VALUES (NEW.id); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_duplicate_index_delete AFTER DELETE ON music_files " +
+                "BEGIN " +
+                "DELETE FROM duplicate_edges WHERE file_a = OLD.id OR file_b = OLD.id; " +
+                "DELETE FROM duplicate_index_pending WHERE file_id = OLD.id; " +
+                "END",
+            // Old metadata of files that moved in or left the blocking sort orders, so the
+            // pairs they kept apart can be found; a file may appear more than once
+            "CREATE TABLE IF NOT EXISTS duplicate_index_departures (" +
+                "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "file_id INTEGER NOT NULL, " +
+                "title TEXT, artist TEXT, album TEXT, " +
+                "title_key TEXT, artist_key TEXT, album_key TEXT, metadata_key_version INTEGER, " +
+                "duration_seconds INTEGER)",
+            "CREATE TRIGGER IF NOT EXISTS trg_duplicate_index_depart_update AFTER UPDATE ON music_files " +
+                "WHEN OLD.title IS NOT NEW.title OR OLD.artist IS NOT NEW.artist OR OLD.album IS NOT NEW.album " +
+                "OR OLD.title_key IS NOT NEW.title_key OR OLD.artist_key IS NOT NEW.artist_key " +
+                "OR OLD.album_key IS NOT NEW.album_key OR OLD.duration_seconds IS NOT NEW.duration_seconds " +
+                "OR OLD.file_type IS NOT NEW.file_type " +
+                "BEGIN INSERT INTO duplicate_index_departures (file_id, " + BLOCKING_KEY_COLUMNS + ") " +
+                "VALUES (OLD.id, OLD.title, OLD.artist, OLD.album, OLD.title_key, OLD.artist_key, OLD.album_key, " +
+                "OLD.metadata_key_version, OLD.duration_seconds); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_duplicate_index_depart_delete AFTER DELETE ON music_files " +
+                "BEGIN INSERT INTO duplicate_index_departures (file_id, " + BLOCKING_KEY_COLUMNS + ") " +
+                "VALUES (OLD.id, OLD.title, OLD.artist, OLD.album, OLD.title_key, OLD.artist_key, OLD.album_key, " +
+                "OLD.metadata_key_version, OLD.duration_seconds); END"
+        };
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.executeUpdate(sql);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to create duplicate index tables: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the tables behind the {@link SimilarityGraph} if they don't exist.
+     * Metadata edges keep their per-field scores; fingerprint edges leave them null.
+     * Changes are recorded by triggers in the same way as for the duplicate index,
+     * into a pending table of their own so each structure catches up independently.
+     */
+    private static synchronized void createSimilarityGraphTables() {
+        String[] statements = {
+            "CREATE TABLE IF NOT EXISTS similarity_graph (" +
+                "file_a INTEGER NOT NULL, " +
+                "file_b INTEGER NOT NULL, " +
+                "score REAL NOT NULL, " +
+                "title_sim REAL, " +
+                "artist_sim REAL, " +
+                "album_sim REAL, " +
+                "duration_match INTEGER, " +
+                "track_match INTEGER, " +
+                "PRIMARY KEY (file_a, file_b))",
+            "CREATE INDEX IF NOT EXISTS idx_similarity_graph_file_b ON similarity_graph(file_b)",
+            "CREATE TABLE IF NOT EXISTS similarity_graph_pending (" +
+                "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "file_id INTEGER NOT NULL UNIQUE)",
+            "CREATE TRIGGER IF NOT EXISTS trg_similarity_graph_insert AFTER INSERT ON music_files " +
+                "BEGIN INSERT OR REPLACE INTO similarity_graph_pending (file_id) VALUES (NEW.id); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_similarity_graph_update AFTER UPDATE ON music_files " +
+                "WHEN OLD.title IS NOT NEW.title OR OLD.artist IS NOT NEW.artist " +
+                "OR OLD.album IS NOT NEW.album OR OLD.track_number IS NOT NEW.track_number " +
+                "OR OLD.duration_seconds IS NOT NEW.duration_seconds OR OLD.file_type IS NOT NEW.file_type " +
+                "OR OLD.fingerprint IS NOT NEW.fingerprint OR OLD.fingerprint_blob IS NOT NEW.fingerprint_blob " +
+                "OR OLD.fingerprint_duration IS NOT NEW.fingerprint_duration " +
+                "BEGIN INSERT OR REPLACE INTO similarity_graph_pending (file_id) VALUES (NEW.id); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_similarity_graph_delete AFTER DELETE ON music_files " +
+                "BEGIN " +
+                "DELETE FROM similarity_graph WHERE file_a = OLD.id OR file_b = OLD.id; " +
+                "DELETE FROM similarity_graph_pending WHERE file_id = OLD.id; " +
+                "END",
+            "CREATE TABLE IF NOT EXISTS similarity_graph_departures (" +
+                "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "file_id INTEGER NOT NULL, " +
+                "title TEXT, artist TEXT, album TEXT, " +
+                "title_key TEXT, artist_key TEXT, album_key TEXT, metadata_key_version INTEGER, " +
+                "duration_seconds INTEGER)",
+            "CREATE TRIGGER IF NOT EXISTS trg_similarity_graph_depart_update AFTER UPDATE ON music_files " +
+                "WHEN OLD.title IS NOT NEW.title OR OLD.artist IS NOT NEW.artist OR OLD.album IS NOT NEW.album " +
+                "OR OLD.title_key IS NOT NEW.title_key OR OLD.artist_key IS NOT NEW.artist_key " +
+                "OR OLD.album_key IS NOT NEW.album_key OR OLD.duration_seconds IS NOT NEW.duration_seconds " +
+                "OR OLD.file_type IS NOT NEW.file_type " +
+                "BEGIN INSERT INTO similarity_graph_departures (file_id, " + BLOCKING_KEY_COLUMNS + ") " +
+                "VALUES (OLD.id, OLD.title, OLD.artist, OLD.album, OLD.title_key, OLD.artist_key, OLD.album_key, " +
+                "OLD.metadata_key_version, OLD.duration_seconds); END",
+            "CREATE TRIGGER IF NOT EXISTS trg_similarity_graph_depart_delete AFTER DELETE ON music_files " +
+                "BEGIN INSERT INTO similarity_graph_departures (file_id, " + BLOCKING_KEY_COLUMNS + ") " +
+                "VALUES (OLD.id, OLD.title, OLD.artist, OLD.album, OLD.title_key, OLD.artist_key, OLD.album_key, " +
+                "OLD.metadata_key_version, OLD.duration_seconds); END"
+        };
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.executeUpdate(sql);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to create similarity graph tables: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the table recording the state of the {@link FingerprintCorpus} if it doesn't
+     * exist. Its generation counts every change to a stored fingerprint; triggers bump it
+     * in the same transaction as the change, so it always matches the committed data and
+     * can be compared with the generation in the corpus header. The row also numbers the
+     * corpus files, since each rebuild writes a new one.
+     */
+    private static synchronized void createFingerprintCorpusTables() {
+        String[] statements = {
+            "CREATE TABLE IF NOT EXISTS fingerprint_corpus_state (" +
+                "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                "generation INTEGER NOT NULL, " +
+                "file_seq INTEGER NOT NULL)",
+            "INSERT OR IGNORE INTO fingerprint_corpus_state (id, generation, file_seq) VALUES (1, 0, 0)",
+            "CREATE TRIGGER IF NOT EXISTS trg_fingerprint_corpus_insert AFTER INSERT ON music_files " +
+                "WHEN NEW.fingerprint_blob IS NOT NULL " +
+                "BEGIN UPDATE fingerprint_corpus_state SET generation = generation + 1; END",
+            "CREATE TRIGGER IF NOT EXISTS trg_fingerprint_corpus_update AFTER UPDATE OF fingerprint_blob ON music_files " +
+                "WHEN OLD.fingerprint_blob IS NOT NEW.fingerprint_blob " +
+                "BEGIN UPDATE fingerprint_corpus_state SET generation = generation + 1; END",
+            "CREATE TRIGGER IF NOT EXISTS trg_fingerprint_corpus_delete AFTER DELETE ON music_files " +
+                "WHEN OLD.fingerprint_blob IS NOT NULL " +
+                "BEGIN UPDATE fingerprint_corpus_state SET generation = generation + 1; END"
+        };
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.executeUpdate(sql);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to create fingerprint corpus tables: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the table of tombstones, the records of files a rescan found missing from
+     * disk, if it doesn't exist. A tombstone keeps the path, size and modification time
+     * of the removed row; a trigger drops it again if a file is saved at the same path.
+     */
+    private static synchronized void createTombstoneTable() {
+        String[] statements = {
+            "CREATE TABLE IF NOT EXISTS music_file_tombstones (" +
+                "file_path TEXT PRIMARY KEY, " +
+                "file_id INTEGER NOT NULL, " +
+                "file_size_bytes INTEGER, " +
+                "last_modified TEXT, " +
+                "removed_at TEXT DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TRIGGER IF NOT EXISTS trg_tombstone_restore AFTER INSERT ON music_files " +
+                "BEGIN DELETE FROM music_file_tombstones WHERE file_path = NEW.file_path; END"
+        };
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                stmt.executeUpdate(sql);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to create tombstone table: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Gets the current database connection, initializing it if necessary.
      * 
@@ -417,6 +850,9 @@ public class DatabaseManager {
      * @throws RuntimeException if connection closure fails (though this is typically logged and ignored)
      */
     public static synchronized void shutdown() {
+        closeFingerprintCorpus();
+        libraryChanged();
+
         // Shutdown connection pool if available
         if (connectionPool != null) {
             connectionPool.shutdown();
@@ -558,6 +994,19 @@ public class DatabaseManager {
     public static int getFilePathCacheSize() {
         return filePathsMap.size();
     }
+
+    /**
+     * Returns the library change counter. It increases after every committed write to
+     * the music library, so results derived from the library can be stamped with it and
+     * recognised as stale without a timeout.
+     */
+    public static long getLibraryVersion() {
+        return libraryVersion.get();
+    }
+
+    private static void libraryChanged() {
+        libraryVersion.incrementAndGet();
+    }
     
     /**
      * Initializes file path cache with retry logic and fallback handling.
@@ -633,8 +1082,9 @@ public class DatabaseManager {
         }
 
         String sql = "INSERT INTO music_files (file_path, title, artist, album, genre, track_number, " +
-                "yr, duration_seconds, file_size_bytes, bit_rate, sample_rate, file_type, last_modified) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "yr, duration_seconds, file_size_bytes, bit_rate, sample_rate, file_type, last_modified, " +
+                "title_key, artist_key, album_key, metadata_key_version) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (PreparedStatement pstmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             setMusicFileParameters(pstmt, musicFile);
@@ -649,6 +1099,7 @@ public class DatabaseManager {
                     filePathsMap.put(musicFile.getFilePath(), musicFile.getId());
                 }
             }
+            libraryChanged();
         } catch (SQLException e) {
             logger.error(String.format("Failed to save music file to database: {}", musicFile.getFilePath()), e);
             throw new RuntimeException("Failed to save music file", e);
@@ -718,8 +1169,9 @@ public class DatabaseManager {
         logger.info(String.format("Inserting %d new files (%d duplicates skipped)", newFiles.size(), duplicateCount));
         
         String sql = "INSERT INTO music_files (file_path, title, artist, album, genre, track_number, " +
-                "yr, duration_seconds, file_size_bytes, bit_rate, sample_rate, file_type, last_modified) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "yr, duration_seconds, file_size_bytes, bit_rate, sample_rate, file_type, last_modified, " +
+                "title_key, artist_key, album_key, metadata_key_version) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
         // Use connection pool if available, otherwise fall back to single connection
         if (connectionPool != null) {
@@ -752,6 +1204,7 @@ public class DatabaseManager {
                         long totalTime = System.currentTimeMillis() - startTime;
                         logger.info(String.format("Batch insert completed: %d files inserted in %dms (avg: %.2fms/file)", newFiles.size(), totalTime, totalTime / (double) newFiles.size()));
                         
+                        libraryChanged();
                         return newFiles.size();
                     }
                 });
@@ -795,6 +1248,7 @@ public class DatabaseManager {
                     long totalTime = System.currentTimeMillis() - startTime;
                     logger.info(String.format("Batch insert completed: %d files inserted in %dms (avg: %.2fms/file)", newFiles.size(), totalTime, totalTime / (double) newFiles.size()));
                     
+                    libraryChanged();
                     return newFiles.size();
                     
                 } catch (SQLException e) {
@@ -865,6 +1319,8 @@ public class DatabaseManager {
         } else {
             pstmt.setNull(13, Types.TIMESTAMP);
         }
+
+        setMetadataKeyParameters(pstmt, 14, musicFile);
     }
 
     /**
@@ -959,7 +1415,8 @@ public class DatabaseManager {
     public static synchronized void updateMusicFile(MusicFile musicFile) {
         String sql = "UPDATE music_files SET file_path = ?, title = ?, artist = ?, album = ?, " +
                 "genre = ?, track_number = ?, yr = ?, duration_seconds = ?, file_size_bytes = ?, " +
-                "bit_rate = ?, sample_rate = ?, file_type = ?, last_modified = ? WHERE id = ?";
+                "bit_rate = ?, sample_rate = ?, file_type = ?, last_modified = ?, " +
+                "title_key = ?, artist_key = ?, album_key = ?, metadata_key_version = ? WHERE id = ?";
 
         if(!musicFile.isModified())// only save when data changed.
             return;
@@ -1029,7 +1486,9 @@ public class DatabaseManager {
                 pstmt.setNull(13, Types.TIMESTAMP);
             }
 
-            pstmt.setLong(14, musicFile.getId());
+            setMetadataKeyParameters(pstmt, 14, musicFile);
+
+            pstmt.setLong(18, musicFile.getId());
 
             pstmt.executeUpdate();
             
@@ -1041,6 +1500,7 @@ public class DatabaseManager {
             }
             
             musicFile.setModified(false);
+            libraryChanged();
             logger.debug(String.format("updateMusicFile() - exit: successfully updated {}", musicFile.getFilePath()));
         } catch (SQLException e) {
             logger.error(String.format("Failed to update music file: %s - SQL error: %s", musicFile.getFilePath(), e.getMessage()), e);
@@ -1066,9 +1526,17 @@ public class DatabaseManager {
         try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
             pstmt.setLong(1, musicFile.getId());
             pstmt.executeUpdate();
+            libraryChanged();
             
             // Remove from cache  issue#41
             filePathsMap.remove(musicFile.getFilePath());
+            if (fingerprintCorpus != null) {
+                fingerprintCorpus.remove(musicFile.getId());
+                fingerprintCorpusCaughtUp();
+            }
+            for (FingerprintChangeListener listener : fingerprintListeners) {
+                listener.onMusicFileDeleted(musicFile.getId());
+            }
             
             musicFile.setId(null); // Clear the ID to indicate it's deleted'
             musicFile.setModified(false); // Clear the modified flag to indicate it's not modified
@@ -1081,6 +1549,229 @@ public class DatabaseManager {
         return false;
     }
 
+    /**
+     * Deletes the database records of several music files in one transaction. Unlike
+     * {@link #deleteMusicFile(MusicFile)} the files on disk are left alone, so callers
+     * can remove them afterwards in whatever way suits them.
+     *
+     * <p>Either every record is deleted or, on failure, none is.
+     *
+     * @param musicFiles files with database ids
+     * @return the number of records deleted
+     */
+    public static synchronized int deleteMusicFiles(Collection<MusicFile> musicFiles) {
+        List<MusicFile> toDelete = new ArrayList<>();
+        for (MusicFile musicFile : musicFiles) {
+            if (musicFile != null && musicFile.getId() != null) {
+                toDelete.add(musicFile);
+            }
+        }
+        if (toDelete.isEmpty()) {
+            return 0;
+        }
+
+        int deleted = 0;
+        try {
+            Connection conn = getConnection();
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                // SQLite limits the number of bound parameters per statement
+                for (int start = 0; start < toDelete.size(); start += ID_QUERY_BATCH_SIZE) {
+                    List<MusicFile> batch = toDelete.subList(start, Math.min(start + ID_QUERY_BATCH_SIZE, toDelete.size()));
+                    String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+                    try (PreparedStatement pstmt = conn.prepareStatement(
+                            "DELETE FROM music_files WHERE id IN (" + placeholders + ")")) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            pstmt.setLong(i + 1, batch.get(i).getId());
+                        }
+                        deleted += pstmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error(String.format("Failed to delete %d music files from database", toDelete.size()), e);
+            throw new RuntimeException("Failed to delete music files", e);
+        }
+        libraryChanged();
+
+        for (MusicFile musicFile : toDelete) {
+            forgetDeletedFile(musicFile.getId(), musicFile.getFilePath());
+            musicFile.setId(null);
+            musicFile.setModified(false);
+        }
+        fingerprintCorpusCaughtUp();
+        logger.info(String.format("Deleted %d music file records in one transaction", deleted));
+        return deleted;
+    }
+
+    /**
+     * Drops a deleted file from the path cache, the fingerprint corpus and the
+     * fingerprint listeners.
+     */
+    private static void forgetDeletedFile(long id, String filePath) {
+        filePathsMap.remove(filePath);
+        if (fingerprintCorpus != null) {
+            fingerprintCorpus.remove(id);
+        }
+        for (FingerprintChangeListener listener : fingerprintListeners) {
+            listener.onMusicFileDeleted(id);
+        }
+    }
+
+    /**
+     * Updates the records of several rescanned files, identified by their ids, in one
+     * transaction. Every column read from the file is replaced; fingerprints and the date
+     * the file was added are kept.
+     *
+     * <p>Either every record is updated or, on failure, none is.
+     *
+     * @param musicFiles files with database ids
+     * @return the number of records updated
+     * @throws RuntimeException if the update fails
+     */
+    public static synchronized int updateMusicFilesBatch(Collection<MusicFile> musicFiles) {
+        List<MusicFile> toUpdate = new ArrayList<>();
+        for (MusicFile musicFile : musicFiles) {
+            if (musicFile != null && musicFile.getId() != null) {
+                toUpdate.add(musicFile);
+            }
+        }
+        if (toUpdate.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "UPDATE music_files SET file_path = ?, title = ?, artist = ?, album = ?, " +
+                "genre = ?, track_number = ?, yr = ?, duration_seconds = ?, file_size_bytes = ?, " +
+                "bit_rate = ?, sample_rate = ?, file_type = ?, last_modified = ?, " +
+                "title_key = ?, artist_key = ?, album_key = ?, metadata_key_version = ? WHERE id = ?";
+        int updated = 0;
+        try {
+            Connection conn = getConnection();
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (MusicFile musicFile : toUpdate) {
+                    setMusicFileParameters(pstmt, musicFile);
+                    pstmt.setLong(18, musicFile.getId());
+                    pstmt.addBatch();
+                }
+                for (int count : pstmt.executeBatch()) {
+                    updated += Math.max(count, 0);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error(String.format("Failed to update %d music files in database", toUpdate.size()), e);
+            throw new RuntimeException("Failed to update music files", e);
+        }
+
+        for (MusicFile musicFile : toUpdate) {
+            filePathsMap.put(musicFile.getFilePath(), musicFile.getId());
+            musicFile.setModified(false);
+        }
+        libraryChanged();
+        logger.info(String.format("Updated %d music file records in one transaction", updated));
+        return updated;
+    }
+
+    /**
+     * Replaces the records of files that are gone from disk with tombstones, in one
+     * transaction. The rows are deleted as by {@link #deleteMusicFiles(Collection)}, so
+     * every index and cache forgets them, and a tombstone keeping each path, size and
+     * modification time is written in their place.
+     *
+     * <p>Either every record is replaced or, on failure, none is.
+     *
+     * @param files the stored state of the missing files
+     * @return the number of records replaced
+     * @throws RuntimeException if the update fails
+     */
+    public static synchronized int tombstoneMusicFiles(Collection<FileState> files) {
+        List<FileState> toRemove = new ArrayList<>(files);
+        if (toRemove.isEmpty()) {
+            return 0;
+        }
+
+        int removed = 0;
+        try {
+            Connection conn = getConnection();
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                // SQLite limits the number of bound parameters per statement
+                for (int start = 0; start < toRemove.size(); start += ID_QUERY_BATCH_SIZE) {
+                    List<FileState> batch = toRemove.subList(start, Math.min(start + ID_QUERY_BATCH_SIZE, toRemove.size()));
+                    String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+                    try (PreparedStatement insert = conn.prepareStatement(
+                            "INSERT OR REPLACE INTO music_file_tombstones " +
+                            "(file_path, file_id, file_size_bytes, last_modified) " +
+                            "SELECT file_path, id, file_size_bytes, last_modified FROM music_files " +
+                            "WHERE id IN (" + placeholders + ")");
+                         PreparedStatement delete = conn.prepareStatement(
+                            "DELETE FROM music_files WHERE id IN (" + placeholders + ")")) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            insert.setLong(i + 1, batch.get(i).id());
+                            delete.setLong(i + 1, batch.get(i).id());
+                        }
+                        insert.executeUpdate();
+                        removed += delete.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error(String.format("Failed to tombstone %d music files", toRemove.size()), e);
+            throw new RuntimeException("Failed to tombstone music files", e);
+        }
+        libraryChanged();
+
+        for (FileState file : toRemove) {
+            forgetDeletedFile(file.id(), file.filePath());
+        }
+        fingerprintCorpusCaughtUp();
+        logger.info(String.format("Tombstoned %d music file records in one transaction", removed));
+        return removed;
+    }
+
+    /**
+     * Returns the paths of the files most recently tombstoned by rescans, newest first.
+     *
+     * @param limit the most paths to return
+     */
+    public static synchronized List<String> getTombstonedPaths(int limit) {
+        List<String> paths = new ArrayList<>();
+        String sql = "SELECT file_path FROM music_file_tombstones ORDER BY removed_at DESC, file_path LIMIT ?";
+        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
+            pstmt.setInt(1, Math.max(0, limit));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    paths.add(rs.getString("file_path"));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read tombstoned files: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to read tombstoned files", e);
+        }
+        return paths;
+    }
+
     public static MusicFile getMusicFileById(Long id) {
         logger.debug(String.format("getMusicFileById() - entry: {}", id));
         
@@ -1218,6 +1909,64 @@ public class DatabaseManager {
         return musicFiles;
     }
 
+    /**
+     * Streams every music file matching the current file type filter, in id order,
+     * without holding the library in memory. Each file is handed to the consumer as
+     * soon as its row is read; the consumer should keep only what it needs.
+     *
+     * @param consumer receives each file in turn
+     * @return the number of files read
+     * @throws RuntimeException if the query fails
+     */
+    public static synchronized int forEachMusicFile(Consumer<MusicFile> consumer) {
+        String sql = "SELECT * FROM music_files WHERE 1=1" + getFileTypeFilterClause() + " ORDER BY id";
+        int count = 0;
+        try (Statement stmt = getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    consumer.accept(extractMusicFileFromResultSet(rs));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to stream music files from database");
+            throw new RuntimeException("Failed to stream music files", e);
+        }
+        return count;
+    }
+
+    /**
+     * Streams the stored path, size and modification time of every music file, whatever
+     * the file type filter, without loading the rest of each row. Rescans compare these
+     * against the files on disk.
+     *
+     * @param consumer receives each file's state in turn
+     * @return the number of rows read
+     * @throws RuntimeException if the query fails
+     */
+    public static synchronized int forEachFileState(Consumer<FileState> consumer) {
+        String sql = "SELECT id, file_path, file_size_bytes, last_modified FROM music_files";
+        int count = 0;
+        try (Statement stmt = getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    long size = rs.getLong("file_size_bytes");
+                    Long sizeBytes = rs.wasNull() ? null : size;
+                    long modified = rs.getLong("last_modified");
+                    Long lastModified = rs.wasNull() ? null : modified;
+                    consumer.accept(new FileState(rs.getLong("id"), rs.getString("file_path"), sizeBytes, lastModified));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to stream file states from database");
+            throw new RuntimeException("Failed to stream file states", e);
+        }
+        return count;
+    }
+
     /**
      * Gets all distinct parent directories from music files in the database.
      * 
@@ -1615,9 +2364,15 @@ public class DatabaseManager {
             musicFile.setDateAdded(new Date(dateAddedMs));
         }
 
-        // Load fingerprint if available (may not exist in older databases)
+        // Load fingerprint if available (may not exist in older databases).
+        // Packed blobs are copied straight into int[]; TEXT is only read for rows not yet migrated.
         try {
-            musicFile.setFingerprint(rs.getString("fingerprint"));
+            byte[] packed = rs.getBytes("fingerprint_blob");
+            if (packed != null) {
+                musicFile.setFingerprintSegments(FingerprintCodec.unpack(packed));
+            } else {
+                musicFile.setFingerprint(rs.getString("fingerprint"));
+            }
             if (rs.getObject("fingerprint_duration") != null) {
                 musicFile.setFingerprintDuration(rs.getInt("fingerprint_duration"));
             }
@@ -1625,11 +2380,38 @@ public class DatabaseManager {
             // Column doesn't exist yet - ignore
         }
 
+        try {
+            int keyVersion = rs.getInt("metadata_key_version");
+            if (keyVersion != 0) {
+                musicFile.setMetadataKeys(rs.getString("title_key"), rs.getString("artist_key"),
+                    rs.getString("album_key"), keyVersion);
+            }
+        } catch (SQLException e) {
+            // Column doesn't exist yet - ignore
+        }
+
         return musicFile;
     }
 
+    /**
+     * Registers a listener for fingerprint updates and deletions.
+     */
+    public static void addFingerprintChangeListener(FingerprintChangeListener listener) {
+        if (listener != null && !fingerprintListeners.contains(listener)) {
+            fingerprintListeners.add(listener);
+        }
+    }
+
+    /**
+     * Unregisters a fingerprint change listener.
+     */
+    public static void removeFingerprintChangeListener(FingerprintChangeListener listener) {
+        fingerprintListeners.remove(listener);
+    }
+
     /**
      * Updates the fingerprint for a music file.
+     * The fingerprint is stored in packed binary form.
      *
      * @param fileId the database ID of the music file
      * @param fingerprint the Chromaprint fingerprint as comma-separated integers
@@ -1637,27 +2419,53 @@ public class DatabaseManager {
      * @return true if update was successful, false otherwise
      */
     public static synchronized boolean updateFingerprint(long fileId, String fingerprint, int duration) {
-        String sql = "UPDATE music_files SET fingerprint = ?, fingerprint_duration = ? WHERE id = ?";
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            pstmt.setString(1, fingerprint);
-            pstmt.setInt(2, duration);
-            pstmt.setLong(3, fileId);
-            int updated = pstmt.executeUpdate();
-            return updated > 0;
-        } catch (SQLException e) {
-            logger.error("Failed to update fingerprint for file ID " + fileId, e);
-            return false;
-        }
+        int[] segments = fingerprint == null ? null : FingerprintMatcher.parseFingerprint(fingerprint);
+        return updateFingerprint(fileId, segments, duration);
     }
 
     /**
-     * Gets all music files that don't have fingerprints yet.
+     * Updates the fingerprint for a music file from its parsed segments.
      *
-     * @return list of MusicFile objects without fingerprints
+     * @param fileId the database ID of the music file
+     * @param segments the Chromaprint fingerprint segments
+     * @param duration the duration in seconds used for fingerprinting
+     * @return true if update was successful, false otherwise
+     */
+    public static synchronized boolean updateFingerprint(long fileId, int[] segments, int duration) {
+        String sql = "UPDATE music_files SET fingerprint_blob = ?, fingerprint = NULL, fingerprint_duration = ? WHERE id = ?";
+        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
+            pstmt.setBytes(1, FingerprintCodec.pack(segments));
+            pstmt.setInt(2, duration);
+            pstmt.setLong(3, fileId);
+            int updated = pstmt.executeUpdate();
+            if (updated > 0) {
+                libraryChanged();
+            }
+            if (updated > 0 && fingerprintCorpus != null) {
+                fingerprintCorpus.put(fileId, segments);
+                fingerprintCorpusCaughtUp();
+            }
+            if (updated > 0 && segments != null) {
+                for (FingerprintChangeListener listener : fingerprintListeners) {
+                    listener.onFingerprintUpdated(fileId, segments, duration);
+                }
+            }
+            return updated > 0;
+        } catch (SQLException e) {
+            logger.error("Failed to update fingerprint for file ID " + fileId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Gets all music files that don't have fingerprints yet.
+     *
+     * @return list of MusicFile objects without fingerprints
      */
     public static synchronized List<MusicFile> getFilesWithoutFingerprints() {
         List<MusicFile> musicFiles = new ArrayList<>();
-        String sql = "SELECT * FROM music_files WHERE fingerprint IS NULL" + getFileTypeFilterClause();
+        String sql = "SELECT * FROM music_files WHERE fingerprint IS NULL AND fingerprint_blob IS NULL" +
+                getFileTypeFilterClause();
         try (PreparedStatement pstmt = getConnection().prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
@@ -1669,6 +2477,731 @@ public class DatabaseManager {
         return musicFiles;
     }
 
+    /**
+     * Loads the music files with the given ids, respecting the current file type filter.
+     * Ids that no longer exist or are filtered out are absent from the result.
+     *
+     * @param ids database ids to load
+     * @return the loaded files keyed by id
+     */
+    public static synchronized Map<Long, MusicFile> getMusicFilesByIds(Collection<Long> ids) {
+        Map<Long, MusicFile> result = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
+        // SQLite limits the number of bound parameters per statement
+        for (int start = 0; start < idList.size(); start += ID_QUERY_BATCH_SIZE) {
+            List<Long> batch = idList.subList(start, Math.min(start + ID_QUERY_BATCH_SIZE, idList.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+            String sql = "SELECT * FROM music_files WHERE id IN (" + placeholders + ")" + getFileTypeFilterClause();
+            try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    pstmt.setLong(i + 1, batch.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        MusicFile musicFile = extractMusicFileFromResultSet(rs);
+                        result.put(musicFile.getId(), musicFile);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to load music files by id", e);
+                throw new RuntimeException("Failed to load music files by id", e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads what {@link MetadataBlocker} needs to place every file under the current file
+     * type filter in its sort orders, without loading whole files. Keys computed with
+     * other normalization settings are recomputed on the way.
+     *
+     * @return the blocking keys of every file
+     * @throws RuntimeException if the query fails
+     */
+    public static synchronized List<MetadataBlocker.FileKeys> getMetadataBlockingKeys() {
+        FuzzySearchConfig config = activeFuzzySearchConfig();
+        int keyVersion = FuzzyMatcher.metadataKeyVersion(config);
+        List<MetadataBlocker.FileKeys> keys = new ArrayList<>();
+        String sql = "SELECT id, " + BLOCKING_KEY_COLUMNS + " FROM music_files WHERE 1=1" + getFileTypeFilterClause();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                keys.add(extractBlockingKeys(rs, rs.getLong("id"), config, keyVersion));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read metadata blocking keys", e);
+            throw new RuntimeException("Failed to read metadata blocking keys", e);
+        }
+        return keys;
+    }
+
+    /**
+     * Columns {@link #extractBlockingKeys} reads, in both {@code music_files} and the departure tables.
+     */
+    private static final String BLOCKING_KEY_COLUMNS =
+        "title, artist, album, title_key, artist_key, album_key, metadata_key_version, duration_seconds";
+
+    private static MetadataBlocker.FileKeys extractBlockingKeys(ResultSet rs, long id, FuzzySearchConfig config,
+                                                                int keyVersion) throws SQLException {
+        String[] keys = rs.getInt("metadata_key_version") == keyVersion
+            ? new String[] { rs.getString("title_key"), rs.getString("artist_key"), rs.getString("album_key") }
+            : FuzzyMatcher.metadataKeys(rs.getString("title"), rs.getString("artist"), rs.getString("album"), config);
+        int duration = rs.getInt("duration_seconds");
+        if (rs.wasNull() || duration < 0) {
+            duration = DurationWindow.UNKNOWN;
+        }
+        return new MetadataBlocker.FileKeys(id, keys[0], keys[1], keys[2], duration);
+    }
+
+    /**
+     * Sorts file ids into the order of {@link #getAllMusicFiles()}: artist, album and
+     * title ignoring ASCII case, then bit rate, then longest duration first, with the id
+     * breaking remaining ties. Ids of files that are no longer stored go last.
+     *
+     * @param ids ids to sort
+     * @return the ids in library order
+     * @throws RuntimeException if a query fails
+     */
+    public static synchronized List<Long> sortInLibraryOrder(Collection<Long> ids) {
+        Map<Long, Object[]> sortKeys = new HashMap<>();
+        List<Long> idList = new ArrayList<>(ids);
+        for (int start = 0; start < idList.size(); start += ID_QUERY_BATCH_SIZE) {
+            List<Long> batch = idList.subList(start, Math.min(start + ID_QUERY_BATCH_SIZE, idList.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+            String sql = "SELECT id, lower(artist), lower(album), lower(title), bit_rate, duration_seconds " +
+                "FROM music_files WHERE id IN (" + placeholders + ")";
+            try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    pstmt.setLong(i + 1, batch.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Integer bitRate = rs.getObject(5) != null ? rs.getInt(5) : null;
+                        Integer duration = rs.getObject(6) != null ? rs.getInt(6) : null;
+                        sortKeys.put(rs.getLong(1),
+                            new Object[] { rs.getString(2), rs.getString(3), rs.getString(4), bitRate, duration });
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to load the library order of music files", e);
+                throw new RuntimeException("Failed to load the library order of music files", e);
+            }
+        }
+
+        // SQLite sorts NULL first in ascending order and last in descending order
+        Comparator<String> text = Comparator.nullsFirst(Comparator.naturalOrder());
+        Comparator<Object[]> libraryOrder = Comparator
+            .comparing((Object[] key) -> (String) key[0], text)
+            .thenComparing(key -> (String) key[1], text)
+            .thenComparing(key -> (String) key[2], text)
+            .thenComparing(key -> (Integer) key[3], Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(key -> (Integer) key[4], Comparator.nullsLast(Comparator.<Integer>reverseOrder()));
+        List<Long> sorted = new ArrayList<>(idList);
+        sorted.sort(Comparator
+            .comparing((Long id) -> sortKeys.get(id), Comparator.nullsLast(libraryOrder))
+            .thenComparing(Comparator.naturalOrder()));
+        return sorted;
+    }
+
+    /**
+     * Captures the fingerprints in the memory-mapped corpus for a duplicate scan,
+     * limited to files matching the current file type filter. Rebuilds the corpus
+     * first if an update could not be stored in it or its generation no longer matches
+     * the database's.
+     *
+     * <p>The snapshot must be closed when the scan finishes.
+     *
+     * @return a snapshot of the corpus, or null if the corpus is unavailable
+     */
+    public static synchronized FingerprintCorpus.Snapshot snapshotFingerprintCorpus() {
+        if (fingerprintCorpus != null && (fingerprintCorpus.needsRebuild() || !fingerprintCorpusInStep())) {
+            replaceFingerprintCorpus();
+        }
+        if (fingerprintCorpus == null) {
+            return null;
+        }
+
+        String filter = getFileTypeFilterClause();
+        if (filter.isEmpty()) {
+            return fingerprintCorpus.snapshot(id -> true);
+        }
+
+        Set<Long> allowedIds = new HashSet<>();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM music_files WHERE 1=1" + filter)) {
+            while (rs.next()) {
+                allowedIds.add(rs.getLong(1));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read file ids for fingerprint corpus snapshot", e);
+            return null;
+        }
+        return fingerprintCorpus.snapshot(allowedIds::contains);
+    }
+
+    /**
+     * Returns the duration used for fingerprint matching of every fingerprinted file,
+     * keyed by file id: {@code fingerprint_duration}, falling back to {@code duration_seconds}.
+     * Files with neither are omitted. Used to prune comparisons over a corpus snapshot,
+     * which holds only the segments.
+     *
+     * @return durations in seconds by file id; empty if the query fails
+     */
+    public static synchronized Map<Long, Integer> getFingerprintDurations() {
+        Map<Long, Integer> durations = new HashMap<>();
+        String sql = "SELECT id, fingerprint_duration, duration_seconds FROM music_files " +
+                     "WHERE (fingerprint_blob IS NOT NULL OR fingerprint IS NOT NULL)" + getFileTypeFilterClause();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int duration = rs.getInt(2);
+                if (duration <= 0) {
+                    duration = rs.getInt(3);
+                }
+                if (duration > 0) {
+                    durations.put(rs.getLong(1), duration);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read fingerprint durations", e);
+            return Collections.emptyMap();
+        }
+        return durations;
+    }
+
+    /**
+     * Returns the number of files with a stored fingerprint under the current file type filter.
+     */
+    public static synchronized int getFingerprintedFileCount() {
+        String sql = "SELECT COUNT(*) FROM music_files " +
+                     "WHERE (fingerprint_blob IS NOT NULL OR fingerprint IS NOT NULL)" + getFileTypeFilterClause();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            logger.error("Failed to count fingerprinted files", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Returns a value stored for the {@link DuplicateIndex}, or null if none is set.
+     */
+    public static synchronized String getDuplicateIndexState(String key) {
+        try (PreparedStatement pstmt = getConnection().prepareStatement(
+                "SELECT state_value FROM duplicate_index_state WHERE state_key = ?")) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read duplicate index state " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the files changed since the duplicate index last processed them.
+     *
+     * @return the pending file ids and departures, with the newest sequence numbers read
+     */
+    public static synchronized DuplicateIndex.PendingChanges getPendingDuplicateIndexChanges() {
+        return readPendingChanges("duplicate_index_pending", "duplicate_index_departures");
+    }
+
+    /**
+     * Returns the files changed since the similarity graph last processed them.
+     *
+     * @return the pending file ids and departures, with the newest sequence numbers read
+     */
+    public static synchronized DuplicateIndex.PendingChanges getPendingSimilarityGraphChanges() {
+        return readPendingChanges("similarity_graph_pending", "similarity_graph_departures");
+    }
+
+    private static DuplicateIndex.PendingChanges readPendingChanges(String table, String departuresTable) {
+        Set<Long> fileIds = new HashSet<>();
+        long maxSeq = 0;
+        List<MetadataBlocker.FileKeys> departures = new ArrayList<>();
+        long maxDepartureSeq = 0;
+        FuzzySearchConfig config = activeFuzzySearchConfig();
+        int keyVersion = FuzzyMatcher.metadataKeyVersion(config);
+        try (Statement stmt = getConnection().createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT seq, file_id FROM " + table)) {
+                while (rs.next()) {
+                    maxSeq = Math.max(maxSeq, rs.getLong(1));
+                    fileIds.add(rs.getLong(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT seq, file_id, " + BLOCKING_KEY_COLUMNS +
+                    " FROM " + departuresTable)) {
+                while (rs.next()) {
+                    maxDepartureSeq = Math.max(maxDepartureSeq, rs.getLong("seq"));
+                    departures.add(extractBlockingKeys(rs, rs.getLong("file_id"), config, keyVersion));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read pending changes from " + table, e);
+        }
+        return new DuplicateIndex.PendingChanges(fileIds, maxSeq, departures, maxDepartureSeq);
+    }
+
+    /**
+     * Returns every edge of the duplicate index.
+     */
+    public static synchronized List<DuplicateIndex.Edge> getDuplicateEdges() {
+        List<DuplicateIndex.Edge> edges = new ArrayList<>();
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT file_a, file_b, similarity FROM duplicate_edges")) {
+            while (rs.next()) {
+                double similarity = rs.getDouble(3);
+                Double stored = rs.wasNull() ? null : similarity;
+                edges.add(new DuplicateIndex.Edge(rs.getLong(1), rs.getLong(2), stored));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read duplicate index edges", e);
+        }
+        return edges;
+    }
+
+    /**
+     * Applies one incremental update of the duplicate index in a single transaction:
+     * drops the edges of the changed files and the stale edges, inserts the new edges and
+     * clears the pending entries and departures that were read. Edges to files deleted in
+     * the meantime are skipped.
+     *
+     * @param changes the pending changes that were processed
+     * @param edges the new edges
+     * @param stale edges between unchanged files that are no longer candidates
+     */
+    public static synchronized void applyDuplicateIndexChanges(DuplicateIndex.PendingChanges changes,
+                                                               List<DuplicateIndex.Edge> edges,
+                                                               List<DuplicateIndex.Edge> stale) {
+        writeDuplicateIndex(changes.fileIds(), edges, stale, changes, null);
+    }
+
+    /**
+     * Replaces the whole duplicate index in a single transaction.
+     *
+     * @param edges every edge of the rebuilt index
+     * @param covered the pending changes read before the rebuild, which it covers
+     * @param signature the settings the index was built with
+     */
+    public static synchronized void replaceDuplicateIndex(List<DuplicateIndex.Edge> edges,
+                                                          DuplicateIndex.PendingChanges covered, String signature) {
+        writeDuplicateIndex(null, edges, List.of(), covered, signature);
+    }
+
+    /**
+     * Writes duplicate index changes. With {@code changedIds} null all edges are replaced.
+     */
+    private static void writeDuplicateIndex(Collection<Long> changedIds, List<DuplicateIndex.Edge> edges,
+                                            List<DuplicateIndex.Edge> stale, DuplicateIndex.PendingChanges covered,
+                                            String signature) {
+        String insertSql = "INSERT OR REPLACE INTO duplicate_edges (file_a, file_b, similarity) " +
+                "SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM music_files WHERE id = ?) " +
+                "AND EXISTS (SELECT 1 FROM music_files WHERE id = ?)";
+        try {
+            Connection conn = getConnection();
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement();
+                 PreparedStatement deleteEdges = conn.prepareStatement(
+                     "DELETE FROM duplicate_edges WHERE file_a = ? OR file_b = ?");
+                 PreparedStatement deleteEdge = conn.prepareStatement(
+                     "DELETE FROM duplicate_edges WHERE file_a = ? AND file_b = ?");
+                 PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement clearPending = conn.prepareStatement(
+                     "DELETE FROM duplicate_index_pending WHERE seq <= ?");
+                 PreparedStatement clearDepartures = conn.prepareStatement(
+                     "DELETE FROM duplicate_index_departures WHERE seq <= ?")) {
+                if (changedIds == null) {
+                    stmt.executeUpdate("DELETE FROM duplicate_edges");
+                } else {
+                    for (long id : changedIds) {
+                        deleteEdges.setLong(1, id);
+                        deleteEdges.setLong(2, id);
+                        deleteEdges.addBatch();
+                    }
+                    deleteEdges.executeBatch();
+                }
+                for (DuplicateIndex.Edge edge : stale) {
+                    deleteEdge.setLong(1, edge.fileA());
+                    deleteEdge.setLong(2, edge.fileB());
+                    deleteEdge.addBatch();
+                }
+                deleteEdge.executeBatch();
+
+                for (DuplicateIndex.Edge edge : edges) {
+                    insert.setLong(1, edge.fileA());
+                    insert.setLong(2, edge.fileB());
+                    if (edge.similarity() != null) {
+                        insert.setDouble(3, edge.similarity());
+                    } else {
+                        insert.setNull(3, Types.REAL);
+                    }
+                    insert.setLong(4, edge.fileA());
+                    insert.setLong(5, edge.fileB());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                clearPending.setLong(1, covered.maxSeq());
+                clearPending.executeUpdate();
+                clearDepartures.setLong(1, covered.maxDepartureSeq());
+                clearDepartures.executeUpdate();
+
+                if (signature != null) {
+                    try (PreparedStatement state = conn.prepareStatement(
+                            "INSERT OR REPLACE INTO duplicate_index_state (state_key, state_value) VALUES (?, ?)")) {
+                        state.setString(1, DuplicateIndex.SIGNATURE_KEY);
+                        state.setString(2, signature);
+                        state.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to write duplicate index", e);
+            throw new RuntimeException("Failed to write duplicate index", e);
+        }
+    }
+
+    /**
+     * Returns every edge of the similarity graph.
+     */
+    public static synchronized List<SimilarityGraph.Edge> getSimilarityGraphEdges() {
+        List<SimilarityGraph.Edge> edges = new ArrayList<>();
+        String sql = "SELECT file_a, file_b, score, title_sim, artist_sim, album_sim, duration_match, track_match " +
+                     "FROM similarity_graph";
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                FuzzyMatcher.FieldScores fields = null;
+                double titleSim = rs.getDouble(4);
+                if (!rs.wasNull()) {
+                    fields = new FuzzyMatcher.FieldScores(titleSim, rs.getDouble(5), rs.getDouble(6),
+                        rs.getInt(7) != 0, rs.getInt(8) != 0);
+                }
+                edges.add(new SimilarityGraph.Edge(rs.getLong(1), rs.getLong(2), rs.getDouble(3), fields));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read similarity graph edges", e);
+        }
+        return edges;
+    }
+
+    /**
+     * Applies one incremental update of the similarity graph in a single transaction,
+     * like {@link #applyDuplicateIndexChanges(DuplicateIndex.PendingChanges, List, List)}.
+     */
+    public static synchronized void applySimilarityGraphChanges(DuplicateIndex.PendingChanges changes,
+                                                                List<SimilarityGraph.Edge> edges,
+                                                                List<SimilarityGraph.Edge> stale) {
+        writeSimilarityGraph(changes.fileIds(), edges, stale, changes, null);
+    }
+
+    /**
+     * Replaces the whole similarity graph in a single transaction.
+     *
+     * @param edges every edge of the rebuilt graph
+     * @param covered the pending changes read before the rebuild, which it covers
+     * @param signature the settings the graph was built with
+     */
+    public static synchronized void replaceSimilarityGraph(List<SimilarityGraph.Edge> edges,
+                                                           DuplicateIndex.PendingChanges covered, String signature) {
+        writeSimilarityGraph(null, edges, List.of(), covered, signature);
+    }
+
+    private static void writeSimilarityGraph(Collection<Long> changedIds, List<SimilarityGraph.Edge> edges,
+                                             List<SimilarityGraph.Edge> stale, DuplicateIndex.PendingChanges covered,
+                                             String signature) {
+        String insertSql = "INSERT OR REPLACE INTO similarity_graph " +
+                "(file_a, file_b, score, title_sim, artist_sim, album_sim, duration_match, track_match) " +
+                "SELECT ?, ?, ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM music_files WHERE id = ?) " +
+                "AND EXISTS (SELECT 1 FROM music_files WHERE id = ?)";
+        try {
+            Connection conn = getConnection();
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement();
+                 PreparedStatement deleteEdges = conn.prepareStatement(
+                     "DELETE FROM similarity_graph WHERE file_a = ? OR file_b = ?");
+                 PreparedStatement deleteEdge = conn.prepareStatement(
+                     "DELETE FROM similarity_graph WHERE file_a = ? AND file_b = ?");
+                 PreparedStatement insert = conn.prepareStatement(insertSql);
+                 PreparedStatement clearPending = conn.prepareStatement(
+                     "DELETE FROM similarity_graph_pending WHERE seq <= ?");
+                 PreparedStatement clearDepartures = conn.prepareStatement(
+                     "DELETE FROM similarity_graph_departures WHERE seq <= ?")) {
+                if (changedIds == null) {
+                    stmt.executeUpdate("DELETE FROM similarity_graph");
+                } else {
+                    for (long id : changedIds) {
+                        deleteEdges.setLong(1, id);
+                        deleteEdges.setLong(2, id);
+                        deleteEdges.addBatch();
+                    }
+                    deleteEdges.executeBatch();
+                }
+                for (SimilarityGraph.Edge edge : stale) {
+                    deleteEdge.setLong(1, edge.fileA());
+                    deleteEdge.setLong(2, edge.fileB());
+                    deleteEdge.addBatch();
+                }
+                deleteEdge.executeBatch();
+
+                for (SimilarityGraph.Edge edge : edges) {
+                    insert.setLong(1, edge.fileA());
+                    insert.setLong(2, edge.fileB());
+                    insert.setDouble(3, edge.score());
+                    FuzzyMatcher.FieldScores fields = edge.fields();
+                    if (fields != null) {
+                        insert.setDouble(4, fields.titleSimilarity());
+                        insert.setDouble(5, fields.artistSimilarity());
+                        insert.setDouble(6, fields.albumSimilarity());
+                        insert.setInt(7, fields.durationMatches() ? 1 : 0);
+                        insert.setInt(8, fields.trackMatches() ? 1 : 0);
+                    } else {
+                        for (int column = 4; column <= 8; column++) {
+                            insert.setNull(column, Types.NULL);
+                        }
+                    }
+                    insert.setLong(9, edge.fileA());
+                    insert.setLong(10, edge.fileB());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                clearPending.setLong(1, covered.maxSeq());
+                clearPending.executeUpdate();
+                clearDepartures.setLong(1, covered.maxDepartureSeq());
+                clearDepartures.executeUpdate();
+
+                if (signature != null) {
+                    try (PreparedStatement state = conn.prepareStatement(
+                            "INSERT OR REPLACE INTO duplicate_index_state (state_key, state_value) VALUES (?, ?)")) {
+                        state.setString(1, SimilarityGraph.SIGNATURE_KEY);
+                        state.setString(2, signature);
+                        state.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to write similarity graph", e);
+            throw new RuntimeException("Failed to write similarity graph", e);
+        }
+    }
+
+    /**
+     * Returns the location of the numbered fingerprint corpus file kept next to the
+     * database file. Each rebuild writes the next number, so a file that open snapshots
+     * still map is never replaced.
+     *
+     * @param fileSeq the corpus file number recorded in {@code fingerprint_corpus_state}
+     */
+    static Path getFingerprintCorpusPath(long fileSeq) {
+        return Paths.get(config.getDatabasePath() + "." + fileSeq + FingerprintCorpus.FILE_SUFFIX);
+    }
+
+    /**
+     * The fingerprint corpus state stored in the database: the generation the corpus
+     * must mirror and the number of the current corpus file.
+     */
+    private record FingerprintCorpusState(long generation, long fileSeq) {}
+
+    private static FingerprintCorpusState readFingerprintCorpusState() throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT generation, file_seq FROM fingerprint_corpus_state WHERE id = 1")) {
+            return rs.next() ? new FingerprintCorpusState(rs.getLong(1), rs.getLong(2)) : new FingerprintCorpusState(0, 0);
+        }
+    }
+
+    /**
+     * Opens the fingerprint corpus for the current database, rebuilding it from the
+     * {@code fingerprint_blob} column when it is missing or out of step with the database.
+     * The file is trusted only if its header generation and its fingerprint count both
+     * match the database, so a corpus left stale by a crash between the database commit
+     * and the corpus write, or by restoring the database from a backup, is rebuilt.
+     * Corpus files from earlier rebuilds are deleted.
+     * Failures leave the corpus unavailable; duplicate scans then load files directly.
+     */
+    private static synchronized void openFingerprintCorpus() {
+        closeFingerprintCorpus();
+        try {
+            FingerprintCorpusState state = readFingerprintCorpusState();
+            Path path = getFingerprintCorpusPath(state.fileSeq());
+            if (state.fileSeq() > 0 && Files.exists(path)) {
+                FingerprintCorpus corpus = FingerprintCorpus.open(path, FingerprintCorpus.DEFAULT_CAPACITY);
+                int stored = countStoredFingerprints();
+                if (corpus.getGeneration() == state.generation() && corpus.size() == stored) {
+                    fingerprintCorpus = corpus;
+                    logger.info("Opened fingerprint corpus with " + stored + " fingerprints: " + path);
+                } else {
+                    logger.info("Fingerprint corpus holds " + corpus.size() + " fingerprints at generation "
+                        + corpus.getGeneration() + ", database holds " + stored + " at generation "
+                        + state.generation() + ", rebuilding");
+                    corpus.close();
+                }
+            }
+        } catch (IOException | SQLException e) {
+            logger.warn("Failed to open fingerprint corpus: " + e.getMessage());
+        }
+        if (fingerprintCorpus == null) {
+            replaceFingerprintCorpus();
+        }
+        if (fingerprintCorpus != null) {
+            deleteRetiredFingerprintCorpora(fingerprintCorpus.getPath());
+        }
+    }
+
+    /**
+     * Rebuilds the corpus into a new numbered file and switches to it. The previous file
+     * is retired rather than overwritten: open snapshots keep reading its mapping and it
+     * is deleted once they close, which also works on platforms that cannot replace a
+     * mapped file. The new file is recorded in the database only once it is complete.
+     */
+    private static synchronized void replaceFingerprintCorpus() {
+        FingerprintCorpus previous = fingerprintCorpus;
+        fingerprintCorpus = null;
+        try {
+            FingerprintCorpusState state = readFingerprintCorpusState();
+            long fileSeq = state.fileSeq() + 1;
+            Path path = getFingerprintCorpusPath(fileSeq);
+
+            int capacity = FingerprintCorpus.DEFAULT_CAPACITY;
+            try (Statement stmt = getConnection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(LENGTH(fingerprint_blob)) FROM music_files")) {
+                if (rs.next()) {
+                    capacity = Math.max(capacity, rs.getInt(1) / Integer.BYTES);
+                }
+            }
+
+            int count = 0;
+            FingerprintCorpus corpus = FingerprintCorpus.create(path, capacity);
+            try {
+                try (Statement stmt = getConnection().createStatement();
+                     ResultSet rs = stmt.executeQuery(
+                         "SELECT id, fingerprint_blob FROM music_files WHERE fingerprint_blob IS NOT NULL")) {
+                    while (rs.next()) {
+                        corpus.put(rs.getLong(1), FingerprintCodec.unpack(rs.getBytes(2)));
+                        count++;
+                    }
+                }
+                // The generation was read before the rows, so a change made meanwhile
+                // leaves the corpus behind and triggers another rebuild, never the reverse
+                corpus.setGeneration(state.generation());
+                try (PreparedStatement pstmt = getConnection().prepareStatement(
+                        "UPDATE fingerprint_corpus_state SET file_seq = ? WHERE id = 1")) {
+                    pstmt.setLong(1, fileSeq);
+                    pstmt.executeUpdate();
+                }
+            } catch (SQLException | RuntimeException e) {
+                corpus.retire();
+                throw e;
+            }
+            fingerprintCorpus = corpus;
+            logger.info("Rebuilt fingerprint corpus with " + count + " fingerprints (capacity " + capacity + "): " + path);
+        } catch (IOException | SQLException e) {
+            logger.warn("Fingerprint corpus unavailable, duplicate scans will load files directly: " + e.getMessage());
+        }
+
+        if (previous != null) {
+            try {
+                if (fingerprintCorpus != null) {
+                    previous.retire();
+                } else {
+                    previous.close();
+                }
+            } catch (IOException e) {
+                logger.warn("Error closing fingerprint corpus: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the corpus files of this database other than the current one: files from
+     * earlier rebuilds that could not be deleted while mapped, and the unnumbered file
+     * of older versions. Files still locked are left for the next startup.
+     */
+    private static void deleteRetiredFingerprintCorpora(Path current) {
+        Path directory = current.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        String prefix = Paths.get(config.getDatabasePath()).getFileName().toString();
+        String suffix = FingerprintCorpus.FILE_SUFFIX;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(prefix.length(), name.length() - suffix.length());
+                if (!file.getFileName().equals(current.getFileName()) && number.matches("(\\.\\d+)?")) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        logger.debug("Retired fingerprint corpus " + file + " not deleted yet: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to list retired fingerprint corpus files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records in the corpus header that the corpus now mirrors the database's latest
+     * fingerprint change. Called once a change has been applied to both; a corpus that
+     * could not store a change keeps its older generation and is rebuilt.
+     */
+    private static void fingerprintCorpusCaughtUp() {
+        if (fingerprintCorpus == null || fingerprintCorpus.needsRebuild()) {
+            return;
+        }
+        try {
+            fingerprintCorpus.setGeneration(readFingerprintCorpusState().generation());
+        } catch (SQLException e) {
+            logger.warn("Failed to read fingerprint corpus generation: " + e.getMessage());
+        }
+    }
+
+    private static boolean fingerprintCorpusInStep() {
+        try {
+            return fingerprintCorpus.getGeneration() == readFingerprintCorpusState().generation();
+        } catch (SQLException e) {
+            logger.warn("Failed to read fingerprint corpus generation: " + e.getMessage());
+            return true;
+        }
+    }
+
+    private static synchronized void closeFingerprintCorpus() {
+        if (fingerprintCorpus != null) {
+            try {
+                fingerprintCorpus.close();
+            } catch (IOException e) {
+                logger.warn("Error closing fingerprint corpus: " + e.getMessage());
+            }
+            fingerprintCorpus = null;
+        }
+    }
+
+    private static int countStoredFingerprints() throws SQLException {
+        try (Statement stmt = getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM music_files WHERE fingerprint_blob IS NOT NULL")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
     public static synchronized List<MusicFile> searchMusicFilesByTitle(String title) {
         List<MusicFile> musicFiles = new ArrayList<>();
         String sql = "SELECT * FROM music_files WHERE LOWER(title) LIKE ?" + getFileTypeFilterClause() + 
@@ -1740,9 +3273,17 @@ public class DatabaseManager {
 
         try (Statement stmt = getConnection().createStatement()) {
             stmt.executeUpdate(sql);
+            libraryChanged();
             
             // Clear the cache  issue#41
             filePathsMap.clear();
+            if (fingerprintCorpus != null) {
+                fingerprintCorpus.clear();
+                fingerprintCorpusCaughtUp();
+            }
+            for (FingerprintChangeListener listener : fingerprintListeners) {
+                listener.onAllMusicFilesDeleted();
+            }
             logger.debug("File path cache cleared after deleting all music files");
         } catch (SQLException e) {
             logger.error("Failed to delete all music files from database");
@@ -2043,7 +3584,7 @@ public class DatabaseManager {
     /**
      * Generates a SQL WHERE clause fragment for file type filtering.
      */
-    private static String getFileTypeFilterClause() {
+    static String getFileTypeFilterClause() {
         Set<String> enabledTypes = config.getEnabledFileTypes();
         if (enabledTypes.isEmpty() || enabledTypes.size() == DatabaseConfig.getAllSupportedTypes().length) {
             // No filtering needed if all types are enabled
@@ -0,0 +1,570 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent duplicate index kept in the database and updated incrementally.
+ *
+ * <p>The index stores every matching pair of files as an edge; duplicate groups are built
+ * from those edges when read. Database triggers record each inserted file and each file
+ * whose matching fields changed. {@link #refresh()} then compares only those files
+ * against their candidates and replaces their edges, while deleting a file drops its
+ * edges at once, so its group shrinks or splits on the next read. Because the edges live
+ * in the database the index survives restarts and only catches up on what changed.
+ *
+ * <p>Which kind of matching is used follows the rule of the full duplicate scan:
+ * fingerprints when more than half the library is fingerprinted, metadata otherwise.
+ * Fingerprint groups are the connected components of the edges, like
+ * {@link FingerprintMatcher#groupDuplicates(List)}. A rebuild enumerates candidates in the
+ * {@linkplain FingerprintMatcher#getDefaultMatchingMode() default matching mode}, within
+ * the duration window if one is set, while changed files are compared against every
+ * fingerprint. Metadata groups keep the seed-based semantics of
+ * {@link FuzzyMatcher#groupDuplicates(List, FuzzySearchConfig)}: in library order, each
+ * file not yet grouped takes every later match not yet grouped. A rebuild scores
+ * {@link FuzzyMatcher#metadataCandidates(List, FuzzySearchConfig)}, the candidates every
+ * other metadata path uses, and a refresh keeps exactly the edges a rebuild would find.
+ * In libraries too small for blocking, changed files are compared against every file.
+ * Otherwise the {@link MetadataBlocker.Neighbourhoods} of the stored keys give the
+ * candidates of each changed file; edges between unchanged files that are no longer
+ * candidates are dropped, and the pairs a deleted or changed file used to sit between
+ * are scored, from the old metadata recorded when it left. When the matching mode, any
+ * setting it depends on or whether the library is blocked changes, the index is rebuilt.
+ *
+ * <p>{@link #verify(boolean)} recomputes all groups from scratch, comparing every pair,
+ * and compares them with the index, optionally repairing it. It is the exact path, so it
+ * also reports matches lost to blocking or the LSH index.
+ */
+public final class DuplicateIndex {
+
+    private static final Logger logger = Log4Rich.getLogger(DuplicateIndex.class);
+
+    /**
+     * State key under which the settings the index was built with are stored.
+     */
+    static final String SIGNATURE_KEY = "signature";
+
+    /**
+     * The index is rebuilt instead of updated when more than one in {@code REBUILD_FRACTION}
+     * files changed, and at least {@code MIN_REBUILD_CHANGES} of them.
+     */
+    private static final int REBUILD_FRACTION = 4;
+    private static final int MIN_REBUILD_CHANGES = 1000;
+
+    /**
+     * Which comparison the index uses.
+     */
+    public enum Mode {
+        FINGERPRINT, METADATA
+    }
+
+    /**
+     * A matching pair of files, stored with {@code fileA < fileB}.
+     *
+     * @param fileA smaller file id
+     * @param fileB larger file id
+     * @param similarity fingerprint similarity, or null for metadata matches
+     */
+    public record Edge(long fileA, long fileB, Double similarity) {
+        public Edge {
+            if (fileA > fileB) {
+                long swap = fileA;
+                fileA = fileB;
+                fileB = swap;
+            }
+        }
+    }
+
+    /**
+     * Files changed since the index last processed them.
+     *
+     * @param fileIds ids of the inserted or changed files
+     * @param maxSeq newest pending sequence number that was read
+     * @param departures the blocking keys deleted files, and files whose keys changed, had before
+     * @param maxDepartureSeq newest departure sequence number that was read
+     */
+    public record PendingChanges(Set<Long> fileIds, long maxSeq, List<MetadataBlocker.FileKeys> departures,
+                                 long maxDepartureSeq) {
+        /**
+         * Returns true if nothing changed.
+         */
+        public boolean isEmpty() {
+            return fileIds.isEmpty() && departures.isEmpty();
+        }
+
+        /**
+         * Returns the number of distinct files inserted, changed or deleted.
+         */
+        public int changedFileCount() {
+            Set<Long> ids = new HashSet<>(fileIds);
+            departures.forEach(departure -> ids.add(departure.id()));
+            return ids.size();
+        }
+    }
+
+    /**
+     * Outcome of comparing the index against a full recompute.
+     *
+     * @param mode matching mode used for both
+     * @param indexedGroups number of groups in the index
+     * @param recomputedGroups number of groups found by the full recompute
+     * @param missingGroups recomputed groups absent from the index
+     * @param extraGroups indexed groups absent from the recompute
+     * @param repaired true if the index was rebuilt from the recompute
+     * @param elapsedMs time taken in milliseconds
+     */
+    public record VerifyReport(Mode mode, int indexedGroups, int recomputedGroups,
+                               List<List<Long>> missingGroups, List<List<Long>> extraGroups,
+                               boolean repaired, long elapsedMs) {
+        /**
+         * Returns true if the index matched the full recompute.
+         */
+        public boolean consistent() {
+            return missingGroups.isEmpty() && extraGroups.isEmpty();
+        }
+    }
+
+    private DuplicateIndex() {
+    }
+
+    /**
+     * Brings the index up to date and returns the duplicate groups.
+     * Rebuilds it if it was never built or its settings changed; otherwise only
+     * the files changed since the last refresh are compared.
+     *
+     * @return file ids of each duplicate group (2+ ids, ascending), ordered by smallest id
+     */
+    public static synchronized List<List<Long>> refresh() {
+        Mode mode = currentMode();
+        String signature = signature(mode);
+        if (!signature.equals(DatabaseManager.getDuplicateIndexState(SIGNATURE_KEY))) {
+            logger.info("Duplicate index settings changed or index missing, rebuilding ({} mode)", mode);
+            rebuild(mode, signature);
+            return groups(mode, DatabaseManager.getDuplicateEdges());
+        }
+
+        PendingChanges changes = DatabaseManager.getPendingDuplicateIndexChanges();
+        int changed = changes.changedFileCount();
+        if (changed >= MIN_REBUILD_CHANGES && changed > DatabaseManager.getMusicFileCount() / REBUILD_FRACTION) {
+            // After a large scan one parallel pass over all pairs beats comparing file by file
+            logger.info("{} files changed, rebuilding duplicate index", changed);
+            rebuild(mode, signature);
+        } else if (!changes.isEmpty()) {
+            long startTime = System.currentTimeMillis();
+            List<Edge> edges;
+            List<Edge> stale = List.of();
+            if (mode == Mode.FINGERPRINT) {
+                edges = fingerprintEdgesOf(changes.fileIds());
+            } else {
+                FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+                MetadataCandidates candidates = metadataCandidatesOf(changes);
+                edges = candidates.score((file1, file2) -> FuzzyMatcher.areDuplicates(file1, file2, config)
+                    ? new Edge(file1.getId(), file2.getId(), null) : null);
+                stale = candidates.staleEdges(DatabaseManager::getDuplicateEdges, Edge::fileA, Edge::fileB);
+            }
+            DatabaseManager.applyDuplicateIndexChanges(changes, edges, stale);
+            logger.info("Updated duplicate index for {} changed files ({} edges, {} stale) in {}ms",
+                changed, edges.size(), stale.size(), System.currentTimeMillis() - startTime);
+        }
+        return groups(mode, DatabaseManager.getDuplicateEdges());
+    }
+
+    /**
+     * Discards the index and rebuilds it from every file.
+     *
+     * @return the rebuilt duplicate groups
+     */
+    public static synchronized List<List<Long>> rebuild() {
+        Mode mode = currentMode();
+        rebuild(mode, signature(mode));
+        return groups(mode, DatabaseManager.getDuplicateEdges());
+    }
+
+    /**
+     * Recomputes all duplicate groups from scratch and compares them with the index.
+     *
+     * @param repair true to rebuild the index from the recompute when they differ
+     * @return a report of the differences
+     */
+    public static synchronized VerifyReport verify(boolean repair) {
+        long startTime = System.currentTimeMillis();
+        List<List<Long>> indexed = refresh();
+        Mode mode = currentMode();
+
+        PendingChanges covered = DatabaseManager.getPendingDuplicateIndexChanges();
+        List<Edge> edges = mode == Mode.FINGERPRINT
+            ? allFingerprintEdges(FingerprintMatcher.MatchingMode.BRUTE_FORCE)
+            : allMetadataEdges(true);
+        List<List<Long>> recomputed = groups(mode, edges);
+
+        Set<List<Long>> indexedSet = new HashSet<>(indexed);
+        Set<List<Long>> recomputedSet = new HashSet<>(recomputed);
+        List<List<Long>> missing = recomputed.stream().filter(g -> !indexedSet.contains(g)).collect(Collectors.toList());
+        List<List<Long>> extra = indexed.stream().filter(g -> !recomputedSet.contains(g)).collect(Collectors.toList());
+
+        boolean repaired = false;
+        if (repair && (!missing.isEmpty() || !extra.isEmpty())) {
+            DatabaseManager.replaceDuplicateIndex(edges, covered, signature(mode));
+            repaired = true;
+        }
+
+        VerifyReport report = new VerifyReport(mode, indexed.size(), recomputed.size(), missing, extra,
+            repaired, System.currentTimeMillis() - startTime);
+        if (report.consistent()) {
+            logger.info("Duplicate index verified: {} groups match a full recompute", indexed.size());
+        } else {
+            logger.warn("Duplicate index differs from a full recompute: {} missing, {} extra groups{}",
+                missing.size(), extra.size(), repaired ? " (repaired)" : "");
+        }
+        return report;
+    }
+
+    /**
+     * Returns the groups currently stored in the index without refreshing it.
+     */
+    public static synchronized List<List<Long>> getGroups() {
+        return groups(currentMode(), DatabaseManager.getDuplicateEdges());
+    }
+
+    /**
+     * Returns the matching mode the library currently calls for.
+     */
+    public static Mode currentMode() {
+        int total = DatabaseManager.getMusicFileCount();
+        int fingerprinted = DatabaseManager.getFingerprintedFileCount();
+        return total > 0 && fingerprinted > total / 2 ? Mode.FINGERPRINT : Mode.METADATA;
+    }
+
+    private static void rebuild(Mode mode, String signature) {
+        long startTime = System.currentTimeMillis();
+        // Read the pending changes first so changes made during the rebuild stay pending
+        PendingChanges covered = DatabaseManager.getPendingDuplicateIndexChanges();
+        // A similarity graph built for the current settings answers any threshold above its floor
+        List<Edge> edges = SimilarityGraph.duplicateEdges(mode);
+        boolean fromGraph = edges != null;
+        if (!fromGraph) {
+            edges = mode == Mode.FINGERPRINT
+                ? allFingerprintEdges(FingerprintMatcher.getDefaultMatchingMode())
+                : allMetadataEdges(false);
+        }
+        DatabaseManager.replaceDuplicateIndex(edges, covered, signature);
+        logger.info("Rebuilt duplicate index with {} edges in {}ms{}", edges.size(),
+            System.currentTimeMillis() - startTime, fromGraph ? " from the similarity graph" : "");
+    }
+
+    /**
+     * Describes every setting that affects which edges exist. A different
+     * signature means the stored edges can no longer be updated incrementally.
+     */
+    private static String signature(Mode mode) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mode).append('|').append(DatabaseManager.getFileTypeFilterClause());
+        if (mode == Mode.FINGERPRINT) {
+            DurationWindow window = FingerprintMatcher.getDurationWindow();
+            sb.append('|').append(FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD)
+              .append('|').append(window != null ? window : "off");
+        } else {
+            Properties properties = DatabaseManager.activeFuzzySearchConfig().toProperties();
+            properties.remove("configName");
+            sb.append('|').append(new TreeMap<>(properties))
+              .append('|').append(blockingState());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Whether metadata candidates come from blocking, part of the metadata signatures:
+     * the two kinds of candidates can't be updated into each other.
+     */
+    static String blockingState() {
+        return MetadataBlocker.appliesTo(DatabaseManager.getMusicFileCount()) ? "blocked" : "exhaustive";
+    }
+
+    /**
+     * The duplicate groups the edges form in the given mode, each sorted ascending and
+     * ordered by smallest id.
+     */
+    static List<List<Long>> groups(Mode mode, List<Edge> edges) {
+        if (mode == Mode.FINGERPRINT || edges.isEmpty()) {
+            return components(edges);
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Edge edge : edges) {
+            ids.add(edge.fileA());
+            ids.add(edge.fileB());
+        }
+        return seedGroups(edges, DatabaseManager.sortInLibraryOrder(ids));
+    }
+
+    /**
+     * Groups files the way {@link FuzzyMatcher#groupDuplicates(List, FuzzySearchConfig)} does:
+     * each file in {@code order} that is not yet grouped seeds a group and takes every
+     * later file it has an edge to that is not yet grouped. Unlike components, a file
+     * matching only another member of a group does not join it.
+     *
+     * @param edges matching pairs
+     * @param order every file id of the edges, in the order files are seeded
+     * @return groups of 2+ ids, each sorted ascending, ordered by smallest id
+     */
+    static List<List<Long>> seedGroups(List<Edge> edges, List<Long> order) {
+        Map<Long, Integer> rank = new HashMap<>();
+        for (Long id : order) {
+            rank.put(id, rank.size());
+        }
+        Map<Long, List<Long>> later = new HashMap<>();
+        for (Edge edge : edges) {
+            boolean aFirst = rank.get(edge.fileA()) < rank.get(edge.fileB());
+            later.computeIfAbsent(aFirst ? edge.fileA() : edge.fileB(), id -> new ArrayList<>())
+                .add(aFirst ? edge.fileB() : edge.fileA());
+        }
+
+        Set<Long> processed = new HashSet<>();
+        List<List<Long>> groups = new ArrayList<>();
+        for (Long seed : order) {
+            if (!processed.add(seed)) continue;
+            List<Long> group = new ArrayList<>();
+            group.add(seed);
+            for (Long match : later.getOrDefault(seed, List.of())) {
+                if (processed.add(match)) {
+                    group.add(match);
+                }
+            }
+            if (group.size() > 1) {
+                Collections.sort(group);
+                groups.add(group);
+            }
+        }
+        groups.sort(Comparator.comparing(group -> group.get(0)));
+        return groups;
+    }
+
+    /**
+     * Connected components of the given edges, each sorted ascending and ordered by smallest id.
+     */
+    static List<List<Long>> components(List<Edge> edges) {
+        Map<Long, Integer> indexById = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (Edge edge : edges) {
+            for (long id : new long[] { edge.fileA(), edge.fileB() }) {
+                if (indexById.putIfAbsent(id, ids.size()) == null) {
+                    ids.add(id);
+                }
+            }
+        }
+
+        ConcurrentUnionFind uf = new ConcurrentUnionFind(ids.size());
+        for (Edge edge : edges) {
+            uf.union(indexById.get(edge.fileA()), indexById.get(edge.fileB()));
+        }
+
+        List<List<Long>> groups = new ArrayList<>();
+        for (int[] members : uf.groups(2)) {
+            List<Long> group = new ArrayList<>(members.length);
+            for (int i : members) {
+                group.add(ids.get(i));
+            }
+            Collections.sort(group);
+            groups.add(group);
+        }
+        groups.sort(Comparator.comparing(group -> group.get(0)));
+        return groups;
+    }
+
+    private static List<Edge> allFingerprintEdges(FingerprintMatcher.MatchingMode matchingMode) {
+        try (FingerprintSet set = loadFingerprints()) {
+            List<Edge> edges = new ArrayList<>();
+            for (FingerprintMatcher.MatchingPair pair : FingerprintMatcher.findMatchingPairs(set.fingerprints(),
+                    set.durations(), FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD, matchingMode)) {
+                edges.add(new Edge(set.fileIds()[pair.first()], set.fileIds()[pair.second()], pair.similarity()));
+            }
+            return edges;
+        }
+    }
+
+    private static List<Edge> fingerprintEdgesOf(Set<Long> changedIds) {
+        try (FingerprintSet set = loadFingerprints()) {
+            List<Edge> edges = new ArrayList<>();
+            long[] fileIds = set.fileIds();
+            for (int i = 0; i < fileIds.length; i++) {
+                if (!changedIds.contains(fileIds[i])) continue;
+                for (FingerprintMatcher.MatchingPair pair : FingerprintMatcher.findMatchesOf(i, set.fingerprints(),
+                        set.durations(), FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD)) {
+                    edges.add(new Edge(fileIds[pair.first()], fileIds[pair.second()], pair.similarity()));
+                }
+            }
+            return edges;
+        }
+    }
+
+    /**
+     * Every metadata match, comparing every pair if {@code exact} and otherwise only the
+     * pairs the other metadata paths compare.
+     */
+    private static List<Edge> allMetadataEdges(boolean exact) {
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+        List<int[]> pairs = exact
+            ? FuzzyMatcher.findDuplicatePairs(files, config)
+            : FuzzyMatcher.findDuplicatePairs(files, config, FuzzyMatcher.metadataCandidates(files, config));
+        List<Edge> edges = new ArrayList<>();
+        for (int[] pair : pairs) {
+            edges.add(new Edge(files.get(pair[0]).getId(), files.get(pair[1]).getId(), null));
+        }
+        return edges;
+    }
+
+    /**
+     * The metadata pairs a refresh scores, chosen so the refresh leaves the edges a
+     * rebuild would.
+     *
+     * @param changed the changed files still in the library
+     * @param candidatesOf the files each changed file is compared against, by its id
+     * @param reopened pairs of unchanged files a departed file used to sit between
+     * @param neighbourhoods the blocking orders, or null when every pair is a candidate
+     */
+    record MetadataCandidates(List<MusicFile> changed, Map<Long, Collection<MusicFile>> candidatesOf,
+                              List<MusicFile[]> reopened, MetadataBlocker.Neighbourhoods neighbourhoods) {
+
+        /**
+         * Scores every pair once and returns the non-null results.
+         */
+        <E> List<E> score(BiFunction<MusicFile, MusicFile, E> scorer) {
+            Set<Long> changedIds = changed.stream().map(MusicFile::getId).collect(Collectors.toSet());
+            Stream<E> ofChanged = changed.parallelStream()
+                .flatMap(file -> candidatesOf.get(file.getId()).stream()
+                    .filter(other -> !other.getId().equals(file.getId()))
+                    // A pair of changed files is scored once, from its smaller id
+                    .filter(other -> !changedIds.contains(other.getId()) || file.getId() < other.getId())
+                    .map(other -> scorer.apply(file, other)));
+            Stream<E> ofReopened = reopened.parallelStream().map(pair -> scorer.apply(pair[0], pair[1]));
+            return Stream.concat(ofChanged, ofReopened).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+
+        /**
+         * Returns the stored edges whose files are no longer candidates. Only edges between
+         * unchanged files can be among them, since the edges of changed files are replaced.
+         */
+        <E> List<E> staleEdges(Supplier<List<E>> storedEdges, ToLongFunction<E> fileA, ToLongFunction<E> fileB) {
+            if (neighbourhoods == null) {
+                return List.of();
+            }
+            return storedEdges.get().stream()
+                .filter(edge -> !neighbourhoods.isCandidate(fileA.applyAsLong(edge), fileB.applyAsLong(edge)))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Loads the changed files and what they are compared against. While the library is
+     * too small for {@link MetadataBlocker} a rebuild compares every pair, so each changed
+     * file is compared against every file. Otherwise each changed file is compared against
+     * its candidates in the current sort orders, and the pairs of unchanged files on both
+     * sides of a departed file's old place are compared again, as they may only now be
+     * candidates.
+     */
+    static MetadataCandidates metadataCandidatesOf(PendingChanges changes) {
+        Set<Long> changedIds = changes.fileIds();
+        if (!MetadataBlocker.appliesTo(DatabaseManager.getMusicFileCount())) {
+            List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+            List<MusicFile> changed = files.stream()
+                .filter(file -> changedIds.contains(file.getId()))
+                .collect(Collectors.toList());
+            Map<Long, Collection<MusicFile>> candidatesOf = new HashMap<>();
+            changed.forEach(file -> candidatesOf.put(file.getId(), files));
+            return new MetadataCandidates(changed, candidatesOf, List.of(), null);
+        }
+
+        MetadataBlocker.Neighbourhoods neighbourhoods = MetadataBlocker.neighbourhoods(
+            DatabaseManager.getMetadataBlockingKeys(), DatabaseManager.activeFuzzySearchConfig());
+        Map<Long, Set<Long>> candidateIds = new HashMap<>();
+        Set<Long> needed = new HashSet<>();
+        for (long id : changedIds) {
+            if (neighbourhoods.contains(id)) {
+                Set<Long> ids = neighbourhoods.candidatesOf(id);
+                candidateIds.put(id, ids);
+                needed.add(id);
+                needed.addAll(ids);
+            }
+        }
+        Set<List<Long>> reopenedIds = new HashSet<>();
+        for (MetadataBlocker.FileKeys departure : changes.departures()) {
+            for (long[] pair : neighbourhoods.pairsAcross(departure)) {
+                if (changedIds.contains(pair[0]) || changedIds.contains(pair[1])) continue;
+                if (reopenedIds.add(List.of(pair[0], pair[1]))) {
+                    needed.add(pair[0]);
+                    needed.add(pair[1]);
+                }
+            }
+        }
+
+        Map<Long, MusicFile> files = DatabaseManager.getMusicFilesByIds(needed);
+        List<MusicFile> changed = new ArrayList<>();
+        Map<Long, Collection<MusicFile>> candidatesOf = new HashMap<>();
+        candidateIds.forEach((id, ids) -> {
+            MusicFile file = files.get(id);
+            if (file != null) {
+                changed.add(file);
+                candidatesOf.put(id, ids.stream().map(files::get).filter(Objects::nonNull).collect(Collectors.toList()));
+            }
+        });
+        List<MusicFile[]> reopened = new ArrayList<>();
+        for (List<Long> pair : reopenedIds) {
+            MusicFile file1 = files.get(pair.get(0));
+            MusicFile file2 = files.get(pair.get(1));
+            if (file1 != null && file2 != null) {
+                reopened.add(new MusicFile[] { file1, file2 });
+            }
+        }
+        return new MetadataCandidates(changed, candidatesOf, reopened, neighbourhoods);
+    }
+
+    /**
+     * The fingerprints under the current file type filter, taken from the corpus when it
+     * is available and from the database otherwise.
+     */
+    record FingerprintSet(long[] fileIds, IntBuffer[] fingerprints, int[] durations,
+                                  FingerprintCorpus.Snapshot snapshot) implements AutoCloseable {
+        @Override
+        public void close() {
+            if (snapshot != null) {
+                snapshot.close();
+            }
+        }
+    }
+
+    static FingerprintSet loadFingerprints() {
+        FingerprintCorpus.Snapshot snapshot = DatabaseManager.snapshotFingerprintCorpus();
+        if (snapshot != null) {
+            Map<Long, Integer> durationsById = DatabaseManager.getFingerprintDurations();
+            int n = snapshot.size();
+            long[] fileIds = new long[n];
+            int[] durations = new int[n];
+            for (int i = 0; i < n; i++) {
+                fileIds[i] = snapshot.fileId(i);
+                durations[i] = durationsById.getOrDefault(fileIds[i], DurationWindow.UNKNOWN);
+            }
+            return new FingerprintSet(fileIds, snapshot.allSegments(), durations, snapshot);
+        }
+
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles().stream()
+            .filter(MusicFile::hasFingerprint)
+            .collect(Collectors.toList());
+        long[] fileIds = new long[files.size()];
+        int[] durations = new int[files.size()];
+        for (int i = 0; i < fileIds.length; i++) {
+            fileIds[i] = files.get(i).getId();
+            durations[i] = DurationWindow.fingerprintDuration(files.get(i));
+        }
+        return new FingerprintSet(fileIds, FingerprintMatcher.wrapAll(FingerprintMatcher.parseAll(files)),
+            durations, null);
+    }
+}
@@ -0,0 +1,261 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Duration tolerance used to prune duplicate candidate pairs before they are compared.
+ *
+ * <p>Two durations match when they differ by at most {@code toleranceSeconds}, or by at
+ * most {@code tolerancePercent} of their average, the same rule as the duration check in
+ * {@link FuzzyMatcher}. For a fixed shorter duration both differences only grow as the
+ * longer one grows, so after sorting by duration every match of a file lies in one
+ * contiguous window. {@link Candidates} walks those windows instead of all pairs.
+ *
+ * <p>Files with an unknown duration ({@link #UNKNOWN}) go to a fallback bucket and are
+ * paired with every other file, since nothing can be ruled out for them.
+ */
+public final class DurationWindow {
+
+    /**
+     * Marker for a file whose duration is not known.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final int toleranceSeconds;
+    private final double tolerancePercent;
+
+    /**
+     * Creates a window with the given tolerances.
+     *
+     * @param toleranceSeconds absolute tolerance in seconds
+     * @param tolerancePercent tolerance as a percentage of the average duration
+     */
+    public DurationWindow(int toleranceSeconds, double tolerancePercent) {
+        this.toleranceSeconds = Math.max(0, toleranceSeconds);
+        this.tolerancePercent = Math.max(0, tolerancePercent);
+    }
+
+    /**
+     * Creates a window from the duration tolerances of a fuzzy search configuration.
+     */
+    public static DurationWindow from(FuzzySearchConfig config) {
+        return new DurationWindow(config.getDurationToleranceSeconds(), config.getDurationTolerancePercent());
+    }
+
+    public int getToleranceSeconds() {
+        return toleranceSeconds;
+    }
+
+    public double getTolerancePercent() {
+        return tolerancePercent;
+    }
+
+    /**
+     * Returns true if the two durations are within tolerance, or either is unknown.
+     */
+    public boolean matches(int duration1, int duration2) {
+        if (duration1 == UNKNOWN || duration2 == UNKNOWN) {
+            return true;
+        }
+
+        int diff = Math.abs(duration1 - duration2);
+        if (diff <= toleranceSeconds) {
+            return true;
+        }
+
+        double avgDuration = (duration1 + duration2) / 2.0;
+        double percentDiff = (diff / avgDuration) * 100.0;
+        return percentDiff <= tolerancePercent;
+    }
+
+    /**
+     * Returns the duration used for fingerprint matching: the duration fpcalc reported,
+     * falling back to the tagged duration, or {@link #UNKNOWN} if neither is positive.
+     */
+    public static int fingerprintDuration(MusicFile file) {
+        Integer fingerprintDuration = file.getFingerprintDuration();
+        if (fingerprintDuration != null && fingerprintDuration > 0) {
+            return fingerprintDuration;
+        }
+        Integer durationSeconds = file.getDurationSeconds();
+        if (durationSeconds != null && durationSeconds > 0) {
+            return durationSeconds;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the duration used for metadata matching, exactly as {@link FuzzyMatcher}
+     * reads it: the tagged duration, or {@link #UNKNOWN} if it is missing.
+     */
+    public static int metadataDuration(MusicFile file) {
+        Integer durationSeconds = file.getDurationSeconds();
+        return durationSeconds == null || durationSeconds < 0 ? UNKNOWN : durationSeconds;
+    }
+
+    /**
+     * Sorts the given durations and returns the candidate pairs they allow.
+     *
+     * @param durations one duration per file, {@link #UNKNOWN} where missing
+     * @return candidate enumerator indexed like {@code durations}
+     */
+    public Candidates candidates(int[] durations) {
+        return new Candidates(this, durations);
+    }
+
+    @Override
+    public String toString() {
+        return "±" + toleranceSeconds + "s/" + tolerancePercent + "%";
+    }
+
+    /**
+     * Files sorted by duration, with the window of each file precomputed.
+     * Immutable once built and safe to share between threads.
+     */
+    public static final class Candidates {
+
+        private final int[] durations;
+        /** File indices with a known duration, ascending by duration then index. */
+        private final int[] sorted;
+        /** Position of each known file in {@link #sorted}, -1 for unknown files. */
+        private final int[] rank;
+        /** Exclusive end in {@link #sorted} of the forward window of each position. */
+        private final int[] windowEnd;
+        /** Inclusive start in {@link #sorted} of the backward window of each position. */
+        private final int[] windowStart;
+        /** File indices with an unknown duration, ascending. */
+        private final int[] unknown;
+
+        private Candidates(DurationWindow window, int[] durations) {
+            this.durations = durations;
+            int n = durations.length;
+
+            int known = 0;
+            for (int d : durations) {
+                if (d != UNKNOWN) known++;
+            }
+
+            long[] keys = new long[known];
+            unknown = new int[n - known];
+            int k = 0;
+            int u = 0;
+            for (int i = 0; i < n; i++) {
+                if (durations[i] == UNKNOWN) {
+                    unknown[u++] = i;
+                } else {
+                    keys[k++] = ((long) durations[i] << 32) | i;
+                }
+            }
+            Arrays.sort(keys);
+
+            sorted = new int[known];
+            rank = new int[n];
+            Arrays.fill(rank, -1);
+            for (int r = 0; r < known; r++) {
+                sorted[r] = (int) keys[r];
+                rank[sorted[r]] = r;
+            }
+
+            // Both window edges only move forward as the duration grows
+            windowEnd = new int[known];
+            windowStart = new int[known];
+            int end = 0;
+            int start = 0;
+            for (int r = 0; r < known; r++) {
+                int d = durations[sorted[r]];
+                end = Math.max(end, r + 1);
+                while (end < known && window.matches(d, durations[sorted[end]])) {
+                    end++;
+                }
+                windowEnd[r] = end;
+                while (!window.matches(durations[sorted[start]], d)) {
+                    start++;
+                }
+                windowStart[r] = start;
+            }
+        }
+
+        /**
+         * Returns the number of files.
+         */
+        public int size() {
+            return durations.length;
+        }
+
+        /**
+         * Returns the number of files in the unknown-duration fallback bucket.
+         */
+        public int unknownCount() {
+            return unknown.length;
+        }
+
+        /**
+         * Calls {@code consumer} with candidates of file {@code i} such that, over all
+         * {@code i}, every candidate pair is visited exactly once. Known files visit the
+         * later part of their window and every unknown file; unknown files visit the
+         * unknown files with a larger index.
+         */
+        public void forEachCandidate(int i, IntConsumer consumer) {
+            int r = rank[i];
+            if (r >= 0) {
+                for (int p = r + 1; p < windowEnd[r]; p++) {
+                    consumer.accept(sorted[p]);
+                }
+                for (int j : unknown) {
+                    consumer.accept(j);
+                }
+            } else {
+                for (int p = Arrays.binarySearch(unknown, i) + 1; p < unknown.length; p++) {
+                    consumer.accept(unknown[p]);
+                }
+            }
+        }
+
+        /**
+         * Returns every file with a larger index than {@code i} whose duration matches,
+         * ascending by index. Used by seed-based grouping, which must visit candidates
+         * in the original order.
+         */
+        public int[] candidatesAfter(int i) {
+            int r = rank[i];
+            if (r < 0) {
+                int[] all = new int[durations.length - i - 1];
+                for (int j = 0; j < all.length; j++) {
+                    all[j] = i + 1 + j;
+                }
+                return all;
+            }
+
+            int[] result = new int[windowEnd[r] - windowStart[r] - 1 + unknown.length];
+            int count = 0;
+            for (int p = windowStart[r]; p < windowEnd[r]; p++) {
+                if (sorted[p] > i) {
+                    result[count++] = sorted[p];
+                }
+            }
+            for (int j : unknown) {
+                if (j > i) {
+                    result[count++] = j;
+                }
+            }
+            int[] trimmed = Arrays.copyOf(result, count);
+            Arrays.sort(trimmed);
+            return trimmed;
+        }
+
+        /**
+         * Returns the number of candidate pairs, for logging and progress reporting.
+         */
+        public long pairCount() {
+            long pairs = 0;
+            long unknownCount = unknown.length;
+            for (int r = 0; r < sorted.length; r++) {
+                pairs += windowEnd[r] - r - 1 + unknownCount;
+            }
+            return pairs + unknownCount * (unknownCount - 1) / 2;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Metadata duplicate detection for libraries too large to load into the heap.
+ *
+ * <p>The library is streamed one row at a time. Each file is reduced to the fields
+ * duplicate matching reads and written once per {@link MetadataBlocker.BlockingKey},
+ * with that key's sort key, into a buffer bounded by a memory cap. A full buffer is
+ * sorted and spilled to a run file in a temporary directory. The runs are then merged
+ * in key order and every file is compared with the {@code window - 1} files before it,
+ * the same sorted-neighbourhood passes {@link MetadataBlocker} makes in memory.
+ *
+ * <p>Resident memory is the buffer, one read buffer per run being merged and the
+ * union-find over matched files, so it grows with the number of duplicates rather
+ * than with the library. Only the ids of grouped files are returned; callers load
+ * those files afterwards.
+ */
+public final class ExternalDuplicateDetector {
+
+    private static final Logger logger = Log4Rich.getLogger(ExternalDuplicateDetector.class);
+
+    /**
+     * System property forcing external detection on ({@code true}) or off ({@code false}).
+     * When unset, it is used for libraries estimated not to fit in half the heap.
+     */
+    public static final String EXTERNAL_PROPERTY = "mp3org.duplicates.external";
+
+    /**
+     * System property setting the memory cap of the run buffer, in megabytes.
+     */
+    public static final String MEMORY_PROPERTY = "mp3org.duplicates.memoryMB";
+
+    /**
+     * Run buffer cap used when {@link #MEMORY_PROPERTY} is not set.
+     */
+    public static final long DEFAULT_MEMORY_CAP_BYTES = 64L << 20;
+
+    /**
+     * Rough heap cost of one loaded file with its metadata and fingerprint.
+     */
+    static final long ESTIMATED_FILE_BYTES = 4096;
+
+    /** Rough heap cost of a reduced file, before its strings' characters. */
+    private static final int FILE_OVERHEAD_BYTES = 200;
+    /** Rough heap cost of one run entry, before its sort key's characters. */
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int MIN_MEMORY_CAP_BYTES = 1 << 16;
+    /** Runs merged at once; more runs are first merged into fewer, larger ones. */
+    static final int MAX_MERGE_FAN_IN = 64;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::key)
+        .thenComparing(Entry::sortKey)
+        .thenComparingLong(entry -> entry.file().getId());
+
+    /**
+     * Statistics of one run.
+     *
+     * @param files files read from the source
+     * @param entries file and key entries written to runs
+     * @param runs runs spilled while reading
+     * @param mergePasses intermediate passes needed to bring the runs under the merge fan-in
+     * @param spilledBytes bytes written to run files, across all passes
+     * @param comparisons file pairs scored
+     * @param matches pairs that joined two groups
+     * @param groups duplicate groups found
+     * @param elapsedMs total time
+     */
+    public record Stats(int files, long entries, int runs, int mergePasses, long spilledBytes,
+                        long comparisons, long matches, int groups, long elapsedMs) {}
+
+    /**
+     * Duplicate groups as file ids, each group sorted and the groups ordered by their
+     * smallest id.
+     */
+    public record Result(List<List<Long>> groups, Stats stats) {}
+
+    /**
+     * A file under one blocking key.
+     */
+    private record Entry(int key, String sortKey, MusicFile file) {}
+
+    private ExternalDuplicateDetector() {
+    }
+
+    /**
+     * Returns true if a library of this size should be compared externally, honouring
+     * {@link #EXTERNAL_PROPERTY}.
+     */
+    public static boolean appliesTo(int fileCount) {
+        String forced = System.getProperty(EXTERNAL_PROPERTY);
+        if (forced != null && !forced.isBlank()) {
+            return Boolean.parseBoolean(forced.trim());
+        }
+        return fileCount * ESTIMATED_FILE_BYTES > Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * Returns the run buffer cap from {@link #MEMORY_PROPERTY}, or the default.
+     */
+    public static long memoryCapBytes() {
+        String value = System.getProperty(MEMORY_PROPERTY);
+        if (value != null) {
+            try {
+                return Math.max(MIN_MEMORY_CAP_BYTES, Long.parseLong(value.trim()) << 20);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid " + MEMORY_PROPERTY + ": " + value);
+            }
+        }
+        return DEFAULT_MEMORY_CAP_BYTES;
+    }
+
+    /**
+     * Finds the metadata duplicates of the whole library, streamed from the database.
+     */
+    public static Result findDuplicates(FuzzySearchConfig config) {
+        return findDuplicates(DatabaseManager::forEachMusicFile, config, memoryCapBytes(),
+            MetadataBlocker.DEFAULT_WINDOW, null);
+    }
+
+    /**
+     * Finds metadata duplicates among the files of a source.
+     *
+     * @param source hands every file of the library to the given consumer, once
+     * @param config fuzzy matching configuration
+     * @param memoryCapBytes approximate heap the run buffer may use
+     * @param window files each file is paired with in every key's order, itself included
+     * @param tempParent directory to create the run directory in, or null for the system default
+     * @return the duplicate groups and the statistics of the run
+     * @throws UncheckedIOException if the run files cannot be written or read
+     */
+    public static Result findDuplicates(Consumer<Consumer<MusicFile>> source, FuzzySearchConfig config,
+                                        long memoryCapBytes, int window, Path tempParent) {
+        long startTime = System.currentTimeMillis();
+        Path runDirectory = null;
+        try {
+            runDirectory = tempParent != null
+                ? Files.createTempDirectory(tempParent, "mp3org-duplicates")
+                : Files.createTempDirectory("mp3org-duplicates");
+            RunWriter writer = new RunWriter(runDirectory, Math.max(MIN_MEMORY_CAP_BYTES, memoryCapBytes),
+                FuzzyMatcher.metadataKeyVersion(config), Math.max(1, config.getDurationToleranceSeconds()), config);
+            source.accept(writer::add);
+            List<Path> runs = writer.finish();
+
+            int mergePasses = 0;
+            while (runs.size() > MAX_MERGE_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += MAX_MERGE_FAN_IN) {
+                    List<Path> batch = runs.subList(from, Math.min(runs.size(), from + MAX_MERGE_FAN_IN));
+                    Path target = runDirectory.resolve("merge-" + mergePasses + "-" + merged.size());
+                    try (DataOutputStream out = openRun(target)) {
+                        merge(batch, entry -> writeEntry(out, entry));
+                    }
+                    writer.spilledBytes += Files.size(target);
+                    for (Path run : batch) {
+                        Files.delete(run);
+                    }
+                    merged.add(target);
+                }
+                runs = merged;
+                mergePasses++;
+            }
+
+            NeighbourhoodScan scan = new NeighbourhoodScan(config, window);
+            merge(runs, scan::accept);
+
+            List<List<Long>> groups = scan.groups();
+            Stats stats = new Stats(writer.files, writer.entries, writer.runs.size(), mergePasses,
+                writer.spilledBytes, scan.comparisons, scan.matches, groups.size(),
+                System.currentTimeMillis() - startTime);
+            logger.info("External duplicate detection: {} files, {} runs ({} merge passes, {} bytes spilled), "
+                + "{} comparisons, {} groups in {}ms", stats.files(), stats.runs(), stats.mergePasses(),
+                stats.spilledBytes(), stats.comparisons(), stats.groups(), stats.elapsedMs());
+            return new Result(groups, stats);
+        } catch (IOException e) {
+            throw new UncheckedIOException("External duplicate detection failed", e);
+        } finally {
+            deleteDirectory(runDirectory);
+        }
+    }
+
+    /**
+     * Buffers entries up to the memory cap and spills them to sorted runs.
+     */
+    private static final class RunWriter {
+        private final Path directory;
+        private final long memoryCapBytes;
+        private final int keyVersion;
+        private final int bucketWidth;
+        private final FuzzySearchConfig config;
+        private final List<Entry> buffer = new ArrayList<>();
+        private final List<Path> runs = new ArrayList<>();
+        private long bufferedBytes;
+        private int files;
+        private long entries;
+        private long spilledBytes;
+
+        RunWriter(Path directory, long memoryCapBytes, int keyVersion, int bucketWidth, FuzzySearchConfig config) {
+            this.directory = directory;
+            this.memoryCapBytes = memoryCapBytes;
+            this.keyVersion = keyVersion;
+            this.bucketWidth = bucketWidth;
+            this.config = config;
+        }
+
+        void add(MusicFile source) {
+            files++;
+            MusicFile file = reduce(source, config, keyVersion);
+            String[] normalized = { file.getTitleKey(), file.getArtistKey(), file.getAlbumKey() };
+            int duration = DurationWindow.metadataDuration(file);
+            boolean added = false;
+            for (MetadataBlocker.BlockingKey key : MetadataBlocker.BlockingKey.values()) {
+                String sortKey = MetadataBlocker.sortKey(key, normalized, duration, bucketWidth);
+                if (sortKey == null) continue;
+                buffer.add(new Entry(key.ordinal(), sortKey, file));
+                bufferedBytes += ENTRY_OVERHEAD_BYTES + 2L * sortKey.length();
+                entries++;
+                added = true;
+            }
+            if (added) {
+                // The reduced file is shared by its entries, so it is counted once
+                bufferedBytes += FILE_OVERHEAD_BYTES + 2L * (length(file.getTitle()) + length(file.getArtist())
+                    + length(file.getAlbum()) + length(normalized[0]) + length(normalized[1]) + length(normalized[2]));
+            }
+            if (bufferedBytes >= memoryCapBytes) {
+                spill();
+            }
+        }
+
+        List<Path> finish() {
+            if (!buffer.isEmpty()) {
+                spill();
+            }
+            return new ArrayList<>(runs);
+        }
+
+        private void spill() {
+            buffer.sort(ORDER);
+            Path run = directory.resolve("run-" + runs.size());
+            try (DataOutputStream out = openRun(run)) {
+                for (Entry entry : buffer) {
+                    writeEntry(out, entry);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write duplicate run " + run, e);
+            }
+            try {
+                spilledBytes += Files.size(run);
+            } catch (IOException e) {
+                // Statistics only
+            }
+            runs.add(run);
+            buffer.clear();
+            bufferedBytes = 0;
+        }
+    }
+
+    /**
+     * Copies the fields duplicate matching reads into a new file, computing the
+     * normalized metadata keys if they are missing or stale. The copy drops the
+     * fingerprint and everything else the comparison doesn't need.
+     */
+    private static MusicFile reduce(MusicFile source, FuzzySearchConfig config, int keyVersion) {
+        if (source.getMetadataKeyVersion() != keyVersion) {
+            FuzzyMatcher.computeMetadataKeys(source, config);
+        }
+        MusicFile file = new MusicFile();
+        file.setId(source.getId());
+        file.setTitle(source.getTitle());
+        file.setArtist(source.getArtist());
+        file.setAlbum(source.getAlbum());
+        file.setDurationSeconds(source.getDurationSeconds());
+        file.setTrackNumber(source.getTrackNumber());
+        file.setMetadataKeys(source.getTitleKey(), source.getArtistKey(), source.getAlbumKey(),
+            source.getMetadataKeyVersion());
+        return file;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Compares each entry with the entries before it in the same key's order and
+     * unions the matches.
+     */
+    private static final class NeighbourhoodScan {
+        private final FuzzySearchConfig config;
+        private final DurationWindow pruning;
+        private final int reach;
+        private final ArrayDeque<Entry> window = new ArrayDeque<>();
+        private final IdUnionFind unionFind = new IdUnionFind();
+        private int currentKey = -1;
+        private long comparisons;
+        private long matches;
+
+        NeighbourhoodScan(FuzzySearchConfig config, int window) {
+            this.config = config;
+            this.pruning = FuzzyMatcher.durationPruningWindow(config);
+            this.reach = Math.max(1, window) - 1;
+        }
+
+        void accept(Entry entry) {
+            if (entry.key() != currentKey) {
+                window.clear();
+                currentKey = entry.key();
+            }
+            MusicFile file = entry.file();
+            for (Entry previous : window) {
+                MusicFile other = previous.file();
+                // Pairs proposed by an earlier key may already be joined
+                if (unionFind.connected(other.getId(), file.getId())) continue;
+                if (pruning != null && !pruning.matches(DurationWindow.metadataDuration(other),
+                        DurationWindow.metadataDuration(file))) continue;
+                comparisons++;
+                if (FuzzyMatcher.areDuplicates(other, file, config)) {
+                    unionFind.union(other.getId(), file.getId());
+                    matches++;
+                }
+            }
+            if (reach > 0) {
+                window.addLast(entry);
+                if (window.size() > reach) {
+                    window.removeFirst();
+                }
+            }
+        }
+
+        List<List<Long>> groups() {
+            return unionFind.groups();
+        }
+    }
+
+    /**
+     * Union-find over file ids that only holds ids which have matched something.
+     * The smallest id of a group is its root.
+     */
+    private static final class IdUnionFind {
+        private final Map<Long, Long> parent = new HashMap<>();
+
+        long find(long id) {
+            Long p = parent.get(id);
+            if (p == null) {
+                return id;
+            }
+            long root = id;
+            while (p != null && p != root) {
+                root = p;
+                p = parent.get(root);
+            }
+            // Compress the path
+            long current = id;
+            while (current != root) {
+                long next = parent.get(current);
+                parent.put(current, root);
+                current = next;
+            }
+            return root;
+        }
+
+        boolean connected(long a, long b) {
+            return find(a) == find(b);
+        }
+
+        void union(long a, long b) {
+            long rootA = find(a);
+            long rootB = find(b);
+            if (rootA == rootB) return;
+            long root = Math.min(rootA, rootB);
+            long child = Math.max(rootA, rootB);
+            parent.put(child, root);
+            parent.putIfAbsent(root, root);
+        }
+
+        List<List<Long>> groups() {
+            Map<Long, List<Long>> byRoot = new TreeMap<>();
+            for (Long id : parent.keySet()) {
+                byRoot.computeIfAbsent(find(id), k -> new ArrayList<>()).add(id);
+            }
+            List<List<Long>> groups = new ArrayList<>(byRoot.size());
+            for (List<Long> group : byRoot.values()) {
+                group.sort(null);
+                groups.add(group);
+            }
+            return groups;
+        }
+    }
+
+    /**
+     * Sequential reader of one run, holding its next entry.
+     */
+    private static final class RunReader implements AutoCloseable {
+        private final DataInputStream in;
+        private Entry head;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_BYTES));
+            advance();
+        }
+
+        void advance() throws IOException {
+            head = readEntry(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private interface EntrySink {
+        void accept(Entry entry) throws IOException;
+    }
+
+    /**
+     * Merges sorted runs, handing every entry to the sink in order.
+     */
+    private static void merge(List<Path> runs, EntrySink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> ORDER.compare(a.head, b.head));
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.head != null) {
+                    queue.add(reader);
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                sink.accept(reader.head);
+                reader.advance();
+                if (reader.head != null) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static DataOutputStream openRun(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_BYTES));
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        MusicFile file = entry.file();
+        out.writeByte(entry.key());
+        writeString(out, entry.sortKey());
+        out.writeLong(file.getId());
+        writeString(out, file.getTitle());
+        writeString(out, file.getArtist());
+        writeString(out, file.getAlbum());
+        writeString(out, file.getTitleKey());
+        writeString(out, file.getArtistKey());
+        writeString(out, file.getAlbumKey());
+        out.writeInt(file.getMetadataKeyVersion());
+        out.writeInt(file.getDurationSeconds() != null ? file.getDurationSeconds() : NULL_INT);
+        out.writeInt(file.getTrackNumber() != null ? file.getTrackNumber() : NULL_INT);
+    }
+
+    /**
+     * Reads the next entry of a run, or returns null at the end of it.
+     */
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        int key = in.read();
+        if (key < 0) {
+            return null;
+        }
+        try {
+            String sortKey = readString(in);
+            MusicFile file = new MusicFile();
+            file.setId(in.readLong());
+            file.setTitle(readString(in));
+            file.setArtist(readString(in));
+            file.setAlbum(readString(in));
+            String titleKey = readString(in);
+            String artistKey = readString(in);
+            String albumKey = readString(in);
+            file.setMetadataKeys(titleKey, artistKey, albumKey, in.readInt());
+            int duration = in.readInt();
+            file.setDurationSeconds(duration != NULL_INT ? duration : null);
+            int trackNumber = in.readInt();
+            file.setTrackNumber(trackNumber != NULL_INT ? trackNumber : null);
+            return new Entry(key, sortKey, file);
+        } catch (EOFException e) {
+            throw new IOException("Truncated duplicate run", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete duplicate run " + path);
+                }
+            });
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warn("Failed to delete duplicate run directory " + directory);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.hasting.util;
+
+/**
+ * Interface for components that keep fingerprints in memory and need to hear about
+ * changes made through {@link DatabaseManager}.
+ *
+ * <p>Callbacks run on the thread that made the change, while it holds the
+ * {@code DatabaseManager} lock, so they should return quickly and must not call
+ * back into the database.
+ */
+public interface FingerprintChangeListener {
+
+    /**
+     * Called after a file's fingerprint was stored.
+     *
+     * @param fileId the database ID of the music file
+     * @param segments the stored fingerprint segments
+     * @param duration the duration in seconds used for fingerprinting
+     */
+    void onFingerprintUpdated(long fileId, int[] segments, int duration);
+
+    /**
+     * Called after a music file was deleted from the database.
+     *
+     * @param fileId the database ID of the deleted file
+     */
+    void onMusicFileDeleted(long fileId);
+
+    /**
+     * Called after every music file was deleted from the database.
+     */
+    void onAllMusicFilesDeleted();
+}
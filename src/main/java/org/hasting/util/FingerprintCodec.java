@@ -0,0 +1,86 @@
+package org.hasting.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Converts Chromaprint fingerprints between their storage forms.
+ *
+ * <p>Fingerprints are persisted in {@code music_files.fingerprint_blob} as packed
+ * little-endian 32-bit integers, four bytes per segment. Loading them is a bulk
+ * copy into an {@code int[]} with no intermediate strings. The legacy comma-separated
+ * text form is still produced on demand for display and older callers.
+ *
+ * @see FingerprintMatcher#parseFingerprint(String)
+ */
+public final class FingerprintCodec {
+
+    private static final int[] EMPTY = new int[0];
+
+    private FingerprintCodec() {
+    }
+
+    /**
+     * Packs fingerprint segments into little-endian bytes.
+     *
+     * @param segments fingerprint segments (may be null)
+     * @return packed bytes, or null if there are no segments
+     */
+    public static byte[] pack(int[] segments) {
+        if (segments == null || segments.length == 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(segments.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(segments);
+        return buffer.array();
+    }
+
+    /**
+     * Unpacks little-endian bytes into fingerprint segments.
+     * Trailing bytes that do not form a whole segment are ignored.
+     *
+     * @param packed bytes written by {@link #pack(int[])} (may be null)
+     * @return the segments, or an empty array if there are none
+     */
+    public static int[] unpack(byte[] packed) {
+        if (packed == null || packed.length < Integer.BYTES) {
+            return EMPTY;
+        }
+        IntBuffer view = asIntBuffer(packed);
+        int[] segments = new int[view.remaining()];
+        view.get(segments);
+        return segments;
+    }
+
+    /**
+     * Returns a read-only little-endian int view over packed bytes without copying.
+     *
+     * @param packed bytes written by {@link #pack(int[])}
+     * @return an int view over the bytes
+     */
+    public static IntBuffer asIntBuffer(byte[] packed) {
+        return ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Formats segments as the legacy comma-separated text form.
+     * Segments are written as unsigned values, matching fpcalc's raw output.
+     *
+     * @param segments fingerprint segments (may be null)
+     * @return the text form, or null if there are no segments
+     */
+    public static String format(int[] segments) {
+        if (segments == null || segments.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(segments.length * 11);
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(Integer.toUnsignedString(segments[i]));
+        }
+        return sb.toString();
+    }
+}
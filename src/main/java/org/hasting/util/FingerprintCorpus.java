@@ -0,0 +1,514 @@
+package org.hasting.util;
+
+import com.log4rich.Log4Rich;
+import com.log4rich.core.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+
+/**
+ * Memory-mapped sidecar file holding the packed fingerprints of a music database.
+ *
+ * <p>Duplicate scans only need file ids and fingerprint segments, so instead of
+ * materializing every {@code MusicFile} they read this file through
+ * {@link FileChannel#map}. Segments stay off-heap and are exposed as
+ * {@link IntBuffer} views, so a scan over hundreds of thousands of fingerprints
+ * starts without loading them into the Java heap.
+ *
+ * <p>The file is a 64-byte header followed by fixed-size slots. Each slot holds the
+ * file id (long), the segment count (int), four bytes of padding and room for
+ * {@link #getCapacity()} little-endian segments. A slot with id 0 is free. Fixed
+ * slots let {@link #put(long, int[])} rewrite a single fingerprint in place when
+ * {@link DatabaseManager#updateFingerprint(long, int[], int)} runs. A fingerprint
+ * longer than the capacity cannot be stored; the corpus then reports itself
+ * {@linkplain #needsRebuild() stale} and is rebuilt with a larger capacity.
+ *
+ * <p>Slots are mapped in chunks of about 64 MB so the file can grow past the 2 GB
+ * limit of a single mapping. All mutators are synchronized. While any
+ * {@link Snapshot} is open, updates never overwrite a slot the snapshot can see:
+ * they go to a new slot and the old one is freed only once the last snapshot closes.
+ *
+ * <p>The header also records a {@linkplain #getGeneration() generation}, the
+ * database's count of fingerprint changes that the file mirrors. The database
+ * compares it with its own count when opening the file, so a corpus left behind by
+ * a crash, or paired with a database restored from a backup, is rebuilt rather than
+ * trusted. A corpus replaced by a rebuild is {@linkplain #retire() retired}: its
+ * file is deleted once the snapshots still reading it have closed.
+ *
+ * @see FingerprintMatcher#groupDuplicateIds(Snapshot, double, FingerprintMatcher.MatchingMode)
+ */
+public class FingerprintCorpus implements Closeable {
+
+    private static final Logger logger = Log4Rich.getLogger(FingerprintCorpus.class);
+
+    /**
+     * Suffix appended to the database path to name the corpus file.
+     */
+    public static final String FILE_SUFFIX = ".fpcorpus";
+
+    /**
+     * Default number of segments per slot; fpcalc produces about 950 for 120 seconds of audio.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int MAGIC = 0x4D504643; // "MPFC"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final long CHUNK_BYTES = 64L << 20;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_SLOT_COUNT = 12;
+    private static final int OFFSET_GENERATION = 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private final int capacity;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private final List<Integer> pendingFreeSlots = new ArrayList<>();
+    private int slotCount;
+    private int openSnapshots;
+    private boolean stale;
+    private boolean closed;
+    private boolean retired;
+
+    private FingerprintCorpus(Path path, FileChannel channel, int capacity, boolean create) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (create) {
+            header.putInt(OFFSET_MAGIC, MAGIC);
+            header.putInt(OFFSET_VERSION, VERSION);
+            header.putInt(OFFSET_CAPACITY, capacity);
+            header.putInt(OFFSET_SLOT_COUNT, 0);
+            header.putLong(OFFSET_GENERATION, -1L);
+        }
+        this.capacity = header.getInt(OFFSET_CAPACITY);
+        this.recordBytes = RECORD_HEADER_BYTES + this.capacity * Integer.BYTES;
+        this.recordsPerChunk = (int) Math.max(1, CHUNK_BYTES / recordBytes);
+        this.slotCount = header.getInt(OFFSET_SLOT_COUNT);
+
+        loadSlots();
+    }
+
+    /**
+     * Opens the corpus at the given path, creating an empty one if the file is missing
+     * or was written by an incompatible version.
+     *
+     * @param path corpus file location
+     * @param capacity segments per slot when a new file is created
+     * @return the opened corpus
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static FingerprintCorpus open(Path path, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean valid = false;
+            if (channel.size() >= HEADER_BYTES) {
+                ByteBuffer probe = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(probe, 0);
+                valid = probe.getInt(OFFSET_MAGIC) == MAGIC
+                    && probe.getInt(OFFSET_VERSION) == VERSION
+                    && probe.getInt(OFFSET_CAPACITY) > 0;
+            }
+            if (!valid) {
+                channel.truncate(0);
+            }
+            return new FingerprintCorpus(path, channel, capacity, !valid);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new, empty corpus at the given path, replacing any existing file.
+     *
+     * @param path corpus file location
+     * @param capacity segments per slot
+     * @return the new corpus
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static FingerprintCorpus create(Path path, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new FingerprintCorpus(path, channel, capacity, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void loadSlots() throws IOException {
+        for (int slot = 0; slot < slotCount; slot++) {
+            ByteBuffer chunk = chunkFor(slot);
+            int offset = offsetInChunk(slot);
+            long fileId = chunk.getLong(offset);
+            int length = chunk.getInt(offset + 8);
+            if (fileId <= 0 || length < 0 || length > capacity) {
+                freeSlots.add(slot);
+                continue;
+            }
+            Integer previous = slotsById.put(fileId, slot);
+            if (previous != null) {
+                clearSlot(previous);
+                freeSlots.add(previous);
+            }
+        }
+    }
+
+    /**
+     * Stores or replaces the fingerprint of a file.
+     *
+     * @param fileId database id of the music file
+     * @param segments fingerprint segments; null or empty removes the entry
+     * @return false if the fingerprint exceeds the slot capacity and the corpus needs a rebuild
+     */
+    public synchronized boolean put(long fileId, int[] segments) {
+        ensureOpen();
+        if (segments == null || segments.length == 0) {
+            remove(fileId);
+            return true;
+        }
+        Integer existing = slotsById.get(fileId);
+        if (segments.length > capacity) {
+            if (existing != null) {
+                slotsById.remove(fileId);
+                releaseSlot(existing);
+            }
+            stale = true;
+            logger.info("Fingerprint for file {} has {} segments, above corpus capacity {}; corpus needs rebuild",
+                fileId, segments.length, capacity);
+            return false;
+        }
+
+        try {
+            int slot;
+            if (existing != null && openSnapshots == 0) {
+                slot = existing;
+            } else {
+                slot = allocateSlot();
+                if (existing != null) {
+                    releaseSlot(existing);
+                }
+            }
+            writeRecord(slot, fileId, segments);
+            slotsById.put(fileId, slot);
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to write fingerprint for file {} to corpus: {}", fileId, e.getMessage());
+            stale = true;
+            return false;
+        }
+    }
+
+    /**
+     * Removes the fingerprint of a file, if present.
+     *
+     * @param fileId database id of the music file
+     */
+    public synchronized void remove(long fileId) {
+        ensureOpen();
+        Integer slot = slotsById.remove(fileId);
+        if (slot != null) {
+            releaseSlot(slot);
+        }
+    }
+
+    /**
+     * Removes every fingerprint. Slots are kept for reuse.
+     */
+    public synchronized void clear() {
+        ensureOpen();
+        for (Integer slot : new ArrayList<>(slotsById.values())) {
+            releaseSlot(slot);
+        }
+        slotsById.clear();
+    }
+
+    /**
+     * Returns true if the file holds a fingerprint for the given id.
+     */
+    public synchronized boolean contains(long fileId) {
+        return slotsById.containsKey(fileId);
+    }
+
+    /**
+     * Returns the number of fingerprints stored.
+     */
+    public synchronized int size() {
+        return slotsById.size();
+    }
+
+    /**
+     * Returns the number of segments each slot can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the location of the corpus file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the generation recorded in the header, or -1 for a new file that
+     * mirrors no database state yet.
+     */
+    public synchronized long getGeneration() {
+        return header.getLong(OFFSET_GENERATION);
+    }
+
+    /**
+     * Records the database generation the stored fingerprints now mirror.
+     *
+     * @param generation the database's count of fingerprint changes
+     */
+    public synchronized void setGeneration(long generation) {
+        ensureOpen();
+        header.putLong(OFFSET_GENERATION, generation);
+    }
+
+    /**
+     * Returns true if an update could not be stored and the corpus no longer mirrors the database.
+     */
+    public synchronized boolean needsRebuild() {
+        return stale;
+    }
+
+    /**
+     * Captures the fingerprints currently stored, in slot order.
+     * The returned views read the mapped file directly; close the snapshot when done
+     * so freed slots can be reused.
+     *
+     * @param include filter on file ids; only matching fingerprints are captured
+     * @return a snapshot of the matching fingerprints
+     */
+    public synchronized Snapshot snapshot(LongPredicate include) {
+        ensureOpen();
+        long[] ids = new long[slotsById.size()];
+        IntBuffer[] views = new IntBuffer[ids.length];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            ByteBuffer chunk = chunks.get(slot / recordsPerChunk);
+            int offset = offsetInChunk(slot);
+            long fileId = chunk.getLong(offset);
+            if (fileId <= 0 || !include.test(fileId)) {
+                continue;
+            }
+            int length = chunk.getInt(offset + 8);
+            ids[count] = fileId;
+            views[count] = chunk.slice(offset + RECORD_HEADER_BYTES, length * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer()
+                .asReadOnlyBuffer();
+            count++;
+        }
+        openSnapshots++;
+        return new Snapshot(this, count, ids, views);
+    }
+
+    private synchronized void releaseSnapshot() {
+        if (openSnapshots > 0 && --openSnapshots == 0) {
+            freeSlots.addAll(pendingFreeSlots);
+            pendingFreeSlots.clear();
+            if (retired) {
+                deleteFile();
+            }
+        }
+    }
+
+    /**
+     * Closes the corpus and deletes its file once no snapshot is reading it, instead of
+     * replacing a file that is still mapped. If the file cannot be deleted yet, as on
+     * Windows while a mapping is still held, it is left for the next startup to remove.
+     *
+     * @throws IOException if the file cannot be flushed and closed
+     */
+    public synchronized void retire() throws IOException {
+        close();
+        retired = true;
+        if (openSnapshots == 0) {
+            deleteFile();
+        }
+    }
+
+    private void deleteFile() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Retired fingerprint corpus {} not deleted yet: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Flushes the mapped file and closes it. Open snapshots remain readable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        header.force();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        chunks.clear();
+        channel.close();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Fingerprint corpus is closed: " + path);
+        }
+    }
+
+    private int allocateSlot() throws IOException {
+        if (openSnapshots == 0 && !freeSlots.isEmpty()) {
+            return freeSlots.poll();
+        }
+        int slot = slotCount;
+        chunkFor(slot);
+        slotCount++;
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        clearSlot(slot);
+        if (openSnapshots == 0) {
+            freeSlots.add(slot);
+        } else {
+            pendingFreeSlots.add(slot);
+        }
+    }
+
+    private void clearSlot(int slot) {
+        ByteBuffer chunk = chunks.get(slot / recordsPerChunk);
+        int offset = offsetInChunk(slot);
+        chunk.putLong(offset, 0L);
+        chunk.putInt(offset + 8, 0);
+    }
+
+    private void writeRecord(int slot, long fileId, int[] segments) throws IOException {
+        ByteBuffer chunk = chunkFor(slot);
+        int offset = offsetInChunk(slot);
+        chunk.slice(offset + RECORD_HEADER_BYTES, segments.length * Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asIntBuffer()
+            .put(segments);
+        chunk.putInt(offset + 8, segments.length);
+        chunk.putLong(offset, fileId);
+        if (header.getInt(OFFSET_SLOT_COUNT) < slotCount) {
+            header.putInt(OFFSET_SLOT_COUNT, slotCount);
+        }
+    }
+
+    private ByteBuffer chunkFor(int slot) throws IOException {
+        int index = slot / recordsPerChunk;
+        while (chunks.size() <= index) {
+            long chunkSize = (long) recordsPerChunk * recordBytes;
+            long position = HEADER_BYTES + chunks.size() * chunkSize;
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.add(chunk);
+        }
+        return chunks.get(index);
+    }
+
+    private int offsetInChunk(int slot) {
+        return (slot % recordsPerChunk) * recordBytes;
+    }
+
+    /**
+     * Point-in-time view of the fingerprints in a corpus.
+     * Index {@code i} identifies the same fingerprint in {@link #fileId(int)} and
+     * {@link #segments(int)}.
+     */
+    public static final class Snapshot implements AutoCloseable {
+        private final FingerprintCorpus corpus;
+        private final int size;
+        private final long[] fileIds;
+        private final IntBuffer[] segments;
+        private boolean closed;
+
+        private Snapshot(FingerprintCorpus corpus, int size, long[] fileIds, IntBuffer[] segments) {
+            this.corpus = corpus;
+            this.size = size;
+            this.fileIds = fileIds;
+            this.segments = segments;
+        }
+
+        /**
+         * Returns the number of fingerprints captured.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the database id of the file at the given index.
+         */
+        public long fileId(int index) {
+            return fileIds[index];
+        }
+
+        /**
+         * Returns a read-only view of the segments at the given index, starting at position 0.
+         */
+        public IntBuffer segments(int index) {
+            return segments[index];
+        }
+
+        /**
+         * Returns the segment views of all captured fingerprints.
+         */
+        public IntBuffer[] allSegments() {
+            return Arrays.copyOf(segments, size);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                corpus.releaseSnapshot();
+            }
+        }
+    }
+}
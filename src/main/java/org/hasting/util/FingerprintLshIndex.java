@@ -0,0 +1,253 @@
+package org.hasting.util;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Locality-sensitive hash index over Chromaprint fingerprints, used to generate
+ * candidate pairs for duplicate detection without comparing every pair.
+ *
+ * <p>{@link FingerprintMatcher#calculateSimilarity(int[], int[])} compares segments
+ * position by position, so the index is keyed the same way. Every 32-bit segment at
+ * position {@code p} is split into two 16-bit bands, and each band produces one key
+ * made of the position, the band number and the band bits. Two fingerprints become
+ * candidates when they agree exactly on at least one aligned band.
+ *
+ * <p>For a pair at 85% similarity a single band survives with probability around
+ * 0.85<sup>16</sup> (about 7%), so across a few hundred bands a true duplicate is
+ * almost never missed, while unrelated fingerprints share a key with probability
+ * of roughly one in 65,536 per band. Buckets larger than {@code maxBucketSize} are
+ * skipped; those are low-information keys such as digital silence that would
+ * otherwise pull thousands of unrelated files into the candidate set.
+ *
+ * <p>The index is immutable once built and safe to query from multiple threads.
+ * Fingerprints are read through {@link IntBuffer} views, so the index can be built
+ * over heap arrays or over a memory-mapped {@link FingerprintCorpus}. Entries are stored as a single sorted {@code long[]} of
+ * {@code (key << 32) | fingerprintIndex}, which keeps it compact and avoids boxing.
+ *
+ * @see FingerprintMatcher#groupDuplicates(java.util.List, double, FingerprintMatcher.MatchingMode)
+ */
+public class FingerprintLshIndex {
+
+    /**
+     * Number of leading segments indexed per fingerprint (about 30 seconds of audio).
+     */
+    public static final int DEFAULT_MAX_POSITIONS = 256;
+
+    /**
+     * Buckets holding more fingerprints than this are treated as uninformative and skipped.
+     */
+    public static final int DEFAULT_MAX_BUCKET_SIZE = 4096;
+
+    private static final int BANDS_PER_SEGMENT = 2;
+    private static final int BAND_BITS = 16;
+    private static final int BAND_MASK = 0xFFFF;
+    private static final int MAX_POSITION_LIMIT = 1 << 14;
+
+    private final IntBuffer[] fingerprints;
+    private final long[] entries;
+    private final int maxPositions;
+    private final int maxBucketSize;
+
+    /**
+     * Builds an index with the default band and bucket settings.
+     *
+     * @param fingerprints parsed fingerprints; the array index is the id used in queries
+     */
+    public FingerprintLshIndex(int[][] fingerprints) {
+        this(fingerprints, DEFAULT_MAX_POSITIONS, DEFAULT_MAX_BUCKET_SIZE);
+    }
+
+    /**
+     * Builds an index with the default band and bucket settings over buffer views.
+     *
+     * @param fingerprints fingerprint views starting at position 0; the array index is the id used in queries
+     */
+    public FingerprintLshIndex(IntBuffer[] fingerprints) {
+        this(fingerprints, DEFAULT_MAX_POSITIONS, DEFAULT_MAX_BUCKET_SIZE);
+    }
+
+    /**
+     * Builds an index over the given fingerprints.
+     *
+     * @param fingerprints parsed fingerprints; the array index is the id used in queries
+     * @param maxPositions number of leading segments to index per fingerprint
+     * @param maxBucketSize buckets larger than this are skipped during queries
+     */
+    public FingerprintLshIndex(int[][] fingerprints, int maxPositions, int maxBucketSize) {
+        this(wrapAll(fingerprints), maxPositions, maxBucketSize);
+    }
+
+    /**
+     * Builds an index over the given fingerprint views.
+     *
+     * @param fingerprints fingerprint views starting at position 0; the array index is the id used in queries
+     * @param maxPositions number of leading segments to index per fingerprint
+     * @param maxBucketSize buckets larger than this are skipped during queries
+     */
+    public FingerprintLshIndex(IntBuffer[] fingerprints, int maxPositions, int maxBucketSize) {
+        if (maxPositions <= 0 || maxPositions > MAX_POSITION_LIMIT) {
+            throw new IllegalArgumentException("maxPositions must be between 1 and " + MAX_POSITION_LIMIT);
+        }
+        if (maxBucketSize < 2) {
+            throw new IllegalArgumentException("maxBucketSize must be at least 2");
+        }
+        this.fingerprints = fingerprints;
+        this.maxPositions = maxPositions;
+        this.maxBucketSize = maxBucketSize;
+        this.entries = buildEntries();
+    }
+
+    private static IntBuffer[] wrapAll(int[][] fingerprints) {
+        IntBuffer[] wrapped = new IntBuffer[fingerprints.length];
+        for (int i = 0; i < fingerprints.length; i++) {
+            wrapped[i] = fingerprints[i] == null ? null : IntBuffer.wrap(fingerprints[i]);
+        }
+        return wrapped;
+    }
+
+    private long[] buildEntries() {
+        int total = 0;
+        for (IntBuffer fp : fingerprints) {
+            total += indexedLength(fp) * BANDS_PER_SEGMENT;
+        }
+
+        long[] result = new long[total];
+        int pos = 0;
+        for (int i = 0; i < fingerprints.length; i++) {
+            IntBuffer fp = fingerprints[i];
+            int length = indexedLength(fp);
+            for (int p = 0; p < length; p++) {
+                int segment = fp.get(p);
+                for (int band = 0; band < BANDS_PER_SEGMENT; band++) {
+                    result[pos++] = (bandKey(p, band, segment) << 32) | i;
+                }
+            }
+        }
+
+        Arrays.parallelSort(result);
+        return result;
+    }
+
+    private int indexedLength(IntBuffer fp) {
+        return fp == null ? 0 : Math.min(fp.limit(), maxPositions);
+    }
+
+    /**
+     * Computes the key for one band of the segment at the given position.
+     * Keys use 31 bits: 14 for position, 1 for band and 16 for the band bits.
+     */
+    static long bandKey(int position, int band, int segment) {
+        int bits = (segment >>> (band * BAND_BITS)) & BAND_MASK;
+        return ((long) position << 17) | ((long) band << 16) | bits;
+    }
+
+    /**
+     * Returns the number of fingerprints in the index.
+     */
+    public int size() {
+        return fingerprints.length;
+    }
+
+    /**
+     * Returns the total number of band entries stored in the index.
+     */
+    public int entryCount() {
+        return entries.length;
+    }
+
+    /**
+     * Creates a scratch array suitable for the {@code seen} argument of the query methods.
+     * Each querying thread needs its own.
+     */
+    public int[] newScratch() {
+        return new int[fingerprints.length];
+    }
+
+    /**
+     * Visits every indexed fingerprint that shares a band with fingerprint {@code index}
+     * and has a higher index, each at most once. Used to enumerate candidate pairs
+     * (i, j) with i &lt; j.
+     *
+     * @param index the fingerprint whose candidates are wanted
+     * @param seen per-thread scratch array from {@link #newScratch()}
+     * @param action receives each candidate index
+     */
+    public void forEachCandidateAfter(int index, int[] seen, IntConsumer action) {
+        forEachCandidate(fingerprints[index], index, index + 1, seen, action);
+    }
+
+    /**
+     * Visits every indexed fingerprint that shares a band with the query fingerprint,
+     * each at most once.
+     *
+     * @param query fingerprint to look up (need not be part of the index)
+     * @param seen per-thread scratch array from {@link #newScratch()}
+     * @param stamp a value not used with {@code seen} since it was last cleared
+     * @param action receives each candidate index
+     */
+    public void forEachCandidate(int[] query, int[] seen, int stamp, IntConsumer action) {
+        forEachCandidate(IntBuffer.wrap(query), -1, stamp, seen, action);
+    }
+
+    private void forEachCandidate(IntBuffer query, int minExclusive, int stamp, int[] seen, IntConsumer action) {
+        int length = indexedLength(query);
+        for (int p = 0; p < length; p++) {
+            int segment = query.get(p);
+            for (int band = 0; band < BANDS_PER_SEGMENT; band++) {
+                long key = bandKey(p, band, segment);
+                int start = lowerBound(key << 32);
+                int end = lowerBound((key + 1) << 32);
+                if (end - start > maxBucketSize) {
+                    continue;
+                }
+                for (int e = start; e < end; e++) {
+                    int candidate = (int) entries[e];
+                    if (candidate > minExclusive && seen[candidate] != stamp) {
+                        seen[candidate] = stamp;
+                        action.accept(candidate);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the two indexed fingerprints share at least one usable band.
+     */
+    public boolean isCandidatePair(int i, int j) {
+        IntBuffer a = fingerprints[i];
+        IntBuffer b = fingerprints[j];
+        int length = Math.min(indexedLength(a), indexedLength(b));
+        for (int p = 0; p < length; p++) {
+            int segmentA = a.get(p);
+            int segmentB = b.get(p);
+            for (int band = 0; band < BANDS_PER_SEGMENT; band++) {
+                long keyA = bandKey(p, band, segmentA);
+                if (keyA == bandKey(p, band, segmentB)) {
+                    int start = lowerBound(keyA << 32);
+                    int end = lowerBound((keyA + 1) << 32);
+                    if (end - start <= maxBucketSize) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -4,9 +4,11 @@ import org.hasting.model.MusicFile;
 import com.log4rich.core.Logger;
 import com.log4rich.Log4Rich;
 
+import java.nio.IntBuffer;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -29,6 +31,14 @@ public class FingerprintMatcher {
      */
     private static final int MIN_FINGERPRINT_LENGTH = 10;
 
+    /**
+     * System property turning the fingerprint duration window on ({@code true}). The
+     * window then takes its tolerances from the active profile's fuzzy search config.
+     */
+    public static final String DURATION_WINDOW_PROPERTY = "mp3org.duplicates.durationWindow";
+
+    private static volatile DurationWindow durationWindow;
+
     /**
      * Calculates the similarity between two fingerprints.
      * Uses bit-level comparison of 32-bit integer fingerprint segments.
@@ -54,6 +64,8 @@ public class FingerprintMatcher {
 
     /**
      * Calculates the similarity between two fingerprint arrays.
+     * The differing bits are counted with the vector kernel when available
+     * (see {@link FingerprintSimilarityKernel}).
      *
      * @param fp1 first fingerprint array
      * @param fp2 second fingerprint array
@@ -65,16 +77,161 @@ public class FingerprintMatcher {
             return 0.0;
         }
 
-        double totalSimilarity = 0.0;
+        int bitsDifferent = FingerprintSimilarityKernel.differingBits(fp1, fp2, length);
+        return toSimilarity(bitsDifferent, length);
+    }
+
+    /**
+     * Converts a count of differing bits into a similarity ratio.
+     * Each int is 32 bits, so every segment contributes (32 - bitsDifferent) / 32.
+     * Summing those per segment is exact in double arithmetic, so
+     * {@code length - bits / 32.0} equals the per-segment sum bit for bit and
+     * scores are unchanged from the original accumulation.
+     */
+    private static double toSimilarity(int bitsDifferent, int length) {
+        return (length - bitsDifferent / 32.0) / length;
+    }
 
-        for (int i = 0; i < length; i++) {
-            int xor = fp1[i] ^ fp2[i];
-            int bitsDifferent = Integer.bitCount(xor);
-            // Each int is 32 bits, so similarity is (32 - bitsDifferent) / 32
-            totalSimilarity += 1.0 - (bitsDifferent / 32.0);
+    /**
+     * Calculates the similarity between two fingerprint buffers, reading from index 0
+     * up to each buffer's limit. Gives exactly the same result as
+     * {@link #calculateSimilarity(int[], int[])} on the same segments.
+     *
+     * @param fp1 first fingerprint view
+     * @param fp2 second fingerprint view
+     * @return similarity score between 0.0 and 1.0
+     */
+    public static double calculateSimilarity(IntBuffer fp1, IntBuffer fp2) {
+        int[] arr1 = wholeArray(fp1);
+        int[] arr2 = wholeArray(fp2);
+        if (arr1 != null && arr2 != null) {
+            return calculateSimilarity(arr1, arr2);
         }
 
-        return totalSimilarity / length;
+        int length = Math.min(fp1.limit(), fp2.limit());
+        if (length < MIN_FINGERPRINT_LENGTH) {
+            return 0.0;
+        }
+
+        int bitsDifferent = FingerprintSimilarityKernel.differingBits(fp1, fp2, length);
+        return toSimilarity(bitsDifferent, length);
+    }
+
+    /**
+     * Calculates the similarity of two fingerprints if it reaches the threshold,
+     * stopping early once the remaining segments cannot lift the score that high.
+     *
+     * <p>Whenever the true similarity is at or above {@code threshold} the exact value
+     * of {@link #calculateSimilarity(int[], int[])} is returned. Otherwise the result is
+     * an upper bound on the similarity that is itself below the threshold, so
+     * {@code boundedSimilarity(a, b, t) >= t} always agrees with
+     * {@code calculateSimilarity(a, b) >= t}.
+     *
+     * @param fp1 first fingerprint array
+     * @param fp2 second fingerprint array
+     * @param threshold similarity threshold
+     * @return the similarity, or a value below the threshold if it is not reached
+     */
+    public static double boundedSimilarity(int[] fp1, int[] fp2, double threshold) {
+        int length = Math.min(fp1.length, fp2.length);
+        if (length < MIN_FINGERPRINT_LENGTH) {
+            return 0.0;
+        }
+
+        int maxBits = maxDifferingBits(length, threshold);
+        int bitsDifferent = FingerprintSimilarityKernel.boundedDifferingBits(fp1, fp2, length, maxBits);
+        return toSimilarity(bitsDifferent, length);
+    }
+
+    /**
+     * Buffer variant of {@link #boundedSimilarity(int[], int[], double)}, reading from
+     * index 0 up to each buffer's limit.
+     */
+    public static double boundedSimilarity(IntBuffer fp1, IntBuffer fp2, double threshold) {
+        int[] arr1 = wholeArray(fp1);
+        int[] arr2 = wholeArray(fp2);
+        if (arr1 != null && arr2 != null) {
+            return boundedSimilarity(arr1, arr2, threshold);
+        }
+
+        int length = Math.min(fp1.limit(), fp2.limit());
+        if (length < MIN_FINGERPRINT_LENGTH) {
+            return 0.0;
+        }
+
+        int maxBits = maxDifferingBits(length, threshold);
+        int bitsDifferent = FingerprintSimilarityKernel.boundedDifferingBits(fp1, fp2, length, maxBits);
+        return toSimilarity(bitsDifferent, length);
+    }
+
+    /**
+     * Returns the largest number of differing bits over {@code length} segments whose
+     * similarity still reaches the threshold, or -1 if even identical segments fall short.
+     * The estimate is corrected against {@link #toSimilarity(int, int)} itself, so the
+     * bound follows the exact floating-point comparison used by the unbounded path.
+     */
+    static int maxDifferingBits(int length, double threshold) {
+        int totalBits = length * 32;
+        if (threshold <= 0.0) {
+            return totalBits;
+        }
+        long bits = (long) Math.floor((1.0 - threshold) * totalBits);
+        bits = Math.max(-1, Math.min(totalBits, bits));
+        while (bits < totalBits && toSimilarity((int) bits + 1, length) >= threshold) {
+            bits++;
+        }
+        while (bits >= 0 && toSimilarity((int) bits, length) < threshold) {
+            bits--;
+        }
+        return (int) bits;
+    }
+
+    /**
+     * Returns the backing array if the buffer is a heap view over a whole array.
+     */
+    private static int[] wholeArray(IntBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.limit()) {
+            return buffer.array();
+        }
+        return null;
+    }
+
+    /**
+     * Counters for the threshold-bounded comparisons used during duplicate grouping.
+     *
+     * @param comparisons bounded comparisons performed
+     * @param probeExits comparisons rejected by the prefix probe
+     * @param blockExits comparisons rejected at a later block boundary
+     */
+    public record ComparisonStats(long comparisons, long probeExits, long blockExits) {
+        /**
+         * Returns the number of comparisons that stopped before the last segment.
+         */
+        public long earlyExits() {
+            return probeExits + blockExits;
+        }
+
+        /**
+         * Returns the fraction of comparisons that stopped early.
+         */
+        public double earlyExitRatio() {
+            return comparisons == 0 ? 0.0 : earlyExits() / (double) comparisons;
+        }
+    }
+
+    /**
+     * Returns the bounded comparison counters accumulated since start-up or the last reset.
+     */
+    public static ComparisonStats getComparisonStats() {
+        long[] counts = FingerprintSimilarityKernel.boundedComparisonCounts();
+        return new ComparisonStats(counts[0], counts[1], counts[2]);
+    }
+
+    /**
+     * Resets the bounded comparison counters.
+     */
+    public static void resetComparisonStats() {
+        FingerprintSimilarityKernel.resetBoundedComparisonCounts();
     }
 
     /**
@@ -113,11 +270,11 @@ public class FingerprintMatcher {
      * @return true if the files are likely duplicates
      */
     public static boolean areDuplicates(MusicFile file1, MusicFile file2, double threshold) {
-        if (!file1.hasFingerprint() || !file2.hasFingerprint()) {
+        if (!file1.hasFingerprint() || !file2.hasFingerprint() || !durationsMatch(getDurationWindow(), file1, file2)) {
             return false;
         }
 
-        double similarity = calculateSimilarity(file1.getFingerprint(), file2.getFingerprint());
+        double similarity = boundedSimilarity(file1.getFingerprintSegments(), file2.getFingerprintSegments(), threshold);
         return similarity >= threshold;
     }
 
@@ -128,15 +285,98 @@ public class FingerprintMatcher {
         return areDuplicates(file1, file2, DEFAULT_SIMILARITY_THRESHOLD);
     }
 
+    /**
+     * Strategy used to enumerate fingerprint pairs during duplicate grouping.
+     */
+    public enum MatchingMode {
+        /** Compare only pairs that collide in a {@link FingerprintLshIndex} (default). */
+        INDEXED,
+        /** Compare every pair of fingerprints, n·(n-1)/2 comparisons. */
+        BRUTE_FORCE
+    }
+
+    private static volatile MatchingMode defaultMatchingMode = MatchingMode.INDEXED;
+
+    /**
+     * Returns the matching mode used when none is specified.
+     */
+    public static MatchingMode getDefaultMatchingMode() {
+        return defaultMatchingMode;
+    }
+
+    /**
+     * Sets the matching mode used when none is specified.
+     *
+     * @param mode the new default mode (must not be null)
+     */
+    public static void setDefaultMatchingMode(MatchingMode mode) {
+        defaultMatchingMode = Objects.requireNonNull(mode, "mode");
+    }
+
+    /**
+     * Returns the duration tolerance fingerprint matches must satisfy: the window set
+     * with {@link #setDurationWindow(DurationWindow)}, otherwise the tolerances of the
+     * active fuzzy search config if {@link #DURATION_WINDOW_PROPERTY} is true, otherwise
+     * null (the default) if durations are ignored.
+     */
+    public static DurationWindow getDurationWindow() {
+        DurationWindow window = durationWindow;
+        if (window != null) {
+            return window;
+        }
+        String enabled = System.getProperty(DURATION_WINDOW_PROPERTY);
+        if (enabled != null && Boolean.parseBoolean(enabled.trim())) {
+            return DurationWindow.from(DatabaseManager.activeFuzzySearchConfig());
+        }
+        return null;
+    }
+
+    /**
+     * Sets the duration tolerance fingerprint matches must satisfy. Fingerprints only
+     * cover the opening seconds of a track, so without it a radio edit and an extended
+     * mix that share an intro would match. Grouping uses the window to skip comparing
+     * files whose durations are too far apart. Setting a window changes results, as
+     * such pairs are no longer reported, so it is off unless set here or enabled with
+     * {@link #DURATION_WINDOW_PROPERTY}. Pass null to fall back to that property.
+     *
+     * @param window the tolerance, or null to fall back to the property
+     */
+    public static void setDurationWindow(DurationWindow window) {
+        durationWindow = window;
+    }
+
+    private static boolean durationsMatch(DurationWindow window, MusicFile file1, MusicFile file2) {
+        return window == null || window.matches(
+            DurationWindow.fingerprintDuration(file1), DurationWindow.fingerprintDuration(file2));
+    }
+
+    /**
+     * Groups music files into duplicate clusters using the default matching mode.
+     *
+     * @param files list of music files with fingerprints
+     * @param threshold similarity threshold
+     * @return list of duplicate groups (each group contains 2+ similar files)
+     */
+    public static List<List<MusicFile>> groupDuplicates(List<MusicFile> files, double threshold) {
+        return groupDuplicates(files, threshold, defaultMatchingMode);
+    }
+
     /**
      * Groups music files into duplicate clusters based on fingerprint similarity.
      * Uses parallel processing for efficient comparison of large file collections.
      *
+     * <p>In {@link MatchingMode#INDEXED} mode a {@link FingerprintLshIndex} is built once for
+     * the run and only colliding pairs are passed to {@link #calculateSimilarity(IntBuffer, IntBuffer)}.
+     * {@link MatchingMode#BRUTE_FORCE} compares every pair and serves as the reference.
+     * Either way, pairs outside the {@linkplain #getDurationWindow() duration window}
+     * are skipped.
+     *
      * @param files list of music files with fingerprints
      * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
      * @return list of duplicate groups (each group contains 2+ similar files)
      */
-    public static List<List<MusicFile>> groupDuplicates(List<MusicFile> files, double threshold) {
+    public static List<List<MusicFile>> groupDuplicates(List<MusicFile> files, double threshold, MatchingMode mode) {
         // Filter to files with fingerprints
         List<MusicFile> filesWithFingerprints = files.stream()
             .filter(MusicFile::hasFingerprint)
@@ -148,40 +388,246 @@ public class FingerprintMatcher {
             return Collections.emptyList();
         }
 
-        logger.info("Starting parallel fingerprint comparison for {} files ({} comparisons)",
-            n, (long) n * (n - 1) / 2);
-        long startTime = System.currentTimeMillis();
+        int[] durations = new int[n];
+        for (int i = 0; i < n; i++) {
+            durations[i] = DurationWindow.fingerprintDuration(filesWithFingerprints.get(i));
+        }
 
         // Pre-parse all fingerprints to avoid repeated string parsing
-        int[][] parsedFingerprints = new int[n][];
-        for (int i = 0; i < n; i++) {
-            parsedFingerprints[i] = parseFingerprint(filesWithFingerprints.get(i).getFingerprint());
+        ConcurrentUnionFind uf = clusterFingerprints(
+            wrapAll(parseAll(filesWithFingerprints)), durations, threshold, mode);
+
+        // Convert Union-Find results to groups with 2+ files, ordered by first member
+        List<List<MusicFile>> groups = new ArrayList<>();
+        for (int[] members : uf.groups(2)) {
+            List<MusicFile> group = new ArrayList<>(members.length);
+            for (int i : members) {
+                group.add(filesWithFingerprints.get(i));
+            }
+            groups.add(group);
+        }
+
+        logger.info("Found {} duplicate groups using fingerprint matching", groups.size());
+
+        return groups;
+    }
+
+    /**
+     * Groups the fingerprints of a corpus snapshot into duplicate clusters and returns
+     * the database ids of each cluster. Works directly on the mapped segments, so no
+     * {@link MusicFile} objects are created; callers load only the grouped files.
+     *
+     * @param snapshot fingerprints captured from a {@link FingerprintCorpus}
+     * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
+     * @return file ids of each duplicate group (each group contains 2+ ids)
+     */
+    public static List<List<Long>> groupDuplicateIds(FingerprintCorpus.Snapshot snapshot, double threshold,
+                                                     MatchingMode mode) {
+        return groupDuplicateIds(snapshot, null, threshold, mode);
+    }
+
+    /**
+     * Groups the fingerprints of a corpus snapshot like
+     * {@link #groupDuplicateIds(FingerprintCorpus.Snapshot, double, MatchingMode)}, skipping
+     * pairs outside the {@linkplain #getDurationWindow() duration window}.
+     *
+     * @param snapshot fingerprints captured from a {@link FingerprintCorpus}
+     * @param durations duration of each snapshot entry, {@link DurationWindow#UNKNOWN} where
+     *                  missing, or null to compare regardless of duration
+     * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
+     * @return file ids of each duplicate group (each group contains 2+ ids)
+     */
+    public static List<List<Long>> groupDuplicateIds(FingerprintCorpus.Snapshot snapshot, int[] durations,
+                                                     double threshold, MatchingMode mode) {
+        int n = snapshot.size();
+        if (n < 2) {
+            return Collections.emptyList();
+        }
+
+        ConcurrentUnionFind uf = clusterFingerprints(snapshot.allSegments(), durations, threshold, mode);
+
+        List<List<Long>> groups = new ArrayList<>();
+        for (int[] members : uf.groups(2)) {
+            List<Long> group = new ArrayList<>(members.length);
+            for (int i : members) {
+                group.add(snapshot.fileId(i));
+            }
+            groups.add(group);
+        }
+
+        logger.info("Found {} duplicate groups from fingerprint corpus ({} fingerprints)", groups.size(), n);
+        return groups;
+    }
+
+    /**
+     * A pair of fingerprints at or above the similarity threshold.
+     *
+     * @param first index of the first fingerprint, always below {@code second}
+     * @param second index of the second fingerprint
+     * @param similarity exact similarity of the pair
+     */
+    public record MatchingPair(int first, int second, double similarity) {}
+
+    /**
+     * Receives each matching pair found by {@link #forEachMatchingPair}.
+     * Called concurrently from the comparison threads.
+     */
+    @FunctionalInterface
+    private interface MatchConsumer {
+        void accept(int first, int second, double similarity);
+    }
+
+    /**
+     * Returns every pair of fingerprints at or above the threshold, using the same
+     * candidate enumeration as {@link #groupDuplicateIds(FingerprintCorpus.Snapshot, int[], double, MatchingMode)}.
+     *
+     * @param fingerprints fingerprint views
+     * @param durations durations indexed like {@code fingerprints}, or null to ignore them
+     * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
+     * @return matching pairs in no particular order
+     */
+    public static List<MatchingPair> findMatchingPairs(IntBuffer[] fingerprints, int[] durations,
+                                                       double threshold, MatchingMode mode) {
+        ConcurrentLinkedQueue<MatchingPair> pairs = new ConcurrentLinkedQueue<>();
+        forEachMatchingPair(fingerprints, durations, threshold, mode,
+            (i, j, similarity) -> pairs.add(new MatchingPair(Math.min(i, j), Math.max(i, j), similarity)));
+        return new ArrayList<>(pairs);
+    }
+
+    /**
+     * Compares one fingerprint against every other one within the duration window.
+     * Used to update results incrementally when a single file changes; every candidate
+     * is compared, so the result agrees with {@link MatchingMode#BRUTE_FORCE}.
+     *
+     * @param target index of the fingerprint to compare
+     * @param fingerprints fingerprint views
+     * @param durations durations indexed like {@code fingerprints}, or null to ignore them
+     * @param threshold similarity threshold
+     * @return pairs of {@code target} with each matching fingerprint
+     */
+    public static List<MatchingPair> findMatchesOf(int target, IntBuffer[] fingerprints, int[] durations,
+                                                   double threshold) {
+        List<MatchingPair> pairs = new ArrayList<>();
+        IntBuffer fp1 = fingerprints[target];
+        if (fp1.limit() < MIN_FINGERPRINT_LENGTH) {
+            return pairs;
         }
 
-        // Use Union-Find for efficient grouping
-        UnionFind uf = new UnionFind(n);
+        DurationWindow window = durations != null ? getDurationWindow() : null;
+        for (int j = 0; j < fingerprints.length; j++) {
+            if (j == target || fingerprints[j].limit() < MIN_FINGERPRINT_LENGTH) continue;
+            if (window != null && !window.matches(durations[target], durations[j])) continue;
+
+            double similarity = boundedSimilarity(fp1, fingerprints[j], threshold);
+            if (similarity >= threshold) {
+                pairs.add(new MatchingPair(Math.min(target, j), Math.max(target, j), similarity));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Unions every pair of fingerprints at or above the threshold.
+     *
+     * @param fingerprints fingerprint views indexed like the caller's file list
+     * @param durations durations indexed like {@code fingerprints}, or null to ignore them
+     * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
+     * @return union-find over fingerprint indices
+     */
+    private static ConcurrentUnionFind clusterFingerprints(IntBuffer[] fingerprints, int[] durations,
+                                                           double threshold, MatchingMode mode) {
+        // Lock-free Union-Find so matching pairs merge without contending on a monitor
+        ConcurrentUnionFind uf = new ConcurrentUnionFind(fingerprints.length);
+        forEachMatchingPair(fingerprints, durations, threshold, mode, (i, j, similarity) -> uf.union(i, j));
+        return uf;
+    }
+
+    /**
+     * Compares fingerprints pairwise in parallel and passes every pair at or above the threshold
+     * to {@code consumer}.
+     *
+     * <p>In {@link MatchingMode#INDEXED} mode a {@link FingerprintLshIndex} is built once for
+     * the run and only colliding pairs are compared. With durations and a duration window,
+     * index candidates outside the window are dropped, and brute force walks only the
+     * sorted duration windows instead of every pair.
+     *
+     * @param fingerprints fingerprint views indexed like the caller's file list
+     * @param durations durations indexed like {@code fingerprints}, or null to ignore them
+     * @param threshold similarity threshold
+     * @param mode how candidate pairs are enumerated
+     * @param consumer receives each matching pair, possibly from several threads at once
+     */
+    private static void forEachMatchingPair(IntBuffer[] fingerprints, int[] durations,
+                                            double threshold, MatchingMode mode, MatchConsumer consumer) {
+        int n = fingerprints.length;
+        long startTime = System.currentTimeMillis();
+        ComparisonStats statsBefore = getComparisonStats();
+
+        DurationWindow window = durations != null ? getDurationWindow() : null;
+        DurationWindow.Candidates durationCandidates = window != null ? window.candidates(durations) : null;
+        long possiblePairs = durationCandidates != null ? durationCandidates.pairCount() : (long) n * (n - 1) / 2;
+        logger.info("Starting parallel fingerprint comparison for {} files ({} mode, {} kernel, {} possible pairs, "
+                + "duration window {})",
+            n, mode, FingerprintSimilarityKernel.describe(), possiblePairs, window != null ? window : "off");
+
+        FingerprintLshIndex index = null;
+        if (mode == MatchingMode.INDEXED) {
+            index = new FingerprintLshIndex(fingerprints);
+            logger.info("Built fingerprint LSH index with {} band entries in {}ms",
+                index.entryCount(), System.currentTimeMillis() - startTime);
+        }
+
+        LongAdder comparisons = new LongAdder();
 
         // Process comparisons in parallel using ForkJoinPool
         // Use up to 20 threads for maximum parallelism on multi-core systems
         int numThreads = Math.min(20, Math.max(Runtime.getRuntime().availableProcessors() * 2, 8));
         ForkJoinPool pool = new ForkJoinPool(numThreads);
         AtomicInteger progressCounter = new AtomicInteger(0);
-        int totalComparisons = n * (n - 1) / 2;
+        final FingerprintLshIndex lshIndex = index;
+        ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[n]);
 
         try {
-            // Parallel comparison: for each i, compare with all j > i
+            // Parallel comparison: for each i, compare with candidates j > i
+            // (or the later part of i's duration window when pruning by duration)
             pool.submit(() ->
-                IntStream.range(0, n - 1).parallel().forEach(i -> {
-                    int[] fp1 = parsedFingerprints[i];
-                    if (fp1.length < MIN_FINGERPRINT_LENGTH) return;
-
-                    for (int j = i + 1; j < n; j++) {
-                        int[] fp2 = parsedFingerprints[j];
-                        if (fp2.length < MIN_FINGERPRINT_LENGTH) continue;
-
-                        double similarity = calculateSimilarity(fp1, fp2);
-                        if (similarity >= threshold) {
-                            uf.union(i, j);
+                IntStream.range(0, n).parallel().forEach(i -> {
+                    IntBuffer fp1 = fingerprints[i];
+                    if (fp1.limit() < MIN_FINGERPRINT_LENGTH) return;
+
+                    if (lshIndex != null) {
+                        lshIndex.forEachCandidateAfter(i, scratch.get(), j -> {
+                            if (window != null && !window.matches(durations[i], durations[j])) return;
+                            comparisons.increment();
+                            double similarity = boundedSimilarity(fp1, fingerprints[j], threshold);
+                            if (similarity >= threshold) {
+                                consumer.accept(i, j, similarity);
+                            }
+                        });
+                    } else if (durationCandidates != null) {
+                        durationCandidates.forEachCandidate(i, j -> {
+                            if (fingerprints[j].limit() < MIN_FINGERPRINT_LENGTH) return;
+
+                            comparisons.increment();
+                            double similarity = boundedSimilarity(fp1, fingerprints[j], threshold);
+                            if (similarity >= threshold) {
+                                consumer.accept(i, j, similarity);
+                            }
+                        });
+                    } else {
+                        for (int j = i + 1; j < n; j++) {
+                            IntBuffer fp2 = fingerprints[j];
+                            if (fp2.limit() < MIN_FINGERPRINT_LENGTH) continue;
+
+                            comparisons.increment();
+                            double similarity = boundedSimilarity(fp1, fp2, threshold);
+                            if (similarity >= threshold) {
+                                consumer.accept(i, j, similarity);
+                            }
                         }
                     }
 
@@ -198,65 +644,106 @@ public class FingerprintMatcher {
             pool.shutdown();
         }
 
-        // Convert Union-Find results to groups
-        Map<Integer, List<MusicFile>> groupMap = new HashMap<>();
-        for (int i = 0; i < n; i++) {
-            int root = uf.find(i);
-            groupMap.computeIfAbsent(root, k -> new ArrayList<>()).add(filesWithFingerprints.get(i));
-        }
-
-        // Filter to groups with 2+ files
-        List<List<MusicFile>> groups = groupMap.values().stream()
-            .filter(g -> g.size() > 1)
-            .collect(Collectors.toList());
-
         long elapsed = System.currentTimeMillis() - startTime;
-        logger.info("Found {} duplicate groups using fingerprint matching in {}ms ({} files, {} threads)",
-            groups.size(), elapsed, n, numThreads);
+        ComparisonStats statsAfter = getComparisonStats();
+        logger.info("Compared {} fingerprints in {}ms ({} comparisons, {} threads, {} probe exits, {} block exits)",
+            n, elapsed, comparisons.sum(), numThreads,
+            statsAfter.probeExits() - statsBefore.probeExits(),
+            statsAfter.blockExits() - statsBefore.blockExits());
+    }
 
-        return groups;
+    /**
+     * Parses the fingerprints of the given files into an array indexed like the list.
+     */
+    static int[][] parseAll(List<MusicFile> files) {
+        int[][] parsed = new int[files.size()][];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = files.get(i).getFingerprintSegments();
+        }
+        return parsed;
+    }
+
+    static IntBuffer[] wrapAll(int[][] fingerprints) {
+        IntBuffer[] wrapped = new IntBuffer[fingerprints.length];
+        for (int i = 0; i < fingerprints.length; i++) {
+            wrapped[i] = IntBuffer.wrap(fingerprints[i]);
+        }
+        return wrapped;
     }
 
     /**
-     * Union-Find data structure for efficient grouping.
-     * Thread-safe for concurrent union operations.
+     * Measures how many of the brute-force matches the LSH index would have found.
+     * This runs a full brute-force pass and is intended for tuning and diagnostics only.
+     *
+     * @param files music files with fingerprints
+     * @param threshold similarity threshold
+     * @return recall and candidate reduction figures for the index
      */
-    private static class UnionFind {
-        private final int[] parent;
-        private final int[] rank;
+    public static IndexRecallReport measureIndexRecall(List<MusicFile> files, double threshold) {
+        List<MusicFile> filesWithFingerprints = files.stream()
+            .filter(MusicFile::hasFingerprint)
+            .filter(f -> f.getId() != null)
+            .collect(Collectors.toList());
 
-        UnionFind(int n) {
-            parent = new int[n];
-            rank = new int[n];
-            for (int i = 0; i < n; i++) {
-                parent[i] = i;
-            }
+        int n = filesWithFingerprints.size();
+        long totalPairs = (long) n * (n - 1) / 2;
+        if (n < 2) {
+            return new IndexRecallReport(n, totalPairs, 0, 0, 0, 1.0);
         }
 
-        synchronized int find(int x) {
-            if (parent[x] != x) {
-                parent[x] = find(parent[x]); // Path compression
-            }
-            return parent[x];
-        }
-
-        synchronized void union(int x, int y) {
-            int rootX = find(x);
-            int rootY = find(y);
-            if (rootX != rootY) {
-                // Union by rank
-                if (rank[rootX] < rank[rootY]) {
-                    parent[rootX] = rootY;
-                } else if (rank[rootX] > rank[rootY]) {
-                    parent[rootY] = rootX;
-                } else {
-                    parent[rootY] = rootX;
-                    rank[rootX]++;
+        int[][] parsedFingerprints = parseAll(filesWithFingerprints);
+        FingerprintLshIndex index = new FingerprintLshIndex(parsedFingerprints);
+
+        LongAdder candidatePairs = new LongAdder();
+        LongAdder bruteForceMatches = new LongAdder();
+        LongAdder indexedMatches = new LongAdder();
+        ThreadLocal<int[]> scratch = ThreadLocal.withInitial(index::newScratch);
+
+        IntStream.range(0, n - 1).parallel().forEach(i -> {
+            int[] seen = scratch.get();
+            int stamp = i + 1;
+            index.forEachCandidateAfter(i, seen, j -> candidatePairs.increment());
+
+            int[] fp1 = parsedFingerprints[i];
+            if (fp1.length < MIN_FINGERPRINT_LENGTH) return;
+            for (int j = i + 1; j < n; j++) {
+                if (boundedSimilarity(fp1, parsedFingerprints[j], threshold) >= threshold) {
+                    bruteForceMatches.increment();
+                    if (seen[j] == stamp) {
+                        indexedMatches.increment();
+                    }
                 }
             }
-        }
+        });
+
+        long matches = bruteForceMatches.sum();
+        double recall = matches == 0 ? 1.0 : indexedMatches.sum() / (double) matches;
+        IndexRecallReport report = new IndexRecallReport(
+            n, totalPairs, candidatePairs.sum(), matches, indexedMatches.sum(), recall);
+        logger.info("Fingerprint index recall: {}/{} matching pairs found ({} candidates of {} pairs)",
+            report.indexedMatches(), report.bruteForceMatches(), report.candidatePairs(), report.totalPairs());
+        return report;
     }
 
+    /**
+     * Result of comparing the LSH candidate set with a brute-force pass.
+     *
+     * @param files number of fingerprinted files compared
+     * @param totalPairs number of pairs brute force compares
+     * @param candidatePairs number of pairs the index proposes
+     * @param bruteForceMatches pairs at or above the threshold found by brute force
+     * @param indexedMatches of those, the pairs the index also proposes
+     * @param recall indexedMatches / bruteForceMatches (1.0 when there are no matches)
+     */
+    public record IndexRecallReport(
+        int files,
+        long totalPairs,
+        long candidatePairs,
+        long bruteForceMatches,
+        long indexedMatches,
+        double recall
+    ) {}
+
     /**
      * Groups duplicates using the default threshold.
      */
@@ -277,24 +764,25 @@ public class FingerprintMatcher {
             return Collections.emptyList();
         }
 
-        int[] targetFp = parseFingerprint(target.getFingerprint());
+        int[] targetFp = target.getFingerprintSegments();
         if (targetFp.length < MIN_FINGERPRINT_LENGTH) {
             return Collections.emptyList();
         }
 
         List<SimilarFile> results = new ArrayList<>();
+        DurationWindow window = getDurationWindow();
 
         for (MusicFile candidate : candidates) {
             if (candidate.getId() != null && candidate.getId().equals(target.getId())) {
                 continue; // Skip self
             }
 
-            if (!candidate.hasFingerprint()) {
+            if (!candidate.hasFingerprint() || !durationsMatch(window, target, candidate)) {
                 continue;
             }
 
-            int[] candidateFp = parseFingerprint(candidate.getFingerprint());
-            double similarity = calculateSimilarity(targetFp, candidateFp);
+            int[] candidateFp = candidate.getFingerprintSegments();
+            double similarity = boundedSimilarity(targetFp, candidateFp, threshold);
 
             if (similarity >= threshold) {
                 results.add(new SimilarFile(candidate, similarity));
@@ -326,7 +814,7 @@ public class FingerprintMatcher {
 
         List<Double> similarities = new ArrayList<>();
         MusicFile reference = group.get(0);
-        int[] refFp = reference.hasFingerprint() ? parseFingerprint(reference.getFingerprint()) : null;
+        int[] refFp = reference.hasFingerprint() ? reference.getFingerprintSegments() : null;
 
         for (int i = 0; i < group.size(); i++) {
             if (i == 0) {
@@ -334,7 +822,7 @@ public class FingerprintMatcher {
             } else {
                 MusicFile file = group.get(i);
                 if (refFp != null && file.hasFingerprint()) {
-                    int[] fileFp = parseFingerprint(file.getFingerprint());
+                    int[] fileFp = file.getFingerprintSegments();
                     double similarity = calculateSimilarity(refFp, fileFp);
                     similarities.add(similarity);
                 } else {
@@ -0,0 +1,274 @@
+package org.hasting.util;
+
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Long-lived, updatable fingerprint index for nearest-neighbour queries.
+ *
+ * <p>Every fingerprint occupies a slot. Slots up to {@code baseSize} are covered by a
+ * {@link FingerprintLshIndex}; slots added since that index was built form a small
+ * delta that queries scan directly. Replacing or removing a fingerprint empties its
+ * slot, and a replacement goes to a new delta slot. Once the delta grows past
+ * {@link #COMPACT_FRACTION one in eight} of the base, the LSH index is rebuilt over
+ * all live slots and the delta becomes empty again.
+ *
+ * <p>Queries take the LSH candidates of the target, drop those outside the
+ * {@linkplain FingerprintMatcher#getDurationWindow() duration window}, and score the
+ * rest with {@link FingerprintMatcher#boundedSimilarity(IntBuffer, IntBuffer, double)},
+ * keeping the best {@code k}. Only the first {@link #INDEXED_POSITIONS} segments are
+ * indexed, which keeps the index around a kilobyte per fingerprint while still finding
+ * nearly every pair at the default threshold.
+ *
+ * <p>Thread-safe: queries share a read lock, updates take the write lock.
+ */
+public class FingerprintSimilarityIndex {
+
+    private static final Logger logger = Log4Rich.getLogger(FingerprintSimilarityIndex.class);
+
+    /**
+     * Leading segments indexed per fingerprint. At 85% similarity a pair is missed with
+     * a probability of roughly 0.93<sup>128</sup>, about one in twenty thousand.
+     */
+    static final int INDEXED_POSITIONS = 64;
+
+    /**
+     * The LSH index is rebuilt when the delta exceeds one in {@code COMPACT_FRACTION} slots.
+     */
+    static final int COMPACT_FRACTION = 8;
+
+    /**
+     * The delta is never compacted below this many slots.
+     */
+    static final int MIN_COMPACT_SLOTS = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long[] fileIds = new long[0];
+    private IntBuffer[] fingerprints = new IntBuffer[0];
+    private int[] durations = new int[0];
+    private int slotCount;
+    private final Map<Long, Integer> slotById = new HashMap<>();
+
+    private FingerprintLshIndex lsh = new FingerprintLshIndex(new IntBuffer[0], INDEXED_POSITIONS,
+        FingerprintLshIndex.DEFAULT_MAX_BUCKET_SIZE);
+    private int baseSize;
+
+    /**
+     * A nearest neighbour found by {@link #findNearest(long, int, double)}.
+     *
+     * @param fileId database ID of the similar file
+     * @param similarity fingerprint similarity to the query
+     */
+    public record Neighbour(long fileId, double similarity) {}
+
+    /**
+     * Replaces the contents of the index and rebuilds it.
+     *
+     * @param ids database IDs of the fingerprinted files
+     * @param segments fingerprint of each file, indexed like {@code ids}
+     * @param fileDurations duration of each file, {@link DurationWindow#UNKNOWN} where missing
+     */
+    public void replaceAll(long[] ids, int[][] segments, int[] fileDurations) {
+        lock.writeLock().lock();
+        try {
+            slotById.clear();
+            fileIds = new long[Math.max(16, ids.length)];
+            fingerprints = new IntBuffer[fileIds.length];
+            durations = new int[fileIds.length];
+            slotCount = 0;
+            for (int i = 0; i < ids.length; i++) {
+                removeSlot(ids[i]);
+                addSlot(ids[i], segments[i], fileDurations[i]);
+            }
+            compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a fingerprint, replacing any previous one of the same file.
+     */
+    public void put(long fileId, int[] segments, int duration) {
+        lock.writeLock().lock();
+        try {
+            removeSlot(fileId);
+            addSlot(fileId, segments, duration);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the fingerprint of a file, if present.
+     */
+    public void remove(long fileId) {
+        lock.writeLock().lock();
+        try {
+            removeSlot(fileId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every fingerprint.
+     */
+    public void clear() {
+        replaceAll(new long[0], new int[0][], new int[0]);
+    }
+
+    /**
+     * Returns the number of fingerprints in the index.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true if the index holds a fingerprint for the file.
+     */
+    public boolean contains(long fileId) {
+        lock.readLock().lock();
+        try {
+            return slotById.containsKey(fileId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the files whose fingerprints are most similar to that of the given file.
+     *
+     * @param fileId database ID of the query file
+     * @param k maximum number of neighbours to return
+     * @param minSimilarity neighbours below this similarity are left out
+     * @return up to {@code k} neighbours, most similar first; empty if the file is not indexed
+     */
+    public List<Neighbour> findNearest(long fileId, int k, double minSimilarity) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotById.get(fileId);
+            if (slot == null || k <= 0) {
+                return List.of();
+            }
+
+            IntBuffer query = fingerprints[slot];
+            int queryDuration = durations[slot];
+            DurationWindow window = FingerprintMatcher.getDurationWindow();
+            PriorityQueue<Neighbour> best = new PriorityQueue<>(
+                Comparator.comparingDouble(Neighbour::similarity).thenComparing(n -> -n.fileId()));
+
+            int[] seen = new int[baseSize];
+            int[] queryArray = toArray(query);
+            lsh.forEachCandidate(queryArray, seen, 1, candidate ->
+                consider(candidate, slot, query, queryDuration, window, k, minSimilarity, best));
+            for (int candidate = baseSize; candidate < slotCount; candidate++) {
+                consider(candidate, slot, query, queryDuration, window, k, minSimilarity, best);
+            }
+
+            List<Neighbour> result = new ArrayList<>(best);
+            result.sort(Comparator.comparingDouble(Neighbour::similarity).reversed()
+                .thenComparingLong(Neighbour::fileId));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void consider(int candidate, int querySlot, IntBuffer query, int queryDuration, DurationWindow window,
+                          int k, double minSimilarity, PriorityQueue<Neighbour> best) {
+        IntBuffer fingerprint = fingerprints[candidate];
+        if (candidate == querySlot || fingerprint == null) {
+            return;
+        }
+        if (window != null && !window.matches(queryDuration, durations[candidate])) {
+            return;
+        }
+
+        // Once k neighbours are held, a candidate must beat the weakest of them
+        double floor = best.size() < k ? minSimilarity : Math.max(minSimilarity, best.peek().similarity());
+        double similarity = FingerprintMatcher.boundedSimilarity(query, fingerprint, floor);
+        if (similarity < floor) {
+            return;
+        }
+        best.add(new Neighbour(fileIds[candidate], similarity));
+        if (best.size() > k) {
+            best.poll();
+        }
+    }
+
+    private void addSlot(long fileId, int[] segments, int duration) {
+        if (slotCount == fileIds.length) {
+            int capacity = Math.max(16, slotCount + (slotCount >> 1));
+            fileIds = Arrays.copyOf(fileIds, capacity);
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+        fileIds[slotCount] = fileId;
+        fingerprints[slotCount] = IntBuffer.wrap(segments);
+        durations[slotCount] = duration > 0 ? duration : DurationWindow.UNKNOWN;
+        slotById.put(fileId, slotCount);
+        slotCount++;
+    }
+
+    private void removeSlot(long fileId) {
+        Integer slot = slotById.remove(fileId);
+        if (slot != null) {
+            fingerprints[slot] = null;
+        }
+    }
+
+    private void compactIfNeeded() {
+        int delta = slotCount - baseSize;
+        if (delta > Math.max(MIN_COMPACT_SLOTS, baseSize / COMPACT_FRACTION)) {
+            compact();
+        }
+    }
+
+    /**
+     * Moves the live slots to the front and rebuilds the LSH index over all of them.
+     */
+    private void compact() {
+        long startTime = System.currentTimeMillis();
+        int live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (fingerprints[slot] == null) {
+                continue;
+            }
+            fileIds[live] = fileIds[slot];
+            fingerprints[live] = fingerprints[slot];
+            durations[live] = durations[slot];
+            slotById.put(fileIds[live], live);
+            live++;
+        }
+        Arrays.fill(fingerprints, live, slotCount, null);
+        slotCount = live;
+
+        lsh = new FingerprintLshIndex(Arrays.copyOf(fingerprints, live), INDEXED_POSITIONS,
+            FingerprintLshIndex.DEFAULT_MAX_BUCKET_SIZE);
+        baseSize = live;
+        logger.debug("Rebuilt fingerprint similarity index over {} fingerprints in {}ms",
+            live, System.currentTimeMillis() - startTime);
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.limit()) {
+            return buffer.array();
+        }
+        int[] copy = new int[buffer.limit()];
+        buffer.duplicate().position(0).get(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,216 @@
+package org.hasting.util;
+
+import com.log4rich.Log4Rich;
+import com.log4rich.core.Logger;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts differing bits between two fingerprints, the inner loop of every
+ * fingerprint comparison.
+ *
+ * <p>Heap arrays use {@link FingerprintVectorKernel} when the
+ * {@code jdk.incubator.vector} module is present in the boot layer and the
+ * preferred vector shape holds at least four ints; otherwise, and for
+ * memory-mapped buffers, a scalar loop is used. Set the system property
+ * {@value #VECTOR_PROPERTY} to {@code false} to force the scalar loop.
+ *
+ * <p>Both paths return the same integer count, so similarity scores do not
+ * depend on which one ran.
+ *
+ * <p>{@link #boundedDifferingBits(int[], int[], int, int)} stops counting once a
+ * pair has more differing bits than its threshold allows. It first probes a
+ * prefix sized so that an unrelated pair (about 16 of 32 bits differing per
+ * segment) already exceeds the budget, then continues in fixed blocks. Because
+ * it only stops when the partial count alone exceeds the budget, the accept or
+ * reject decision is always the same as for the full count.
+ */
+final class FingerprintSimilarityKernel {
+
+    private static final Logger logger = Log4Rich.getLogger(FingerprintSimilarityKernel.class);
+
+    /**
+     * System property that disables the vector kernel when set to {@code false}.
+     */
+    static final String VECTOR_PROPERTY = "mp3org.fingerprint.vector";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final int MIN_VECTOR_LANES = 4;
+
+    /** Expected differing bits per segment for two unrelated fingerprints. */
+    private static final int UNRELATED_BITS_PER_SEGMENT = 16;
+    /** Segments added to the probe beyond the point where unrelated pairs are expected to exit. */
+    private static final int PROBE_MARGIN_SEGMENTS = 32;
+    /** Segments compared between budget checks after the probe. */
+    static final int BLOCK_SEGMENTS = 64;
+
+    private static final LongAdder boundedComparisons = new LongAdder();
+    private static final LongAdder probeExits = new LongAdder();
+    private static final LongAdder blockExits = new LongAdder();
+
+    /**
+     * True if {@link #differingBits(int[], int[], int)} dispatches to the vector kernel.
+     */
+    static final boolean VECTORIZED = detectVectorSupport();
+
+    private FingerprintSimilarityKernel() {
+    }
+
+    private static boolean detectVectorSupport() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+            logger.info("Fingerprint vector kernel disabled by " + VECTOR_PROPERTY);
+            return false;
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            logger.info("Module " + VECTOR_MODULE + " not present; using scalar fingerprint kernel");
+            return false;
+        }
+        try {
+            // Only touch the vector kernel class once the module is known to be present
+            int lanes = FingerprintVectorKernel.lanes();
+            if (lanes < MIN_VECTOR_LANES) {
+                logger.info("Preferred int vector has " + lanes + " lanes; using scalar fingerprint kernel");
+                return false;
+            }
+            logger.info("Using " + lanes + "-lane vector fingerprint kernel");
+            return true;
+        } catch (Throwable t) {
+            logger.warn("Fingerprint vector kernel unavailable: " + t);
+            return false;
+        }
+    }
+
+    /**
+     * Counts the bits that differ between the first {@code length} segments of two fingerprints.
+     *
+     * @param a first fingerprint
+     * @param b second fingerprint
+     * @param length number of segments to compare; at most the length of either array
+     * @return total number of differing bits
+     */
+    static int differingBits(int[] a, int[] b, int length) {
+        return differingBits(a, b, 0, length);
+    }
+
+    private static int differingBits(int[] a, int[] b, int from, int to) {
+        if (VECTORIZED) {
+            return FingerprintVectorKernel.differingBits(a, b, from, to);
+        }
+        int bits = 0;
+        for (int i = from; i < to; i++) {
+            bits += Integer.bitCount(a[i] ^ b[i]);
+        }
+        return bits;
+    }
+
+    /**
+     * Scalar reference implementation of {@link #differingBits(int[], int[], int)}.
+     */
+    static int scalarDifferingBits(int[] a, int[] b, int length) {
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits += Integer.bitCount(a[i] ^ b[i]);
+        }
+        return bits;
+    }
+
+    /**
+     * Counts differing bits like {@link #differingBits(int[], int[], int)} but may stop
+     * as soon as the count exceeds {@code maxBits}.
+     *
+     * @return the exact count if it is at most {@code maxBits}; otherwise some partial
+     *         count greater than {@code maxBits}
+     */
+    static int boundedDifferingBits(int[] a, int[] b, int length, int maxBits) {
+        boundedComparisons.increment();
+        int probeEnd = probeLength(length, maxBits);
+        int bits = differingBits(a, b, 0, probeEnd);
+        if (bits > maxBits) {
+            countExit(probeEnd, length, true);
+            return bits;
+        }
+        for (int from = probeEnd; from < length; from += BLOCK_SEGMENTS) {
+            int to = Math.min(length, from + BLOCK_SEGMENTS);
+            bits += differingBits(a, b, from, to);
+            if (bits > maxBits) {
+                countExit(to, length, false);
+                return bits;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Buffer variant of {@link #boundedDifferingBits(int[], int[], int, int)} for memory-mapped views.
+     */
+    static int boundedDifferingBits(IntBuffer a, IntBuffer b, int length, int maxBits) {
+        boundedComparisons.increment();
+        int probeEnd = probeLength(length, maxBits);
+        int bits = 0;
+        int checkpoint = probeEnd;
+        for (int i = 0; i < length; i++) {
+            bits += Integer.bitCount(a.get(i) ^ b.get(i));
+            if (i + 1 == checkpoint) {
+                if (bits > maxBits) {
+                    countExit(checkpoint, length, checkpoint == probeEnd);
+                    return bits;
+                }
+                checkpoint = Math.min(length, checkpoint + BLOCK_SEGMENTS);
+            }
+        }
+        return bits;
+    }
+
+    private static int probeLength(int length, int maxBits) {
+        long probe = (long) maxBits / UNRELATED_BITS_PER_SEGMENT + PROBE_MARGIN_SEGMENTS;
+        return (int) Math.min(length, probe);
+    }
+
+    private static void countExit(int comparedSegments, int length, boolean probe) {
+        if (comparedSegments >= length) {
+            return; // Reached the end, so this was not an early exit
+        }
+        if (probe) {
+            probeExits.increment();
+        } else {
+            blockExits.increment();
+        }
+    }
+
+    /**
+     * Returns the number of bounded comparisons and how many of them exited early,
+     * as {@code {comparisons, probeExits, blockExits}}.
+     */
+    static long[] boundedComparisonCounts() {
+        return new long[] { boundedComparisons.sum(), probeExits.sum(), blockExits.sum() };
+    }
+
+    /**
+     * Resets the bounded comparison counters.
+     */
+    static void resetBoundedComparisonCounts() {
+        boundedComparisons.reset();
+        probeExits.reset();
+        blockExits.reset();
+    }
+
+    /**
+     * Counts the bits that differ between the first {@code length} segments of two
+     * buffers, reading from index 0. Used for memory-mapped corpus views.
+     */
+    static int differingBits(IntBuffer a, IntBuffer b, int length) {
+        int bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits += Integer.bitCount(a.get(i) ^ b.get(i));
+        }
+        return bits;
+    }
+
+    /**
+     * Describes the kernel in use, for logs and diagnostics.
+     */
+    static String describe() {
+        return VECTORIZED ? "vector (" + FingerprintVectorKernel.lanes() + " lanes)" : "scalar";
+    }
+}
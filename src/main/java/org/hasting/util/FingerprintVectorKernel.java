@@ -0,0 +1,51 @@
+package org.hasting.util;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the fingerprint bit-difference count.
+ *
+ * <p>Each step loads one vector of segments from both fingerprints, XORs the lanes,
+ * takes the per-lane popcount and adds it to an integer accumulator. The lanes are
+ * summed once at the end and the tail is finished with scalar code. On x86 with
+ * AVX2 this processes eight segments per step, sixteen with AVX-512.
+ *
+ * <p>This class references {@code jdk.incubator.vector} and must only be loaded
+ * after {@link FingerprintSimilarityKernel} has confirmed the module is present.
+ */
+final class FingerprintVectorKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private FingerprintVectorKernel() {
+    }
+
+    /**
+     * Returns the number of int lanes in the preferred vector shape.
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Counts the bits that differ between segments {@code from} (inclusive) and
+     * {@code to} (exclusive) of two fingerprints.
+     */
+    static int differingBits(int[] a, int[] b, int from, int to) {
+        IntVector acc = IntVector.zero(SPECIES);
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector va = IntVector.fromArray(SPECIES, a, i);
+            IntVector vb = IntVector.fromArray(SPECIES, b, i);
+            acc = acc.add(va.lanewise(VectorOperators.XOR, vb).lanewise(VectorOperators.BIT_COUNT));
+        }
+        int bits = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            bits += Integer.bitCount(a[i] ^ b[i]);
+        }
+        return bits;
+    }
+}
@@ -5,7 +5,9 @@ import com.log4rich.core.Logger;
 import com.log4rich.Log4Rich;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -84,6 +86,12 @@ public class FuzzyMatcher {
         "\\s*(edition|version)?\\)?.*$", 
         Pattern.CASE_INSENSITIVE
     );
+
+    /**
+     * Version of the normalization rules in {@link #normalizeString}. Bump it whenever
+     * those rules change so stored metadata keys are recomputed.
+     */
+    private static final int NORMALIZATION_RULES_VERSION = 1;
     
     /**
      * Calculates the similarity between two music files based on fuzzy search configuration.
@@ -97,9 +105,10 @@ public class FuzzyMatcher {
         logger.debug("calculateSimilarity() - comparing: {} by {} vs {} by {}",
                    file1.getTitle(), file1.getArtist(), file2.getTitle(), file2.getArtist());
         
-        double titleSim = calculateFieldSimilarity(file1.getTitle(), file2.getTitle(), config, FieldType.TITLE);
-        double artistSim = calculateFieldSimilarity(file1.getArtist(), file2.getArtist(), config, FieldType.ARTIST);
-        double albumSim = calculateFieldSimilarity(file1.getAlbum(), file2.getAlbum(), config, FieldType.ALBUM);
+        int keyVersion = metadataKeyVersion(config);
+        double titleSim = calculateFieldSimilarity(file1, file2, config, FieldType.TITLE, keyVersion, 0);
+        double artistSim = calculateFieldSimilarity(file1, file2, config, FieldType.ARTIST, keyVersion, 0);
+        double albumSim = calculateFieldSimilarity(file1, file2, config, FieldType.ALBUM, keyVersion, 0);
         
         // Count matching fields
         int matchingFields = 0;
@@ -138,11 +147,11 @@ public class FuzzyMatcher {
      * Checks if two music files are duplicates based on fuzzy search configuration.
      */
     public static boolean areDuplicates(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
-        logger.debug(String.format("areDuplicates() - checking: %s vs %s", 
-                   file1 != null ? file1.getTitle() + " by " + file1.getArtist() : "null",
-                   file2 != null ? file2.getTitle() + " by " + file2.getArtist() : "null"));
-                   
-        double similarity = calculateSimilarity(file1, file2, config);
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("areDuplicates() - checking: %s vs %s",
+                       file1 != null ? file1.getTitle() + " by " + file1.getArtist() : "null",
+                       file2 != null ? file2.getTitle() + " by " + file2.getArtist() : "null"));
+        }
         
         // Consider duplicates if:
         // 1. Individual fields meet their thresholds
@@ -150,28 +159,13 @@ public class FuzzyMatcher {
         // 3. Duration is within tolerance
         // 4. Track numbers match (if required)
         
-        double titleSim = calculateFieldSimilarity(file1.getTitle(), file2.getTitle(), config, FieldType.TITLE);
-        double artistSim = calculateFieldSimilarity(file1.getArtist(), file2.getArtist(), config, FieldType.ARTIST);
-        double albumSim = calculateFieldSimilarity(file1.getAlbum(), file2.getAlbum(), config, FieldType.ALBUM);
-        
-        boolean titleMatches = titleSim >= config.getTitleSimilarityThreshold();
-        boolean artistMatches = artistSim >= config.getArtistSimilarityThreshold();
-        boolean albumMatches = albumSim >= config.getAlbumSimilarityThreshold();
-        boolean durationMatches = checkDurationMatch(file1, file2, config);
-        
-        int matchingFields = 0;
-        if (titleMatches) matchingFields++;
-        if (artistMatches) matchingFields++;
-        if (albumMatches) matchingFields++;
-        if (durationMatches) matchingFields++;
+        FieldScores scores = fieldScores(file1, file2, config, true);
+        int matchingFields = scores.matchingFields(config);
         
         // Check track number requirement
-        if (config.isTrackNumberMustMatch()) {
-            boolean trackMatches = checkTrackNumberMatch(file1, file2, config);
-            if (!trackMatches) {
-                logger.debug("areDuplicates() - exit: false (track numbers don't match)");
-                return false;
-            }
+        if (config.isTrackNumberMustMatch() && !scores.trackMatches()) {
+            logger.debug("areDuplicates() - exit: false (track numbers don't match)");
+            return false;
         }
         
         boolean result = matchingFields >= config.getMinimumFieldsToMatch();
@@ -181,26 +175,188 @@ public class FuzzyMatcher {
     }
     
     /**
-     * Calculates similarity between two field values based on field type and configuration.
+     * Per-field comparison of two files, independent of the similarity thresholds.
+     * {@link #areDuplicates(MusicFile, MusicFile, FuzzySearchConfig)} is
+     * {@code fieldScores(a, b, config).matches(config)}, so stored scores can be
+     * re-evaluated against other thresholds without comparing the files again.
+     *
+     * @param titleSimilarity title similarity in percent
+     * @param artistSimilarity artist similarity in percent
+     * @param albumSimilarity album similarity in percent
+     * @param durationMatches true if the durations are within tolerance
+     * @param trackMatches true if the track numbers are compatible
+     */
+    public record FieldScores(double titleSimilarity, double artistSimilarity, double albumSimilarity,
+                              boolean durationMatches, boolean trackMatches) {
+
+        /**
+         * Returns how many fields reach the thresholds of the configuration.
+         */
+        public int matchingFields(FuzzySearchConfig config) {
+            int matchingFields = 0;
+            if (titleSimilarity >= config.getTitleSimilarityThreshold()) matchingFields++;
+            if (artistSimilarity >= config.getArtistSimilarityThreshold()) matchingFields++;
+            if (albumSimilarity >= config.getAlbumSimilarityThreshold()) matchingFields++;
+            if (durationMatches) matchingFields++;
+            return matchingFields;
+        }
+
+        /**
+         * Returns true if the files are duplicates under the configuration.
+         */
+        public boolean matches(FuzzySearchConfig config) {
+            if (config.isTrackNumberMustMatch() && !trackMatches) {
+                return false;
+            }
+            return matchingFields(config) >= config.getMinimumFieldsToMatch();
+        }
+
+        /**
+         * Returns the highest threshold that, applied to title, artist and album alike,
+         * still leaves {@code minimumFields} matching fields. A matching duration counts
+         * as a field at 100%. The track number requirement is not considered.
+         *
+         * @return the strength in percent, or a negative value if it can never match
+         */
+        public double strength(int minimumFields) {
+            if (minimumFields <= 0) {
+                return 100.0;
+            }
+            double[] values = { titleSimilarity, artistSimilarity, albumSimilarity, durationMatches ? 100.0 : -1.0 };
+            if (minimumFields > values.length) {
+                return -1.0;
+            }
+            Arrays.sort(values);
+            return values[values.length - minimumFields];
+        }
+    }
+
+    /**
+     * Compares two files field by field under the normalization and tolerance
+     * settings of the configuration.
+     */
+    public static FieldScores fieldScores(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
+        return fieldScores(file1, file2, config, false);
+    }
+
+    /**
+     * With {@code bounded}, a field similarity is only exact when it reaches the threshold
+     * of the configuration; below it, any lower value may be returned. The scores then
+     * still give the right {@link FieldScores#matches(FuzzySearchConfig)} verdict, but
+     * hopeless string comparisons stop early.
+     */
+    private static FieldScores fieldScores(MusicFile file1, MusicFile file2, FuzzySearchConfig config,
+                                           boolean bounded) {
+        int keyVersion = metadataKeyVersion(config);
+        return new FieldScores(
+            calculateFieldSimilarity(file1, file2, config, FieldType.TITLE, keyVersion,
+                bounded ? config.getTitleSimilarityThreshold() : 0),
+            calculateFieldSimilarity(file1, file2, config, FieldType.ARTIST, keyVersion,
+                bounded ? config.getArtistSimilarityThreshold() : 0),
+            calculateFieldSimilarity(file1, file2, config, FieldType.ALBUM, keyVersion,
+                bounded ? config.getAlbumSimilarityThreshold() : 0),
+            checkDurationMatch(file1, file2, config),
+            checkTrackNumberMatch(file1, file2, config));
+    }
+
+    /**
+     * Encodes the normalization settings of a configuration, together with the version
+     * of the normalization rules, as a positive integer. Metadata keys stored with the
+     * same value can be compared directly instead of normalizing the fields again.
+     */
+    public static int metadataKeyVersion(FuzzySearchConfig config) {
+        int flags = (config.isIgnoreCaseDifferences() ? 1 : 0)
+                  | (config.isIgnorePunctuation() ? 2 : 0)
+                  | (config.isIgnoreArtistPrefixes() ? 4 : 0)
+                  | (config.isIgnoreFeaturing() ? 8 : 0)
+                  | (config.isIgnoreAlbumEditions() ? 16 : 0);
+        return NORMALIZATION_RULES_VERSION << 5 | flags;
+    }
+
+    /**
+     * Computes the normalized title, artist and album of a file under the configuration
+     * and stores them on the file.
+     */
+    public static void computeMetadataKeys(MusicFile file, FuzzySearchConfig config) {
+        String[] keys = metadataKeys(file.getTitle(), file.getArtist(), file.getAlbum(), config);
+        file.setMetadataKeys(keys[0], keys[1], keys[2], metadataKeyVersion(config));
+    }
+
+    /**
+     * Returns the normalized title, artist and album under the configuration, in that
+     * order. Null values have null keys.
+     */
+    public static String[] metadataKeys(String title, String artist, String album, FuzzySearchConfig config) {
+        return new String[] {
+            title != null ? normalizeString(title, config, FieldType.TITLE) : null,
+            artist != null ? normalizeString(artist, config, FieldType.ARTIST) : null,
+            album != null ? normalizeString(album, config, FieldType.ALBUM) : null
+        };
+    }
+
+    /**
+     * Calculates similarity between one field of two files based on field type and configuration.
+     * Uses the stored metadata keys of a file when they were computed with {@code keyVersion}.
+     * Similarities below {@code minimumPercent} may be returned as any lower value.
      */
-    private static double calculateFieldSimilarity(String value1, String value2, FuzzySearchConfig config, FieldType fieldType) {
+    private static double calculateFieldSimilarity(MusicFile file1, MusicFile file2, FuzzySearchConfig config,
+                                                   FieldType fieldType, int keyVersion, double minimumPercent) {
+        String value1 = fieldValue(file1, fieldType);
+        String value2 = fieldValue(file2, fieldType);
         if (value1 == null && value2 == null) return 100.0;
         if (value1 == null || value2 == null) return 0.0;
-        if (value1.trim().isEmpty() && value2.trim().isEmpty()) return 100.0;
-        if (value1.trim().isEmpty() || value2.trim().isEmpty()) return 0.0;
+        boolean blank1 = isBlank(value1);
+        boolean blank2 = isBlank(value2);
+        if (blank1 && blank2) return 100.0;
+        if (blank1 || blank2) return 0.0;
         
         // Normalize strings based on configuration and field type
-        String normalized1 = normalizeString(value1, config, fieldType);
-        String normalized2 = normalizeString(value2, config, fieldType);
+        String normalized1 = normalizedValue(file1, value1, config, fieldType, keyVersion);
+        String normalized2 = normalizedValue(file2, value2, config, fieldType, keyVersion);
         
         if (normalized1.equals(normalized2)) {
             return 100.0;
         }
         
         // Use Jaro-Winkler similarity for better results with names and titles
-        return jaroWinklerSimilarity(normalized1, normalized2) * 100.0;
+        return StringSimilarityKernel.jaroWinklerPercent(normalized1, normalized2, minimumPercent);
     }
     
+    static String fieldValue(MusicFile file, FieldType fieldType) {
+        return switch (fieldType) {
+            case TITLE -> file.getTitle();
+            case ARTIST -> file.getArtist();
+            case ALBUM -> file.getAlbum();
+        };
+    }
+
+    static String normalizedValue(MusicFile file, String value, FuzzySearchConfig config,
+                                          FieldType fieldType, int keyVersion) {
+        if (file.getMetadataKeyVersion() == keyVersion) {
+            String key = switch (fieldType) {
+                case TITLE -> file.getTitleKey();
+                case ARTIST -> file.getArtistKey();
+                case ALBUM -> file.getAlbumKey();
+            };
+            if (key != null) {
+                return key;
+            }
+        }
+        return normalizeString(value, config, fieldType);
+    }
+
+    /**
+     * Same as {@code value.trim().isEmpty()} without creating the trimmed string.
+     */
+    static boolean isBlank(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Normalizes a string based on configuration and field type.
      */
@@ -249,34 +405,61 @@ public class FuzzyMatcher {
     
     /**
      * Checks if two files have matching durations within tolerance.
+     * Missing durations are considered a match (see {@link DurationWindow}).
      */
     private static boolean checkDurationMatch(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
-        Integer duration1 = file1.getDurationSeconds();
-        Integer duration2 = file2.getDurationSeconds();
-        
-        // If either duration is missing, consider it a match if configured to ignore
-        if (duration1 == null || duration2 == null) {
-            return true; // Could be configurable in the future
+        return DurationWindow.from(config).matches(
+            DurationWindow.metadataDuration(file1), DurationWindow.metadataDuration(file2));
+    }
+
+    /**
+     * Returns a duration window that can skip candidate pairs for this configuration
+     * without changing which pairs are duplicates, or null if no such pruning is safe.
+     *
+     * <p>A duration mismatch leaves at most three matching fields, so it only rules a
+     * pair out when all four fields are required. With fewer required fields a pair
+     * can still match on title, artist and album alone and every pair must be compared.
+     */
+    public static DurationWindow durationPruningWindow(FuzzySearchConfig config) {
+        return config.getMinimumFieldsToMatch() > 3 ? DurationWindow.from(config) : null;
+    }
+
+    /**
+     * Builds the duration candidates used to prune comparisons, or returns null if the
+     * configuration does not allow pruning.
+     */
+    public static DurationWindow.Candidates durationCandidates(List<MusicFile> musicFiles, FuzzySearchConfig config) {
+        DurationWindow window = durationPruningWindow(config);
+        if (window == null) {
+            return null;
         }
-        
-        int diff = Math.abs(duration1 - duration2);
-        
-        // Check absolute tolerance
-        if (diff <= config.getDurationToleranceSeconds()) {
-            return true;
+        int[] durations = new int[musicFiles.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = DurationWindow.metadataDuration(musicFiles.get(i));
         }
-        
-        // Check percentage tolerance
-        double avgDuration = (duration1 + duration2) / 2.0;
-        double percentDiff = (diff / avgDuration) * 100.0;
-        
-        return percentDiff <= config.getDurationTolerancePercent();
+        return window.candidates(durations);
+    }
+
+    /**
+     * Returns the later candidates of each file that metadata matching scores: the pairs
+     * proposed by {@link MetadataBlocker} for libraries it applies to, which may miss a few
+     * matches, otherwise the pairs within the duration window, or null when every pair is
+     * scored. Grouping, the duplicate scan and the {@link DuplicateIndex} all take their
+     * candidates from here so they report the same matches; only
+     * {@link DuplicateIndex#verify(boolean)} compares every pair.
+     */
+    public static IntFunction<int[]> metadataCandidates(List<MusicFile> musicFiles, FuzzySearchConfig config) {
+        if (MetadataBlocker.appliesTo(musicFiles.size())) {
+            return MetadataBlocker.candidates(musicFiles, config)::candidatesAfter;
+        }
+        DurationWindow.Candidates candidates = durationCandidates(musicFiles, config);
+        return candidates != null ? candidates::candidatesAfter : null;
     }
     
     /**
      * Checks if two files have matching track numbers.
      */
-    private static boolean checkTrackNumberMatch(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
+    static boolean checkTrackNumberMatch(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
         Integer track1 = file1.getTrackNumber();
         Integer track2 = file2.getTrackNumber();
         
@@ -292,79 +475,13 @@ public class FuzzyMatcher {
     /**
      * Implements Jaro-Winkler string similarity algorithm.
      * Returns a value between 0.0 and 1.0, where 1.0 is an exact match.
+     * The Winkler prefix bonus only applies when the Jaro similarity is at least 0.7.
      */
     public static double jaroWinklerSimilarity(String s1, String s2) {
         if (s1 == null || s2 == null) return 0.0;
         if (s1.equals(s2)) return 1.0;
         
-        double jaro = jaroSimilarity(s1, s2);
-        if (jaro < 0.7) return jaro; // Only apply Winkler bonus if Jaro similarity is high enough
-        
-        // Calculate common prefix length (up to 4 characters)
-        int prefixLength = 0;
-        int maxPrefix = Math.min(4, Math.min(s1.length(), s2.length()));
-        
-        for (int i = 0; i < maxPrefix; i++) {
-            if (s1.charAt(i) == s2.charAt(i)) {
-                prefixLength++;
-            } else {
-                break;
-            }
-        }
-        
-        // Apply Winkler bonus (0.1 scaling factor)
-        return jaro + (0.1 * prefixLength * (1.0 - jaro));
-    }
-    
-    /**
-     * Implements Jaro string similarity algorithm.
-     */
-    private static double jaroSimilarity(String s1, String s2) {
-        int len1 = s1.length();
-        int len2 = s2.length();
-        
-        if (len1 == 0 && len2 == 0) return 1.0;
-        if (len1 == 0 || len2 == 0) return 0.0;
-        
-        // Calculate the maximum allowed distance for matches
-        int matchWindow = Math.max(len1, len2) / 2 - 1;
-        if (matchWindow < 0) matchWindow = 0;
-        
-        boolean[] s1Matches = new boolean[len1];
-        boolean[] s2Matches = new boolean[len2];
-        
-        int matches = 0;
-        
-        // Find matches
-        for (int i = 0; i < len1; i++) {
-            int start = Math.max(0, i - matchWindow);
-            int end = Math.min(i + matchWindow + 1, len2);
-            
-            for (int j = start; j < end; j++) {
-                if (s2Matches[j] || s1.charAt(i) != s2.charAt(j)) continue;
-                s1Matches[i] = true;
-                s2Matches[j] = true;
-                matches++;
-                break;
-            }
-        }
-        
-        if (matches == 0) return 0.0;
-        
-        // Count transpositions
-        int transpositions = 0;
-        int k = 0;
-        
-        for (int i = 0; i < len1; i++) {
-            if (!s1Matches[i]) continue;
-            while (!s2Matches[k]) k++;
-            if (s1.charAt(i) != s2.charAt(k)) transpositions++;
-            k++;
-        }
-        
-        // Calculate Jaro similarity
-        return (matches / (double) len1 + matches / (double) len2 + 
-                (matches - transpositions / 2.0) / matches) / 3.0;
+        return StringSimilarityKernel.jaroWinkler(s1, s2);
     }
     
     /**
@@ -375,29 +492,7 @@ public class FuzzyMatcher {
         if (s1 == null || s2 == null) return Math.max(s1 != null ? s1.length() : 0, s2 != null ? s2.length() : 0);
         if (s1.equals(s2)) return 0;
         
-        int len1 = s1.length();
-        int len2 = s2.length();
-        
-        // Create a matrix to store distances
-        int[][] dp = new int[len1 + 1][len2 + 1];
-        
-        // Initialize first row and column
-        for (int i = 0; i <= len1; i++) dp[i][0] = i;
-        for (int j = 0; j <= len2; j++) dp[0][j] = j;
-        
-        // Fill the matrix
-        for (int i = 1; i <= len1; i++) {
-            for (int j = 1; j <= len2; j++) {
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                dp[i][j] = Math.min(Math.min(
-                    dp[i - 1][j] + 1,      // deletion
-                    dp[i][j - 1] + 1),     // insertion
-                    dp[i - 1][j - 1] + cost // substitution
-                );
-            }
-        }
-        
-        return dp[len1][len2];
+        return StringSimilarityKernel.levenshtein(s1, s2);
     }
     
     /**
@@ -440,6 +535,8 @@ public class FuzzyMatcher {
     /**
      * Filters a list of music files to find potential duplicates based on fuzzy configuration.
      * Uses parallel processing and streaming results via callback for better performance.
+     * Comparisons run in tiles on a {@link TiledMetadataScan}; progress is reported after
+     * each tile and cancellation is checked before each one.
      */
     public static void findFuzzyDuplicatesParallel(List<MusicFile> musicFiles, 
                                                    FuzzySearchConfig config, 
@@ -448,32 +545,29 @@ public class FuzzyMatcher {
             return;
         }
         
-        int totalComparisons = (musicFiles.size() * (musicFiles.size() - 1)) / 2;
-        AtomicInteger completed = new AtomicInteger(0);
-        
-        IntStream.range(0, musicFiles.size())
-            .boxed()
-            .flatMap(i -> IntStream.range(i + 1, musicFiles.size())
-                .mapToObj(j -> new int[]{i, j}))
-            .parallel()
-            .takeWhile(pair -> !callback.isCancelled())
-            .forEach(pair -> {
-                MusicFile file1 = musicFiles.get(pair[0]);
-                MusicFile file2 = musicFiles.get(pair[1]);
-                
-                if (areDuplicates(file1, file2, config)) {
-                    callback.onDuplicateFound(file1, file2);
+        DurationWindow.Candidates candidates = durationCandidates(musicFiles, config);
+        int totalComparisons = clampToInt(candidates != null ? candidates.pairCount()
+            : (long) musicFiles.size() * (musicFiles.size() - 1) / 2);
+        TiledMetadataScan.Result result = TiledMetadataScan.run(musicFiles, config,
+            candidates != null ? candidates::candidatesAfter : null, callback::isCancelled,
+            new TiledMetadataScan.Listener() {
+                @Override
+                public void onMatch(int i, int j) {
+                    callback.onDuplicateFound(musicFiles.get(i), musicFiles.get(j));
                 }
-                
-                int completedCount = completed.incrementAndGet();
-                if (completedCount % 100 == 0) {  // Report progress every 100 comparisons
-                    callback.onProgressUpdate(completedCount, totalComparisons);
+
+                @Override
+                public void onTileCompleted(long comparisons, int settledFiles) {
+                    callback.onProgressUpdate(clampToInt(comparisons), totalComparisons);
                 }
             });
         
         // Report final progress
-        int finalCount = completed.get();
-        callback.onProgressUpdate(finalCount, totalComparisons);
+        callback.onProgressUpdate(clampToInt(result.comparisons()), totalComparisons);
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
     }
     
     /**
@@ -506,10 +600,26 @@ public class FuzzyMatcher {
     
     /**
      * Groups duplicate music files together.
+     * Only the pairs proposed by {@link #metadataCandidates(List, FuzzySearchConfig)} are
+     * compared: within the duration window of each seed when
+     * {@link #durationPruningWindow(FuzzySearchConfig)} allows it, which leaves the groups
+     * unchanged, and only the pairs {@link MetadataBlocker} proposes for large libraries.
      */
     public static List<List<MusicFile>> groupDuplicates(List<MusicFile> musicFiles, FuzzySearchConfig config) {
-        Map<MusicFile, List<MusicFile>> duplicateGroups = new HashMap<>();
+        List<List<MusicFile>> duplicateGroups = new ArrayList<>();
+        groupDuplicates(musicFiles, config, duplicateGroups::add);
+        return duplicateGroups;
+    }
+
+    /**
+     * Same as {@link #groupDuplicates(List, FuzzySearchConfig)}, but hands each group to
+     * {@code sink} as soon as it is complete instead of collecting them, so callers can
+     * pass groups on while the rest are still being found.
+     */
+    public static void groupDuplicates(List<MusicFile> musicFiles, FuzzySearchConfig config,
+                                       Consumer<List<MusicFile>> sink) {
         Set<MusicFile> processed = new HashSet<>();
+        IntFunction<int[]> candidatesAfter = metadataCandidates(musicFiles, config);
         
         for (int i = 0; i < musicFiles.size(); i++) {
             MusicFile file1 = musicFiles.get(i);
@@ -519,7 +629,10 @@ public class FuzzyMatcher {
             group.add(file1);
             processed.add(file1);
             
-            for (int j = i + 1; j < musicFiles.size(); j++) {
+            int[] later = candidatesAfter != null ? candidatesAfter.apply(i) : null;
+            int laterCount = later != null ? later.length : musicFiles.size() - i - 1;
+            for (int k = 0; k < laterCount; k++) {
+                int j = later != null ? later[k] : i + 1 + k;
                 MusicFile file2 = musicFiles.get(j);
                 if (processed.contains(file2)) continue;
                 
@@ -530,17 +643,103 @@ public class FuzzyMatcher {
             }
             
             if (group.size() > 1) {
-                duplicateGroups.put(file1, group);
+                sink.accept(group);
             }
         }
-        
-        return new ArrayList<>(duplicateGroups.values());
     }
-    
+
+    /**
+     * Groups duplicate music files by comparing all pairs in parallel.
+     *
+     * <p>Unlike {@link #groupDuplicates(List, FuzzySearchConfig)}, which assigns each file to
+     * the first seed it matches, this merges matching pairs in a {@link ConcurrentUnionFind},
+     * so groups are transitive: if A matches B and B matches C, all three share a group.
+     * Groups are ordered by their first file and keep the input order within each group,
+     * regardless of how the comparisons were scheduled. The comparisons run on a
+     * {@link TiledMetadataScan}, skipping pairs ruled out by duration.
+     *
+     * @param musicFiles files to group
+     * @param config fuzzy matching configuration
+     * @return duplicate groups with 2+ files each
+     */
+    public static List<List<MusicFile>> groupDuplicatesParallel(List<MusicFile> musicFiles, FuzzySearchConfig config) {
+        if (musicFiles == null || musicFiles.size() < 2 || config == null) {
+            return new ArrayList<>();
+        }
+
+        DurationWindow.Candidates candidates = durationCandidates(musicFiles, config);
+        List<int[]> settled = TiledMetadataScan.run(musicFiles, config,
+            candidates != null ? candidates::candidatesAfter : null, null, null).groups();
+        settled.sort(Comparator.comparingInt(members -> members[0]));
+
+        List<List<MusicFile>> groups = new ArrayList<>();
+        for (int[] members : settled) {
+            List<MusicFile> group = new ArrayList<>(members.length);
+            for (int i : members) {
+                group.add(musicFiles.get(i));
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Returns every pair of files that {@link #areDuplicates(MusicFile, MusicFile, FuzzySearchConfig)}
+     * accepts, comparing in parallel and skipping pairs ruled out by duration. This is
+     * exact at any library size, unlike grouping, which blocks large libraries.
+     *
+     * @param musicFiles files to compare
+     * @param config fuzzy matching configuration
+     * @return index pairs {@code {i, j}} with {@code i < j}, in no particular order
+     */
+    public static List<int[]> findDuplicatePairs(List<MusicFile> musicFiles, FuzzySearchConfig config) {
+        if (musicFiles == null || musicFiles.size() < 2 || config == null) {
+            return new ArrayList<>();
+        }
+        DurationWindow.Candidates candidates = durationCandidates(musicFiles, config);
+        return findDuplicatePairs(musicFiles, config, candidates != null ? candidates::candidatesAfter : null);
+    }
+
+    /**
+     * Returns the pairs among the given candidates that
+     * {@link #areDuplicates(MusicFile, MusicFile, FuzzySearchConfig)} accepts, comparing in parallel.
+     *
+     * @param musicFiles files to compare
+     * @param config fuzzy matching configuration
+     * @param candidatesAfter later candidates of each file, ascending, or null to compare every pair
+     * @return index pairs {@code {i, j}} with {@code i < j}, in no particular order
+     */
+    public static List<int[]> findDuplicatePairs(List<MusicFile> musicFiles, FuzzySearchConfig config,
+                                                 IntFunction<int[]> candidatesAfter) {
+        if (musicFiles == null || musicFiles.size() < 2 || config == null) {
+            return new ArrayList<>();
+        }
+
+        int n = musicFiles.size();
+        ConcurrentLinkedQueue<int[]> pairs = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, n).parallel().forEach(i -> {
+            MusicFile file1 = musicFiles.get(i);
+            if (candidatesAfter != null) {
+                for (int j : candidatesAfter.apply(i)) {
+                    if (areDuplicates(file1, musicFiles.get(j), config)) {
+                        pairs.add(new int[] { i, j });
+                    }
+                }
+                return;
+            }
+            for (int j = i + 1; j < n; j++) {
+                if (areDuplicates(file1, musicFiles.get(j), config)) {
+                    pairs.add(new int[] { i, j });
+                }
+            }
+        });
+        return new ArrayList<>(pairs);
+    }
+
     /**
      * Field types for string normalization.
      */
-    private enum FieldType {
+    enum FieldType {
         TITLE, ARTIST, ALBUM
     }
     
@@ -550,9 +749,10 @@ public class FuzzyMatcher {
     public static String getSimilarityBreakdown(MusicFile file1, MusicFile file2, FuzzySearchConfig config) {
         StringBuilder breakdown = new StringBuilder();
         
-        double titleSim = calculateFieldSimilarity(file1.getTitle(), file2.getTitle(), config, FieldType.TITLE);
-        double artistSim = calculateFieldSimilarity(file1.getArtist(), file2.getArtist(), config, FieldType.ARTIST);
-        double albumSim = calculateFieldSimilarity(file1.getAlbum(), file2.getAlbum(), config, FieldType.ALBUM);
+        int keyVersion = metadataKeyVersion(config);
+        double titleSim = calculateFieldSimilarity(file1, file2, config, FieldType.TITLE, keyVersion, 0);
+        double artistSim = calculateFieldSimilarity(file1, file2, config, FieldType.ARTIST, keyVersion, 0);
+        double albumSim = calculateFieldSimilarity(file1, file2, config, FieldType.ALBUM, keyVersion, 0);
         boolean durationMatch = checkDurationMatch(file1, file2, config);
         boolean trackMatch = checkTrackNumberMatch(file1, file2, config);
         
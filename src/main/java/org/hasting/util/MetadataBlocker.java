@@ -0,0 +1,601 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Blocking stage for metadata duplicate detection: proposes the candidate pairs worth
+ * scoring so large libraries don't need every pair compared.
+ *
+ * <p>Each {@link BlockingKey} sorts the files by a key built from their normalized
+ * metadata and pairs every file with the next {@code window - 1} files in that order
+ * (the sorted-neighbourhood method). A pair is a candidate if any key proposes it.
+ * Secondary fields are appended to each key so the neighbours within a large block,
+ * such as one artist's tracks, are the most similar ones.
+ *
+ * <p>Blocking can miss matches whose fields differ in every key, so each run estimates
+ * its recall by comparing a sample of files against the whole library, and reports it
+ * with the pair reduction in {@link Stats}. Below {@link #MIN_FILES_FOR_BLOCKING} files
+ * callers compare every pair instead.
+ *
+ * <p>When {@link FuzzyMatcher#durationPruningWindow(FuzzySearchConfig)} allows it,
+ * candidates outside the duration window are dropped as well. Files whose normalized
+ * metadata keys are missing or stale get them computed along the way.
+ *
+ * <p>Ties in a sort order are broken by file id, so the candidates depend only on the
+ * files and not on the order they were listed in. {@link Neighbourhoods} keeps the sort
+ * orders of a library, so incremental updates can find the candidates of a few files, and
+ * the pairs whose candidacy a changed file affected, without enumerating every pair.
+ */
+public final class MetadataBlocker {
+
+    private static final Logger logger = Log4Rich.getLogger(MetadataBlocker.class);
+
+    /**
+     * Files each file is paired with in every key's sort order, itself included.
+     */
+    public static final int DEFAULT_WINDOW = 16;
+
+    /**
+     * Libraries smaller than this are compared exhaustively.
+     */
+    public static final int MIN_FILES_FOR_BLOCKING = 5000;
+
+    /**
+     * Files compared against the whole library to estimate the recall of a run.
+     */
+    public static final int DEFAULT_RECALL_SAMPLE = 32;
+
+    /**
+     * Length of the normalized artist prefix used by {@link BlockingKey#ARTIST_PREFIX}.
+     */
+    private static final int ARTIST_PREFIX_LENGTH = 4;
+
+    /**
+     * Keys used to sort the library for the sorted-neighbourhood passes.
+     */
+    public enum BlockingKey {
+        /** Normalized artist prefix, then album and title. */
+        ARTIST_PREFIX,
+        /** Title tokens in sorted order, then artist. */
+        TITLE_TOKENS,
+        /** Soundex code of each artist word, then duration and title. */
+        ARTIST_PHONETIC,
+        /** Duration bucket of the tolerance width, then album and title. */
+        DURATION_BUCKET
+    }
+
+    /**
+     * Statistics of one blocking run.
+     *
+     * @param files number of files
+     * @param totalPairs pairs an exhaustive comparison would score
+     * @param candidatePairs distinct pairs proposed by blocking
+     * @param reductionRatio {@code totalPairs / candidatePairs}
+     * @param pairsByKey pairs proposed by each key, before removing pairs proposed by several keys
+     * @param recall estimated fraction of matching pairs among the candidates, null if not
+     *               measured or the sample had no matches
+     * @param recallSampleFiles files compared against the whole library to estimate recall
+     * @param recallSampleMatches matching pairs found for the sample files
+     * @param elapsedMs time spent building candidates and estimating recall
+     */
+    public record Stats(int files, long totalPairs, long candidatePairs, double reductionRatio,
+                        Map<BlockingKey, Long> pairsByKey, Double recall, int recallSampleFiles,
+                        long recallSampleMatches, long elapsedMs) {}
+
+    /**
+     * What blocking needs to know of a file to place it in the sort orders.
+     *
+     * @param id database id of the file
+     * @param titleKey normalized title, null if the file has none
+     * @param artistKey normalized artist, null if the file has none
+     * @param albumKey normalized album, null if the file has none
+     * @param duration duration in seconds, {@link DurationWindow#UNKNOWN} if missing
+     */
+    public record FileKeys(long id, String titleKey, String artistKey, String albumKey, int duration) {
+        String[] normalized() {
+            return new String[] { titleKey, artistKey, albumKey };
+        }
+    }
+
+    private MetadataBlocker() {
+    }
+
+    /**
+     * Returns true if a library of this size should be blocked rather than compared exhaustively.
+     */
+    public static boolean appliesTo(int fileCount) {
+        return fileCount >= MIN_FILES_FOR_BLOCKING;
+    }
+
+    /**
+     * Builds the candidate pairs with the default window and recall sample.
+     */
+    public static Candidates candidates(List<MusicFile> musicFiles, FuzzySearchConfig config) {
+        return candidates(musicFiles, config, DEFAULT_WINDOW, DEFAULT_RECALL_SAMPLE);
+    }
+
+    /**
+     * Builds the candidate pairs of a library.
+     *
+     * @param musicFiles files to block, indexed as in the returned candidates
+     * @param config fuzzy matching configuration, for normalization and recall
+     * @param window files each file is paired with in every key's order, itself included
+     * @param recallSample files to compare exhaustively for the recall estimate, 0 to skip it
+     * @return the candidate pairs and the statistics of the run
+     */
+    public static Candidates candidates(List<MusicFile> musicFiles, FuzzySearchConfig config,
+                                        int window, int recallSample) {
+        long startTime = System.currentTimeMillis();
+        int n = musicFiles.size();
+        int keyVersion = FuzzyMatcher.metadataKeyVersion(config);
+        String[][] normalized = new String[n][];
+        IntStream.range(0, n).parallel().forEach(i -> normalized[i] = normalizedKeys(musicFiles.get(i), config, keyVersion));
+
+        int[] durations = new int[n];
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            MusicFile file = musicFiles.get(i);
+            durations[i] = DurationWindow.metadataDuration(file);
+            ids[i] = file.getId() != null ? file.getId() : i;
+        }
+        Neighbourhoods neighbourhoods = new Neighbourhoods(ids, normalized, durations, config, window);
+
+        Map<BlockingKey, Long> pairsByKey = new EnumMap<>(BlockingKey.class);
+        long[][] proposed = new long[BlockingKey.values().length][];
+        Arrays.stream(BlockingKey.values()).parallel()
+            .forEach(key -> proposed[key.ordinal()] = neighbourhoods.pairs(key));
+        int total = 0;
+        for (BlockingKey key : BlockingKey.values()) {
+            pairsByKey.put(key, (long) proposed[key.ordinal()].length);
+            total += proposed[key.ordinal()].length;
+        }
+
+        long[] pairs = new long[total];
+        int offset = 0;
+        for (long[] keyPairs : proposed) {
+            System.arraycopy(keyPairs, 0, pairs, offset, keyPairs.length);
+            offset += keyPairs.length;
+        }
+        Arrays.parallelSort(pairs);
+
+        int distinct = 0;
+        for (int p = 0; p < pairs.length; p++) {
+            if (p > 0 && pairs[p] == pairs[p - 1]) continue;
+            if (!neighbourhoods.durationsAllow(first(pairs[p]), second(pairs[p]))) continue;
+            pairs[distinct++] = pairs[p];
+        }
+        Candidates candidates = new Candidates(n, Arrays.copyOf(pairs, distinct));
+
+        long totalPairs = (long) n * (n - 1) / 2;
+        long[] recallCounts = recallSample > 0 ? estimateRecall(musicFiles, config, candidates, recallSample) : null;
+        Double recall = recallCounts != null && recallCounts[1] > 0 ? recallCounts[0] / (double) recallCounts[1] : null;
+        candidates.stats = new Stats(n, totalPairs, distinct,
+            distinct > 0 ? totalPairs / (double) distinct : 0.0, pairsByKey, recall,
+            recallCounts != null ? (int) recallCounts[2] : 0, recallCounts != null ? recallCounts[1] : 0,
+            System.currentTimeMillis() - startTime);
+
+        logger.info("Metadata blocking: {} files, {} of {} pairs proposed ({}x fewer), recall {} in {}ms",
+            n, distinct, totalPairs, String.format("%.1f", candidates.stats.reductionRatio()),
+            recall != null ? String.format("%.3f", recall) : "n/a", candidates.stats.elapsedMs());
+        return candidates;
+    }
+
+    /**
+     * Builds the sort orders of a library with the default window.
+     *
+     * @param files keys of every file to block, with distinct ids
+     * @param config fuzzy matching configuration, for the duration bucket and pruning
+     */
+    public static Neighbourhoods neighbourhoods(List<FileKeys> files, FuzzySearchConfig config) {
+        return neighbourhoods(files, config, DEFAULT_WINDOW);
+    }
+
+    static Neighbourhoods neighbourhoods(List<FileKeys> files, FuzzySearchConfig config, int window) {
+        int n = files.size();
+        long[] ids = new long[n];
+        String[][] normalized = new String[n][];
+        int[] durations = new int[n];
+        for (int i = 0; i < n; i++) {
+            FileKeys file = files.get(i);
+            ids[i] = file.id();
+            normalized[i] = file.normalized();
+            durations[i] = file.duration();
+        }
+        return new Neighbourhoods(ids, normalized, durations, config, window);
+    }
+
+    /**
+     * Returns the normalized title, artist and album of a file, computing and storing
+     * them on the file first if they are missing or stale, so the scoring that follows
+     * blocking doesn't normalize the file again for every pair.
+     */
+    private static String[] normalizedKeys(MusicFile file, FuzzySearchConfig config, int keyVersion) {
+        if (file.getMetadataKeyVersion() != keyVersion) {
+            FuzzyMatcher.computeMetadataKeys(file, config);
+        }
+        return new String[] { file.getTitleKey(), file.getArtistKey(), file.getAlbumKey() };
+    }
+
+    /**
+     * Returns the sort key of a file for one blocking key, or null if the file has
+     * nothing to block on for that key.
+     */
+    static String sortKey(BlockingKey key, String[] normalized, int duration, int bucketWidth) {
+        String title = normalized[0] != null ? normalized[0] : "";
+        String artist = normalized[1];
+        String album = normalized[2] != null ? normalized[2] : "";
+        switch (key) {
+            case ARTIST_PREFIX:
+                if (artist == null || artist.isEmpty()) return null;
+                return artist.substring(0, Math.min(ARTIST_PREFIX_LENGTH, artist.length())) + '\u0000' + album
+                    + '\u0000' + title;
+            case TITLE_TOKENS:
+                if (title.isEmpty()) return null;
+                String[] tokens = title.split(" ");
+                Arrays.sort(tokens);
+                return String.join(" ", tokens) + '\u0000' + (artist != null ? artist : "");
+            case ARTIST_PHONETIC:
+                if (artist == null || artist.isEmpty()) return null;
+                StringBuilder codes = new StringBuilder();
+                for (String word : artist.split(" ")) {
+                    String code = soundex(word);
+                    if (!code.isEmpty()) codes.append(code);
+                }
+                if (codes.length() == 0) return null;
+                return codes.toString() + '\u0000' + String.format("%08d", Math.max(0, duration)) + '\u0000' + title;
+            case DURATION_BUCKET:
+                if (duration == DurationWindow.UNKNOWN) return null;
+                return String.format("%08d", duration / bucketWidth) + '\u0000' + album + '\u0000' + title;
+            default:
+                throw new IllegalArgumentException("Unknown blocking key: " + key);
+        }
+    }
+
+    /**
+     * American Soundex code of a word: its first letter followed by three digits, or an
+     * empty string if the word has no letters.
+     */
+    static String soundex(String word) {
+        StringBuilder code = new StringBuilder(4);
+        char last = 0;
+        for (int i = 0; i < word.length() && code.length() < 4; i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c < 'A' || c > 'Z') continue;
+            char digit = soundexDigit(c);
+            if (code.length() == 0) {
+                code.append(c);
+            } else if (digit != '0' && digit != last) {
+                code.append(digit);
+            }
+            // H and W don't separate letters with the same code; vowels do
+            if (c != 'H' && c != 'W') {
+                last = digit;
+            }
+        }
+        if (code.length() == 0) {
+            return "";
+        }
+        while (code.length() < 4) {
+            code.append('0');
+        }
+        return code.toString();
+    }
+
+    private static char soundexDigit(char c) {
+        switch (c) {
+            case 'B': case 'F': case 'P': case 'V':
+                return '1';
+            case 'C': case 'G': case 'J': case 'K': case 'Q': case 'S': case 'X': case 'Z':
+                return '2';
+            case 'D': case 'T':
+                return '3';
+            case 'L':
+                return '4';
+            case 'M': case 'N':
+                return '5';
+            case 'R':
+                return '6';
+            default:
+                return '0';
+        }
+    }
+
+    private static long encode(int i, int j) {
+        return i < j ? ((long) i << 32) | j : ((long) j << 32) | i;
+    }
+
+    private static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    private static int second(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * Compares evenly spaced sample files with every other file and counts the matching
+     * pairs that blocking proposed.
+     *
+     * @return found matches, all matches and the number of sample files
+     */
+    private static long[] estimateRecall(List<MusicFile> musicFiles, FuzzySearchConfig config,
+                                         Candidates candidates, int sampleSize) {
+        int n = musicFiles.size();
+        int samples = Math.min(sampleSize, n);
+        if (samples == 0) {
+            return new long[] { 0, 0, 0 };
+        }
+        AtomicLong found = new AtomicLong();
+        AtomicLong matches = new AtomicLong();
+        for (int s = 0; s < samples; s++) {
+            int i = (int) ((long) s * n / samples);
+            MusicFile sample = musicFiles.get(i);
+            IntStream.range(0, n).parallel()
+                .filter(j -> j != i && FuzzyMatcher.areDuplicates(sample, musicFiles.get(j), config))
+                .forEach(j -> {
+                    matches.incrementAndGet();
+                    if (candidates.contains(i, j)) {
+                        found.incrementAndGet();
+                    }
+                });
+        }
+        return new long[] { found.get(), matches.get(), samples };
+    }
+
+    /**
+     * The sort order of a library under every blocking key. Two files are a candidate pair
+     * exactly when they lie within {@code window - 1} places of each other in some order,
+     * and their durations allow it when pruning applies, so the candidates of a few files
+     * can be listed and a single pair checked without enumerating every pair.
+     * Immutable once built and safe to share between threads.
+     */
+    public static final class Neighbourhoods {
+
+        private final long[] ids;
+        private final int[] durations;
+        private final int bucketWidth;
+        private final int reach;
+        private final DurationWindow pruning;
+        /** Sort key of each file under each blocking key, null where it has none. */
+        private final String[][] sortKeys;
+        /** Files in sort order under each blocking key; files without a sort key are left out. */
+        private final int[][] orders;
+        /** Position of each file in each order, -1 where it has no sort key. */
+        private final int[][] positions;
+        private final Map<Long, Integer> indexById;
+
+        private Neighbourhoods(long[] ids, String[][] normalized, int[] durations, FuzzySearchConfig config,
+                               int window) {
+            int n = ids.length;
+            this.ids = ids;
+            this.durations = durations;
+            this.bucketWidth = Math.max(1, config.getDurationToleranceSeconds());
+            this.reach = Math.max(1, window) - 1;
+            this.pruning = FuzzyMatcher.durationPruningWindow(config);
+            int keys = BlockingKey.values().length;
+            this.sortKeys = new String[keys][];
+            this.orders = new int[keys][];
+            this.positions = new int[keys][];
+            Arrays.stream(BlockingKey.values()).parallel().forEach(key -> {
+                int k = key.ordinal();
+                String[] keyOf = new String[n];
+                for (int i = 0; i < n; i++) {
+                    keyOf[i] = sortKey(key, normalized[i], durations[i], bucketWidth);
+                }
+                Integer[] order = IntStream.range(0, n)
+                    .filter(i -> keyOf[i] != null)
+                    .boxed()
+                    .toArray(Integer[]::new);
+                Arrays.sort(order, Comparator.comparing((Integer i) -> keyOf[i]).thenComparingLong(i -> ids[i]));
+                int[] positionOf = new int[n];
+                Arrays.fill(positionOf, -1);
+                int[] sorted = new int[order.length];
+                for (int p = 0; p < order.length; p++) {
+                    sorted[p] = order[p];
+                    positionOf[order[p]] = p;
+                }
+                sortKeys[k] = keyOf;
+                orders[k] = sorted;
+                positions[k] = positionOf;
+            });
+            this.indexById = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                indexById.put(ids[i], i);
+            }
+        }
+
+        /**
+         * Returns the number of files.
+         */
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns true if the file is one of those the orders were built from.
+         */
+        public boolean contains(long id) {
+            return indexById.containsKey(id);
+        }
+
+        /**
+         * Returns true if the two files form a candidate pair.
+         */
+        public boolean isCandidate(long idA, long idB) {
+            Integer a = indexById.get(idA);
+            Integer b = indexById.get(idB);
+            if (a == null || b == null || a.equals(b) || !durationsAllow(a, b)) {
+                return false;
+            }
+            for (int[] positionOf : positions) {
+                if (positionOf[a] >= 0 && positionOf[b] >= 0 && Math.abs(positionOf[a] - positionOf[b]) <= reach) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the ids of every candidate of a file, or an empty set if the file is unknown.
+         */
+        public Set<Long> candidatesOf(long id) {
+            Integer i = indexById.get(id);
+            Set<Long> candidates = new HashSet<>();
+            if (i == null) {
+                return candidates;
+            }
+            for (int k = 0; k < orders.length; k++) {
+                int position = positions[k][i];
+                if (position < 0) continue;
+                int[] order = orders[k];
+                for (int q = Math.max(0, position - reach); q <= position + reach && q < order.length; q++) {
+                    if (q != position && durationsAllow(i, order[q])) {
+                        candidates.add(ids[order[q]]);
+                    }
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * Returns the candidate pairs that lie on both sides of the place a file with
+         * these keys would take in some order. When a file leaves the library or moves,
+         * these are the only pairs of other files that can have become candidates, since
+         * the file no longer sits between them.
+         *
+         * @param departed the keys the file had, its id breaking ties as in the orders
+         * @return pairs of file ids, smaller id first, possibly with repeats
+         */
+        public List<long[]> pairsAcross(FileKeys departed) {
+            List<long[]> pairs = new ArrayList<>();
+            String[] normalized = departed.normalized();
+            for (BlockingKey key : BlockingKey.values()) {
+                String departedKey = sortKey(key, normalized, departed.duration(), bucketWidth);
+                if (departedKey == null) continue;
+                int[] order = orders[key.ordinal()];
+                String[] keyOf = sortKeys[key.ordinal()];
+                // First position that sorts after the departed file
+                int low = 0;
+                int high = order.length;
+                boolean present = false;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    int cmp = keyOf[order[mid]].compareTo(departedKey);
+                    if (cmp == 0) cmp = Long.compare(ids[order[mid]], departed.id());
+                    if (cmp == 0) {
+                        present = true;
+                        break;
+                    }
+                    if (cmp < 0) low = mid + 1; else high = mid;
+                }
+                // The file still holds that place, so nothing moved closer
+                if (present) continue;
+                for (int p = Math.max(0, low - reach); p < low; p++) {
+                    for (int q = low; q <= p + reach && q < order.length; q++) {
+                        int a = order[p];
+                        int b = order[q];
+                        if (durationsAllow(a, b)) {
+                            pairs.add(ids[a] < ids[b] ? new long[] { ids[a], ids[b] } : new long[] { ids[b], ids[a] });
+                        }
+                    }
+                }
+            }
+            return pairs;
+        }
+
+        /**
+         * Proposes every pair within reach in the order of one key.
+         *
+         * @return pairs encoded by {@link #encode(int, int)}
+         */
+        private long[] pairs(BlockingKey key) {
+            int[] order = orders[key.ordinal()];
+            long count = 0;
+            for (int p = 0; p < order.length; p++) {
+                count += Math.min(reach, order.length - p - 1);
+            }
+            long[] pairs = new long[(int) count];
+            int k = 0;
+            for (int p = 0; p < order.length; p++) {
+                for (int q = p + 1; q <= p + reach && q < order.length; q++) {
+                    pairs[k++] = encode(order[p], order[q]);
+                }
+            }
+            return pairs;
+        }
+
+        private boolean durationsAllow(int i, int j) {
+            return pruning == null || pruning.matches(durations[i], durations[j]);
+        }
+    }
+
+    /**
+     * Candidate pairs of a blocking run, stored by their smaller index.
+     * Immutable once built and safe to share between threads.
+     */
+    public static final class Candidates {
+
+        private final int size;
+        /** Start of the partners of each file in {@link #partners}; {@code size + 1} entries. */
+        private final int[] offsets;
+        /** Larger index of each pair, ascending within each file. */
+        private final int[] partners;
+        private Stats stats;
+
+        private Candidates(int size, long[] sortedPairs) {
+            this.size = size;
+            this.offsets = new int[size + 1];
+            this.partners = new int[sortedPairs.length];
+            for (int p = 0; p < sortedPairs.length; p++) {
+                offsets[first(sortedPairs[p]) + 1]++;
+                partners[p] = second(sortedPairs[p]);
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+        }
+
+        /**
+         * Returns the number of files.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns every candidate of file {@code i} with a larger index, ascending.
+         */
+        public int[] candidatesAfter(int i) {
+            return Arrays.copyOfRange(partners, offsets[i], offsets[i + 1]);
+        }
+
+        /**
+         * Returns true if the two files form a candidate pair.
+         */
+        public boolean contains(int i, int j) {
+            int a = Math.min(i, j);
+            int b = Math.max(i, j);
+            return Arrays.binarySearch(partners, offsets[a], offsets[a + 1], b) >= 0;
+        }
+
+        /**
+         * Returns the number of candidate pairs.
+         */
+        public long pairCount() {
+            return partners.length;
+        }
+
+        /**
+         * Returns the statistics of the run that built these candidates.
+         */
+        public Stats stats() {
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dictionary-encoded metadata of a loaded library, with a memoized similarity cache
+ * for metadata duplicate comparisons.
+ *
+ * <p>Large libraries repeat the same artist and album thousands of times. When the
+ * library is loaded for a scan, every distinct normalized title, artist and album is
+ * given an int id, and each file keeps three ids. Two files with the same value then
+ * compare on id equality alone, and the Jaro-Winkler score of two different values is
+ * computed once and looked up afterwards.
+ *
+ * <p>The cache is a fixed-size, direct-mapped table of immutable entries: a new score
+ * replaces whatever pair hashed to the same slot, so memory stays bounded and readers
+ * never lock. Scores are keyed by the ordered pair of ids, because Jaro matching is
+ * not strictly symmetric. A bounded score (see
+ * {@link StringSimilarityKernel#jaroWinklerPercent(String, String, double)}) is stored
+ * with its minimum and only reused for lookups that need at least that minimum.
+ *
+ * <p>{@link #areDuplicates(int, int)} gives exactly the same answer as
+ * {@link FuzzyMatcher#areDuplicates(MusicFile, MusicFile, FuzzySearchConfig)}.
+ */
+public final class MetadataDictionary {
+
+    /** Id of a missing (null) value. */
+    static final int NULL_ID = 0;
+    /** Id of a value that is empty or only whitespace. */
+    static final int BLANK_ID = 1;
+    private static final int FIRST_VALUE_ID = 2;
+
+    private static final int MIN_CACHE_SLOTS = 1 << 10;
+    private static final int MAX_CACHE_SLOTS = 1 << 18;
+    /** Cache slots per distinct value, before rounding to a power of two. */
+    private static final int CACHE_SLOTS_PER_VALUE = 4;
+
+    /** Rough heap cost of a cache entry object and its slot reference. */
+    private static final int ENTRY_BYTES = 40;
+    /** Rough heap cost of a String object and its backing array header. */
+    private static final int STRING_OVERHEAD_BYTES = 56;
+
+    private final List<MusicFile> files;
+    private final FuzzySearchConfig config;
+    private final String[] values;
+    private final int[] titleIds;
+    private final int[] artistIds;
+    private final int[] albumIds;
+    private final int[] durations;
+    private final DurationWindow durationWindow;
+    private final long valueBytes;
+
+    private final AtomicReferenceArray<Entry> cache;
+    private final int cacheMask;
+    private final LongAdder identical = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder occupiedSlots = new LongAdder();
+
+    /**
+     * A cached score. {@code score} is exact if it reaches {@code minimum}; otherwise it
+     * only says the real score is below {@code minimum}.
+     */
+    private record Entry(long key, double score, double minimum) {}
+
+    /**
+     * Snapshot of the dictionary and cache for the duplicate-scan status.
+     *
+     * @param files encoded files
+     * @param distinctValues distinct normalized titles, artists and albums
+     * @param identicalValues field comparisons settled by equal ids
+     * @param cacheHits similarity lookups answered from the cache
+     * @param cacheMisses similarity lookups that ran the string kernel
+     * @param hitRate share of field comparisons that skipped the string kernel
+     * @param cacheSlots capacity of the cache
+     * @param estimatedBytes approximate heap used by the dictionary and the cache
+     */
+    public record Stats(int files, int distinctValues, long identicalValues, long cacheHits, long cacheMisses,
+                        double hitRate, int cacheSlots, long estimatedBytes) {}
+
+    private MetadataDictionary(List<MusicFile> files, FuzzySearchConfig config) {
+        this.files = files;
+        this.config = config;
+        int n = files.size();
+        titleIds = new int[n];
+        artistIds = new int[n];
+        albumIds = new int[n];
+        durations = new int[n];
+        durationWindow = DurationWindow.from(config);
+
+        int keyVersion = FuzzyMatcher.metadataKeyVersion(config);
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> distinct = new ArrayList<>();
+        distinct.add(null);
+        distinct.add(null);
+        long bytes = 0;
+        for (int i = 0; i < n; i++) {
+            MusicFile file = files.get(i);
+            titleIds[i] = encode(file, FuzzyMatcher.FieldType.TITLE, keyVersion, ids, distinct);
+            artistIds[i] = encode(file, FuzzyMatcher.FieldType.ARTIST, keyVersion, ids, distinct);
+            albumIds[i] = encode(file, FuzzyMatcher.FieldType.ALBUM, keyVersion, ids, distinct);
+            durations[i] = DurationWindow.metadataDuration(file);
+        }
+        values = distinct.toArray(new String[0]);
+        for (int id = FIRST_VALUE_ID; id < values.length; id++) {
+            bytes += STRING_OVERHEAD_BYTES + 2L * values[id].length();
+        }
+        valueBytes = bytes + 4L * 4 * n;
+
+        int slots = Integer.highestOneBit(Math.max(MIN_CACHE_SLOTS,
+            Math.min(MAX_CACHE_SLOTS, values.length * CACHE_SLOTS_PER_VALUE)) * 2 - 1);
+        cache = new AtomicReferenceArray<>(slots);
+        cacheMask = slots - 1;
+    }
+
+    /**
+     * Encodes the normalized title, artist and album of every file. Stored metadata keys
+     * are used where they match the configuration.
+     *
+     * @param files files in scan order; ids are indexed the same way
+     * @param config fuzzy matching configuration
+     */
+    public static MetadataDictionary encode(List<MusicFile> files, FuzzySearchConfig config) {
+        return new MetadataDictionary(files, config);
+    }
+
+    private int encode(MusicFile file, FuzzyMatcher.FieldType fieldType, int keyVersion,
+                       Map<String, Integer> ids, List<String> distinct) {
+        String value = FuzzyMatcher.fieldValue(file, fieldType);
+        if (value == null) return NULL_ID;
+        if (FuzzyMatcher.isBlank(value)) return BLANK_ID;
+
+        String normalized = FuzzyMatcher.normalizedValue(file, value, config, fieldType, keyVersion);
+        Integer id = ids.get(normalized);
+        if (id == null) {
+            id = distinct.size();
+            ids.put(normalized, id);
+            distinct.add(normalized);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the files in the order they were encoded.
+     */
+    public List<MusicFile> files() {
+        return files;
+    }
+
+    public FuzzySearchConfig config() {
+        return config;
+    }
+
+    /**
+     * Returns the number of distinct normalized values across all three fields.
+     */
+    public int distinctValues() {
+        return values.length - FIRST_VALUE_ID;
+    }
+
+    /**
+     * Returns the id of a file's normalized title, artist or album.
+     */
+    int valueId(int file, FuzzyMatcher.FieldType fieldType) {
+        return switch (fieldType) {
+            case TITLE -> titleIds[file];
+            case ARTIST -> artistIds[file];
+            case ALBUM -> albumIds[file];
+        };
+    }
+
+    /**
+     * Returns true if files {@code i} and {@code j} are duplicates under the configuration.
+     */
+    public boolean areDuplicates(int i, int j) {
+        if (config.isTrackNumberMustMatch()
+                && !FuzzyMatcher.checkTrackNumberMatch(files.get(i), files.get(j), config)) {
+            return false;
+        }
+        return new FuzzyMatcher.FieldScores(
+            similarity(titleIds[i], titleIds[j], config.getTitleSimilarityThreshold()),
+            similarity(artistIds[i], artistIds[j], config.getArtistSimilarityThreshold()),
+            similarity(albumIds[i], albumIds[j], config.getAlbumSimilarityThreshold()),
+            durationWindow.matches(durations[i], durations[j]),
+            true).matches(config);
+    }
+
+    /**
+     * Returns the similarity in percent of two encoded values, exact when it reaches
+     * {@code minimumPercent} and some lower value otherwise.
+     */
+    double similarity(int id1, int id2, double minimumPercent) {
+        if (id1 == id2) {
+            identical.increment();
+            return 100.0;
+        }
+        if (id1 < FIRST_VALUE_ID || id2 < FIRST_VALUE_ID) {
+            return 0.0;
+        }
+
+        long key = (long) id1 << 32 | id2;
+        int slot = slot(key);
+        Entry entry = cache.get(slot);
+        if (entry != null && entry.key() == key
+                && (entry.score() >= entry.minimum() || entry.minimum() <= minimumPercent)) {
+            hits.increment();
+            return entry.score();
+        }
+
+        misses.increment();
+        double score = StringSimilarityKernel.jaroWinklerPercent(values[id1], values[id2], minimumPercent);
+        if (cache.getAndSet(slot, new Entry(key, score, minimumPercent)) == null) {
+            occupiedSlots.increment();
+        }
+        return score;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & cacheMask;
+    }
+
+    /**
+     * Returns the current dictionary size, cache counters and estimated memory use.
+     */
+    public Stats stats() {
+        long identicalCount = identical.sum();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long comparisons = identicalCount + hitCount + missCount;
+        long bytes = valueBytes + 4L * cache.length() + ENTRY_BYTES * occupiedSlots.sum();
+        return new Stats(files.size(), distinctValues(), identicalCount, hitCount, missCount,
+            comparisons > 0 ? (identicalCount + hitCount) / (double) comparisons : 0.0,
+            cache.length(), bytes);
+    }
+}
@@ -5,7 +5,15 @@ import org.apache.commons.io.FilenameUtils;
 import org.hasting.model.MusicFile;
 
 import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import com.log4rich.Log4Rich;
 import com.log4rich.core.Logger;
@@ -69,12 +77,19 @@ public class MusicFileScanner {
         "mp3", "flac", "ogg", "wav", "aac", "m4a", "wma", "aiff", "ape", "opus"
     };
 
+    // Files found but not yet read; bounds how far discovery runs ahead of tag reading
+    private static final int DISCOVERY_QUEUE_CAPACITY = 10_000;
+    private static final long QUEUE_POLL_MS = 100;
+    // Marks the end of a walk in the discovery queue; compared by identity
+    private static final Path END_OF_WALK = Paths.get("");
+
     private HashMap<String, MusicFile> musicFileCache = new HashMap<>(); // Cache for music files
     private Consumer<String> statusCallback;
     private Consumer<Integer> progressCallback;
     private Consumer<String> fileProcessingCallback; // New callback for individual file processing
     private Consumer<ScanProgress> detailedProgressCallback; // New callback for detailed progress info
-    private boolean stopRequested = false;
+    private volatile boolean stopRequested = false;
+    private int walkConcurrency = ParallelDirectoryWalker.configuredConcurrency();
     private int totalFilesScanned = 0;
     
     // Progress tracking data structure
@@ -123,103 +138,146 @@ public class MusicFileScanner {
     
     /**
      * Enhanced method for scanning with detailed progress feedback.
+     *
+     * <p>All roots are walked at once by a {@link ParallelDirectoryWalker}, and each file
+     * it finds is handed to this thread for tag reading as soon as it is discovered,
+     * so tags are read while the rest of the tree is still being listed. Files already
+     * in the cache are skipped. Progress callbacks run on the calling thread.
      */
     public List<MusicFile> findAllMusicFilesWithProgress(List<String> directoryPaths) {
         logger.info(String.format("Starting enhanced music file scan with progress tracking for %d directories", directoryPaths != null ? directoryPaths.size() : 0));
         List<MusicFile> allMusicFiles = new ArrayList<>();
         int totalDirectories = directoryPaths.size();
-        int directoriesProcessed = 0;
-        int totalFilesFound = 0;
+        AtomicInteger directoriesProcessed = new AtomicInteger();
+        AtomicInteger filesDiscovered = new AtomicInteger();
+        int filesSkipped = 0;
         int totalFilesProcessed = 0;
-        
+
+        List<Path> roots = new ArrayList<>();
         for (String directoryPath : directoryPaths) {
-            if (stopRequested) break;
-            
-            File directory = new File(directoryPath.trim());
-            if (!directory.exists() || !directory.isDirectory()) {
-                logger.warn(String.format("Invalid directory: {}", directoryPath));
+            try {
+                roots.add(Paths.get(directoryPath.trim()));
+            } catch (InvalidPathException e) {
+                logger.warn(String.format("Invalid directory: %s", directoryPath));
                 continue;
             }
-            
-            logger.debug(String.format("Scanning directory: {}", directoryPath));
-            
+
             // Stage 1: Directory scanning
             if (detailedProgressCallback != null) {
                 detailedProgressCallback.accept(new ScanProgress(
-                    directoryPath, "", totalFilesFound, totalFilesProcessed, 
-                    totalDirectories, directoriesProcessed, "scanning"
+                    directoryPath, "", 0, 0, totalDirectories, 0, "scanning"
                 ));
             }
-            
+        }
+
+        BlockingQueue<Path> discovered = new LinkedBlockingQueue<>(DISCOVERY_QUEUE_CAPACITY);
+        ParallelDirectoryWalker walker = new ParallelDirectoryWalker(walkConcurrency,
+            ParallelDirectoryWalker.extensionFilter(getEnabledExtensions()));
+        Thread walkThread = new Thread(() -> {
             try {
-                // Get all files with enabled extensions
-                String[] enabledExtensions = getEnabledExtensions();
-                Collection<File> files = FileUtils.listFiles(
-                    directory, 
-                    enabledExtensions, 
-                    true // Include subdirectories
-                );
-                
-                List<File> newFiles = new ArrayList<>();
-                for (File file : files) {
-                    if (!musicFileCache.containsKey(file.getPath())) {
-                        newFiles.add(file);
+                walker.walk(roots, new ParallelDirectoryWalker.Listener() {
+                    @Override
+                    public void onFile(Path file, BasicFileAttributes attributes) {
+                        filesDiscovered.incrementAndGet();
+                        offer(discovered, file);
                     }
-                }
-                
-                totalFilesFound += newFiles.size();
-                
-                // Stage 2: Tag reading and processing
-                int fileCount = 0;
-                for (File file : newFiles) {
-                    if (stopRequested) break;
-                    
-                    fileCount++;
-                    String fileName = file.getName();
-                    
-                    // Notify about current file being processed
-                    if (fileProcessingCallback != null) {
-                        fileProcessingCallback.accept("Reading tags: " + fileName);
-                    }
-                    
-                    if (detailedProgressCallback != null) {
-                        detailedProgressCallback.accept(new ScanProgress(
-                            directoryPath, fileName, totalFilesFound, totalFilesProcessed + fileCount, 
-                            totalDirectories, directoriesProcessed, "reading_tags"
-                        ));
-                    }
-                    
-                    try {
-                        MusicFile musicFile = new MusicFile(file);
-                        musicFileCache.put(file.getPath(), musicFile);
-                        allMusicFiles.add(musicFile);
-                        
-                        // Log the file processing (as mentioned in requirements)
-                        logger.info("Processed: " + fileName + " - " + 
-                                  musicFile.getArtist() + " - " + 
-                                  musicFile.getAlbum() + " - " + 
-                                  musicFile.getTitle());
-                        
-                    } catch (Exception e) {
-                        logger.warn("Error processing file " + fileName + ": " + e.getMessage());
+
+                    @Override
+                    public void onRootCompleted(Path root) {
+                        directoriesProcessed.incrementAndGet();
                     }
-                }
-                
-                totalFilesProcessed += newFiles.size();
-                
-            } catch (Exception e) {
-                logger.error(String.format("Error scanning directory: {}", e.getMessage()), e);
+                }, () -> stopRequested);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Error scanning directories: %s", e.getMessage()), e);
                 if (statusCallback != null) {
                     statusCallback.accept("Error scanning directory: " + e.getMessage());
                 }
+            } finally {
+                offer(discovered, END_OF_WALK);
             }
-            
-            directoriesProcessed++;
+        }, "music-file-walk");
+        walkThread.setDaemon(true);
+        walkThread.start();
+
+        // Stage 2: Tag reading and processing, as files arrive
+        try {
+            while (!stopRequested) {
+                Path path = discovered.poll(QUEUE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (path == null) continue;
+                if (path == END_OF_WALK) break;
+
+                String filePath = path.toString();
+                if (musicFileCache.containsKey(filePath)) {
+                    filesSkipped++;
+                    continue;
+                }
+                totalFilesProcessed++;
+                String fileName = path.getFileName().toString();
+
+                // Notify about current file being processed
+                if (fileProcessingCallback != null) {
+                    fileProcessingCallback.accept("Reading tags: " + fileName);
+                }
+
+                if (detailedProgressCallback != null) {
+                    Path parent = path.getParent();
+                    detailedProgressCallback.accept(new ScanProgress(
+                        parent != null ? parent.toString() : "", fileName,
+                        filesDiscovered.get() - filesSkipped, totalFilesProcessed,
+                        totalDirectories, directoriesProcessed.get(), "reading_tags"
+                    ));
+                }
+
+                try {
+                    MusicFile musicFile = new MusicFile(path.toFile());
+                    musicFileCache.put(filePath, musicFile);
+                    allMusicFiles.add(musicFile);
+
+                    // Log the file processing (as mentioned in requirements)
+                    logger.info("Processed: " + fileName + " - " +
+                              musicFile.getArtist() + " - " +
+                              musicFile.getAlbum() + " - " +
+                              musicFile.getTitle());
+
+                } catch (Exception e) {
+                    logger.warn("Error processing file " + fileName + ": " + e.getMessage());
+                }
+            }
+            walkThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRequested = true;
         }
-        
+
         return allMusicFiles;
     }
-    
+
+    /**
+     * Queues a discovered file for tag reading, waiting while the queue is full so
+     * discovery can't run far ahead of tag reading. Gives up once a stop is requested.
+     */
+    private void offer(BlockingQueue<Path> queue, Path path) {
+        try {
+            while (!stopRequested) {
+                if (queue.offer(path, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets how many directories are listed at once by
+     * {@link #findAllMusicFilesWithProgress(List)}.
+     *
+     * @param walkConcurrency concurrent directory listings, at least 1
+     */
+    public void setWalkConcurrency(int walkConcurrency) {
+        this.walkConcurrency = Math.max(1, walkConcurrency);
+    }
+
     /**
      * Finds all music files in the given directory and its subdirectories.
      * 
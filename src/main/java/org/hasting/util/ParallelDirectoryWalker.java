@@ -0,0 +1,279 @@
+package org.hasting.util;
+
+import com.log4rich.Log4Rich;
+import com.log4rich.core.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent directory tree walker for music scans.
+ *
+ * <p>Every directory is listed by its own task on a virtual thread, and each
+ * subdirectory found is handed to a new task, so all roots and all branches of a tree
+ * are listed at once. A semaphore caps how many listings are in flight, which bounds
+ * the load on network mounts where each listing is a round trip. Matching files are
+ * passed to the {@link Listener} as soon as their directory entry is read, on the
+ * walker's threads, so the listener must be thread-safe. A listener that blocks holds
+ * its listing's permit, which slows the walk down to the listener's pace.
+ *
+ * <p>Symbolic links are followed. Directories are recognised by their file key where
+ * the file system provides one, so a link back up the tree is not walked twice.
+ */
+public final class ParallelDirectoryWalker {
+
+    private static final Logger logger = Log4Rich.getLogger(ParallelDirectoryWalker.class);
+
+    /**
+     * System property setting the number of directories listed at once.
+     */
+    public static final String CONCURRENCY_PROPERTY = "mp3org.scan.concurrency";
+
+    /**
+     * Directories listed at once when {@link #CONCURRENCY_PROPERTY} is not set.
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    private final int maxConcurrency;
+    private final Predicate<Path> fileFilter;
+
+    /**
+     * Receives the results of a walk.
+     */
+    public interface Listener {
+
+        /**
+         * Called for every regular file that passes the filter, from a walker thread,
+         * with the attributes read while listing its directory.
+         */
+        void onFile(Path file, BasicFileAttributes attributes);
+
+        /**
+         * Called once every directory under a root has been listed, from a walker thread.
+         */
+        default void onRootCompleted(Path root) {
+        }
+    }
+
+    /**
+     * Counts of one walk.
+     *
+     * @param directories directories listed
+     * @param files files passed to the listener
+     * @param errors directories or entries that could not be read
+     * @param elapsedMs time from start until every root completed
+     */
+    public record Stats(long directories, long files, long errors, long elapsedMs) {}
+
+    /**
+     * @param maxConcurrency directories listed at once, at least 1
+     * @param fileFilter selects the regular files passed to the listener
+     */
+    public ParallelDirectoryWalker(int maxConcurrency, Predicate<Path> fileFilter) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.fileFilter = fileFilter;
+    }
+
+    /**
+     * Returns the concurrency from {@link #CONCURRENCY_PROPERTY}, or the default.
+     */
+    public static int configuredConcurrency() {
+        String value = System.getProperty(CONCURRENCY_PROPERTY);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid " + CONCURRENCY_PROPERTY + ": " + value);
+            }
+        }
+        return DEFAULT_CONCURRENCY;
+    }
+
+    /**
+     * Returns a filter accepting files whose extension, in any case, is one of the given ones.
+     */
+    public static Predicate<Path> extensionFilter(String... extensions) {
+        Set<String> accepted = ConcurrentHashMap.newKeySet();
+        for (String extension : extensions) {
+            accepted.add(extension.toLowerCase());
+        }
+        return path -> {
+            String name = path.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            return dot >= 0 && accepted.contains(name.substring(dot + 1).toLowerCase());
+        };
+    }
+
+    /**
+     * Walks the given roots and blocks until every one has been listed or the walk is
+     * cancelled. Roots that are not directories are skipped with a warning.
+     *
+     * @param roots directories to walk
+     * @param listener receives matching files and root completions
+     * @param cancelled polled before each listing and entry; once true, the walk winds down
+     * @return the counts of the walk
+     */
+    public Stats walk(Collection<Path> roots, Listener listener, BooleanSupplier cancelled) {
+        long startTime = System.currentTimeMillis();
+        List<Path> directories = new ArrayList<>();
+        Set<Object> rootKeys = ConcurrentHashMap.newKeySet();
+        for (Path root : roots) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class);
+                if (attributes.isDirectory()) {
+                    // A root given twice, or reached through a link, is walked once
+                    Object key = attributes.fileKey();
+                    if (key == null || rootKeys.add(key)) {
+                        directories.add(root);
+                    }
+                    continue;
+                }
+            } catch (IOException e) {
+                // Reported below
+            }
+            logger.warn("Invalid directory: " + root);
+        }
+
+        Walk walk = new Walk(listener, cancelled, directories.size(), rootKeys);
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("directory-walker-", 0).factory());
+        try {
+            for (Path root : directories) {
+                walk.submit(executor, root, new Root(root));
+            }
+            walk.rootsRemaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Stats stats = new Stats(walk.directories.sum(), walk.files.sum(), walk.errors.sum(),
+            System.currentTimeMillis() - startTime);
+        logger.info("Directory walk: {} directories, {} files, {} errors in {}ms ({} concurrent listings)",
+            stats.directories(), stats.files(), stats.errors(), stats.elapsedMs(), maxConcurrency);
+        return stats;
+    }
+
+    /**
+     * A root and the number of its directories still waiting to be listed.
+     */
+    private static final class Root {
+        final Path path;
+        final AtomicInteger pending = new AtomicInteger();
+
+        Root(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * State shared by the tasks of one walk.
+     */
+    private final class Walk {
+        final Listener listener;
+        final BooleanSupplier cancelled;
+        final CountDownLatch rootsRemaining;
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final Set<Object> visited;
+        final LongAdder directories = new LongAdder();
+        final LongAdder files = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        Walk(Listener listener, BooleanSupplier cancelled, int roots, Set<Object> visited) {
+            this.listener = listener;
+            this.cancelled = cancelled;
+            this.rootsRemaining = new CountDownLatch(roots);
+            this.visited = visited;
+        }
+
+        void submit(ExecutorService executor, Path directory, Root root) {
+            root.pending.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        list(executor, directory, root);
+                    } finally {
+                        finished(root);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The walk was abandoned
+                finished(root);
+            }
+        }
+
+        private void finished(Root root) {
+            if (root.pending.decrementAndGet() == 0) {
+                try {
+                    listener.onRootCompleted(root.path);
+                } finally {
+                    rootsRemaining.countDown();
+                }
+            }
+        }
+
+        private void list(ExecutorService executor, Path directory, Root root) {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            List<Path> subdirectories = new ArrayList<>();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                directories.increment();
+                for (Path entry : stream) {
+                    if (cancelled.getAsBoolean()) break;
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        // Broken link or entry removed since the listing
+                        errors.increment();
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        // Skip directories already reached through another link
+                        Object key = attributes.fileKey();
+                        if (key == null || visited.add(key)) {
+                            subdirectories.add(entry);
+                        }
+                    } else if (attributes.isRegularFile() && fileFilter.test(entry)) {
+                        files.increment();
+                        listener.onFile(entry, attributes);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                errors.increment();
+                logger.warn("Cannot list directory " + directory + ": " + e.getMessage());
+            } finally {
+                permits.release();
+            }
+            for (Path subdirectory : subdirectories) {
+                submit(executor, subdirectory, root);
+            }
+        }
+    }
+}
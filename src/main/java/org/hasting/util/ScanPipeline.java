@@ -0,0 +1,707 @@
+package org.hasting.util;
+
+import com.log4rich.Log4Rich;
+import com.log4rich.core.Logger;
+import org.hasting.model.MusicFile;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Staged music scan: path discovery, tag extraction and batched persistence.
+ *
+ * <p>A {@link ParallelDirectoryWalker} feeds discovered paths into a bounded queue,
+ * a pool of extraction threads reads their tags into {@link MusicFile}s and feeds a
+ * second bounded queue, and a single writer on the thread calling {@link #run} commits
+ * them in batches of {@link #setBatchSize batch size} files, or sooner once the oldest
+ * file in a batch has waited {@link #setFlushIntervalMs flush interval} milliseconds.
+ * The queues give backpressure: a slow database stalls extraction, and slow extraction
+ * stalls the walk, so memory use is bounded by the queue capacities whatever the size
+ * of the library.
+ *
+ * <p>In a {@link #setRescan rescan}, the stored size and modification time of every
+ * file under the roots are loaded first, in one streaming pass over the library, and
+ * each file the walk finds is compared against them using the attributes read while
+ * listing its directory. Only new files and files whose size or modification time
+ * changed go on to have their tags read; changed files replace their existing rows.
+ * Stored files the walk didn't find are handed to the {@link Remover} once everything
+ * else is committed, unless the run was cancelled or a directory could not be read, so
+ * an unmounted drive or an unreadable folder never empties the library.
+ *
+ * <p>{@link #cancel()} stops the walk and makes the extraction threads discard paths
+ * they haven't started on. Files whose tags were already read are still committed,
+ * so a cancelled scan keeps its work, and {@link #run} returns once every stage has
+ * wound down.
+ */
+public final class ScanPipeline {
+
+    private static final Logger logger = Log4Rich.getLogger(ScanPipeline.class);
+
+    /**
+     * System property setting the number of tag extraction threads.
+     */
+    public static final String EXTRACTORS_PROPERTY = "mp3org.scan.extractors";
+
+    /**
+     * System property setting the number of files committed per batch.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "mp3org.scan.batchSize";
+
+    /**
+     * Files committed per batch when {@link #BATCH_SIZE_PROPERTY} is not set.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Longest time a file waits for its batch to fill before it is committed.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 2000;
+
+    /**
+     * Capacity of each of the two queues between the stages.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 2000;
+
+    /**
+     * Interval between progress reports to the {@link Listener}.
+     */
+    static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Markers closing the queues, compared by identity
+    private static final Discovered END_OF_PATHS = new Discovered(Paths.get(""), null);
+    private static final MusicFile END_OF_FILES = new MusicFile();
+
+    /**
+     * Reads the tags of one file into a music file.
+     */
+    @FunctionalInterface
+    public interface TagReader {
+
+        /**
+         * @return false if the tags could not be read; the file is still persisted with
+         *         the basic information the reader could fill in
+         */
+        boolean read(MusicFile musicFile, File file);
+    }
+
+    /**
+     * Persists one batch of music files. Files with an id replace the row with that id;
+     * the others are inserted unless their path is already in the library.
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+
+        /**
+         * @return the number of files inserted
+         */
+        int write(List<MusicFile> batch);
+    }
+
+    /**
+     * Removes the stored files a rescan found missing from disk.
+     */
+    @FunctionalInterface
+    public interface Remover {
+
+        /**
+         * @return the number of files removed
+         */
+        int remove(Collection<DatabaseManager.FileState> missing);
+    }
+
+    /**
+     * Receives the progress of a run, on the thread calling {@link #run}.
+     */
+    public interface Listener {
+
+        /**
+         * Called every quarter of a second while the run is active.
+         */
+        default void onProgress(Metrics metrics) {
+        }
+
+        /**
+         * Called after each batch is committed.
+         *
+         * @param batch the files committed
+         * @param inserted how many of them were new to the library
+         */
+        default void onCommitted(List<MusicFile> batch, int inserted) {
+        }
+    }
+
+    /**
+     * Counts of one stage.
+     *
+     * @param items paths listed, files extracted, or files committed
+     * @param errors failures within the stage
+     * @param waitMs time the stage spent blocked on a full queue downstream
+     * @param itemsPerSecond items over the time from the start of the run until the
+     *                       stage finished, or until now while it is still active
+     */
+    public record StageMetrics(long items, long errors, long waitMs, double itemsPerSecond) {}
+
+    /**
+     * What a run changed in the library.
+     *
+     * @param added files inserted
+     * @param changed stored files re-read because their size or modification time changed
+     * @param removed stored files removed because they are gone from disk
+     * @param unchanged files left as they were: in a rescan, files whose size and
+     *                  modification time match; in a plain scan, files already stored
+     */
+    public record Changes(long added, long changed, long removed, long unchanged) {}
+
+    /**
+     * A snapshot of a run.
+     *
+     * @param discovery the directory walk; its items include files skipped as unchanged
+     * @param extraction tag reading
+     * @param persistence batch commits
+     * @param changes what the run changed in the library so far
+     * @param commits batches committed
+     * @param pathQueueDepth paths waiting for extraction
+     * @param fileQueueDepth files waiting for the writer
+     * @param rootsCompleted roots fully listed
+     * @param currentFile the last file whose tags were read
+     * @param elapsedMs time since the start of the run
+     * @param cancelled whether the run was cancelled
+     */
+    public record Metrics(StageMetrics discovery, StageMetrics extraction, StageMetrics persistence,
+                          Changes changes, long commits, int pathQueueDepth, int fileQueueDepth,
+                          int rootsCompleted, String currentFile, long elapsedMs, boolean cancelled) {}
+
+    private final TagReader tagReader;
+    private final BatchWriter batchWriter;
+    private int walkConcurrency = ParallelDirectoryWalker.configuredConcurrency();
+    private int extractionThreads = configuredExtractionThreads();
+    private int batchSize = configuredBatchSize();
+    private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private Listener listener = new Listener() {};
+    private Consumer<Consumer<DatabaseManager.FileState>> knownFiles;
+    private Remover remover;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean cancelled;
+    private volatile BlockingQueue<Discovered> paths;
+    private volatile BlockingQueue<MusicFile> files;
+    private volatile String currentFile = "";
+    private final Stage discovery = new Stage();
+    private final Stage extraction = new Stage();
+    private final Stage persistence = new Stage();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final AtomicInteger rootsCompleted = new AtomicInteger();
+    private volatile long commits;
+    private volatile long startNanos;
+
+    /**
+     * @param tagReader reads the tags of each discovered file
+     * @param batchWriter persists each batch
+     */
+    public ScanPipeline(TagReader tagReader, BatchWriter batchWriter) {
+        this.tagReader = tagReader;
+        this.batchWriter = batchWriter;
+    }
+
+    /**
+     * Returns a pipeline that reads tags with {@link MetadataExtractor} and saves to the
+     * library database.
+     */
+    public static ScanPipeline forLibrary() {
+        return new ScanPipeline(MetadataExtractor::extractMetadata, ScanPipeline::writeToLibrary);
+    }
+
+    /**
+     * Returns a {@link #forLibrary() library pipeline} that rescans: it compares the files
+     * on disk against the library and tombstones stored files that are gone.
+     */
+    public static ScanPipeline forLibraryRescan() {
+        ScanPipeline pipeline = forLibrary();
+        pipeline.setRescan(DatabaseManager::forEachFileState, DatabaseManager::tombstoneMusicFiles);
+        return pipeline;
+    }
+
+    private static int writeToLibrary(List<MusicFile> batch) {
+        List<MusicFile> changedFiles = new ArrayList<>();
+        List<MusicFile> newFiles = new ArrayList<>();
+        for (MusicFile musicFile : batch) {
+            (musicFile.getId() != null ? changedFiles : newFiles).add(musicFile);
+        }
+        DatabaseManager.updateMusicFilesBatch(changedFiles);
+        return DatabaseManager.saveMusicFilesBatch(newFiles);
+    }
+
+    /**
+     * Returns the extraction thread count from {@link #EXTRACTORS_PROPERTY}, or one per
+     * available processor.
+     */
+    public static int configuredExtractionThreads() {
+        return intProperty(EXTRACTORS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the batch size from {@link #BATCH_SIZE_PROPERTY}, or the default.
+     */
+    public static int configuredBatchSize() {
+        return intProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE);
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    public void setWalkConcurrency(int walkConcurrency) {
+        this.walkConcurrency = Math.max(1, walkConcurrency);
+    }
+
+    public void setExtractionThreads(int extractionThreads) {
+        this.extractionThreads = Math.max(1, extractionThreads);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener != null ? listener : new Listener() {};
+    }
+
+    /**
+     * Makes the run a rescan.
+     *
+     * @param knownFiles streams the stored state of every file in the library
+     * @param remover removes stored files under the roots that the walk didn't find
+     */
+    public void setRescan(Consumer<Consumer<DatabaseManager.FileState>> knownFiles, Remover remover) {
+        this.knownFiles = knownFiles;
+        this.remover = remover;
+    }
+
+    /**
+     * Requests that the run wind down. Safe to call from any thread, before or during
+     * the run.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Scans the given roots and blocks until every stage has finished. A pipeline runs
+     * once. If a batch fails to commit, the run is cancelled, the rest of the extracted
+     * files are discarded, and the failure is rethrown once the stages have stopped;
+     * likewise if a rescan fails to remove the missing files.
+     *
+     * @param roots directories to scan
+     * @param extensions file extensions to read, in any case
+     * @return the final metrics of the run
+     */
+    public Metrics run(Collection<Path> roots, String... extensions) {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("A scan pipeline can only be run once");
+        }
+        startNanos = System.nanoTime();
+        paths = new ArrayBlockingQueue<>(queueCapacity);
+        files = new ArrayBlockingQueue<>(queueCapacity);
+
+        // Absolute paths, as stored in the library
+        List<Path> absoluteRoots = new ArrayList<>();
+        for (Path root : roots) {
+            absoluteRoots.add(root.toAbsolutePath().normalize());
+        }
+        Predicate<Path> fileFilter = ParallelDirectoryWalker.extensionFilter(extensions);
+        Map<String, DatabaseManager.FileState> known = knownFiles != null
+            ? loadKnownFiles(absoluteRoots, fileFilter) : null;
+
+        Thread walkThread = new Thread(() -> discover(absoluteRoots, fileFilter, known), "scan-discovery");
+        walkThread.setDaemon(true);
+        walkThread.start();
+
+        AtomicInteger extractorsRemaining = new AtomicInteger(extractionThreads);
+        for (int i = 0; i < extractionThreads; i++) {
+            Thread extractor = new Thread(() -> extract(extractorsRemaining), "scan-extractor-" + i);
+            extractor.setDaemon(true);
+            extractor.start();
+        }
+
+        RuntimeException failure = persist();
+        if (known != null && failure == null) {
+            failure = removeMissing(known);
+        }
+
+        Metrics metrics = snapshot();
+        Changes changes = metrics.changes();
+        logger.info("Scan pipeline: {} found, {} extracted ({} errors), {} committed in {} batches in {}ms{}",
+            metrics.discovery().items(), metrics.extraction().items(), metrics.extraction().errors(),
+            metrics.persistence().items(), metrics.commits(), metrics.elapsedMs(),
+            metrics.cancelled() ? " (cancelled)" : "");
+        logger.info("Scan changes: {} added, {} changed, {} removed, {} unchanged",
+            changes.added(), changes.changed(), changes.removed(), changes.unchanged());
+        if (failure != null) {
+            throw failure;
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the current metrics. Safe to call from any thread once the run has started.
+     */
+    public Metrics snapshot() {
+        long now = System.nanoTime();
+        BlockingQueue<Discovered> pathQueue = paths;
+        BlockingQueue<MusicFile> fileQueue = files;
+        return new Metrics(
+            discovery.metrics(startNanos, now),
+            extraction.metrics(startNanos, now),
+            persistence.metrics(startNanos, now),
+            new Changes(added.sum(), changed.sum(), removed.sum(), unchanged.sum()), commits,
+            pathQueue != null ? pathQueue.size() : 0,
+            fileQueue != null ? fileQueue.size() : 0,
+            rootsCompleted.get(), currentFile,
+            TimeUnit.NANOSECONDS.toMillis(now - startNanos), cancelled);
+    }
+
+    /**
+     * Loads the stored state of the files a rescan of the given roots should find: those
+     * under a root that exists and that pass the file filter. Files under a missing
+     * root are left out, so they are neither compared nor removed.
+     */
+    private Map<String, DatabaseManager.FileState> loadKnownFiles(List<Path> roots, Predicate<Path> fileFilter) {
+        List<String> prefixes = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                String prefix = root.toString();
+                prefixes.add(prefix.endsWith(File.separator) ? prefix : prefix + File.separator);
+            }
+        }
+        Map<String, DatabaseManager.FileState> known = new ConcurrentHashMap<>();
+        knownFiles.accept(state -> {
+            String filePath = state.filePath();
+            if (filePath == null || prefixes.stream().noneMatch(filePath::startsWith)) {
+                return;
+            }
+            try {
+                if (fileFilter.test(Paths.get(filePath))) {
+                    known.put(filePath, state);
+                }
+            } catch (InvalidPathException e) {
+                // Not a path this platform can walk to
+            }
+        });
+        logger.info("Rescan: {} stored files under {} roots", known.size(), prefixes.size());
+        return known;
+    }
+
+    /**
+     * Removes the known files the walk didn't reach, unless the run was cancelled or
+     * a directory could not be read.
+     *
+     * @return the removal failure, if any
+     */
+    private RuntimeException removeMissing(Map<String, DatabaseManager.FileState> known) {
+        if (cancelled || known.isEmpty()) {
+            return null;
+        }
+        long walkErrors = discovery.errors.sum();
+        if (walkErrors > 0) {
+            logger.warn("Not removing {} missing files: {} directories or entries could not be read",
+                known.size(), walkErrors);
+            return null;
+        }
+        try {
+            removed.add(remover.remove(List.copyOf(known.values())));
+            return null;
+        } catch (RuntimeException e) {
+            logger.error(String.format("Failed to remove %d missing files", known.size()), e);
+            return e;
+        }
+    }
+
+    /**
+     * Stage 1: walks the roots into the path queue, then closes it with one end marker
+     * per extraction thread. In a rescan, files whose size and modification time match
+     * the stored ones are counted and go no further.
+     */
+    private void discover(List<Path> roots, Predicate<Path> fileFilter, Map<String, DatabaseManager.FileState> known) {
+        ParallelDirectoryWalker walker = new ParallelDirectoryWalker(walkConcurrency, fileFilter);
+        try {
+            ParallelDirectoryWalker.Stats stats = walker.walk(roots, new ParallelDirectoryWalker.Listener() {
+                @Override
+                public void onFile(Path file, BasicFileAttributes attributes) {
+                    DatabaseManager.FileState stored = known != null ? known.remove(file.toString()) : null;
+                    if (stored != null && isUnchanged(stored, attributes)) {
+                        discovery.items.increment();
+                        unchanged.increment();
+                    } else if (offer(paths, new Discovered(file, stored), discovery)) {
+                        discovery.items.increment();
+                    }
+                }
+
+                @Override
+                public void onRootCompleted(Path root) {
+                    rootsCompleted.incrementAndGet();
+                }
+            }, () -> cancelled);
+            discovery.errors.add(stats.errors());
+        } catch (RuntimeException e) {
+            logger.error(String.format("Error scanning directories: %s", e.getMessage()), e);
+            discovery.errors.increment();
+        } finally {
+            discovery.finish();
+            for (int i = 0; i < extractionThreads; i++) {
+                putUninterruptibly(paths, END_OF_PATHS, null);
+            }
+        }
+    }
+
+    private static boolean isUnchanged(DatabaseManager.FileState stored, BasicFileAttributes attributes) {
+        return Objects.equals(stored.fileSizeBytes(), attributes.size())
+            && Objects.equals(stored.lastModified(), attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Stage 2: reads tags until the end marker. Once cancelled, remaining paths are
+     * drained without being read. The last thread to finish closes the file queue.
+     */
+    private void extract(AtomicInteger extractorsRemaining) {
+        try {
+            while (true) {
+                Discovered discovered = takeUninterruptibly(paths);
+                if (discovered == END_OF_PATHS) break;
+                if (cancelled) continue;
+
+                Path path = discovered.path();
+                MusicFile musicFile = new MusicFile();
+                try {
+                    if (!tagReader.read(musicFile, path.toFile())) {
+                        extraction.errors.increment();
+                    }
+                } catch (RuntimeException e) {
+                    extraction.errors.increment();
+                    logger.warn("Error processing file " + path.getFileName() + ": " + e.getMessage());
+                    continue;
+                }
+                if (discovered.stored() != null) {
+                    // Replaces the stored row
+                    musicFile.setId(discovered.stored().id());
+                }
+                extraction.items.increment();
+                currentFile = path.toString();
+                // Already read, so handed on even after a cancel: the writer keeps it
+                putUninterruptibly(files, musicFile, extraction);
+            }
+        } finally {
+            if (extractorsRemaining.decrementAndGet() == 0) {
+                extraction.finish();
+                putUninterruptibly(files, END_OF_FILES, null);
+            }
+        }
+    }
+
+    /**
+     * Stage 3: commits batches on the calling thread until the end marker, reporting
+     * progress between polls.
+     *
+     * @return the first commit failure, if any
+     */
+    private RuntimeException persist() {
+        List<MusicFile> batch = new ArrayList<>(batchSize);
+        RuntimeException failure = null;
+        boolean interrupted = false;
+        long batchDeadline = Long.MAX_VALUE;
+        long nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
+        while (true) {
+            long now = System.currentTimeMillis();
+            long timeout = Math.max(0, Math.min(nextProgress, batchDeadline) - now);
+            MusicFile musicFile;
+            try {
+                musicFile = files.poll(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Wind down rather than abandon the other stages mid-flight
+                interrupted = true;
+                cancel();
+                continue;
+            }
+            if (musicFile == END_OF_FILES) break;
+            if (musicFile != null && failure == null) {
+                if (batch.isEmpty()) {
+                    batchDeadline = System.currentTimeMillis() + flushIntervalMs;
+                }
+                batch.add(musicFile);
+            }
+
+            now = System.currentTimeMillis();
+            if (batch.size() >= batchSize || (!batch.isEmpty() && now >= batchDeadline)) {
+                failure = commit(batch);
+                batchDeadline = Long.MAX_VALUE;
+            }
+            if (now >= nextProgress) {
+                listener.onProgress(snapshot());
+                nextProgress = now + PROGRESS_INTERVAL_MS;
+            }
+        }
+        if (!batch.isEmpty() && failure == null) {
+            failure = commit(batch);
+        }
+        persistence.finish();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return failure;
+    }
+
+    /**
+     * Writes and clears the batch. On failure, cancels the run and returns the error.
+     */
+    private RuntimeException commit(List<MusicFile> batch) {
+        List<MusicFile> committed = List.copyOf(batch);
+        batch.clear();
+        // Counted before writing, which gives the inserted files their ids
+        long updates = committed.stream().filter(musicFile -> musicFile.getId() != null).count();
+        try {
+            int inserted = batchWriter.write(committed);
+            persistence.items.add(committed.size());
+            added.add(inserted);
+            changed.add(updates);
+            unchanged.add(committed.size() - updates - inserted);
+            commits++;
+            listener.onCommitted(committed, inserted);
+            return null;
+        } catch (RuntimeException e) {
+            persistence.errors.add(committed.size());
+            logger.error(String.format("Failed to commit a batch of %d files, cancelling the scan", committed.size()), e);
+            cancel();
+            return e;
+        }
+    }
+
+    /**
+     * Queues a path, waiting while the queue is full. Gives up once cancelled.
+     *
+     * @return true if the path was queued
+     */
+    private boolean offer(BlockingQueue<Discovered> queue, Discovered discovered, Stage stage) {
+        long waitStart = System.nanoTime();
+        try {
+            while (!cancelled) {
+                if (queue.offer(discovered, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            stage.waited(waitStart);
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item, Stage stage) {
+        long waitStart = System.nanoTime();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (stage != null) {
+            stage.waited(waitStart);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A file found by the walk, with its stored state if it replaces a stored row.
+     */
+    private record Discovered(Path path, DatabaseManager.FileState stored) {}
+
+    /**
+     * Counters of one stage, updated by its threads.
+     */
+    private static final class Stage {
+        final LongAdder items = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        volatile long endNanos;
+
+        void waited(long waitStart) {
+            waitNanos.add(System.nanoTime() - waitStart);
+        }
+
+        void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        StageMetrics metrics(long startNanos, long now) {
+            long end = endNanos != 0 ? endNanos : now;
+            long count = items.sum();
+            double seconds = (end - startNanos) / 1e9;
+            return new StageMetrics(count, errors.sum(), TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()),
+                seconds > 0 ? count / seconds : 0.0);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import com.log4rich.core.Logger;
+import com.log4rich.Log4Rich;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Persistent sparse graph of candidate duplicate pairs scored above a low floor,
+ * so duplicate groups at any higher threshold are a connected-components pass over
+ * stored edges instead of a rescan of the library.
+ *
+ * <p>In fingerprint mode every pair at or above {@link #FINGERPRINT_FLOOR} similarity
+ * is stored with its exact score. In metadata mode every pair whose
+ * {@linkplain FuzzyMatcher.FieldScores#strength(int) strength} reaches
+ * {@link #METADATA_FLOOR} percent is stored with its individual field scores, so any
+ * configuration with field thresholds at or above the floor, and at least as many
+ * required fields, can be evaluated exactly from the graph. Settings that change the
+ * scores themselves, such as normalization or duration tolerance, cause a rebuild.
+ *
+ * <p>Only candidate pairs are scored, never every pair. Fingerprint candidates come from
+ * the {@linkplain FingerprintMatcher#getDefaultMatchingMode() default matching mode},
+ * normally the LSH index, within the duration window if one is set. The index is tuned
+ * for duplicate thresholds, so the graph can miss pairs near the floor, and counts at low
+ * thresholds are lower bounds. Metadata candidates are those of
+ * {@link FuzzyMatcher#metadataCandidates(List, FuzzySearchConfig)}: blocking for large
+ * libraries, otherwise pairs within the duration window when the settings allow it.
+ *
+ * <p>The graph is maintained like {@link DuplicateIndex}: database triggers record
+ * changed files, and {@link #refresh()} re-scores only those, and in blocked libraries
+ * the pairs whose candidacy they changed, so it keeps the edges a rebuild would find
+ * without loading large libraries. It follows the same fingerprint-or-metadata choice
+ * as the index.
+ */
+public final class SimilarityGraph {
+
+    private static final Logger logger = Log4Rich.getLogger(SimilarityGraph.class);
+
+    /**
+     * Lowest fingerprint similarity stored in the graph.
+     */
+    public static final double FINGERPRINT_FLOOR = 0.6;
+
+    /**
+     * Lowest metadata strength, in percent, stored in the graph.
+     */
+    public static final double METADATA_FLOOR = 60.0;
+
+    /**
+     * State key under which the settings the graph was built with are stored.
+     */
+    static final String SIGNATURE_KEY = "similarity_graph_signature";
+
+    /**
+     * A scored candidate pair, stored with {@code fileA < fileB}.
+     *
+     * @param fileA smaller file id
+     * @param fileB larger file id
+     * @param score fingerprint similarity, or metadata strength as a fraction
+     * @param fields per-field scores for metadata pairs, null for fingerprint pairs
+     */
+    public record Edge(long fileA, long fileB, double score, FuzzyMatcher.FieldScores fields) {
+        public Edge {
+            if (fileA > fileB) {
+                long swap = fileA;
+                fileA = fileB;
+                fileB = swap;
+            }
+        }
+    }
+
+    /**
+     * Duplicate groups at one threshold of a sweep.
+     *
+     * @param threshold similarity threshold as a fraction
+     * @param groups number of duplicate groups
+     * @param files number of files in those groups
+     * @param largestGroup size of the largest group
+     */
+    public record SweepPoint(double threshold, int groups, int files, int largestGroup) {}
+
+    private SimilarityGraph() {
+    }
+
+    /**
+     * Brings the graph up to date, rebuilding it if it was never built or
+     * the settings it depends on changed.
+     *
+     * @return the mode the graph was built in
+     */
+    public static synchronized DuplicateIndex.Mode refresh() {
+        DuplicateIndex.Mode mode = DuplicateIndex.currentMode();
+        String signature = signature(mode);
+        if (!signature.equals(DatabaseManager.getDuplicateIndexState(SIGNATURE_KEY))) {
+            logger.info("Similarity graph settings changed or graph missing, rebuilding ({} mode)", mode);
+            rebuild(mode, signature);
+            return mode;
+        }
+
+        DuplicateIndex.PendingChanges changes = DatabaseManager.getPendingSimilarityGraphChanges();
+        if (!changes.isEmpty()) {
+            long startTime = System.currentTimeMillis();
+            List<Edge> edges;
+            List<Edge> stale = List.of();
+            if (mode == DuplicateIndex.Mode.FINGERPRINT) {
+                edges = fingerprintEdgesOf(changes.fileIds());
+            } else {
+                FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+                int minimumFields = config.getMinimumFieldsToMatch();
+                DuplicateIndex.MetadataCandidates candidates = DuplicateIndex.metadataCandidatesOf(changes);
+                edges = candidates.score((file1, file2) -> metadataEdge(file1, file2, config, minimumFields));
+                stale = candidates.staleEdges(DatabaseManager::getSimilarityGraphEdges, Edge::fileA, Edge::fileB);
+            }
+            DatabaseManager.applySimilarityGraphChanges(changes, edges, stale);
+            logger.info("Updated similarity graph for {} changed files ({} edges, {} stale) in {}ms",
+                changes.changedFileCount(), edges.size(), stale.size(), System.currentTimeMillis() - startTime);
+        }
+        return mode;
+    }
+
+    /**
+     * Discards the graph and rebuilds it from every file.
+     *
+     * @return the number of stored edges
+     */
+    public static synchronized int rebuild() {
+        DuplicateIndex.Mode mode = DuplicateIndex.currentMode();
+        return rebuild(mode, signature(mode));
+    }
+
+    /**
+     * Returns the number of duplicate groups at each threshold from {@code from} to
+     * {@code to}. Fingerprint thresholds are similarities; metadata thresholds apply to
+     * title, artist and album alike, with the other settings taken from the current
+     * {@link FuzzySearchConfig}. Thresholds below the floor are clamped to it.
+     *
+     * <p>Edges are added in order of decreasing strength while a union-find tracks the
+     * groups, so the whole sweep costs one sort and one pass over the graph. Groups are
+     * counted as connected components, so in metadata mode a chain of matches counts as
+     * one group where seed-based grouping may split it. The first sweep builds the graph
+     * if it is missing.
+     *
+     * @param from lowest threshold as a fraction
+     * @param to highest threshold as a fraction
+     * @param step distance between thresholds
+     * @return one point per threshold, in ascending order of threshold
+     */
+    public static synchronized List<SweepPoint> sweep(double from, double to, double step) {
+        DuplicateIndex.Mode mode = refresh();
+        double floor = mode == DuplicateIndex.Mode.FINGERPRINT ? FINGERPRINT_FLOOR : METADATA_FLOOR / 100.0;
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+
+        // Strength of each edge: the highest uniform threshold at which it still links its files
+        List<Edge> edges = DatabaseManager.getSimilarityGraphEdges();
+        List<long[]> links = new ArrayList<>(edges.size());
+        double[] strengths = new double[edges.size()];
+        for (Edge edge : edges) {
+            double strength = strength(edge, mode, config);
+            if (strength >= floor) {
+                strengths[links.size()] = strength;
+                links.add(new long[] { edge.fileA(), edge.fileB() });
+            }
+        }
+        Integer[] order = new Integer[links.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(strengths[b], strengths[a]));
+
+        List<Double> thresholds = new ArrayList<>();
+        for (double t = to; t >= from - 1e-9 && step > 0; t -= step) {
+            thresholds.add(Math.max(floor, Math.round(t * 1e6) / 1e6));
+        }
+
+        GroupTracker tracker = new GroupTracker();
+        List<SweepPoint> points = new ArrayList<>();
+        int next = 0;
+        for (double threshold : thresholds) {
+            while (next < order.length && strengths[order[next]] >= threshold) {
+                long[] link = links.get(order[next++]);
+                tracker.union(link[0], link[1]);
+            }
+            points.add(new SweepPoint(threshold, tracker.groups, tracker.files, tracker.largest));
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    /**
+     * Returns the edges the duplicate index would compute at the current thresholds,
+     * taken from the graph, or null if the graph was never built for the current
+     * settings or cannot answer for them.
+     */
+    static synchronized List<DuplicateIndex.Edge> duplicateEdges(DuplicateIndex.Mode mode) {
+        if (!signature(mode).equals(DatabaseManager.getDuplicateIndexState(SIGNATURE_KEY))) {
+            return null;
+        }
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+        if (mode == DuplicateIndex.Mode.FINGERPRINT
+                ? FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD < FINGERPRINT_FLOOR
+                : !coversThresholds(config)) {
+            return null;
+        }
+
+        refresh();
+        List<DuplicateIndex.Edge> edges = new ArrayList<>();
+        for (Edge edge : DatabaseManager.getSimilarityGraphEdges()) {
+            if (mode == DuplicateIndex.Mode.FINGERPRINT) {
+                if (edge.score() >= FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD) {
+                    edges.add(new DuplicateIndex.Edge(edge.fileA(), edge.fileB(), edge.score()));
+                }
+            } else if (edge.fields() != null && edge.fields().matches(config)) {
+                edges.add(new DuplicateIndex.Edge(edge.fileA(), edge.fileB(), null));
+            }
+        }
+        return edges;
+    }
+
+    private static boolean coversThresholds(FuzzySearchConfig config) {
+        return config.getTitleSimilarityThreshold() >= METADATA_FLOOR
+            && config.getArtistSimilarityThreshold() >= METADATA_FLOOR
+            && config.getAlbumSimilarityThreshold() >= METADATA_FLOOR;
+    }
+
+    private static double strength(Edge edge, DuplicateIndex.Mode mode, FuzzySearchConfig config) {
+        if (mode == DuplicateIndex.Mode.FINGERPRINT) {
+            return edge.score();
+        }
+        FuzzyMatcher.FieldScores fields = edge.fields();
+        if (fields == null || (config.isTrackNumberMustMatch() && !fields.trackMatches())) {
+            return -1.0;
+        }
+        return fields.strength(config.getMinimumFieldsToMatch()) / 100.0;
+    }
+
+    private static int rebuild(DuplicateIndex.Mode mode, String signature) {
+        long startTime = System.currentTimeMillis();
+        DuplicateIndex.PendingChanges covered = DatabaseManager.getPendingSimilarityGraphChanges();
+        List<Edge> edges = mode == DuplicateIndex.Mode.FINGERPRINT ? allFingerprintEdges() : allMetadataEdges();
+        DatabaseManager.replaceSimilarityGraph(edges, covered, signature);
+        logger.info("Rebuilt similarity graph with {} edges in {}ms", edges.size(),
+            System.currentTimeMillis() - startTime);
+        return edges.size();
+    }
+
+    /**
+     * Describes every setting that affects which edges exist and their scores.
+     * Similarity thresholds are deliberately left out.
+     */
+    private static String signature(DuplicateIndex.Mode mode) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mode).append('|').append(DatabaseManager.getFileTypeFilterClause());
+        if (mode == DuplicateIndex.Mode.FINGERPRINT) {
+            DurationWindow window = FingerprintMatcher.getDurationWindow();
+            sb.append('|').append(FINGERPRINT_FLOOR).append('|').append(window != null ? window : "off");
+        } else {
+            FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+            sb.append('|').append(METADATA_FLOOR)
+              .append('|').append(config.getMinimumFieldsToMatch())
+              .append('|').append(DurationWindow.from(config))
+              .append('|').append(config.isIgnoreCaseDifferences())
+              .append(config.isIgnorePunctuation())
+              .append(config.isWordOrderSensitive())
+              .append(config.isIgnoreArtistPrefixes())
+              .append(config.isIgnoreFeaturing())
+              .append(config.isIgnoreAlbumEditions())
+              .append(config.isIgnoreMissingTrackNumber())
+              .append('|').append(DuplicateIndex.blockingState());
+        }
+        return sb.toString();
+    }
+
+    private static List<Edge> allFingerprintEdges() {
+        try (DuplicateIndex.FingerprintSet set = DuplicateIndex.loadFingerprints()) {
+            List<Edge> edges = new ArrayList<>();
+            for (FingerprintMatcher.MatchingPair pair : FingerprintMatcher.findMatchingPairs(set.fingerprints(),
+                    set.durations(), FINGERPRINT_FLOOR, FingerprintMatcher.getDefaultMatchingMode())) {
+                edges.add(new Edge(set.fileIds()[pair.first()], set.fileIds()[pair.second()], pair.similarity(), null));
+            }
+            return edges;
+        }
+    }
+
+    private static List<Edge> fingerprintEdgesOf(Set<Long> changedIds) {
+        try (DuplicateIndex.FingerprintSet set = DuplicateIndex.loadFingerprints()) {
+            List<Edge> edges = new ArrayList<>();
+            long[] fileIds = set.fileIds();
+            IntBuffer[] fingerprints = set.fingerprints();
+            for (int i = 0; i < fileIds.length; i++) {
+                if (!changedIds.contains(fileIds[i])) continue;
+                for (FingerprintMatcher.MatchingPair pair : FingerprintMatcher.findMatchesOf(i, fingerprints,
+                        set.durations(), FINGERPRINT_FLOOR)) {
+                    edges.add(new Edge(fileIds[pair.first()], fileIds[pair.second()], pair.similarity(), null));
+                }
+            }
+            return edges;
+        }
+    }
+
+    private static List<Edge> allMetadataEdges() {
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+        FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+        int minimumFields = config.getMinimumFieldsToMatch();
+        IntFunction<int[]> candidatesAfter = FuzzyMatcher.metadataCandidates(files, config);
+        return IntStream.range(0, files.size()).parallel()
+            .boxed()
+            .flatMap(i -> {
+                List<Edge> found = new ArrayList<>();
+                if (candidatesAfter != null) {
+                    for (int j : candidatesAfter.apply(i)) {
+                        Edge edge = metadataEdge(files.get(i), files.get(j), config, minimumFields);
+                        if (edge != null) found.add(edge);
+                    }
+                    return found.stream();
+                }
+                for (int j = i + 1; j < files.size(); j++) {
+                    Edge edge = metadataEdge(files.get(i), files.get(j), config, minimumFields);
+                    if (edge != null) found.add(edge);
+                }
+                return found.stream();
+            })
+            .collect(Collectors.toList());
+    }
+
+    private static Edge metadataEdge(MusicFile file1, MusicFile file2, FuzzySearchConfig config, int minimumFields) {
+        FuzzyMatcher.FieldScores fields = FuzzyMatcher.fieldScores(file1, file2, config);
+        double strength = fields.strength(minimumFields);
+        if (strength < METADATA_FLOOR) {
+            return null;
+        }
+        return new Edge(file1.getId(), file2.getId(), strength / 100.0, fields);
+    }
+
+    /**
+     * Union-find over file ids that tracks the number of groups with two or more
+     * files, the files in them and the largest group as edges are added.
+     */
+    private static final class GroupTracker {
+        private final Map<Long, Long> parent = new HashMap<>();
+        private final Map<Long, Integer> size = new HashMap<>();
+        int groups;
+        int files;
+        int largest;
+
+        private long find(long id) {
+            Long p = parent.get(id);
+            if (p == null) {
+                parent.put(id, id);
+                size.put(id, 1);
+                return id;
+            }
+            long root = id;
+            while (parent.get(root) != root) {
+                root = parent.get(root);
+            }
+            // Path compression
+            long node = id;
+            while (node != root) {
+                long next = parent.get(node);
+                parent.put(node, root);
+                node = next;
+            }
+            return root;
+        }
+
+        void union(long a, long b) {
+            long rootA = find(a);
+            long rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            int sizeA = size.get(rootA);
+            int sizeB = size.get(rootB);
+            if (sizeA < sizeB) {
+                long swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parent.put(rootB, rootA);
+            int merged = sizeA + sizeB;
+            size.put(rootA, merged);
+
+            // Count how the merge changes the number of real groups
+            if (sizeA > 1 && sizeB > 1) {
+                groups--;
+            } else if (sizeA == 1 && sizeB == 1) {
+                groups++;
+            }
+            files += (sizeA == 1 ? 1 : 0) + (sizeB == 1 ? 1 : 0);
+            largest = Math.max(largest, merged);
+        }
+    }
+}
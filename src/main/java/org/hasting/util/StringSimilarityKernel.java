@@ -0,0 +1,383 @@
+package org.hasting.util;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free Jaro, Jaro-Winkler and Levenshtein kernels, the string comparisons
+ * inside every metadata duplicate check.
+ *
+ * <p>Strings of up to 64 characters use bit-parallel versions. Jaro keeps the matched
+ * positions of both strings in {@code long} masks and finds the first free matching
+ * character in the window with one mask lookup instead of a scan. Levenshtein uses
+ * Myers' bit-vector algorithm, which processes a whole column of the edit matrix per
+ * character. Longer strings fall back to the classic loops over per-thread scratch
+ * buffers, so no call allocates either way.
+ *
+ * <p>All paths give exactly the same results as the textbook implementations: the
+ * same matches are chosen in the same order and the final arithmetic is unchanged.
+ *
+ * <p>{@link #jaroWinklerPercent(String, String, double)} also takes the score the
+ * caller needs. It stops as soon as too few characters are left to reach it, and
+ * rejects pairs whose lengths alone rule it out before looking at any character.
+ */
+final class StringSimilarityKernel {
+
+    /** Longest string handled by the bit-parallel paths. */
+    static final int MAX_BIT_PARALLEL_LENGTH = 64;
+
+    /** Jaro similarity below which no Winkler prefix bonus is applied. */
+    private static final double WINKLER_THRESHOLD = 0.7;
+    private static final int WINKLER_MAX_PREFIX = 4;
+    private static final double WINKLER_SCALING = 0.1;
+
+    private static final int ASCII = 128;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private StringSimilarityKernel() {
+    }
+
+    /**
+     * Per-thread buffers. The position masks are cleared after every use, so they are
+     * all zero between calls.
+     */
+    private static final class Scratch {
+        final long[] asciiMasks = new long[ASCII];
+        final char[] otherChars = new char[MAX_BIT_PARALLEL_LENGTH];
+        final long[] otherMasks = new long[MAX_BIT_PARALLEL_LENGTH];
+        int otherCount;
+
+        boolean[] matches1 = new boolean[MAX_BIT_PARALLEL_LENGTH * 2];
+        boolean[] matches2 = new boolean[MAX_BIT_PARALLEL_LENGTH * 2];
+        int[] row = new int[MAX_BIT_PARALLEL_LENGTH * 2];
+        int[] previousRow = new int[MAX_BIT_PARALLEL_LENGTH * 2];
+
+        /** Records the positions of every character of {@code s} (at most 64 long). */
+        void index(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < ASCII) {
+                    asciiMasks[c] |= 1L << i;
+                    continue;
+                }
+                int slot = otherSlot(c);
+                if (slot < 0) {
+                    slot = otherCount++;
+                    otherChars[slot] = c;
+                }
+                otherMasks[slot] |= 1L << i;
+            }
+        }
+
+        /** Returns the positions of {@code c} in the string last passed to {@link #index(String)}. */
+        long positions(char c) {
+            if (c < ASCII) {
+                return asciiMasks[c];
+            }
+            int slot = otherSlot(c);
+            return slot < 0 ? 0L : otherMasks[slot];
+        }
+
+        void clear(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < ASCII) {
+                    asciiMasks[c] = 0L;
+                }
+            }
+            Arrays.fill(otherMasks, 0, otherCount, 0L);
+            otherCount = 0;
+        }
+
+        private int otherSlot(char c) {
+            for (int slot = 0; slot < otherCount; slot++) {
+                if (otherChars[slot] == c) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        boolean[] matches1(int length) {
+            if (matches1.length < length) {
+                matches1 = new boolean[length];
+            }
+            return matches1;
+        }
+
+        boolean[] matches2(int length) {
+            if (matches2.length < length) {
+                matches2 = new boolean[length];
+            }
+            return matches2;
+        }
+
+        int[] row(int length) {
+            if (row.length < length) {
+                row = new int[length];
+                previousRow = new int[length];
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Jaro similarity of two non-null strings, between 0.0 and 1.0.
+     */
+    static double jaro(String s1, String s2) {
+        return jaro(s1, s2, 0);
+    }
+
+    /**
+     * Jaro-Winkler similarity of two non-null strings, between 0.0 and 1.0. The
+     * Winkler bonus only applies when the Jaro similarity is at least 0.7.
+     */
+    static double jaroWinkler(String s1, String s2) {
+        return winkler(jaro(s1, s2), commonPrefix(s1, s2));
+    }
+
+    /**
+     * Jaro-Winkler similarity of two non-null strings in percent, or a value below
+     * {@code minimumPercent} as soon as the similarity can no longer reach it. When
+     * the result is at least {@code minimumPercent} it is exactly
+     * {@code jaroWinkler(s1, s2) * 100.0}.
+     *
+     * @param minimumPercent the score the caller is interested in
+     */
+    static double jaroWinklerPercent(String s1, String s2, double minimumPercent) {
+        int prefix = commonPrefix(s1, s2);
+        int requiredMatches = requiredMatches(s1.length(), s2.length(), prefix, minimumPercent);
+        if (requiredMatches > Math.min(s1.length(), s2.length())) {
+            return -1.0;
+        }
+        double jaro = jaro(s1, s2, requiredMatches);
+        return jaro < 0 ? -1.0 : winkler(jaro, prefix) * 100.0;
+    }
+
+    /**
+     * Levenshtein distance between two non-null strings.
+     */
+    static int levenshtein(String s1, String s2) {
+        String pattern = s1.length() <= s2.length() ? s1 : s2;
+        String text = pattern == s1 ? s2 : s1;
+        if (pattern.isEmpty()) {
+            return text.length();
+        }
+        return pattern.length() <= MAX_BIT_PARALLEL_LENGTH
+            ? myersLevenshtein(pattern, text)
+            : rowLevenshtein(s1, s2);
+    }
+
+    private static double winkler(double jaro, int prefix) {
+        if (jaro < WINKLER_THRESHOLD) {
+            return jaro;
+        }
+        return jaro + (WINKLER_SCALING * prefix * (1.0 - jaro));
+    }
+
+    private static int commonPrefix(String s1, String s2) {
+        int prefix = 0;
+        int maxPrefix = Math.min(WINKLER_MAX_PREFIX, Math.min(s1.length(), s2.length()));
+        while (prefix < maxPrefix && s1.charAt(prefix) == s2.charAt(prefix)) {
+            prefix++;
+        }
+        return prefix;
+    }
+
+    private static double jaroFormula(int matches, int transpositions, int len1, int len2) {
+        return (matches / (double) len1 + matches / (double) len2 +
+                (matches - transpositions / 2.0) / matches) / 3.0;
+    }
+
+    /**
+     * Returns the fewest matching characters that can still give a Jaro-Winkler score of
+     * {@code minimumPercent}, assuming no transpositions. The bound grows with the number
+     * of matches, so it is found by binary search.
+     */
+    private static int requiredMatches(int len1, int len2, int prefix, double minimumPercent) {
+        if (minimumPercent <= 0 || len1 == 0 || len2 == 0) {
+            return 0;
+        }
+        int low = 1;
+        int high = Math.min(len1, len2) + 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (winkler(jaroFormula(middle, 0, len1, len2), prefix) * 100.0 >= minimumPercent) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Jaro similarity, or -1.0 once fewer than {@code requiredMatches} matches remain possible.
+     */
+    private static double jaro(String s1, String s2, int requiredMatches) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+
+        if (len1 == 0 && len2 == 0) return 1.0;
+        if (len1 == 0 || len2 == 0) return requiredMatches > 0 ? -1.0 : 0.0;
+
+        // Calculate the maximum allowed distance for matches
+        int matchWindow = Math.max(len1, len2) / 2 - 1;
+        if (matchWindow < 0) matchWindow = 0;
+
+        return len1 <= MAX_BIT_PARALLEL_LENGTH && len2 <= MAX_BIT_PARALLEL_LENGTH
+            ? bitParallelJaro(s1, s2, matchWindow, requiredMatches)
+            : scratchJaro(s1, s2, matchWindow, requiredMatches);
+    }
+
+    private static double bitParallelJaro(String s1, String s2, int matchWindow, int requiredMatches) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        Scratch scratch = SCRATCH.get();
+        scratch.index(s2);
+
+        long matched1 = 0L;
+        long matched2 = 0L;
+        int matches = 0;
+        try {
+            for (int i = 0; i < len1; i++) {
+                if (matches + (len1 - i) < requiredMatches) {
+                    return -1.0;
+                }
+                int start = Math.max(0, i - matchWindow);
+                int end = Math.min(i + matchWindow + 1, len2);
+                long window = (end == 64 ? -1L : (1L << end) - 1) & -(1L << start);
+
+                // The lowest free position holding the same character is the one a left-to-right scan finds
+                long free = scratch.positions(s1.charAt(i)) & ~matched2 & window;
+                if (free != 0) {
+                    matched1 |= 1L << i;
+                    matched2 |= Long.lowestOneBit(free);
+                    matches++;
+                }
+            }
+        } finally {
+            scratch.clear(s2);
+        }
+
+        if (matches == 0) return 0.0;
+        if (matches < requiredMatches) return -1.0;
+
+        // Matched characters pair up in order of position in both strings
+        int transpositions = 0;
+        while (matched1 != 0) {
+            int i = Long.numberOfTrailingZeros(matched1);
+            int k = Long.numberOfTrailingZeros(matched2);
+            if (s1.charAt(i) != s2.charAt(k)) transpositions++;
+            matched1 &= matched1 - 1;
+            matched2 &= matched2 - 1;
+        }
+        return jaroFormula(matches, transpositions, len1, len2);
+    }
+
+    private static double scratchJaro(String s1, String s2, int matchWindow, int requiredMatches) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        Scratch scratch = SCRATCH.get();
+        boolean[] s1Matches = scratch.matches1(len1);
+        boolean[] s2Matches = scratch.matches2(len2);
+
+        try {
+            int matches = 0;
+            for (int i = 0; i < len1; i++) {
+                if (matches + (len1 - i) < requiredMatches) {
+                    return -1.0;
+                }
+                int start = Math.max(0, i - matchWindow);
+                int end = Math.min(i + matchWindow + 1, len2);
+
+                for (int j = start; j < end; j++) {
+                    if (s2Matches[j] || s1.charAt(i) != s2.charAt(j)) continue;
+                    s1Matches[i] = true;
+                    s2Matches[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+
+            if (matches == 0) return 0.0;
+            if (matches < requiredMatches) return -1.0;
+
+            int transpositions = 0;
+            int k = 0;
+            for (int i = 0; i < len1; i++) {
+                if (!s1Matches[i]) continue;
+                while (!s2Matches[k]) k++;
+                if (s1.charAt(i) != s2.charAt(k)) transpositions++;
+                k++;
+            }
+            return jaroFormula(matches, transpositions, len1, len2);
+        } finally {
+            Arrays.fill(s1Matches, 0, len1, false);
+            Arrays.fill(s2Matches, 0, len2, false);
+        }
+    }
+
+    /**
+     * Myers' bit-vector edit distance: bit {@code i} of {@code positive} and
+     * {@code negative} says whether the distance goes up or down by one between rows
+     * {@code i} and {@code i + 1} of the current column. Each character of the text
+     * updates the whole column with a handful of word operations.
+     */
+    private static int myersLevenshtein(String pattern, String text) {
+        int m = pattern.length();
+        long last = 1L << (m - 1);
+        Scratch scratch = SCRATCH.get();
+        scratch.index(pattern);
+
+        long positive = m == 64 ? -1L : (1L << m) - 1;
+        long negative = 0L;
+        int distance = m;
+        try {
+            for (int j = 0; j < text.length(); j++) {
+                long equal = scratch.positions(text.charAt(j));
+                long verticalMatch = equal | negative;
+                long horizontalMatch = (((equal & positive) + positive) ^ positive) | equal;
+                long horizontalPositive = negative | ~(horizontalMatch | positive);
+                long horizontalNegative = positive & horizontalMatch;
+
+                if ((horizontalPositive & last) != 0) distance++;
+                if ((horizontalNegative & last) != 0) distance--;
+
+                // The first row grows by one per text character
+                horizontalPositive = (horizontalPositive << 1) | 1L;
+                horizontalNegative = horizontalNegative << 1;
+                positive = horizontalNegative | ~(verticalMatch | horizontalPositive);
+                negative = horizontalPositive & verticalMatch;
+            }
+        } finally {
+            scratch.clear(pattern);
+        }
+        return distance;
+    }
+
+    private static int rowLevenshtein(String s1, String s2) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        Scratch scratch = SCRATCH.get();
+        int[] previous = scratch.row(len2 + 1);
+        int[] current = scratch.previousRow;
+
+        for (int j = 0; j <= len2; j++) previous[j] = j;
+        for (int i = 1; i <= len1; i++) {
+            current[0] = i;
+            for (int j = 1; j <= len2; j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(
+                    previous[j] + 1,         // deletion
+                    current[j - 1] + 1),     // insertion
+                    previous[j - 1] + cost   // substitution
+                );
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[len2];
+    }
+}
@@ -0,0 +1,346 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+
+/**
+ * Parallel metadata duplicate comparison over tiles of the pair matrix.
+ *
+ * <p>The files are split into bands of {@link #TILE_SIZE}. Without a candidate list the
+ * upper triangle of the comparison matrix is cut into square tiles, one per pair of
+ * bands, so each task compares two small runs of files against each other. With a
+ * candidate list (blocking or duration windows) each band of rows is one tile. Tiles
+ * are run by a {@link ForkJoinPool}, whose work stealing keeps every worker busy even
+ * though tiles differ widely in cost, and matches are merged in a
+ * {@link ConcurrentUnionFind}, so no pair is ever materialised. Files are compared
+ * through a {@link MetadataDictionary}, so repeated values are not compared twice.
+ *
+ * <p>A band is settled once every tile that compares its files has finished. A group
+ * whose files are all in settled bands can no longer change, so the scan hands it to
+ * {@link Listener#onGroupsSettled(List)} straight away instead of waiting for the
+ * whole matrix. Cancellation is checked before each tile; tiles already running finish.
+ */
+public final class TiledMetadataScan {
+
+    /** Files per band; a full tile compares {@code TILE_SIZE * TILE_SIZE} pairs. */
+    public static final int TILE_SIZE = 256;
+
+    /** Settled groups are looked for about this many times per scan. */
+    private static final int SETTLE_PASSES = 32;
+
+    private final List<MusicFile> files;
+    private final MetadataDictionary dictionary;
+    private final IntFunction<int[]> candidatesAfter;
+    private final BooleanSupplier cancelled;
+    private final Listener listener;
+
+    private final int bands;
+    private final int[][] tiles;
+    private final int[][] touchedBands;
+    private final long totalComparisons;
+    private final AtomicIntegerArray pendingTiles;
+    private final ConcurrentUnionFind unionFind;
+    private final LongAdder comparisons = new LongAdder();
+
+    // Settling state, guarded by 'this'
+    private final boolean[] settledBand;
+    private final boolean[] emitted;
+    private final List<int[]> groups = new ArrayList<>();
+    private int settledFiles;
+    private int settledSinceLastPass;
+
+    /**
+     * Receives the progress of a scan. Calls may come from several threads, except
+     * {@link #onGroupsSettled(List)}, which is never called concurrently.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each matching pair, with {@code i < j}.
+         */
+        default void onMatch(int i, int j) {
+        }
+
+        /**
+         * Called after each tile.
+         *
+         * @param comparisons comparisons completed so far
+         * @param settledFiles files whose comparisons are all done
+         */
+        default void onTileCompleted(long comparisons, int settledFiles) {
+        }
+
+        /**
+         * Called with groups that are final, as index arrays in ascending order.
+         */
+        default void onGroupsSettled(List<int[]> groups) {
+        }
+    }
+
+    /**
+     * Outcome of a scan.
+     *
+     * @param groups duplicate groups with 2+ files, in the order they settled
+     * @param comparisons comparisons performed
+     * @param totalComparisons comparisons a complete scan performs
+     * @param cancelled true if the scan stopped early; groups then only holds the
+     *                  groups that settled before it stopped
+     */
+    public record Result(List<int[]> groups, long comparisons, long totalComparisons, boolean cancelled) {}
+
+    private TiledMetadataScan(MetadataDictionary dictionary, IntFunction<int[]> candidatesAfter,
+                              BooleanSupplier cancelled, Listener listener) {
+        this.files = dictionary.files();
+        this.dictionary = dictionary;
+        this.candidatesAfter = candidatesAfter;
+        this.cancelled = cancelled != null ? cancelled : () -> false;
+        this.listener = listener != null ? listener : new Listener() { };
+
+        int n = files.size();
+        this.bands = (n + TILE_SIZE - 1) / TILE_SIZE;
+        this.pendingTiles = new AtomicIntegerArray(bands);
+        this.unionFind = new ConcurrentUnionFind(n);
+        this.settledBand = new boolean[bands];
+        this.emitted = new boolean[n];
+
+        if (candidatesAfter == null) {
+            // One tile per pair of bands in the upper triangle; each band is in 'bands' tiles
+            tiles = new int[bands * (bands + 1) / 2][];
+            int t = 0;
+            for (int row = 0; row < bands; row++) {
+                for (int column = row; column < bands; column++) {
+                    tiles[t++] = new int[] { row, column };
+                }
+                pendingTiles.set(row, bands);
+            }
+            touchedBands = null;
+            totalComparisons = (long) n * (n - 1) / 2;
+        } else {
+            // One tile per band of rows, touching every band that holds one of its candidates
+            tiles = new int[bands][];
+            touchedBands = new int[bands][];
+            boolean[] touched = new boolean[bands];
+            long total = 0;
+            for (int row = 0; row < bands; row++) {
+                tiles[row] = new int[] { row, -1 };
+                touched[row] = true;
+                for (int i = bandStart(row); i < bandEnd(row); i++) {
+                    int[] later = candidatesAfter.apply(i);
+                    total += later.length;
+                    for (int j : later) {
+                        touched[j / TILE_SIZE] = true;
+                    }
+                }
+                int count = 0;
+                for (int b = row; b < bands; b++) {
+                    if (touched[b]) count++;
+                }
+                touchedBands[row] = new int[count];
+                count = 0;
+                for (int b = row; b < bands; b++) {
+                    if (touched[b]) {
+                        touchedBands[row][count++] = b;
+                        pendingTiles.incrementAndGet(b);
+                        touched[b] = false;
+                    }
+                }
+            }
+            totalComparisons = total;
+        }
+    }
+
+    /**
+     * Compares every pair of files.
+     *
+     * @see #run(List, FuzzySearchConfig, IntFunction, BooleanSupplier, Listener)
+     */
+    public static Result run(List<MusicFile> files, FuzzySearchConfig config, Listener listener) {
+        return run(files, config, null, null, listener);
+    }
+
+    /**
+     * Compares files as {@link FuzzyMatcher#areDuplicates(MusicFile, MusicFile, FuzzySearchConfig)}
+     * does and groups the matches transitively.
+     *
+     * @param files files to compare
+     * @param config fuzzy matching configuration
+     * @param candidatesAfter for each index, the larger indices to compare it with in
+     *                        ascending order, or null to compare all pairs
+     * @param cancelled checked before each tile, or null
+     * @param listener progress listener, or null
+     * @return the groups and comparison counts
+     */
+    public static Result run(List<MusicFile> files, FuzzySearchConfig config, IntFunction<int[]> candidatesAfter,
+                             BooleanSupplier cancelled, Listener listener) {
+        if (files == null || files.size() < 2 || config == null) {
+            return new Result(new ArrayList<>(), 0, 0, false);
+        }
+        return run(MetadataDictionary.encode(files, config), candidatesAfter, cancelled, listener);
+    }
+
+    /**
+     * Same as {@link #run(List, FuzzySearchConfig, IntFunction, BooleanSupplier, Listener)}
+     * for a library that is already encoded, so the caller can follow the cache statistics.
+     */
+    public static Result run(MetadataDictionary dictionary, IntFunction<int[]> candidatesAfter,
+                             BooleanSupplier cancelled, Listener listener) {
+        if (dictionary.files().size() < 2) {
+            return new Result(new ArrayList<>(), 0, 0, false);
+        }
+        TiledMetadataScan scan = new TiledMetadataScan(dictionary, candidatesAfter, cancelled, listener);
+        ForkJoinPool.commonPool().invoke(scan.new TileRange(0, scan.tiles.length));
+
+        boolean stopped = scan.cancelled.getAsBoolean() && scan.comparisons.sum() < scan.totalComparisons;
+        return new Result(scan.groups, scan.comparisons.sum(), scan.totalComparisons, stopped);
+    }
+
+    /**
+     * Splits a range of tiles in halves until one tile is left, so idle workers can
+     * steal the larger untouched halves. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private final class TileRange extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        TileRange(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runTile(tiles[from]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileRange(from, middle), new TileRange(middle, to));
+        }
+    }
+
+    private void runTile(int[] tile) {
+        if (cancelled.getAsBoolean()) {
+            return;
+        }
+        int row = tile[0];
+        int column = tile[1];
+        long compared = 0;
+        if (column < 0) {
+            for (int i = bandStart(row); i < bandEnd(row); i++) {
+                int[] later = candidatesAfter.apply(i);
+                for (int j : later) {
+                    compare(i, j);
+                }
+                compared += later.length;
+            }
+        } else {
+            int columnEnd = bandEnd(column);
+            for (int i = bandStart(row); i < bandEnd(row); i++) {
+                int j = row == column ? i + 1 : bandStart(column);
+                compared += columnEnd - j;
+                for (; j < columnEnd; j++) {
+                    compare(i, j);
+                }
+            }
+        }
+        comparisons.add(compared);
+
+        if (column < 0) {
+            for (int band : touchedBands[row]) {
+                finishTile(band);
+            }
+        } else {
+            finishTile(row);
+            if (column != row) {
+                finishTile(column);
+            }
+        }
+        listener.onTileCompleted(comparisons.sum(), settledFiles());
+    }
+
+    private void compare(int i, int j) {
+        if (dictionary.areDuplicates(i, j)) {
+            unionFind.union(i, j);
+            listener.onMatch(i, j);
+        }
+    }
+
+    private void finishTile(int band) {
+        if (pendingTiles.decrementAndGet(band) == 0) {
+            bandSettled(band);
+        }
+    }
+
+    private synchronized int settledFiles() {
+        return settledFiles;
+    }
+
+    private synchronized void bandSettled(int band) {
+        settledBand[band] = true;
+        settledFiles += bandEnd(band) - bandStart(band);
+        settledSinceLastPass++;
+        if (settledFiles == files.size() || settledSinceLastPass >= Math.max(1, bands / SETTLE_PASSES)) {
+            settledSinceLastPass = 0;
+            emitSettledGroups();
+        }
+    }
+
+    /**
+     * Hands over every group whose files are all settled. No comparison involving such
+     * a file is still to come, so no union can reach the group and its root, the
+     * smallest member, stays put.
+     */
+    private void emitSettledGroups() {
+        int n = files.size();
+        int[] roots = new int[n];
+        int[] sizes = new int[n];
+        int[] unsettled = new int[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = unionFind.find(i);
+            sizes[roots[i]]++;
+            if (!settledBand[i / TILE_SIZE]) {
+                unsettled[roots[i]]++;
+            }
+        }
+
+        List<int[]> settled = new ArrayList<>();
+        int[][] members = new int[n][];
+        int[] filled = new int[n];
+        for (int i = 0; i < n; i++) {
+            int root = roots[i];
+            if (sizes[root] < 2 || unsettled[root] > 0 || emitted[root]) {
+                continue;
+            }
+            if (members[root] == null) {
+                members[root] = new int[sizes[root]];
+                settled.add(members[root]);
+            }
+            members[root][filled[root]++] = i;
+        }
+        for (int[] group : settled) {
+            emitted[group[0]] = true;
+        }
+
+        if (!settled.isEmpty()) {
+            groups.addAll(settled);
+            listener.onGroupsSettled(settled);
+        }
+    }
+
+    private int bandStart(int band) {
+        return band * TILE_SIZE;
+    }
+
+    private int bandEnd(int band) {
+        return Math.min(files.size(), (band + 1) * TILE_SIZE);
+    }
+}
@@ -0,0 +1,186 @@
+package org.hasting.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A single value derived from the library, stamped with the library version it was
+ * computed from.
+ *
+ * <p>The cached value stays valid until the version source moves on (see
+ * {@link DatabaseManager#getLibraryVersion()}) or {@link #invalidate()} is called; there
+ * is no timeout. Misses are coalesced: the first caller to find the value stale runs the
+ * computation, and callers arriving while it runs wait for the same result instead of
+ * starting their own. A caller that opts in to stale results gets the previous value
+ * straight away while the recompute runs in the background.
+ *
+ * @param <T> the cached value type
+ */
+public final class VersionedCache<T> {
+
+    private final LongSupplier versionSource;
+    private final Executor refreshExecutor;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong computations = new AtomicLong();
+
+    private volatile Stamped<T> current;
+    // Computation in progress, guarded by 'this'
+    private Flight<T> inFlight;
+
+    private record Stamped<T>(long version, long generation, T value) {}
+
+    private record Flight<T>(long version, long generation, CompletableFuture<T> future) {}
+
+    /**
+     * Creates a cache whose background refreshes run on the common pool.
+     *
+     * @param versionSource current version of the data the value is derived from
+     */
+    public VersionedCache(LongSupplier versionSource) {
+        this(versionSource, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param versionSource current version of the data the value is derived from
+     * @param refreshExecutor runs recomputes started on behalf of stale readers
+     */
+    public VersionedCache(LongSupplier versionSource, Executor refreshExecutor) {
+        this.versionSource = versionSource;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the current value, computing it if the version has changed.
+     *
+     * @see #get(Supplier, boolean)
+     */
+    public T get(Supplier<T> compute) {
+        return get(compute, false);
+    }
+
+    /**
+     * Returns the value for the current version. If it is missing, exactly one caller
+     * runs {@code compute} and the others wait for its result.
+     *
+     * @param compute computes the value; exceptions are passed to every waiting caller
+     *                and the next call tries again
+     * @param allowStale if true and an older value exists, return it at once and leave
+     *                   the recompute to run in the background
+     * @return the cached or computed value
+     */
+    public T get(Supplier<T> compute, boolean allowStale) {
+        long version = versionSource.getAsLong();
+        long gen = generation.get();
+        Stamped<T> cached = current;
+        if (cached != null && cached.version() == version && cached.generation() == gen) {
+            return cached.value();
+        }
+
+        Flight<T> flight;
+        boolean leader = false;
+        synchronized (this) {
+            flight = inFlight;
+            if (flight == null || flight.version() != version || flight.generation() != gen) {
+                flight = new Flight<>(version, gen, new CompletableFuture<>());
+                inFlight = flight;
+                leader = true;
+            }
+        }
+
+        if (allowStale && cached != null) {
+            if (leader) {
+                Flight<T> refresh = flight;
+                refreshExecutor.execute(() -> compute(refresh, compute));
+            }
+            return cached.value();
+        }
+        if (leader) {
+            compute(flight, compute);
+        }
+        try {
+            return flight.future().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the cached value without computing anything.
+     *
+     * @param allowStale if true, return the value even if it is out of date
+     * @return the value, or null if there is none or it is out of date
+     */
+    public T peek(boolean allowStale) {
+        Stamped<T> cached = current;
+        if (cached == null) {
+            return null;
+        }
+        if (allowStale || (cached.version() == versionSource.getAsLong() && cached.generation() == generation.get())) {
+            return cached.value();
+        }
+        return null;
+    }
+
+    private void compute(Flight<T> flight, Supplier<T> compute) {
+        computations.incrementAndGet();
+        try {
+            T value = compute.get();
+            store(new Stamped<>(flight.version(), flight.generation(), value));
+            flight.future().complete(value);
+        } catch (Throwable t) {
+            flight.future().completeExceptionally(t);
+        } finally {
+            synchronized (this) {
+                if (inFlight == flight) {
+                    inFlight = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores a value computed elsewhere, such as by a full duplicate scan.
+     *
+     * @param value the value
+     * @param version the version read before the value was computed, so writes made
+     *                during the computation still make it stale
+     */
+    public void put(T value, long version) {
+        store(new Stamped<>(version, generation.get(), value));
+    }
+
+    private synchronized void store(Stamped<T> stamped) {
+        // A slow computation must not replace a value from a newer version
+        Stamped<T> existing = current;
+        if (existing == null || existing.generation() < stamped.generation()
+                || (existing.generation() == stamped.generation() && existing.version() <= stamped.version())) {
+            current = stamped;
+        }
+    }
+
+    /**
+     * Makes the current value stale, so the next call recomputes it. Callers that
+     * allow stale results still get it until then.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of computations started, for monitoring and tests.
+     */
+    public long computations() {
+        return computations.get();
+    }
+}
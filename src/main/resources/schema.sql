@@ -15,7 +15,12 @@ CREATE TABLE IF NOT EXISTS music_files (
     last_modified TIMESTAMP,
     date_added TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     fingerprint CLOB,
-    fingerprint_duration INT
+    fingerprint_duration INT,
+    fingerprint_blob BLOB,
+    title_key VARCHAR(255),
+    artist_key VARCHAR(255),
+    album_key VARCHAR(255),
+    metadata_key_version INT
 );
 
 -- Create indexes for common search operations
@@ -24,6 +29,9 @@ CREATE INDEX IF NOT EXISTS idx_music_files_artist ON music_files(artist);
 CREATE INDEX IF NOT EXISTS idx_music_files_album ON music_files(album);
 CREATE INDEX IF NOT EXISTS idx_music_files_genre ON music_files(genre);
 CREATE INDEX IF NOT EXISTS idx_music_files_file_path ON music_files(file_path);
+CREATE INDEX IF NOT EXISTS idx_music_files_title_key ON music_files(title_key);
+CREATE INDEX IF NOT EXISTS idx_music_files_artist_key ON music_files(artist_key);
+CREATE INDEX IF NOT EXISTS idx_music_files_album_key ON music_files(album_key);
 
 -- Create a unique index on file_path to prevent duplicates
 CREATE UNIQUE INDEX IF NOT EXISTS idx_music_files_file_path_unique ON music_files(file_path);
\ No newline at end of file
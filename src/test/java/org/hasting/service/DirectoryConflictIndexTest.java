@@ -0,0 +1,90 @@
+package org.hasting.service;
+
+import org.hasting.dto.DirectoryConflictDTO;
+import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.MusicFileDTO;
+import org.hasting.dto.PageResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the directory-pair conflict index behind the by-directory duplicate view.
+ */
+@DisplayName("Directory Conflict Index Tests")
+public class DirectoryConflictIndexTest {
+
+    private long nextId = 1;
+
+    @Test
+    @DisplayName("Cross-directory pairs are counted per directory pair")
+    void testConflicts() {
+        List<DuplicateGroupDTO> groups = List.of(
+            group("/music/b/x.mp3", "/music/a/x.mp3", "/music/a/x copy.mp3"),
+            group("/music/a/y.mp3", "/music/b/y.mp3"),
+            group("/music/c/z.mp3", "/music/c/z2.mp3"));
+        DirectoryConflictIndex index = DirectoryConflictIndex.build(groups);
+
+        assertEquals(1, index.size());
+        DirectoryConflictDTO conflict = index.find("/music/b", "/music/a");
+        assertNotNull(conflict);
+        assertSame(conflict, index.find("/music/a", "/music/b"));
+        assertEquals("/music/a", conflict.directoryA());
+        assertEquals("/music/b", conflict.directoryB());
+        assertEquals(3, conflict.totalDuplicatePairs());
+        assertEquals(3, conflict.filesInA());
+        assertEquals(2, conflict.filesInB());
+
+        assertNull(index.find("/music/c", "/music/c"));
+        assertNull(index.find("/music/a", "/music/c"));
+        assertNull(index.find("/nowhere", "/music/a"));
+        assertTrue(index.isBuiltFrom(groups));
+        assertFalse(index.isBuiltFrom(new ArrayList<>(groups)));
+    }
+
+    @Test
+    @DisplayName("Pages are sorted server-side with a stable order")
+    void testPagination() {
+        List<DuplicateGroupDTO> groups = new ArrayList<>();
+        for (int d = 0; d < 30; d++) {
+            // Directory pair d has d + 1 duplicate pairs
+            for (int k = 0; k <= d; k++) {
+                groups.add(group("/lib/left" + d + "/t" + k + ".mp3", "/lib/right" + d + "/t" + k + ".mp3"));
+            }
+        }
+        DirectoryConflictIndex index = DirectoryConflictIndex.build(groups);
+        assertEquals(30, index.size());
+
+        PageResponse<DirectoryConflictDTO> first = index.page(0, 10, DirectoryConflictIndex.SortField.PAIRS, false);
+        assertEquals(30, first.totalElements());
+        assertEquals(3, first.totalPages());
+        assertEquals(10, first.content().size());
+        assertEquals(30, first.content().get(0).totalDuplicatePairs());
+        assertEquals(21, first.content().get(9).totalDuplicatePairs());
+
+        PageResponse<DirectoryConflictDTO> last = index.page(2, 10, DirectoryConflictIndex.SortField.PAIRS, false);
+        assertEquals(1, last.content().get(9).totalDuplicatePairs());
+        assertTrue(index.page(5, 10, DirectoryConflictIndex.SortField.PAIRS, false).content().isEmpty());
+
+        List<DirectoryConflictDTO> byDirectory = index.sorted(DirectoryConflictIndex.SortField.DIRECTORY, true);
+        assertEquals("/lib/left0", byDirectory.get(0).directoryA());
+        assertEquals("/lib/left1", byDirectory.get(1).directoryA());
+        assertSame(byDirectory, index.sorted(DirectoryConflictIndex.SortField.DIRECTORY, true));
+
+        assertEquals(DirectoryConflictIndex.SortField.FILES, DirectoryConflictIndex.SortField.fromParameter("Files"));
+        assertEquals(DirectoryConflictIndex.SortField.PAIRS, DirectoryConflictIndex.SortField.fromParameter("bogus"));
+    }
+
+    private DuplicateGroupDTO group(String... paths) {
+        List<MusicFileDTO> files = new ArrayList<>();
+        for (String path : paths) {
+            files.add(new MusicFileDTO(nextId++, path, "Title", "Artist", "Album", null, null, null,
+                200, null, 320L, null, "mp3", null, null));
+        }
+        return DuplicateGroupDTO.fromFiles((int) nextId, files);
+    }
+}
@@ -0,0 +1,84 @@
+package org.hasting.service;
+
+import org.hasting.dto.DuplicateGroupDTO;
+import org.hasting.dto.DuplicateGroupDeltaDTO;
+import org.hasting.dto.MusicFileDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for stable duplicate group ids and the deltas between duplicate results.
+ */
+@DisplayName("Duplicate Result History Tests")
+public class DuplicateResultHistoryTest {
+
+    @Test
+    @DisplayName("Group ids come from the members, not the position")
+    void testStableGroupIds() {
+        DuplicateGroupDTO group = DuplicateGroupDTO.fromFiles(List.of(file(42, "A"), file(7, "A"), file(19, "A")));
+        assertEquals(7, group.groupId());
+        assertEquals(7, DuplicateGroupDTO.fromFiles(List.of(file(19, "A"), file(7, "A"))).groupId());
+        assertEquals(0, DuplicateGroupDTO.stableGroupId(List.of()));
+        int large = DuplicateGroupDTO.stableGroupId(List.of(file(1L << 40, "A")));
+        assertTrue(large >= 0);
+    }
+
+    @Test
+    @DisplayName("Deltas report added, changed and removed groups")
+    void testDelta() {
+        DuplicateResultHistory history = new DuplicateResultHistory();
+        List<DuplicateGroupDTO> first = List.of(
+            group(file(1, "A"), file(2, "A")),
+            group(file(10, "B"), file(11, "B")),
+            group(file(20, "C"), file(21, "C")));
+        long firstVersion = history.versionOf(first);
+        assertEquals(firstVersion, history.versionOf(first));
+
+        List<DuplicateGroupDTO> second = List.of(
+            group(file(1, "A"), file(2, "A")),
+            group(file(10, "B"), file(11, "B"), file(12, "B")),
+            group(file(30, "D"), file(31, "D")));
+        DuplicateGroupDeltaDTO delta = history.delta(firstVersion, second);
+
+        assertFalse(delta.fullRefresh());
+        assertEquals(firstVersion, delta.sinceVersion());
+        assertTrue(delta.resultVersion() > firstVersion);
+        assertEquals(List.of(30), delta.added().stream().map(DuplicateGroupDTO::groupId).toList());
+        assertEquals(List.of(10), delta.changed().stream().map(DuplicateGroupDTO::groupId).toList());
+        assertEquals(List.of(20), delta.removedGroupIds());
+
+        DuplicateGroupDeltaDTO none = history.delta(delta.resultVersion(), second);
+        assertTrue(none.added().isEmpty() && none.changed().isEmpty() && none.removedGroupIds().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Forgotten versions get a full refresh")
+    void testFullRefresh() {
+        DuplicateResultHistory history = new DuplicateResultHistory(2);
+        List<DuplicateGroupDTO> oldest = new ArrayList<>(List.of(group(file(1, "A"), file(2, "A"))));
+        long oldestVersion = history.versionOf(oldest);
+        history.versionOf(new ArrayList<>(oldest));
+        List<DuplicateGroupDTO> current = new ArrayList<>(oldest);
+        history.versionOf(current);
+
+        DuplicateGroupDeltaDTO delta = history.delta(oldestVersion, current);
+        assertTrue(delta.fullRefresh());
+        assertEquals(current, delta.added());
+
+        assertTrue(history.delta(-1, current).fullRefresh());
+    }
+
+    private DuplicateGroupDTO group(MusicFileDTO... files) {
+        return DuplicateGroupDTO.fromFiles(List.of(files));
+    }
+
+    private MusicFileDTO file(long id, String title) {
+        return new MusicFileDTO(id, "/music/" + id + ".mp3", title, "Artist", "Album", null, null, null,
+            200, null, 320L, null, "mp3", null, null);
+    }
+}
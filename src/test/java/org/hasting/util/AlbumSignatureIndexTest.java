@@ -0,0 +1,135 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for album-level MinHash signatures.
+ */
+@DisplayName("Album Signature Index Tests")
+public class AlbumSignatureIndexTest {
+
+    private static final int TRACKS = 10;
+    private static final int SEGMENTS = 64;
+
+    private Random random;
+    private long nextId;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(22);
+        nextId = 1;
+    }
+
+    @Test
+    @DisplayName("A re-encoded album is found among unrelated albums")
+    void testFindsReencodedAlbum() {
+        AlbumSignatureIndex.Builder builder = AlbumSignatureIndex.builder(new FuzzySearchConfig());
+        int[][] original = new int[TRACKS][];
+        for (int t = 0; t < TRACKS; t++) {
+            original[t] = randomFingerprint();
+            builder.add("/music/flac/Album", track("Song " + t, 180 + t, original[t]));
+            // Another encoding: a few bits differ and the titles carry a format tag
+            builder.add("/music/mp3/Album", track("Song " + t + " [mp3]", 181 + t, perturb(original[t], 0.02)));
+        }
+        for (int album = 0; album < 200; album++) {
+            for (int t = 0; t < TRACKS; t++) {
+                builder.add("/music/other/" + album, track("Other " + album + " " + t, 150 + random.nextInt(200),
+                    randomFingerprint()));
+            }
+        }
+        AlbumSignatureIndex index = builder.build();
+        assertEquals(202, index.size());
+
+        List<AlbumSignatureIndex.Match> matches = index.findDuplicateAlbums(AlbumSignatureIndex.DEFAULT_MIN_SIMILARITY);
+        assertEquals(1, matches.size(), "Unexpected matches: " + matches);
+        AlbumSignatureIndex.Match match = matches.get(0);
+        assertEquals("/music/flac/Album", match.directoryA());
+        assertEquals("/music/mp3/Album", match.directoryB());
+        assertEquals(TRACKS, match.tracksInA());
+        assertEquals(TRACKS, match.tracksInB());
+        assertTrue(match.byFingerprint());
+        assertTrue(match.similarity() > 0.5, "Similarity was " + match.similarity());
+        assertEquals(match.similarity(), index.similarity("/music/mp3/Album", "/music/flac/Album"), 0.0);
+    }
+
+    @Test
+    @DisplayName("Without fingerprints, titles match only with durations that agree")
+    void testTitleSketch() {
+        AlbumSignatureIndex.Builder builder = AlbumSignatureIndex.builder(new FuzzySearchConfig());
+        for (int t = 0; t < TRACKS; t++) {
+            builder.add("/a/Abbey Road", track("Track " + t, 200 + 7 * t, null));
+            builder.add("/b/Abbey Road", track("track " + t, 201 + 7 * t, null));
+            // Generic titles with unrelated durations
+            builder.add("/c/Unknown", track("Track " + t, 400 + 11 * t, null));
+        }
+        builder.add("/d/Single", track("Track 1", 207, null));
+        AlbumSignatureIndex index = builder.build();
+
+        // A single file is not an album
+        assertEquals(3, index.size());
+        assertEquals(0, index.fileIds("/d/Single").length);
+        assertEquals(TRACKS, index.fileIds("/a/Abbey Road").length);
+
+        List<AlbumSignatureIndex.Match> matches = index.findDuplicateAlbums(AlbumSignatureIndex.DEFAULT_MIN_SIMILARITY);
+        assertEquals(1, matches.size(), "Unexpected matches: " + matches);
+        assertEquals("/a/Abbey Road", matches.get(0).directoryA());
+        assertEquals("/b/Abbey Road", matches.get(0).directoryB());
+        assertFalse(matches.get(0).byFingerprint());
+        assertTrue(index.similarity("/a/Abbey Road", "/c/Unknown") < AlbumSignatureIndex.DEFAULT_MIN_SIMILARITY);
+    }
+
+    @Test
+    @DisplayName("Identical albums estimate a similarity of one")
+    void testIdenticalAlbums() {
+        AlbumSignatureIndex.Builder builder = AlbumSignatureIndex.builder(new FuzzySearchConfig());
+        for (int t = 0; t < 3; t++) {
+            int[] fingerprint = randomFingerprint();
+            builder.add("/x", track("Song " + t, 100 + t, fingerprint));
+            builder.add("/y", track("Song " + t, 100 + t, fingerprint.clone()));
+        }
+        AlbumSignatureIndex index = builder.build();
+        assertEquals(1.0, index.similarity("/x", "/y"), 0.0);
+        assertEquals(1, index.candidatePairs().length);
+    }
+
+    private MusicFile track(String title, int duration, int[] fingerprint) {
+        MusicFile file = new MusicFile();
+        file.setId(nextId++);
+        file.setTitle(title);
+        file.setArtist("Artist");
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        if (fingerprint != null) {
+            file.setFingerprintSegments(fingerprint);
+        }
+        return file;
+    }
+
+    private int[] randomFingerprint() {
+        int[] fingerprint = new int[SEGMENTS];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+        return fingerprint;
+    }
+
+    private int[] perturb(int[] fingerprint, double bitFlipRate) {
+        int[] copy = fingerprint.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < bitFlipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,163 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the lock-free ConcurrentUnionFind, including a contention stress test.
+ */
+@DisplayName("Concurrent Union-Find Tests")
+public class ConcurrentUnionFindTest {
+
+    private static final int STRESS_ELEMENTS = 20_000;
+    private static final int STRESS_EDGES = 60_000;
+    private static final int STRESS_THREADS = 16;
+    private static final int STRESS_ROUNDS = 10;
+
+    @Test
+    @DisplayName("Unions merge sets and the root is the smallest member")
+    void testBasicUnion() {
+        ConcurrentUnionFind uf = new ConcurrentUnionFind(6);
+
+        assertTrue(uf.union(4, 2));
+        assertTrue(uf.union(5, 4));
+        assertFalse(uf.union(2, 5), "Already in the same set");
+        assertTrue(uf.union(1, 3));
+
+        assertTrue(uf.connected(5, 2));
+        assertFalse(uf.connected(0, 1));
+        assertEquals(2, uf.find(5));
+        assertEquals(1, uf.find(3));
+
+        List<int[]> groups = uf.groups(2);
+        assertEquals(2, groups.size());
+        assertArrayEquals(new int[] { 1, 3 }, groups.get(0));
+        assertArrayEquals(new int[] { 2, 4, 5 }, groups.get(1));
+        assertEquals(3, uf.groups(1).size(), "Singletons are included with minSize 1");
+    }
+
+    @Test
+    @DisplayName("A long chain is walked iteratively without overflowing the stack")
+    void testLongChain() {
+        int n = 1_000_000;
+        ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+        for (int i = n - 1; i > 0; i--) {
+            uf.union(i, i - 1);
+        }
+
+        assertEquals(0, uf.find(n - 1));
+        List<int[]> groups = uf.groups(2);
+        assertEquals(1, groups.size());
+        assertEquals(n, groups.get(0).length);
+    }
+
+    @Test
+    @DisplayName("Groups are deterministic under heavy contention")
+    void testDeterministicUnderContention() throws Exception {
+        Random random = new Random(42);
+        List<int[]> edges = new ArrayList<>(STRESS_EDGES);
+        for (int e = 0; e < STRESS_EDGES; e++) {
+            // Skew towards low indices so a few large sets see most of the contention
+            int a = (int) (Math.pow(random.nextDouble(), 3) * STRESS_ELEMENTS);
+            int b = random.nextInt(STRESS_ELEMENTS);
+            edges.add(new int[] { a, b });
+        }
+
+        List<int[]> expected = sequentialGroups(edges);
+
+        ExecutorService executor = Executors.newFixedThreadPool(STRESS_THREADS);
+        try {
+            for (int round = 0; round < STRESS_ROUNDS; round++) {
+                List<int[]> shuffled = new ArrayList<>(edges);
+                Collections.shuffle(shuffled, new Random(round));
+                ConcurrentUnionFind uf = new ConcurrentUnionFind(STRESS_ELEMENTS);
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < STRESS_THREADS; t++) {
+                    int thread = t;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        // Every thread applies a strided slice; readers run concurrently with writers
+                        for (int e = thread; e < shuffled.size(); e += STRESS_THREADS) {
+                            int[] edge = shuffled.get(e);
+                            uf.union(edge[0], edge[1]);
+                            uf.find(edge[1]);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                List<int[]> actual = uf.groups(2);
+                assertEquals(expected.size(), actual.size(), "round " + round);
+                for (int g = 0; g < expected.size(); g++) {
+                    assertArrayEquals(expected.get(g), actual.get(g), "round " + round + ", group " + g);
+                    assertEquals(expected.get(g)[0], uf.find(expected.get(g)[expected.get(g).length - 1]));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reference grouping: a plain single-threaded union-find with the same output ordering.
+     */
+    private List<int[]> sequentialGroups(List<int[]> edges) {
+        int[] parent = new int[STRESS_ELEMENTS];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int[] edge : edges) {
+            int a = root(parent, edge[0]);
+            int b = root(parent, edge[1]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        List<List<Integer>> byRoot = new ArrayList<>();
+        for (int i = 0; i < parent.length; i++) {
+            byRoot.add(null);
+        }
+        List<List<Integer>> ordered = new ArrayList<>();
+        for (int i = 0; i < parent.length; i++) {
+            int r = root(parent, i);
+            if (byRoot.get(r) == null) {
+                byRoot.set(r, new ArrayList<>());
+                ordered.add(byRoot.get(r));
+            }
+            byRoot.get(r).add(i);
+        }
+
+        List<int[]> groups = new ArrayList<>();
+        for (List<Integer> members : ordered) {
+            if (members.size() >= 2) {
+                groups.add(members.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        return groups;
+    }
+
+    private int root(int[] parent, int x) {
+        while (parent[x] != x) {
+            x = parent[x];
+        }
+        return x;
+    }
+}
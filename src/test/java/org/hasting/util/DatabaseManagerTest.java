@@ -13,8 +13,13 @@ import org.junit.jupiter.api.Test;
 import org.hasting.util.DatabaseManager;
 
 import java.io.IOException;
+import java.nio.IntBuffer;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -193,4 +198,249 @@ public class DatabaseManagerTest {
         assertEquals("Updated Title", retrievedFile.getTitle(), "Title should be updated");
         assertEquals("Updated Artist", retrievedFile.getArtist(), "Artist should be updated");
     }
-}
\ No newline at end of file
+
+    /**
+     * Normalized metadata keys are written with the row and recomputed on update.
+     */
+    @Test
+    public void testMetadataKeysStored() {
+        MusicFile file = new MusicFile();
+        file.setTitle("Hotel California (Live)");
+        file.setArtist("The Eagles");
+        file.setAlbum("Hell Freezes Over (Remastered)");
+        file.setFilePath("/test/path/metadata_keys_" + System.currentTimeMillis() + ".mp3");
+        file.setFileType("mp3");
+        DatabaseManager.saveMusicFile(file);
+
+        FuzzySearchConfig config = new FuzzySearchConfig();
+        MusicFile stored = DatabaseManager.getMusicFileById(file.getId());
+        assertEquals(FuzzyMatcher.metadataKeyVersion(config), stored.getMetadataKeyVersion());
+        assertEquals("hotel california live", stored.getTitleKey());
+        assertEquals("eagles", stored.getArtistKey());
+        assertEquals("hell freezes over", stored.getAlbumKey());
+
+        stored.setArtist("Don Henley");
+        DatabaseManager.updateMusicFile(stored);
+        assertEquals("don henley", DatabaseManager.getMusicFileById(file.getId()).getArtistKey());
+
+        DatabaseManager.deleteMusicFile(stored);
+    }
+
+    /**
+     * Changing the normalization settings re-keys the stored rows with the active config.
+     */
+    @Test
+    public void testMetadataKeysFollowActiveConfig() {
+        DatabaseProfile profile = DatabaseManager.getActiveProfile();
+        assertNotNull(profile, "Tests run with an active profile");
+        FuzzySearchConfig original = profile.getFuzzySearchConfig();
+
+        MusicFile file = new MusicFile();
+        file.setTitle("Hotel California");
+        file.setArtist("The Eagles");
+        file.setAlbum("Hell Freezes Over");
+        file.setFilePath("/test/path/metadata_rekey_" + System.currentTimeMillis() + ".mp3");
+        file.setFileType("mp3");
+        DatabaseManager.saveMusicFile(file);
+        try {
+            FuzzySearchConfig caseSensitive = new FuzzySearchConfig();
+            caseSensitive.setIgnoreCaseDifferences(false);
+            profile.setFuzzySearchConfig(caseSensitive);
+            long version = DatabaseManager.getLibraryVersion();
+            DatabaseManager.fuzzySearchConfigChanged();
+
+            assertTrue(DatabaseManager.getLibraryVersion() > version);
+            MusicFile stored = DatabaseManager.getMusicFileById(file.getId());
+            assertEquals(FuzzyMatcher.metadataKeyVersion(caseSensitive), stored.getMetadataKeyVersion());
+            assertEquals("Hotel California", stored.getTitleKey());
+        } finally {
+            profile.setFuzzySearchConfig(original);
+            DatabaseManager.fuzzySearchConfigChanged();
+            DatabaseManager.deleteMusicFile(file);
+        }
+    }
+
+    /**
+     * The library version moves on after every committed write.
+     */
+    @Test
+    public void testLibraryVersionAdvancesOnWrite() {
+        MusicFile file = new MusicFile();
+        file.setTitle("Version Test");
+        file.setFilePath("/test/path/library_version_" + System.currentTimeMillis() + ".mp3");
+        file.setFileType("mp3");
+
+        long before = DatabaseManager.getLibraryVersion();
+        DatabaseManager.saveMusicFile(file);
+        long afterSave = DatabaseManager.getLibraryVersion();
+        assertTrue(afterSave > before);
+
+        file.setTitle("Version Test (Updated)");
+        DatabaseManager.updateMusicFile(file);
+        long afterUpdate = DatabaseManager.getLibraryVersion();
+        assertTrue(afterUpdate > afterSave);
+
+        DatabaseManager.getMusicFileById(file.getId());
+        assertEquals(afterUpdate, DatabaseManager.getLibraryVersion());
+
+        DatabaseManager.deleteMusicFile(file);
+        assertTrue(DatabaseManager.getLibraryVersion() > afterUpdate);
+    }
+
+    /**
+     * A fingerprint change the corpus did not see moves the database generation past
+     * the corpus header, so the next snapshot comes from a rebuilt file while a snapshot
+     * of the old file stays readable.
+     */
+    @Test
+    public void testFingerprintCorpusRebuiltWhenGenerationDiffers() throws SQLException {
+        MusicFile file = new MusicFile();
+        file.setTitle("Corpus Generation");
+        file.setFilePath("/test/path/corpus_generation_" + System.currentTimeMillis() + ".mp3");
+        file.setFileType("mp3");
+        DatabaseManager.saveMusicFile(file);
+        int[] original = {1, 2, 3, 4};
+        int[] changed = {5, 6, 7, 8};
+        assertTrue(DatabaseManager.updateFingerprint(file.getId(), original, 100));
+
+        try (FingerprintCorpus.Snapshot before = DatabaseManager.snapshotFingerprintCorpus()) {
+            assertNotNull(before);
+            assertArrayEquals(original, segmentsOf(before, file.getId()));
+
+            try (PreparedStatement pstmt = DatabaseManager.getConnection().prepareStatement(
+                    "UPDATE music_files SET fingerprint_blob = ? WHERE id = ?")) {
+                pstmt.setBytes(1, FingerprintCodec.pack(changed));
+                pstmt.setLong(2, file.getId());
+                pstmt.executeUpdate();
+            }
+
+            try (FingerprintCorpus.Snapshot after = DatabaseManager.snapshotFingerprintCorpus()) {
+                assertArrayEquals(changed, segmentsOf(after, file.getId()));
+            }
+            assertArrayEquals(original, segmentsOf(before, file.getId()));
+        } finally {
+            DatabaseManager.deleteMusicFile(file);
+        }
+    }
+
+    private static int[] segmentsOf(FingerprintCorpus.Snapshot snapshot, long fileId) {
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (snapshot.fileId(i) == fileId) {
+                IntBuffer segments = snapshot.segments(i);
+                int[] result = new int[segments.limit()];
+                segments.get(0, result);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bulk deletes remove every record in one call and leave the rest untouched.
+     */
+    @Test
+    public void testDeleteMusicFiles() {
+        List<MusicFile> files = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MusicFile file = new MusicFile();
+            file.setTitle("Bulk Delete " + i);
+            file.setFilePath("/test/path/bulk_delete_" + i + "_" + System.currentTimeMillis() + ".mp3");
+            file.setFileType("mp3");
+            DatabaseManager.saveMusicFile(file);
+            files.add(file);
+            ids.add(file.getId());
+        }
+
+        long before = DatabaseManager.getLibraryVersion();
+        assertEquals(2, DatabaseManager.deleteMusicFiles(files.subList(0, 2)));
+        assertTrue(DatabaseManager.getLibraryVersion() > before);
+        assertNull(files.get(0).getId());
+        assertNull(files.get(1).getId());
+
+        Map<Long, MusicFile> remaining = DatabaseManager.getMusicFilesByIds(ids);
+        assertEquals(1, remaining.size());
+        assertTrue(remaining.containsKey(ids.get(2)));
+        assertEquals(0, DatabaseManager.deleteMusicFiles(List.of()));
+
+        DatabaseManager.deleteMusicFile(files.get(2));
+    }
+
+    /**
+     * Streaming visits the same files as a full load, in id order.
+     */
+    @Test
+    public void testForEachMusicFile() {
+        MusicFile file = new MusicFile();
+        file.setTitle("Streamed");
+        file.setFilePath("/test/path/streamed_" + System.currentTimeMillis() + ".mp3");
+        file.setFileType("mp3");
+        DatabaseManager.saveMusicFile(file);
+
+        List<Long> streamed = new ArrayList<>();
+        int count = DatabaseManager.forEachMusicFile(f -> streamed.add(f.getId()));
+        assertEquals(streamed.size(), count);
+        assertEquals(DatabaseManager.getAllMusicFiles().size(), count);
+        assertTrue(streamed.contains(file.getId()));
+        List<Long> sorted = new ArrayList<>(streamed);
+        sorted.sort(null);
+        assertEquals(sorted, streamed);
+
+        DatabaseManager.deleteMusicFile(file);
+    }
+
+    /**
+     * Rescans update stored rows in place and replace missing ones with tombstones,
+     * which a file saved again at the same path clears.
+     */
+    @Test
+    public void testRescanUpdatesAndTombstones() {
+        String base = "/test/path/rescan_" + System.currentTimeMillis();
+        MusicFile kept = new MusicFile();
+        kept.setTitle("Before");
+        kept.setFilePath(base + "_kept.mp3");
+        kept.setFileType("mp3");
+        kept.setFileSizeBytes(100L);
+        kept.setLastModified(new Date(1_000_000L));
+        MusicFile gone = new MusicFile();
+        gone.setTitle("Gone");
+        gone.setFilePath(base + "_gone.mp3");
+        gone.setFileType("mp3");
+        DatabaseManager.saveMusicFile(kept);
+        DatabaseManager.saveMusicFile(gone);
+
+        Map<Long, DatabaseManager.FileState> states = new java.util.HashMap<>();
+        DatabaseManager.forEachFileState(state -> states.put(state.id(), state));
+        assertEquals(Long.valueOf(100L), states.get(kept.getId()).fileSizeBytes());
+        assertEquals(Long.valueOf(1_000_000L), states.get(kept.getId()).lastModified());
+        assertNull(states.get(gone.getId()).fileSizeBytes());
+
+        MusicFile reread = new MusicFile();
+        reread.setId(kept.getId());
+        reread.setTitle("After");
+        reread.setFilePath(kept.getFilePath());
+        reread.setFileType("mp3");
+        reread.setFileSizeBytes(200L);
+        reread.setLastModified(new Date(2_000_000L));
+        assertEquals(1, DatabaseManager.updateMusicFilesBatch(List.of(reread)));
+        MusicFile updated = DatabaseManager.getMusicFileById(kept.getId());
+        assertEquals("After", updated.getTitle());
+        assertEquals(Long.valueOf(200L), updated.getFileSizeBytes());
+
+        long goneId = gone.getId();
+        assertEquals(1, DatabaseManager.tombstoneMusicFiles(List.of(states.get(goneId))));
+        assertNull(DatabaseManager.getMusicFileById(goneId));
+        assertNull(DatabaseManager.getFileIdByPath(gone.getFilePath()));
+        assertTrue(DatabaseManager.getTombstonedPaths(1000).contains(gone.getFilePath()));
+
+        MusicFile restored = new MusicFile();
+        restored.setTitle("Gone");
+        restored.setFilePath(gone.getFilePath());
+        restored.setFileType("mp3");
+        DatabaseManager.saveMusicFile(restored);
+        assertFalse(DatabaseManager.getTombstonedPaths(1000).contains(gone.getFilePath()));
+
+        DatabaseManager.deleteMusicFile(restored);
+        DatabaseManager.deleteMusicFile(updated);
+    }
+}
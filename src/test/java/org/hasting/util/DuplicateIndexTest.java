@@ -0,0 +1,269 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the persistent, incrementally maintained duplicate index.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@DisplayName("Duplicate Index Tests")
+public class DuplicateIndexTest {
+
+    private static final Random random = new Random(21);
+
+    private static MusicFile song1;
+    private static MusicFile song1Copy;
+    private static MusicFile song1SecondCopy;
+    private static MusicFile other;
+
+    @BeforeAll
+    static void setUp() {
+        DatabaseManager.initialize();
+        DatabaseManager.deleteAllMusicFiles();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        DatabaseManager.deleteAllMusicFiles();
+        DatabaseManager.shutdown();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Groups are built from the files present")
+    void testInitialBuild() {
+        song1 = save("/test/index/song1.mp3", "Hotel California", "Eagles", 390);
+        song1Copy = save("/test/index/song1-copy.mp3", "Hotel California", "Eagles", 391);
+        other = save("/test/index/other.mp3", "Yesterday", "The Beatles", 125);
+
+        List<List<Long>> groups = DuplicateIndex.refresh();
+        assertEquals(List.of(List.of(song1.getId(), song1Copy.getId())), groups);
+        assertTrue(DatabaseManager.getPendingDuplicateIndexChanges().fileIds().isEmpty());
+        assertConsistent();
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Inserted files join existing groups")
+    void testInsert() {
+        song1SecondCopy = save("/test/index/song1-second.mp3", "Hotel California", "Eagles", 389);
+        assertEquals(1, DatabaseManager.getPendingDuplicateIndexChanges().fileIds().size());
+
+        List<List<Long>> groups = DuplicateIndex.refresh();
+        assertEquals(List.of(List.of(song1.getId(), song1Copy.getId(), song1SecondCopy.getId())), groups);
+        assertConsistent();
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("Updated files leave groups they no longer match")
+    void testUpdate() {
+        MusicFile stored = DatabaseManager.getMusicFileById(song1Copy.getId());
+        stored.setTitle("Take It Easy");
+        stored.setArtist("Jackson Browne");
+        stored.setAlbum("Jackson Browne");
+        DatabaseManager.updateMusicFile(stored);
+
+        List<List<Long>> groups = DuplicateIndex.refresh();
+        assertEquals(List.of(List.of(song1.getId(), song1SecondCopy.getId())), groups);
+        assertConsistent();
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Deleted files shrink their group, and a pair falls apart")
+    void testDelete() {
+        Long deletedId = song1.getId();
+        DatabaseManager.deleteMusicFile(song1);
+        assertNull(DatabaseManager.getMusicFileById(deletedId));
+        assertEquals(List.of(), DuplicateIndex.getGroups(), "Edges of a deleted file are dropped at once");
+        assertEquals(List.of(), DuplicateIndex.refresh());
+        assertConsistent();
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("The index survives a restart and catches up on changes")
+    void testSurvivesRestart() {
+        MusicFile copy = save("/test/index/other-copy.mp3", "Yesterday", "The Beatles", 126);
+        List<List<Long>> expected = List.of(List.of(other.getId(), copy.getId()));
+        assertEquals(expected, DuplicateIndex.refresh());
+
+        DatabaseManager.shutdown();
+        DatabaseManager.initialize();
+
+        assertTrue(DatabaseManager.getPendingDuplicateIndexChanges().fileIds().isEmpty());
+        assertEquals(expected, DuplicateIndex.getGroups());
+        assertEquals(expected, DuplicateIndex.refresh());
+    }
+
+    @Test
+    @Order(6)
+    @DisplayName("Fingerprint mode is maintained incrementally and matches a full recompute")
+    void testFingerprintMode() {
+        int[] shared = randomFingerprint();
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+        for (MusicFile file : files) {
+            int[] fingerprint = file.getTitle().equals("Yesterday") ? shared : randomFingerprint();
+            assertTrue(DatabaseManager.updateFingerprint(file.getId(), fingerprint, file.getDurationSeconds()));
+        }
+
+        List<List<Long>> groups = DuplicateIndex.refresh();
+        assertEquals(DuplicateIndex.Mode.FINGERPRINT, DuplicateIndex.currentMode());
+        assertEquals(1, groups.size());
+        assertEquals(2, groups.get(0).size());
+        assertConsistent();
+
+        // Make a third file match the pair by fingerprint
+        MusicFile third = files.stream().filter(f -> !f.getTitle().equals("Yesterday")).findFirst().orElseThrow();
+        int[] nearCopy = shared.clone();
+        nearCopy[0] ^= 1;
+        DatabaseManager.updateFingerprint(third.getId(), nearCopy, 125);
+
+        groups = DuplicateIndex.refresh();
+        assertEquals(1, groups.size());
+        assertTrue(groups.get(0).contains(third.getId()));
+        assertConsistent();
+    }
+
+    @Test
+    @Order(7)
+    @DisplayName("Verify reports and repairs a damaged index")
+    void testVerifyRepairs() {
+        DatabaseManager.replaceDuplicateIndex(List.of(), new DuplicateIndex.PendingChanges(Set.of(), 0, List.of(), 0),
+            DatabaseManager.getDuplicateIndexState(DuplicateIndex.SIGNATURE_KEY));
+        assertTrue(DuplicateIndex.getGroups().isEmpty());
+
+        DuplicateIndex.VerifyReport report = DuplicateIndex.verify(true);
+        assertFalse(report.consistent());
+        assertEquals(1, report.missingGroups().size());
+        assertTrue(report.repaired());
+        assertConsistent();
+    }
+
+    @Test
+    @Order(8)
+    @DisplayName("Refreshing a blocked library leaves the edges of a rebuild")
+    void testBlockedRefreshMatchesRebuild() {
+        DatabaseManager.deleteAllMusicFiles();
+        List<MusicFile> library = new ArrayList<>();
+        String[] artists = new String[400];
+        for (int a = 0; a < artists.length; a++) {
+            artists[a] = word() + " " + word();
+        }
+        while (library.size() < MetadataBlocker.MIN_FILES_FOR_BLOCKING + 200) {
+            String title = word() + " " + word();
+            String artist = artists[random.nextInt(artists.length)];
+            int duration = 150 + random.nextInt(200);
+            library.add(file("/test/blocked/" + library.size() + ".mp3", title, artist, duration));
+            if (random.nextBoolean()) {
+                library.add(file("/test/blocked/" + library.size() + ".mp3", title.toUpperCase(), artist, duration + 1));
+            }
+        }
+        DatabaseManager.saveMusicFilesBatch(library);
+        DuplicateIndex.refresh();
+        SimilarityGraph.refresh();
+
+        // Move files to other artists and titles, delete some and add copies of others
+        List<MusicFile> moved = new ArrayList<>();
+        List<MusicFile> deleted = new ArrayList<>();
+        List<MusicFile> copies = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            MusicFile file = library.get(random.nextInt(library.size()));
+            if (moved.contains(file) || deleted.contains(file)) continue;
+            if (i % 3 == 0) {
+                file.setArtist(artists[random.nextInt(artists.length)]);
+                file.setTitle(word() + " " + word());
+                moved.add(file);
+            } else if (i % 3 == 1) {
+                deleted.add(file);
+            } else {
+                copies.add(file("/test/blocked/copy-" + i + ".mp3", file.getTitle(), file.getArtist(),
+                    file.getDurationSeconds()));
+            }
+        }
+        DatabaseManager.updateMusicFilesBatch(moved);
+        DatabaseManager.deleteMusicFiles(deleted);
+        DatabaseManager.saveMusicFilesBatch(copies);
+
+        DuplicateIndex.refresh();
+        SimilarityGraph.refresh();
+        Set<DuplicateIndex.Edge> refreshedEdges = new HashSet<>(DatabaseManager.getDuplicateEdges());
+        Set<List<Long>> refreshedGraph = graphPairs();
+        assertFalse(refreshedEdges.isEmpty());
+
+        SimilarityGraph.rebuild();
+        DuplicateIndex.rebuild();
+        assertEquals(new HashSet<>(DatabaseManager.getDuplicateEdges()), refreshedEdges);
+        assertEquals(graphPairs(), refreshedGraph);
+    }
+
+    @Test
+    @DisplayName("Metadata groups are seeded in library order instead of chaining matches")
+    void testSeedGroups() {
+        // 1 matches 2, and 2 matches 3, but 1 does not match 3
+        List<DuplicateIndex.Edge> chain = List.of(new DuplicateIndex.Edge(1, 2, null), new DuplicateIndex.Edge(2, 3, null),
+            new DuplicateIndex.Edge(4, 5, null));
+        assertEquals(List.of(List.of(1L, 2L), List.of(4L, 5L)),
+            DuplicateIndex.seedGroups(chain, List.of(1L, 2L, 3L, 4L, 5L)));
+        assertEquals(List.of(List.of(1L, 2L, 3L), List.of(4L, 5L)),
+            DuplicateIndex.seedGroups(chain, List.of(2L, 1L, 3L, 5L, 4L)));
+        assertEquals(List.of(List.of(1L, 2L, 3L), List.of(4L, 5L)), DuplicateIndex.components(chain));
+    }
+
+    private static MusicFile save(String path, String title, String artist, int duration) {
+        MusicFile file = file(path, title, artist, duration);
+        DatabaseManager.saveMusicFile(file);
+        assertNotNull(file.getId());
+        return file;
+    }
+
+    private static MusicFile file(String path, String title, String artist, int duration) {
+        MusicFile file = new MusicFile();
+        file.setFilePath(path);
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum("Greatest Hits");
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        return file;
+    }
+
+    private static Set<List<Long>> graphPairs() {
+        Set<List<Long>> pairs = new HashSet<>();
+        for (SimilarityGraph.Edge edge : DatabaseManager.getSimilarityGraphEdges()) {
+            pairs.add(List.of(edge.fileA(), edge.fileB()));
+        }
+        return pairs;
+    }
+
+    private static String word() {
+        char[] letters = new char[4 + random.nextInt(5)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static void assertConsistent() {
+        DuplicateIndex.VerifyReport report = DuplicateIndex.verify(false);
+        assertTrue(report.consistent(), "Index differs from a full recompute: " + report);
+    }
+
+    private static int[] randomFingerprint() {
+        int[] fingerprint = new int[120];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,203 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for duration-window candidate pruning.
+ */
+@DisplayName("Duration Window Tests")
+public class DurationWindowTest {
+
+    private final Random random = new Random(99);
+
+    @BeforeEach
+    void enableFingerprintWindow() {
+        FingerprintMatcher.setDurationWindow(DurationWindow.from(new FuzzySearchConfig()));
+    }
+
+    @AfterEach
+    void restoreFingerprintWindow() {
+        FingerprintMatcher.setDurationWindow(null);
+    }
+
+    @Test
+    @DisplayName("Tolerance follows the absolute and percentage rules")
+    void testMatches() {
+        DurationWindow window = new DurationWindow(10, 5.0);
+
+        assertTrue(window.matches(200, 210));
+        assertFalse(window.matches(200, 211));
+        assertTrue(window.matches(600, 630), "30s is within 5% of a 10 minute track");
+        assertFalse(window.matches(600, 640));
+        assertTrue(window.matches(DurationWindow.UNKNOWN, 9999));
+    }
+
+    @Test
+    @DisplayName("Sliding windows enumerate exactly the matching pairs, each once")
+    void testCandidatesMatchBruteForce() {
+        DurationWindow window = new DurationWindow(10, 5.0);
+        int[] durations = randomDurations(2000);
+        DurationWindow.Candidates candidates = window.candidates(durations);
+
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < durations.length; i++) {
+            for (int j = i + 1; j < durations.length; j++) {
+                if (window.matches(durations[i], durations[j])) {
+                    expected.add(pairKey(i, j));
+                }
+            }
+        }
+
+        Set<Long> visited = new HashSet<>();
+        long[] visits = new long[1];
+        for (int i = 0; i < durations.length; i++) {
+            int from = i;
+            candidates.forEachCandidate(i, j -> {
+                visits[0]++;
+                assertTrue(visited.add(pairKey(from, j)), "pair visited twice");
+            });
+        }
+
+        assertEquals(expected, visited);
+        assertEquals(expected.size(), visits[0]);
+        assertEquals(expected.size(), candidates.pairCount());
+        assertTrue(candidates.pairCount() * 10 < (long) durations.length * (durations.length - 1) / 2,
+            "Pruning should remove most pairs: " + candidates.pairCount());
+
+        for (int i = 0; i < durations.length; i += 7) {
+            List<Integer> later = new ArrayList<>();
+            for (int j = i + 1; j < durations.length; j++) {
+                if (window.matches(durations[i], durations[j])) {
+                    later.add(j);
+                }
+            }
+            assertArrayEquals(later.stream().mapToInt(Integer::intValue).toArray(), candidates.candidatesAfter(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Metadata pruning is only enabled when duration is decisive")
+    void testMetadataPruningWindow() {
+        FuzzySearchConfig config = new FuzzySearchConfig();
+        assertNull(FuzzyMatcher.durationPruningWindow(config));
+
+        config.setMinimumFieldsToMatch(4);
+        assertNotNull(FuzzyMatcher.durationPruningWindow(config));
+    }
+
+    @Test
+    @DisplayName("Pruned metadata grouping matches an unpruned seed-based pass")
+    void testPrunedMetadataGroupsUnchanged() {
+        FuzzySearchConfig config = new FuzzySearchConfig();
+        config.setMinimumFieldsToMatch(4);
+
+        List<MusicFile> files = new ArrayList<>();
+        String[] titles = { "Hotel California", "Hotel California ", "Yesterday", "Yesterday (Live)" };
+        for (int i = 0; i < 300; i++) {
+            MusicFile file = new MusicFile();
+            file.setTitle(titles[random.nextInt(titles.length)]);
+            file.setArtist(random.nextBoolean() ? "Eagles" : "The Eagles");
+            file.setAlbum("Greatest Hits");
+            file.setDurationSeconds(random.nextInt(20) == 0 ? null : 180 + random.nextInt(240));
+            files.add(file);
+        }
+
+        List<List<MusicFile>> expected = new ArrayList<>();
+        Set<MusicFile> processed = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (!processed.add(files.get(i))) continue;
+            List<MusicFile> group = new ArrayList<>(List.of(files.get(i)));
+            for (int j = i + 1; j < files.size(); j++) {
+                if (!processed.contains(files.get(j)) && FuzzyMatcher.areDuplicates(files.get(i), files.get(j), config)) {
+                    group.add(files.get(j));
+                    processed.add(files.get(j));
+                }
+            }
+            if (group.size() > 1) expected.add(group);
+        }
+
+        assertEquals(new HashSet<>(expected), new HashSet<>(FuzzyMatcher.groupDuplicates(files, config)));
+    }
+
+    @Test
+    @DisplayName("Fingerprint matches must fall within the duration window")
+    void testFingerprintDurationGate() {
+        int[] fingerprint = new int[100];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+
+        List<MusicFile> files = new ArrayList<>();
+        int[] durations = { 200, 205, 420, 0 };
+        for (int i = 0; i < durations.length; i++) {
+            MusicFile file = new MusicFile();
+            file.setId((long) i + 1);
+            file.setFingerprintSegments(fingerprint.clone());
+            file.setFingerprintDuration(durations[i]);
+            files.add(file);
+        }
+
+        for (FingerprintMatcher.MatchingMode mode : FingerprintMatcher.MatchingMode.values()) {
+            List<List<MusicFile>> groups = FingerprintMatcher.groupDuplicates(files, 0.85, mode);
+            assertEquals(1, groups.size());
+            assertEquals(4, groups.get(0).size(), "Unknown duration joins both sides and links the group");
+        }
+        assertFalse(FingerprintMatcher.areDuplicates(files.get(0), files.get(2)));
+        assertTrue(FingerprintMatcher.areDuplicates(files.get(0), files.get(1)));
+
+        List<MusicFile> known = files.subList(0, 3);
+        List<List<MusicFile>> groups = FingerprintMatcher.groupDuplicates(known, 0.85,
+            FingerprintMatcher.MatchingMode.BRUTE_FORCE);
+        assertEquals(1, groups.size());
+        assertEquals(List.of(files.get(0), files.get(1)), groups.get(0));
+
+        FingerprintMatcher.setDurationWindow(null);
+        assertEquals(3, FingerprintMatcher.groupDuplicates(known, 0.85).get(0).size());
+    }
+
+    @Test
+    @DisplayName("The system property turns the fingerprint window on with the active config's tolerances")
+    void testWindowProperty() {
+        FingerprintMatcher.setDurationWindow(null);
+        assertNull(FingerprintMatcher.getDurationWindow(), "Fingerprint durations are ignored by default");
+
+        System.setProperty(FingerprintMatcher.DURATION_WINDOW_PROPERTY, "true");
+        try {
+            FuzzySearchConfig config = DatabaseManager.activeFuzzySearchConfig();
+            DurationWindow window = FingerprintMatcher.getDurationWindow();
+            assertNotNull(window);
+            assertEquals(config.getDurationToleranceSeconds(), window.getToleranceSeconds());
+            assertEquals(config.getDurationTolerancePercent(), window.getTolerancePercent());
+
+            DurationWindow explicit = new DurationWindow(1, 0.0);
+            FingerprintMatcher.setDurationWindow(explicit);
+            assertSame(explicit, FingerprintMatcher.getDurationWindow());
+        } finally {
+            System.clearProperty(FingerprintMatcher.DURATION_WINDOW_PROPERTY);
+        }
+    }
+
+    private int[] randomDurations(int n) {
+        int[] durations = new int[n];
+        for (int i = 0; i < n; i++) {
+            durations[i] = random.nextInt(200) == 0 ? DurationWindow.UNKNOWN : 30 + random.nextInt(900);
+        }
+        return durations;
+    }
+
+    private long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+}
@@ -0,0 +1,157 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for external-memory metadata duplicate detection.
+ */
+@DisplayName("External Duplicate Detector Tests")
+public class ExternalDuplicateDetectorTest {
+
+    private static final String[] ARTISTS = { "The Beatles", "Beatles", "Pink Floyd", "Pink Floid", "Eagles", "  ", null };
+    private static final String[] ALBUMS = { "Abbey Road", "Abbey Road (Remastered)", "The Wall", "Hotel California", "", null };
+    private static final String[] TITLES = { "Come Together", "Come Togther", "Something", "Money", "Time", "Hotel California",
+        "Hotel Californa", "Another Brick in the Wall", "Another Brick In The Wall, Pt. 2", "   ", null };
+
+    @TempDir
+    Path tempDir;
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(21);
+    }
+
+    @Test
+    @DisplayName("With a window covering the library, groups match the in-memory scan")
+    void testMatchesInMemoryScan() {
+        List<MusicFile> files = library(300);
+        FuzzySearchConfig config = new FuzzySearchConfig();
+
+        ExternalDuplicateDetector.Result result = ExternalDuplicateDetector.findDuplicates(
+            sink -> files.forEach(sink), config, 0, files.size(), tempDir);
+
+        assertTrue(result.stats().runs() > 1, "Expected the minimum cap to spill several runs");
+        assertEquals(files.size(), result.stats().files());
+        assertEquals(expectedGroups(files, config), result.groups());
+        assertEquals(result.groups().size(), result.stats().groups());
+    }
+
+    @Test
+    @DisplayName("Merge passes don't change the result, and run files are removed")
+    void testMergePasses() throws IOException {
+        List<MusicFile> files = library(8000);
+        FuzzySearchConfig config = new FuzzySearchConfig();
+
+        ExternalDuplicateDetector.Result spilled = ExternalDuplicateDetector.findDuplicates(
+            sink -> files.forEach(sink), config, 0, MetadataBlocker.DEFAULT_WINDOW, tempDir);
+        ExternalDuplicateDetector.Result single = ExternalDuplicateDetector.findDuplicates(
+            sink -> files.forEach(sink), config, Long.MAX_VALUE, MetadataBlocker.DEFAULT_WINDOW, tempDir);
+
+        assertTrue(spilled.stats().runs() > ExternalDuplicateDetector.MAX_MERGE_FAN_IN);
+        assertTrue(spilled.stats().mergePasses() > 0);
+        assertEquals(1, single.stats().runs());
+        assertEquals(0, single.stats().mergePasses());
+        assertFalse(spilled.groups().isEmpty());
+        assertEquals(single.groups(), spilled.groups());
+
+        try (Stream<Path> left = Files.list(tempDir)) {
+            assertEquals(0, left.count());
+        }
+    }
+
+    @Test
+    @DisplayName("Groups are sorted by id and every pair within a group is linked by matches")
+    void testGroupShape() {
+        List<MusicFile> files = List.of(
+            file(1L, "Hotel California", "Eagles", "Hotel California", 390),
+            file(2L, "Money", "Pink Floyd", "Dark Side", 382),
+            file(3L, "Hotel Californa", "Eagles", "Hotel California", 391),
+            file(4L, "Money", "Pink Floid", "Dark Side", 383),
+            file(5L, "Something", "Beatles", "Abbey Road", 183));
+
+        ExternalDuplicateDetector.Result result = ExternalDuplicateDetector.findDuplicates(
+            sink -> files.forEach(sink), new FuzzySearchConfig(), 1 << 20, MetadataBlocker.DEFAULT_WINDOW, tempDir);
+
+        assertEquals(List.of(List.of(1L, 3L), List.of(2L, 4L)), result.groups());
+        assertEquals(2, result.stats().matches());
+    }
+
+    @Test
+    @DisplayName("The external property overrides the size estimate")
+    void testAppliesTo() {
+        String previous = System.getProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY);
+        try {
+            System.setProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY, "true");
+            assertTrue(ExternalDuplicateDetector.appliesTo(10));
+            System.setProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY, "false");
+            assertFalse(ExternalDuplicateDetector.appliesTo(Integer.MAX_VALUE));
+            System.clearProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY);
+            assertFalse(ExternalDuplicateDetector.appliesTo(10));
+            assertTrue(ExternalDuplicateDetector.appliesTo(Integer.MAX_VALUE));
+        } finally {
+            if (previous != null) {
+                System.setProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY, previous);
+            } else {
+                System.clearProperty(ExternalDuplicateDetector.EXTERNAL_PROPERTY);
+            }
+        }
+    }
+
+    private List<List<Long>> expectedGroups(List<MusicFile> files, FuzzySearchConfig config) {
+        return FuzzyMatcher.groupDuplicatesParallel(files, config).stream()
+            .map(group -> group.stream().map(MusicFile::getId).sorted().collect(Collectors.toList()))
+            .sorted(Comparator.comparing(group -> group.get(0)))
+            .collect(Collectors.toList());
+    }
+
+    private List<MusicFile> library(int size) {
+        List<MusicFile> files = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String title = pick(TITLES);
+            if (title != null && size > TITLES.length * 20) {
+                // Keep large libraries from collapsing into a handful of huge groups
+                title = title + " " + random.nextInt(size / 20);
+            }
+            MusicFile file = file((long) i + 1, title, pick(ARTISTS), pick(ALBUMS),
+                random.nextInt(10) == 0 ? null : 200 + random.nextInt(30));
+            if (random.nextBoolean()) {
+                file.setTrackNumber(1 + random.nextInt(3));
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private MusicFile file(Long id, String title, String artist, String album, Integer duration) {
+        MusicFile file = new MusicFile();
+        file.setId(id);
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum(album);
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        return file;
+    }
+}
@@ -0,0 +1,76 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for FingerprintCodec and the packed fingerprint accessors on MusicFile.
+ */
+public class FingerprintCodecTest {
+
+    @Test
+    void testPackUnpackRoundTrip() {
+        int[] segments = { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0x12345678 };
+
+        byte[] packed = FingerprintCodec.pack(segments);
+
+        assertEquals(segments.length * Integer.BYTES, packed.length);
+        assertArrayEquals(segments, FingerprintCodec.unpack(packed));
+    }
+
+    @Test
+    void testPackIsLittleEndian() {
+        byte[] packed = FingerprintCodec.pack(new int[] { 0x01020304 });
+
+        assertArrayEquals(new byte[] { 4, 3, 2, 1 }, packed);
+    }
+
+    @Test
+    void testEmptyValues() {
+        assertNull(FingerprintCodec.pack(null));
+        assertNull(FingerprintCodec.pack(new int[0]));
+        assertEquals(0, FingerprintCodec.unpack(null).length);
+        assertEquals(0, FingerprintCodec.unpack(new byte[3]).length);
+        assertNull(FingerprintCodec.format(new int[0]));
+    }
+
+    @Test
+    void testIntBufferView() {
+        int[] segments = { 7, -8, 9 };
+        IntBuffer view = FingerprintCodec.asIntBuffer(FingerprintCodec.pack(segments));
+
+        assertEquals(3, view.remaining());
+        assertEquals(-8, view.get(1));
+        assertTrue(view.isReadOnly());
+    }
+
+    @Test
+    void testFormatMatchesTextParsing() {
+        String text = "3735928559,1,0,4294967295";
+        int[] parsed = FingerprintMatcher.parseFingerprint(text);
+
+        assertEquals(text, FingerprintCodec.format(parsed));
+        assertArrayEquals(parsed, FingerprintCodec.unpack(FingerprintCodec.pack(parsed)));
+    }
+
+    @Test
+    void testMusicFileSegmentAccessors() {
+        MusicFile file = new MusicFile();
+        assertFalse(file.hasFingerprint());
+        assertEquals(0, file.getFingerprintSegments().length);
+
+        file.setFingerprintSegments(new int[] { 1, 2, 3 });
+        assertTrue(file.hasFingerprint());
+        assertEquals("1,2,3", file.getFingerprint());
+
+        file.setFingerprint("4,5");
+        assertArrayEquals(new int[] { 4, 5 }, file.getFingerprintSegments());
+
+        file.setFingerprintSegments(new int[0]);
+        assertFalse(file.hasFingerprint());
+    }
+}
@@ -0,0 +1,229 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the memory-mapped FingerprintCorpus and corpus-based duplicate grouping.
+ */
+public class FingerprintCorpusTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path corpusPath;
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        corpusPath = tempDir.resolve("library.db" + FingerprintCorpus.FILE_SUFFIX);
+        random = new Random(7);
+    }
+
+    @Test
+    void testPutAndReopen() throws IOException {
+        int[] first = randomFingerprint(100);
+        int[] second = randomFingerprint(64);
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 128)) {
+            assertTrue(corpus.put(1, first));
+            assertTrue(corpus.put(2, second));
+            assertEquals(2, corpus.size());
+        }
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 512);
+             FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> true)) {
+            assertEquals(128, corpus.getCapacity(), "Capacity of an existing file is kept");
+            assertEquals(2, snapshot.size());
+            assertEquals(1, snapshot.fileId(0));
+            assertArrayEquals(first, toArray(snapshot.segments(0)));
+            assertArrayEquals(second, toArray(snapshot.segments(1)));
+        }
+    }
+
+    @Test
+    void testReplaceAndRemove() throws IOException {
+        int[] replacement = randomFingerprint(50);
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 128)) {
+            corpus.put(1, randomFingerprint(100));
+            corpus.put(2, randomFingerprint(100));
+            corpus.put(1, replacement);
+            corpus.remove(2);
+
+            try (FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> true)) {
+                assertEquals(1, snapshot.size());
+                assertArrayEquals(replacement, toArray(snapshot.segments(0)));
+            }
+
+            corpus.clear();
+            assertEquals(0, corpus.size());
+        }
+    }
+
+    @Test
+    void testSnapshotIsNotOverwrittenByLaterUpdates() throws IOException {
+        int[] original = randomFingerprint(100);
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 128)) {
+            corpus.put(1, original);
+            try (FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> true)) {
+                corpus.put(1, randomFingerprint(100));
+                corpus.remove(1);
+                corpus.put(2, randomFingerprint(100));
+
+                assertArrayEquals(original, toArray(snapshot.segments(0)));
+            }
+        }
+    }
+
+    @Test
+    void testOversizedFingerprintMarksCorpusForRebuild() throws IOException {
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 32)) {
+            corpus.put(1, randomFingerprint(32));
+            assertFalse(corpus.needsRebuild());
+
+            assertFalse(corpus.put(1, randomFingerprint(33)));
+            assertTrue(corpus.needsRebuild());
+            assertFalse(corpus.contains(1), "A fingerprint that could not be stored must not be served stale");
+        }
+    }
+
+    @Test
+    void testGenerationIsKept() throws IOException {
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 64)) {
+            assertEquals(-1, corpus.getGeneration(), "A new file mirrors no database state");
+            corpus.put(1, randomFingerprint(40));
+            corpus.setGeneration(42);
+        }
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 64)) {
+            assertEquals(42, corpus.getGeneration());
+            assertEquals(1, corpus.size());
+        }
+    }
+
+    @Test
+    void testRetiredFileIsDeletedOnceSnapshotsClose() throws IOException {
+        int[] fingerprint = randomFingerprint(40);
+        FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 64);
+        corpus.put(1, fingerprint);
+
+        try (FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> true)) {
+            corpus.retire();
+            assertTrue(Files.exists(corpusPath), "A file still read by a snapshot must be kept");
+            assertArrayEquals(fingerprint, toArray(snapshot.segments(0)));
+        }
+        assertFalse(Files.exists(corpusPath));
+
+        FingerprintCorpus unread = FingerprintCorpus.open(corpusPath, 64);
+        unread.retire();
+        assertFalse(Files.exists(corpusPath));
+    }
+
+    @Test
+    void testInvalidFileIsReplaced() throws IOException {
+        Files.write(corpusPath, new byte[100]);
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 64)) {
+            assertEquals(0, corpus.size());
+            assertEquals(64, corpus.getCapacity());
+        }
+    }
+
+    @Test
+    void testSnapshotFilter() throws IOException {
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 64)) {
+            for (long id = 1; id <= 10; id++) {
+                corpus.put(id, randomFingerprint(40));
+            }
+            try (FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> id % 2 == 0)) {
+                assertEquals(5, snapshot.size());
+                for (int i = 0; i < snapshot.size(); i++) {
+                    assertEquals(0, snapshot.fileId(i) % 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCorpusGroupsMatchInMemoryGroups() throws IOException {
+        List<MusicFile> files = new ArrayList<>();
+        int[] lastOriginal = null;
+        for (int i = 0; i < 90; i++) {
+            int[] fp;
+            if (i % 3 == 2) {
+                fp = withNoise(lastOriginal, 0.05);
+            } else {
+                fp = randomFingerprint(240);
+                lastOriginal = fp;
+            }
+            MusicFile file = new MusicFile();
+            file.setId((long) i + 1);
+            file.setFingerprintSegments(fp);
+            files.add(file);
+        }
+
+        Set<Set<Long>> expected = FingerprintMatcher.groupDuplicates(
+                files, FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD).stream()
+            .map(g -> g.stream().map(MusicFile::getId).collect(Collectors.toCollection(TreeSet::new)))
+            .collect(Collectors.toSet());
+
+        try (FingerprintCorpus corpus = FingerprintCorpus.open(corpusPath, 256)) {
+            for (MusicFile file : files) {
+                corpus.put(file.getId(), file.getFingerprintSegments());
+            }
+            try (FingerprintCorpus.Snapshot snapshot = corpus.snapshot(id -> true)) {
+                Set<Set<Long>> actual = FingerprintMatcher.groupDuplicateIds(snapshot,
+                        FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD, FingerprintMatcher.MatchingMode.INDEXED)
+                    .stream()
+                    .map(TreeSet::new)
+                    .collect(Collectors.toSet());
+
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    private int[] toArray(IntBuffer buffer) {
+        int[] result = new int[buffer.limit()];
+        buffer.get(0, result);
+        return result;
+    }
+
+    private int[] randomFingerprint(int length) {
+        int[] fp = new int[length];
+        for (int i = 0; i < fp.length; i++) {
+            fp[i] = random.nextInt();
+        }
+        return fp;
+    }
+
+    private int[] withNoise(int[] original, double flipRate) {
+        int[] copy = original.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < flipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+}
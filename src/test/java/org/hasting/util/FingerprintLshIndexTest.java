@@ -0,0 +1,142 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for FingerprintLshIndex and the indexed matching mode of FingerprintMatcher.
+ * Uses synthetic fingerprints: random originals plus copies with a fraction of bits flipped.
+ */
+public class FingerprintLshIndexTest {
+
+    private static final int SEGMENTS = 240;
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(42);
+    }
+
+    @Test
+    void testIndexedGroupsMatchBruteForce() {
+        List<MusicFile> files = createLibrary(200, 0.06);
+
+        List<List<MusicFile>> bruteForce = FingerprintMatcher.groupDuplicates(
+            files, FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD, FingerprintMatcher.MatchingMode.BRUTE_FORCE);
+        List<List<MusicFile>> indexed = FingerprintMatcher.groupDuplicates(
+            files, FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD, FingerprintMatcher.MatchingMode.INDEXED);
+
+        assertFalse(bruteForce.isEmpty(), "Synthetic library should contain duplicates");
+        assertEquals(toIdSets(bruteForce), toIdSets(indexed));
+    }
+
+    @Test
+    void testRecallNearThreshold() {
+        // 12% flipped bits gives pairs at roughly 88% similarity, just above the threshold
+        List<MusicFile> files = createLibrary(150, 0.12);
+
+        FingerprintMatcher.IndexRecallReport report = FingerprintMatcher.measureIndexRecall(
+            files, FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD);
+
+        assertTrue(report.bruteForceMatches() > 0, "Expected matches near the threshold");
+        assertEquals(1.0, report.recall(), 0.0001);
+        assertTrue(report.candidatePairs() < report.totalPairs() / 10,
+            "Index should prune most pairs: " + report.candidatePairs() + " of " + report.totalPairs());
+    }
+
+    @Test
+    void testUnrelatedFingerprintsAreNotCandidates() {
+        int[][] fingerprints = { randomFingerprint(), randomFingerprint() };
+        FingerprintLshIndex index = new FingerprintLshIndex(fingerprints);
+
+        // Two random 240-segment fingerprints share a 16-bit band with probability < 1%
+        assertFalse(index.isCandidatePair(0, 1));
+    }
+
+    @Test
+    void testDuplicateFingerprintsAreCandidates() {
+        int[] original = randomFingerprint();
+        int[][] fingerprints = { original, withNoise(original, 0.05) };
+        FingerprintLshIndex index = new FingerprintLshIndex(fingerprints);
+
+        assertTrue(index.isCandidatePair(0, 1));
+        List<Integer> candidates = new ArrayList<>();
+        index.forEachCandidateAfter(0, index.newScratch(), candidates::add);
+        assertEquals(List.of(1), candidates);
+    }
+
+    @Test
+    void testOversizedBucketsAreSkipped() {
+        int[] silence = new int[SEGMENTS];
+        int[][] fingerprints = { silence, silence.clone(), silence.clone() };
+        FingerprintLshIndex index = new FingerprintLshIndex(fingerprints, 64, 2);
+
+        assertFalse(index.isCandidatePair(0, 1), "Buckets above the size cap must not produce candidates");
+    }
+
+    /**
+     * Creates a library where every third file is a noisy copy of the previous original.
+     */
+    private List<MusicFile> createLibrary(int size, double flipRate) {
+        List<MusicFile> files = new ArrayList<>();
+        int[] lastOriginal = null;
+        for (int i = 0; i < size; i++) {
+            int[] fp;
+            if (i % 3 == 2 && lastOriginal != null) {
+                fp = withNoise(lastOriginal, flipRate);
+            } else {
+                fp = randomFingerprint();
+                lastOriginal = fp;
+            }
+            files.add(createFile(i + 1, fp));
+        }
+        return files;
+    }
+
+    private MusicFile createFile(long id, int[] fingerprint) {
+        MusicFile file = new MusicFile();
+        file.setId(id);
+        file.setFilePath("/test/fp/" + id + ".mp3");
+        file.setFingerprint(java.util.Arrays.stream(fingerprint)
+            .mapToObj(Integer::toString)
+            .collect(Collectors.joining(",")));
+        return file;
+    }
+
+    private int[] randomFingerprint() {
+        int[] fp = new int[SEGMENTS];
+        for (int i = 0; i < fp.length; i++) {
+            fp[i] = random.nextInt();
+        }
+        return fp;
+    }
+
+    private int[] withNoise(int[] original, double flipRate) {
+        int[] copy = original.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < flipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+
+    private Set<Set<Long>> toIdSets(List<List<MusicFile>> groups) {
+        return groups.stream()
+            .map(g -> g.stream().map(MusicFile::getId).collect(Collectors.toCollection(TreeSet::new)))
+            .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,145 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the resident, updatable fingerprint similarity index.
+ */
+@DisplayName("Fingerprint Similarity Index Tests")
+public class FingerprintSimilarityIndexTest {
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(17);
+        FingerprintMatcher.setDurationWindow(DurationWindow.from(new FuzzySearchConfig()));
+    }
+
+    @AfterEach
+    void restoreFingerprintWindow() {
+        FingerprintMatcher.setDurationWindow(null);
+    }
+
+    @Test
+    @DisplayName("Nearest neighbours match a brute-force ranking")
+    void testMatchesBruteForce() {
+        int n = 2000;
+        int[][] fingerprints = new int[n][];
+        int[] durations = new int[n];
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+            durations[i] = 180 + random.nextInt(60);
+            // Every tenth file gets a family of near copies
+            fingerprints[i] = i % 10 == 0 || i < 10 ? randomFingerprint(150) : mutate(fingerprints[i - i % 10], 0.05);
+        }
+
+        FingerprintSimilarityIndex index = new FingerprintSimilarityIndex();
+        index.replaceAll(ids, fingerprints, durations);
+        assertEquals(n, index.size());
+
+        for (int q = 0; q < n; q += 37) {
+            List<FingerprintSimilarityIndex.Neighbour> expected = bruteForce(q, ids, fingerprints, durations, 5, 0.8);
+            assertEquals(expected, index.findNearest(ids[q], 5, 0.8), "query " + q);
+        }
+    }
+
+    @Test
+    @DisplayName("Updates, removals and compaction keep results current")
+    void testUpdatesAndCompaction() {
+        int[] base = randomFingerprint(150);
+        FingerprintSimilarityIndex index = new FingerprintSimilarityIndex();
+        index.replaceAll(new long[] { 1, 2, 3 },
+            new int[][] { base, mutate(base, 0.02), randomFingerprint(150) },
+            new int[] { 200, 201, 200 });
+
+        assertEquals(List.of(2L), neighbourIds(index.findNearest(1, 10, 0.85)));
+
+        // File 3 is re-fingerprinted as a copy of file 1; file 2 is deleted
+        index.put(3, mutate(base, 0.01), 200);
+        index.remove(2);
+        assertEquals(List.of(3L), neighbourIds(index.findNearest(1, 10, 0.85)));
+        assertTrue(index.findNearest(2, 10, 0.85).isEmpty());
+
+        // Enough new copies to force a rebuild of the LSH index
+        int added = FingerprintSimilarityIndex.MIN_COMPACT_SLOTS + 10;
+        for (int i = 0; i < added; i++) {
+            index.put(100 + i, i % 2 == 0 ? mutate(base, 0.03) : randomFingerprint(150), 200);
+        }
+        assertEquals(2 + added, index.size());
+        List<FingerprintSimilarityIndex.Neighbour> nearest = index.findNearest(1, 1000, 0.85);
+        assertEquals(1 + (added + 1) / 2, nearest.size());
+        assertEquals(3L, nearest.get(0).fileId(), "The closest copy ranks first");
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.findNearest(1, 10, 0.0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Neighbours outside the duration window are left out")
+    void testDurationWindow() {
+        int[] base = randomFingerprint(150);
+        FingerprintSimilarityIndex index = new FingerprintSimilarityIndex();
+        index.replaceAll(new long[] { 1, 2 }, new int[][] { base, base.clone() }, new int[] { 200, 420 });
+
+        assertTrue(index.findNearest(1, 10, 0.85).isEmpty());
+
+        FingerprintMatcher.setDurationWindow(null);
+        assertEquals(List.of(2L), neighbourIds(index.findNearest(1, 10, 0.85)));
+    }
+
+    private List<FingerprintSimilarityIndex.Neighbour> bruteForce(int q, long[] ids, int[][] fingerprints,
+                                                                 int[] durations, int k, double minSimilarity) {
+        DurationWindow window = FingerprintMatcher.getDurationWindow();
+        List<FingerprintSimilarityIndex.Neighbour> all = new ArrayList<>();
+        for (int j = 0; j < ids.length; j++) {
+            if (j == q || (window != null && !window.matches(durations[q], durations[j]))) continue;
+            double similarity = FingerprintMatcher.calculateSimilarity(fingerprints[q], fingerprints[j]);
+            if (similarity >= minSimilarity) {
+                all.add(new FingerprintSimilarityIndex.Neighbour(ids[j], similarity));
+            }
+        }
+        all.sort(Comparator.comparingDouble(FingerprintSimilarityIndex.Neighbour::similarity).reversed()
+            .thenComparingLong(FingerprintSimilarityIndex.Neighbour::fileId));
+        return all.subList(0, Math.min(k, all.size()));
+    }
+
+    private List<Long> neighbourIds(List<FingerprintSimilarityIndex.Neighbour> neighbours) {
+        return neighbours.stream().map(FingerprintSimilarityIndex.Neighbour::fileId).toList();
+    }
+
+    private int[] randomFingerprint(int length) {
+        int[] fingerprint = new int[length];
+        for (int i = 0; i < length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Flips each bit of the fingerprint with the given probability.
+     */
+    private int[] mutate(int[] fingerprint, double bitFlipRate) {
+        int[] copy = fingerprint.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < bitFlipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,192 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for the fingerprint bit-difference kernels.
+ *
+ * <p>The vector kernel is only exercised when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector} (the Gradle test task adds it).
+ */
+@DisplayName("Fingerprint Similarity Kernel Tests")
+public class FingerprintSimilarityKernelTest {
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(1234);
+    }
+
+    @Test
+    @DisplayName("Vector kernel counts the same bits as the scalar loop, including tails")
+    void testVectorMatchesScalar() {
+        assumeTrue(FingerprintSimilarityKernel.VECTORIZED, "Vector kernel not enabled in this JVM");
+
+        for (int length = 0; length <= 70; length++) {
+            int[] a = randomFingerprint(length);
+            int[] b = randomFingerprint(length);
+            assertEquals(FingerprintSimilarityKernel.scalarDifferingBits(a, b, length),
+                FingerprintVectorKernel.differingBits(a, b, 0, length), "length " + length);
+        }
+
+        int[] a = randomFingerprint(1000);
+        int[] b = randomFingerprint(1003);
+        assertEquals(FingerprintSimilarityKernel.scalarDifferingBits(a, b, 1000),
+            FingerprintVectorKernel.differingBits(a, b, 0, 1000));
+    }
+
+    @Test
+    @DisplayName("Similarity scores are bit-for-bit identical to per-segment accumulation")
+    void testSimilarityMatchesReference() {
+        for (int i = 0; i < 500; i++) {
+            int[] a = randomFingerprint(10 + random.nextInt(1000));
+            int[] b = random.nextBoolean() ? randomFingerprint(10 + random.nextInt(1000)) : noisyCopy(a);
+
+            assertEquals(referenceSimilarity(a, b), FingerprintMatcher.calculateSimilarity(a, b), 0.0);
+        }
+    }
+
+    @Test
+    @DisplayName("Buffer kernel over direct memory matches the array kernel")
+    void testBufferMatchesArray() {
+        int[] a = randomFingerprint(333);
+        int[] b = noisyCopy(a);
+
+        assertEquals(FingerprintMatcher.calculateSimilarity(a, b),
+            FingerprintMatcher.calculateSimilarity(directBuffer(a), directBuffer(b)), 0.0);
+        assertEquals(FingerprintSimilarityKernel.scalarDifferingBits(a, b, a.length),
+            FingerprintSimilarityKernel.differingBits(directBuffer(a), directBuffer(b), a.length));
+    }
+
+    @Test
+    @DisplayName("Bounded comparison accepts and rejects exactly like the full comparison")
+    void testBoundedDecisionMatchesFull() {
+        double[] thresholds = { 0.0, 0.5, 0.8, 0.85, 0.9, 0.97, 1.0 };
+        for (int i = 0; i < 2000; i++) {
+            int[] a = randomFingerprint(10 + random.nextInt(1000));
+            int[] b = flipBits(a, random.nextDouble() * 0.3);
+            if (random.nextInt(5) == 0) {
+                b = randomFingerprint(10 + random.nextInt(1000));
+            }
+            double threshold = thresholds[random.nextInt(thresholds.length)];
+
+            double full = FingerprintMatcher.calculateSimilarity(a, b);
+            double bounded = FingerprintMatcher.boundedSimilarity(a, b, threshold);
+            assertEquals(full >= threshold, bounded >= threshold, "threshold " + threshold);
+            if (full >= threshold) {
+                assertEquals(full, bounded, 0.0);
+            } else {
+                assertTrue(bounded >= full, "Early exit must report an upper bound");
+            }
+
+            double buffered = FingerprintMatcher.boundedSimilarity(directBuffer(a), directBuffer(b), threshold);
+            assertEquals(full >= threshold, buffered >= threshold);
+        }
+    }
+
+    @Test
+    @DisplayName("Bit budget sits exactly on the threshold boundary")
+    void testMaxDifferingBitsBoundary() {
+        for (int length = 10; length <= 1000; length += 37) {
+            for (double threshold : new double[] { 0.5, 0.85, 0.9, 0.999 }) {
+                int maxBits = FingerprintMatcher.maxDifferingBits(length, threshold);
+                assertTrue(similarityForBits(maxBits, length) >= threshold);
+                assertTrue(similarityForBits(maxBits + 1, length) < threshold);
+            }
+        }
+        assertEquals(-1, FingerprintMatcher.maxDifferingBits(100, 1.5));
+        assertEquals(3200, FingerprintMatcher.maxDifferingBits(100, 0.0));
+    }
+
+    @Test
+    @DisplayName("Unrelated fingerprints exit early and are counted")
+    void testEarlyExitCounters() {
+        FingerprintMatcher.resetComparisonStats();
+        for (int i = 0; i < 100; i++) {
+            FingerprintMatcher.boundedSimilarity(randomFingerprint(950), randomFingerprint(950),
+                FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD);
+        }
+        int[] original = randomFingerprint(950);
+        FingerprintMatcher.boundedSimilarity(original, original.clone(), FingerprintMatcher.DEFAULT_SIMILARITY_THRESHOLD);
+
+        FingerprintMatcher.ComparisonStats stats = FingerprintMatcher.getComparisonStats();
+        assertEquals(101, stats.comparisons());
+        assertEquals(100, stats.earlyExits());
+        assertTrue(stats.probeExits() > 90, "Most unrelated pairs should exit at the probe: " + stats);
+    }
+
+    /**
+     * The original per-segment double accumulation, kept here as the reference.
+     */
+    private double referenceSimilarity(int[] fp1, int[] fp2) {
+        int length = Math.min(fp1.length, fp2.length);
+        if (length < 10) {
+            return 0.0;
+        }
+        double totalSimilarity = 0.0;
+        for (int i = 0; i < length; i++) {
+            totalSimilarity += 1.0 - (Integer.bitCount(fp1[i] ^ fp2[i]) / 32.0);
+        }
+        return totalSimilarity / length;
+    }
+
+    /**
+     * Similarity of a pair with the given number of differing bits, built from real fingerprints.
+     */
+    private double similarityForBits(int bits, int length) {
+        int[] a = new int[length];
+        int[] b = new int[length];
+        for (int i = 0; i < bits && i < length * 32; i++) {
+            b[i / 32] |= 1 << (i % 32);
+        }
+        return FingerprintMatcher.calculateSimilarity(a, b);
+    }
+
+    private int[] flipBits(int[] original, double flipRate) {
+        int[] copy = original.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < flipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+
+    private IntBuffer directBuffer(int[] segments) {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(segments.length * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer view = bytes.asIntBuffer();
+        view.put(segments);
+        return view.flip();
+    }
+
+    private int[] randomFingerprint(int length) {
+        int[] fp = new int[length];
+        for (int i = 0; i < fp.length; i++) {
+            fp[i] = random.nextInt();
+        }
+        return fp;
+    }
+
+    private int[] noisyCopy(int[] original) {
+        int[] copy = original.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (random.nextInt(4) == 0) {
+                copy[i] ^= 1 << random.nextInt(32);
+            }
+        }
+        return copy;
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.AfterEach;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -128,7 +129,26 @@ public class FuzzyMatcherTest {
         assertEquals(1, groups.size(), "Should find exactly 1 duplicate group");
         assertEquals(2, groups.get(0).size(), "Group should contain exactly 2 files");
     }
-    
+
+    @Test
+    void testGroupDuplicatesStreaming() {
+        List<MusicFile> files = Arrays.asList(file1, file3, file2);
+        List<List<MusicFile>> streamed = new ArrayList<>();
+        FuzzyMatcher.groupDuplicates(files, config, streamed::add);
+
+        assertEquals(FuzzyMatcher.groupDuplicates(files, config), streamed, "Streamed groups match the collected ones");
+        assertEquals(Arrays.asList(file1, file2), streamed.get(0));
+    }
+
+    @Test
+    void testGroupDuplicatesParallel() {
+        List<MusicFile> files = Arrays.asList(file3, file1, file2);
+        List<List<MusicFile>> groups = FuzzyMatcher.groupDuplicatesParallel(files, config);
+
+        assertEquals(1, groups.size(), "Should find exactly 1 duplicate group");
+        assertEquals(Arrays.asList(file1, file2), groups.get(0), "Group keeps the input order");
+    }
+
     @Test
     void testSimilarityBreakdown() {
         String breakdown = FuzzyMatcher.getSimilarityBreakdown(file1, file2, config);
@@ -281,4 +301,30 @@ public class FuzzyMatcherTest {
         assertTrue(FuzzyMatcher.areDuplicates(mp3File, flacFile, config),
                 "Files with identical metadata should be duplicates regardless of format");
     }
-}
\ No newline at end of file
+
+    /**
+     * Stored metadata keys give the same scores as normalizing on the fly, and are
+     * ignored once they no longer match the configuration or the metadata.
+     */
+    @Test
+    void testMetadataKeys() {
+        FuzzyMatcher.FieldScores expected = FuzzyMatcher.fieldScores(file1, file2, config);
+        FuzzyMatcher.computeMetadataKeys(file1, config);
+        FuzzyMatcher.computeMetadataKeys(file2, config);
+        assertEquals("eagles ft someone", file2.getArtistKey());
+        assertEquals(expected, FuzzyMatcher.fieldScores(file1, file2, config));
+
+        // Keys computed with other normalization settings are not used
+        FuzzySearchConfig caseSensitive = config.copy("Case sensitive");
+        caseSensitive.setIgnoreCaseDifferences(false);
+        file1.setMetadataKeys("bogus", "bogus", "bogus", FuzzyMatcher.metadataKeyVersion(caseSensitive));
+        assertNotEquals(FuzzyMatcher.metadataKeyVersion(config), file1.getMetadataKeyVersion());
+        assertEquals(expected, FuzzyMatcher.fieldScores(file1, file2, config));
+
+        // Changing a field invalidates the keys
+        FuzzyMatcher.computeMetadataKeys(file1, config);
+        file1.setTitle("Bohemian Rhapsody");
+        assertEquals(0, file1.getMetadataKeyVersion());
+        assertEquals(100.0, FuzzyMatcher.fieldScores(file1, file3, config).titleSimilarity());
+    }
+}
@@ -0,0 +1,300 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the multi-key blocking stage of metadata duplicate detection.
+ */
+@DisplayName("Metadata Blocker Tests")
+public class MetadataBlockerTest {
+
+    private Random random;
+    private FuzzySearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(5);
+        config = new FuzzySearchConfig();
+    }
+
+    @Test
+    @DisplayName("Soundex codes follow the American Soundex rules")
+    void testSoundex() {
+        assertEquals("R163", MetadataBlocker.soundex("Robert"));
+        assertEquals("R163", MetadataBlocker.soundex("rupert"));
+        assertEquals("A261", MetadataBlocker.soundex("Ashcraft"));
+        assertEquals("T522", MetadataBlocker.soundex("Tymczak"));
+        assertEquals("P236", MetadataBlocker.soundex("Pfister"));
+        assertEquals("", MetadataBlocker.soundex("123"));
+    }
+
+    @Test
+    @DisplayName("Blocking keeps nearly every match while scoring far fewer pairs")
+    void testRecallAndReduction() {
+        List<MusicFile> files = library(1500);
+
+        MetadataBlocker.Candidates candidates = MetadataBlocker.candidates(files, config);
+        MetadataBlocker.Stats stats = candidates.stats();
+        assertEquals(files.size(), stats.files());
+        assertEquals(candidates.pairCount(), stats.candidatePairs());
+        assertTrue(stats.reductionRatio() > 10, "Reduction was only " + stats.reductionRatio());
+        assertEquals(MetadataBlocker.BlockingKey.values().length, stats.pairsByKey().size());
+        assertEquals(MetadataBlocker.DEFAULT_RECALL_SAMPLE, stats.recallSampleFiles());
+
+        // Exact recall against an exhaustive comparison
+        List<int[]> matches = FuzzyMatcher.findDuplicatePairs(files, config);
+        long found = matches.stream().filter(pair -> candidates.contains(pair[0], pair[1])).count();
+        double recall = found / (double) matches.size();
+        assertTrue(matches.size() > 500, "Library should contain many duplicates");
+        assertTrue(recall >= 0.95, "Recall was " + recall);
+    }
+
+    @Test
+    @DisplayName("Candidates are listed once, by their smaller index")
+    void testCandidatesAfter() {
+        List<MusicFile> files = library(300);
+        MetadataBlocker.Candidates candidates = MetadataBlocker.candidates(files, config, 8, 0);
+        assertNull(candidates.stats().recall());
+
+        long pairs = 0;
+        for (int i = 0; i < files.size(); i++) {
+            int[] later = candidates.candidatesAfter(i);
+            for (int k = 0; k < later.length; k++) {
+                assertTrue(later[k] > i);
+                assertTrue(k == 0 || later[k] > later[k - 1]);
+                assertTrue(candidates.contains(later[k], i));
+            }
+            pairs += later.length;
+        }
+        assertEquals(candidates.pairCount(), pairs);
+    }
+
+    @Test
+    @DisplayName("Candidates outside the duration window are dropped when all fields must match")
+    void testDurationPruning() {
+        config.setMinimumFieldsToMatch(4);
+        List<MusicFile> files = library(300);
+        MetadataBlocker.Candidates candidates = MetadataBlocker.candidates(files, config, 8, 0);
+        DurationWindow window = DurationWindow.from(config);
+        for (int i = 0; i < files.size(); i++) {
+            for (int j : candidates.candidatesAfter(i)) {
+                assertTrue(window.matches(DurationWindow.metadataDuration(files.get(i)),
+                    DurationWindow.metadataDuration(files.get(j))));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Grouping matches only the blocked pairs the pair search reports")
+    void testSharedCandidates() {
+        List<MusicFile> files = library(MetadataBlocker.MIN_FILES_FOR_BLOCKING / 2 + 500);
+        assertTrue(MetadataBlocker.appliesTo(files.size()));
+        Map<MusicFile, Integer> indexOf = new IdentityHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            indexOf.put(files.get(i), i);
+        }
+
+        Set<Long> pairs = new HashSet<>();
+        for (int[] pair : FuzzyMatcher.findDuplicatePairs(files, config, FuzzyMatcher.metadataCandidates(files, config))) {
+            pairs.add((long) pair[0] * files.size() + pair[1]);
+        }
+        List<List<MusicFile>> groups = FuzzyMatcher.groupDuplicates(files, config);
+        assertFalse(groups.isEmpty());
+        for (List<MusicFile> group : groups) {
+            int seed = indexOf.get(group.get(0));
+            for (MusicFile member : group.subList(1, group.size())) {
+                assertTrue(pairs.contains((long) seed * files.size() + indexOf.get(member)));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Sort orders give the candidates of a blocking run, in any file order")
+    void testNeighbourhoods() {
+        List<MusicFile> files = withIds(library(300));
+        MetadataBlocker.Candidates candidates = MetadataBlocker.candidates(files, config, 8, 0);
+        MetadataBlocker.Neighbourhoods neighbourhoods = MetadataBlocker.neighbourhoods(keysOf(files), config, 8);
+        List<MusicFile> shuffled = new ArrayList<>(files);
+        Collections.shuffle(shuffled, random);
+        MetadataBlocker.Candidates reordered = MetadataBlocker.candidates(shuffled, config, 8, 0);
+        Map<MusicFile, Integer> shuffledIndex = new IdentityHashMap<>();
+        for (int i = 0; i < shuffled.size(); i++) {
+            shuffledIndex.put(shuffled.get(i), i);
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            Set<Long> expected = new HashSet<>();
+            for (int j = 0; j < files.size(); j++) {
+                boolean candidate = i != j && candidates.contains(i, j);
+                assertEquals(candidate, neighbourhoods.isCandidate(files.get(i).getId(), files.get(j).getId()));
+                if (i != j) {
+                    assertEquals(candidate, reordered.contains(shuffledIndex.get(files.get(i)),
+                        shuffledIndex.get(files.get(j))));
+                }
+                if (candidate) expected.add(files.get(j).getId());
+            }
+            assertEquals(expected, neighbourhoods.candidatesOf(files.get(i).getId()));
+        }
+    }
+
+    @Test
+    @DisplayName("Candidates of changed files, surviving pairs and pairs across departures give the new candidates")
+    void testIncrementalCandidates() {
+        int window = 4;
+        List<MusicFile> files = withIds(library(400));
+        MetadataBlocker.Neighbourhoods before = MetadataBlocker.neighbourhoods(keysOf(files), config, window);
+        Map<Long, MetadataBlocker.FileKeys> keysBefore = new HashMap<>();
+        keysOf(files).forEach(keys -> keysBefore.put(keys.id(), keys));
+
+        // Delete some files, move others elsewhere in the orders and insert new ones
+        Set<Long> changed = new HashSet<>();
+        List<MetadataBlocker.FileKeys> departures = new ArrayList<>();
+        List<MusicFile> after = new ArrayList<>();
+        for (MusicFile file : files) {
+            int action = random.nextInt(20);
+            if (action == 0) {
+                departures.add(keysBefore.get(file.getId()));
+                continue;
+            }
+            if (action == 1) {
+                MusicFile moved = file(file.getId().intValue(), word() + " " + word(), capitalize(word()), word(),
+                    150 + random.nextInt(200));
+                moved.setId(file.getId());
+                departures.add(keysBefore.get(file.getId()));
+                changed.add(file.getId());
+                after.add(moved);
+                continue;
+            }
+            after.add(file);
+        }
+        for (int i = 0; i < 20; i++) {
+            MusicFile inserted = files.get(random.nextInt(files.size()));
+            MusicFile copy = file(files.size() + i, inserted.getTitle(), inserted.getArtist(), inserted.getAlbum(),
+                inserted.getDurationSeconds());
+            copy.setId((long) files.size() + i);
+            changed.add(copy.getId());
+            after.add(copy);
+        }
+        MetadataBlocker.Neighbourhoods now = MetadataBlocker.neighbourhoods(keysOf(after), config, window);
+
+        Set<List<Long>> across = new HashSet<>();
+        for (MetadataBlocker.FileKeys departure : departures) {
+            for (long[] pair : now.pairsAcross(departure)) {
+                assertTrue(pair[0] < pair[1]);
+                assertTrue(now.isCandidate(pair[0], pair[1]));
+                across.add(List.of(pair[0], pair[1]));
+            }
+        }
+        int reopened = 0;
+        for (MusicFile file1 : after) {
+            for (MusicFile file2 : after) {
+                long a = file1.getId();
+                long b = file2.getId();
+                if (a >= b || !now.isCandidate(a, b)) continue;
+                if (changed.contains(a) || changed.contains(b)) {
+                    assertTrue(now.candidatesOf(changed.contains(a) ? a : b).contains(changed.contains(a) ? b : a));
+                } else if (!before.isCandidate(a, b)) {
+                    assertTrue(across.contains(List.of(a, b)), "Pair " + a + "-" + b + " became a candidate unnoticed");
+                    reopened++;
+                }
+            }
+        }
+        assertTrue(reopened > 0, "Departures should bring some pairs together");
+    }
+
+    /**
+     * Builds a library of songs, each with a few variants of the kind found in real
+     * collections: case changes, typos, artist prefixes and album editions. Every artist
+     * has several songs, spread over a few albums.
+     */
+    private List<MusicFile> library(int songs) {
+        List<MusicFile> files = new ArrayList<>();
+        String[] artists = new String[Math.max(1, songs / 8)];
+        String[][] albums = new String[artists.length][3];
+        for (int a = 0; a < artists.length; a++) {
+            artists[a] = capitalize(word()) + (random.nextBoolean() ? " " + capitalize(word()) : "");
+            for (int b = 0; b < albums[a].length; b++) {
+                albums[a][b] = capitalize(word()) + " " + capitalize(word());
+            }
+        }
+        for (int s = 0; s < songs; s++) {
+            String title = capitalize(word()) + " " + word() + (random.nextBoolean() ? " " + word() : "");
+            int artistIndex = random.nextInt(artists.length);
+            String artist = artists[artistIndex];
+            String album = albums[artistIndex][random.nextInt(albums[artistIndex].length)];
+            int duration = 150 + random.nextInt(200);
+            files.add(file(files.size(), title, artist, album, duration));
+
+            int variants = random.nextInt(3);
+            for (int v = 0; v < variants; v++) {
+                switch (random.nextInt(4)) {
+                    case 0 -> files.add(file(files.size(), title.toUpperCase(), artist, album, duration + 1));
+                    case 1 -> files.add(file(files.size(), typo(title), "The " + artist, album, duration));
+                    case 2 -> files.add(file(files.size(), title, artist, album + " (Deluxe Edition)", duration + 2));
+                    default -> files.add(file(files.size(), title + " (Live)", typo(artist), album, duration + 20));
+                }
+            }
+        }
+        return files;
+    }
+
+    private static List<MusicFile> withIds(List<MusicFile> files) {
+        for (int i = 0; i < files.size(); i++) {
+            files.get(i).setId((long) i);
+        }
+        return files;
+    }
+
+    private List<MetadataBlocker.FileKeys> keysOf(List<MusicFile> files) {
+        List<MetadataBlocker.FileKeys> keys = new ArrayList<>();
+        for (MusicFile file : files) {
+            FuzzyMatcher.computeMetadataKeys(file, config);
+            keys.add(new MetadataBlocker.FileKeys(file.getId(), file.getTitleKey(), file.getArtistKey(),
+                file.getAlbumKey(), DurationWindow.metadataDuration(file)));
+        }
+        return keys;
+    }
+
+    private MusicFile file(int index, String title, String artist, String album, int duration) {
+        MusicFile file = new MusicFile();
+        file.setFilePath("/test/blocking/" + index + ".mp3");
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum(album);
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        return file;
+    }
+
+    private String word() {
+        char[] letters = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private String typo(String value) {
+        int position = 1 + random.nextInt(value.length() - 2);
+        return value.substring(0, position) + value.substring(position + 1);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
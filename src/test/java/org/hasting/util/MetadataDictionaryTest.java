@@ -0,0 +1,137 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for dictionary-encoded metadata and the memoized similarity cache.
+ */
+@DisplayName("Metadata Dictionary Tests")
+public class MetadataDictionaryTest {
+
+    private static final String[] ARTISTS = { "The Beatles", "Beatles", "Pink Floyd", "Pink Floid", "Eagles", "  ", null };
+    private static final String[] ALBUMS = { "Abbey Road", "Abbey Road (Remastered)", "The Wall", "Hotel California", "", null };
+    private static final String[] TITLES = { "Come Together", "Come Togther", "Something", "Money", "Time", "Hotel California",
+        "Hotel Californa", "Another Brick in the Wall", "Another Brick In The Wall, Pt. 2", "   ", null };
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(99);
+    }
+
+    @Test
+    @DisplayName("Encoded comparisons agree with FuzzyMatcher under several configurations")
+    void testMatchesFuzzyMatcher() {
+        List<MusicFile> files = library(250);
+
+        List<FuzzySearchConfig> configs = new ArrayList<>();
+        configs.add(new FuzzySearchConfig());
+        FuzzySearchConfig loose = new FuzzySearchConfig();
+        loose.setMinimumFieldsToMatch(1);
+        loose.setTitleSimilarityThreshold(70);
+        configs.add(loose);
+        FuzzySearchConfig strict = new FuzzySearchConfig();
+        strict.setMinimumFieldsToMatch(4);
+        strict.setTrackNumberMustMatch(true);
+        configs.add(strict);
+        FuzzySearchConfig caseSensitive = new FuzzySearchConfig();
+        caseSensitive.setIgnoreCaseDifferences(false);
+        caseSensitive.setIgnorePunctuation(false);
+        configs.add(caseSensitive);
+
+        for (FuzzySearchConfig config : configs) {
+            MetadataDictionary dictionary = MetadataDictionary.encode(files, config);
+            for (int i = 0; i < files.size(); i++) {
+                for (int j = 0; j < files.size(); j++) {
+                    if (i == j) continue;
+                    assertEquals(FuzzyMatcher.areDuplicates(files.get(i), files.get(j), config),
+                        dictionary.areDuplicates(i, j), "files " + i + " and " + j);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Repeated values are encoded once and mostly skip the string kernel")
+    void testHitRate() {
+        List<MusicFile> files = library(400);
+        FuzzySearchConfig config = new FuzzySearchConfig();
+        MetadataDictionary dictionary = MetadataDictionary.encode(files, config);
+        assertTrue(dictionary.distinctValues() <= TITLES.length + ARTISTS.length + ALBUMS.length);
+
+        for (int i = 0; i < files.size(); i++) {
+            for (int j = i + 1; j < files.size(); j++) {
+                dictionary.areDuplicates(i, j);
+            }
+        }
+
+        MetadataDictionary.Stats stats = dictionary.stats();
+        assertEquals(files.size(), stats.files());
+        assertTrue(stats.identicalValues() > 0);
+        assertTrue(stats.cacheHits() > stats.cacheMisses());
+        assertTrue(stats.hitRate() > 0.9, "Hit rate was " + stats.hitRate());
+        assertTrue(stats.estimatedBytes() > 0);
+    }
+
+    @Test
+    @DisplayName("A bounded score is only reused for lookups at or above its minimum")
+    void testBoundedEntries() {
+        List<MusicFile> files = List.of(file("Hotel California", "Eagles", "Hotel California", 390),
+            file("Hotel Californa", "Eagles", "Hotel California", 391));
+        MetadataDictionary dictionary = MetadataDictionary.encode(files, new FuzzySearchConfig());
+        int first = dictionary.valueId(0, FuzzyMatcher.FieldType.TITLE);
+        int second = dictionary.valueId(1, FuzzyMatcher.FieldType.TITLE);
+        double exact = FuzzyMatcher.jaroWinklerSimilarity("hotel california", "hotel californa") * 100.0;
+        assertTrue(exact < 100.0);
+
+        // Too high a minimum gives a bound only; a lower one must recompute the exact score
+        assertTrue(dictionary.similarity(first, second, 100.0) < 100.0);
+        assertEquals(exact, dictionary.similarity(first, second, 50.0), 0.0);
+        assertEquals(exact, dictionary.similarity(first, second, 100.0), 0.0);
+        assertEquals(exact, dictionary.similarity(first, second, 0.0), 0.0);
+
+        MetadataDictionary.Stats stats = dictionary.stats();
+        assertEquals(2, stats.cacheMisses());
+        assertEquals(2, stats.cacheHits());
+    }
+
+    private List<MusicFile> library(int size) {
+        List<MusicFile> files = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            MusicFile file = file(pick(TITLES), pick(ARTISTS), pick(ALBUMS),
+                random.nextInt(10) == 0 ? null : 200 + random.nextInt(30));
+            if (random.nextBoolean()) {
+                file.setTrackNumber(1 + random.nextInt(3));
+            }
+            if (file.getTitle() != null && random.nextInt(5) == 0) {
+                file.setTitle(file.getTitle().toUpperCase());
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private MusicFile file(String title, String artist, String album, Integer duration) {
+        MusicFile file = new MusicFile();
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum(album);
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        return file;
+    }
+}
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -420,6 +421,32 @@ public class MusicFileScannerTest extends MP3OrgTestBase {
         });
     }
 
+    @Test
+    @Order(18)
+    @DisplayName("Test progress scan walks all roots concurrently")
+    void testFindAllMusicFilesWithProgress() throws IOException {
+        Path otherDir = tempDir.resolve("other");
+        Files.createDirectories(otherDir);
+        Files.copy(musicDir.resolve("song1.mp3"), otherDir.resolve("song5.mp3"), StandardCopyOption.REPLACE_EXISTING);
+
+        List<MusicFileScanner.ScanProgress> progress = new ArrayList<>();
+        scanner.setDetailedProgressCallback(progress::add);
+        scanner.setWalkConcurrency(2);
+        List<MusicFile> musicFiles = scanner.findAllMusicFilesWithProgress(
+            Arrays.asList(musicDir.toString(), otherDir.toString(), musicDir.toString()));
+
+        // A root given twice is walked once
+        assertEquals(5, musicFiles.size());
+        assertEquals(5, musicFiles.stream().map(MusicFile::getFilePath).distinct().count());
+        assertTrue(musicFiles.stream().anyMatch(f -> f.getFilePath().endsWith("song5.mp3")));
+        assertTrue(progress.stream().anyMatch(p -> "reading_tags".equals(p.stage)));
+        MusicFileScanner.ScanProgress last = progress.get(progress.size() - 1);
+        assertEquals(5, last.filesProcessed);
+
+        // Files already read are skipped on the next scan
+        assertTrue(scanner.findAllMusicFilesWithProgress(List.of(musicDir.toString())).isEmpty());
+    }
+
     // Helper method to create test files
     private void createTestFile(Path directory, String filename, String content) throws IOException {
         Path file = directory.resolve(filename);
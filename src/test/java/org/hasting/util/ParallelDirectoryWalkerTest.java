@@ -0,0 +1,107 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the concurrent directory walker.
+ */
+@DisplayName("Parallel Directory Walker Tests")
+public class ParallelDirectoryWalkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Every matching file in every root is reported exactly once")
+    void testWalk() throws IOException {
+        Set<Path> expected = new HashSet<>();
+        for (int artist = 0; artist < 5; artist++) {
+            for (int album = 0; album < 4; album++) {
+                Path directory = Files.createDirectories(tempDir.resolve("a/artist" + artist + "/album" + album));
+                for (int track = 0; track < 3; track++) {
+                    expected.add(Files.writeString(directory.resolve("track" + track + ".mp3"), "x"));
+                }
+                Files.writeString(directory.resolve("cover.jpg"), "x");
+            }
+        }
+        expected.add(Files.writeString(Files.createDirectories(tempDir.resolve("b/deep/er/still")).resolve("LOUD.FLAC"), "x"));
+
+        Set<Path> found = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        Set<Path> completedRoots = ConcurrentHashMap.newKeySet();
+        ParallelDirectoryWalker walker = new ParallelDirectoryWalker(3,
+            ParallelDirectoryWalker.extensionFilter("mp3", "flac"));
+        ParallelDirectoryWalker.Stats stats = walker.walk(
+            List.of(tempDir.resolve("a"), tempDir.resolve("b"), tempDir.resolve("missing")),
+            new ParallelDirectoryWalker.Listener() {
+                @Override
+                public void onFile(Path file, BasicFileAttributes attributes) {
+                    if (!found.add(file)) duplicates.incrementAndGet();
+                }
+
+                @Override
+                public void onRootCompleted(Path root) {
+                    completedRoots.add(root);
+                }
+            }, () -> false);
+
+        assertEquals(expected, found);
+        assertEquals(0, duplicates.get());
+        assertEquals(Set.of(tempDir.resolve("a"), tempDir.resolve("b")), completedRoots);
+        assertEquals(expected.size(), stats.files());
+        // a, 5 artists, 20 albums; b and its three levels
+        assertEquals(1 + 5 + 20 + 4, stats.directories());
+    }
+
+    @Test
+    @DisplayName("A link back up the tree is not followed twice")
+    void testSymlinkCycle() throws IOException {
+        Path album = Files.createDirectories(tempDir.resolve("music/album"));
+        Files.writeString(album.resolve("song.mp3"), "x");
+        try {
+            Files.createSymbolicLink(album.resolve("loop"), tempDir.resolve("music"));
+        } catch (UnsupportedOperationException | IOException e) {
+            return;
+        }
+
+        AtomicInteger files = new AtomicInteger();
+        new ParallelDirectoryWalker(4, ParallelDirectoryWalker.extensionFilter("mp3"))
+            .walk(List.of(tempDir.resolve("music")), (file, attributes) -> files.incrementAndGet(), () -> false);
+        assertEquals(1, files.get());
+    }
+
+    @Test
+    @DisplayName("Cancellation stops the walk early")
+    void testCancellation() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            Path directory = Files.createDirectories(tempDir.resolve("dir" + i));
+            Files.writeString(directory.resolve("song.mp3"), "x");
+        }
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger files = new AtomicInteger();
+        ParallelDirectoryWalker.Stats stats = new ParallelDirectoryWalker(1,
+            ParallelDirectoryWalker.extensionFilter("mp3")).walk(List.of(tempDir), (file, attributes) -> {
+                files.incrementAndGet();
+                cancelled.set(true);
+            }, cancelled::get);
+
+        assertTrue(files.get() < 50, "Found " + files.get() + " files after cancelling");
+        assertEquals(files.get(), stats.files());
+    }
+}
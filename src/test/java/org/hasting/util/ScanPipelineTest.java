@@ -0,0 +1,236 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the staged scan pipeline.
+ */
+@DisplayName("Scan Pipeline Tests")
+public class ScanPipelineTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Every file is committed once, in batches no larger than the batch size")
+    void testCommitsEveryFile() throws IOException {
+        Set<String> expected = createFiles(tempDir.resolve("a"), 120);
+        expected.addAll(createFiles(tempDir.resolve("b/c"), 80));
+        Files.createFile(tempDir.resolve("a/cover.jpg"));
+        Files.createFile(tempDir.resolve("b/bad.mp3"));
+
+        List<List<MusicFile>> batches = Collections.synchronizedList(new ArrayList<>());
+        ScanPipeline pipeline = new ScanPipeline(this::readTags, batch -> {
+            batches.add(batch);
+            return batch.size();
+        });
+        pipeline.setBatchSize(32);
+        pipeline.setQueueCapacity(8);
+        pipeline.setExtractionThreads(4);
+        ScanPipeline.Metrics metrics = pipeline.run(List.of(tempDir.resolve("a"), tempDir.resolve("b")), "mp3");
+
+        Set<String> committed = new HashSet<>();
+        for (List<MusicFile> batch : batches) {
+            assertTrue(batch.size() <= 32);
+            batch.forEach(file -> assertTrue(committed.add(file.getFilePath()), "Committed twice: " + file));
+        }
+        // A file whose tags can't be read is still saved with its basic information
+        expected.add(tempDir.resolve("b/bad.mp3").toString());
+        assertEquals(expected, committed);
+
+        assertEquals(201, metrics.discovery().items());
+        assertEquals(201, metrics.extraction().items());
+        assertEquals(1, metrics.extraction().errors());
+        assertEquals(201, metrics.persistence().items());
+        assertEquals(201, metrics.changes().added());
+        assertEquals(batches.size(), metrics.commits());
+        assertEquals(2, metrics.rootsCompleted());
+        assertEquals(0, metrics.pathQueueDepth());
+        assertEquals(0, metrics.fileQueueDepth());
+        assertFalse(metrics.cancelled());
+        assertThrows(IllegalStateException.class, () -> pipeline.run(List.of(tempDir), "mp3"));
+    }
+
+    @Test
+    @DisplayName("A partial batch is committed once the flush interval passes")
+    void testFlushInterval() throws IOException {
+        createFiles(tempDir, 12);
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        ScanPipeline pipeline = new ScanPipeline((musicFile, file) -> {
+            sleep(25);
+            return readTags(musicFile, file);
+        }, batch -> {
+            batchSizes.add(batch.size());
+            return batch.size();
+        });
+        pipeline.setExtractionThreads(1);
+        pipeline.setBatchSize(1000);
+        pipeline.setFlushIntervalMs(60);
+        ScanPipeline.Metrics metrics = pipeline.run(List.of(tempDir), "mp3");
+
+        assertTrue(batchSizes.size() > 1, "Expected timed flushes, got " + batchSizes);
+        assertEquals(12, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(12, metrics.persistence().items());
+    }
+
+    @Test
+    @DisplayName("Cancelling stops discovery and still commits every extracted file")
+    void testCancelDrainsCleanly() throws IOException {
+        createFiles(tempDir, 300);
+        List<MusicFile> committed = Collections.synchronizedList(new ArrayList<>());
+        ScanPipeline[] holder = new ScanPipeline[1];
+        ScanPipeline pipeline = new ScanPipeline(this::readTags, batch -> {
+            committed.addAll(batch);
+            holder[0].cancel();
+            // A slow writer keeps the queues full, so discovery is held back
+            sleep(50);
+            return batch.size();
+        });
+        holder[0] = pipeline;
+        pipeline.setExtractionThreads(2);
+        pipeline.setQueueCapacity(4);
+        pipeline.setBatchSize(5);
+        ScanPipeline.Metrics metrics = pipeline.run(List.of(tempDir), "mp3");
+
+        assertTrue(metrics.cancelled());
+        assertTrue(metrics.discovery().items() < 300, "Discovered " + metrics.discovery().items());
+        assertEquals(metrics.extraction().items(), committed.size());
+        assertEquals(metrics.extraction().items(), metrics.persistence().items());
+    }
+
+    @Test
+    @DisplayName("A failed commit cancels the run and is rethrown after the stages stop")
+    void testCommitFailure() throws IOException {
+        createFiles(tempDir, 50);
+        IllegalStateException failure = new IllegalStateException("database unavailable");
+        ScanPipeline pipeline = new ScanPipeline(this::readTags, batch -> {
+            throw failure;
+        });
+        pipeline.setBatchSize(10);
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> pipeline.run(List.of(tempDir), "mp3"));
+        assertSame(failure, thrown);
+        assertTrue(pipeline.isCancelled());
+        assertEquals(0, pipeline.snapshot().persistence().items());
+        assertEquals(10, pipeline.snapshot().persistence().errors());
+    }
+
+    @Test
+    @DisplayName("A rescan reads only new and changed files and removes missing ones")
+    void testRescan() throws IOException {
+        Path root = tempDir.resolve("music");
+        createFiles(root, 5);
+        Path changedFile = root.resolve("track1.mp3");
+        Files.writeString(changedFile, "retagged");
+        Path newFile = Files.createFile(root.resolve("new.mp3"));
+
+        List<DatabaseManager.FileState> stored = new ArrayList<>();
+        long id = 1;
+        for (int i = 0; i < 5; i++) {
+            Path file = root.resolve("track" + i + ".mp3");
+            // track1 was stored before it was retagged
+            long size = i == 1 ? 0 : Files.size(file);
+            stored.add(new DatabaseManager.FileState(id++, file.toString(), size,
+                Files.getLastModifiedTime(file).toMillis()));
+        }
+        DatabaseManager.FileState missing = new DatabaseManager.FileState(id++, root.resolve("deleted.mp3").toString(), 1L, 1L);
+        stored.add(missing);
+        // Neither under the root nor of a scanned type, so left alone
+        stored.add(new DatabaseManager.FileState(id++, tempDir.resolve("elsewhere/track.mp3").toString(), 1L, 1L));
+        stored.add(new DatabaseManager.FileState(id, root.resolve("notes.txt").toString(), 1L, 1L));
+
+        List<String> read = Collections.synchronizedList(new ArrayList<>());
+        List<MusicFile> committed = Collections.synchronizedList(new ArrayList<>());
+        List<DatabaseManager.FileState> removed = new ArrayList<>();
+        ScanPipeline pipeline = new ScanPipeline((musicFile, file) -> {
+            read.add(file.getName());
+            return readTags(musicFile, file);
+        }, batch -> {
+            committed.addAll(batch);
+            return (int) batch.stream().filter(file -> file.getId() == null).count();
+        });
+        pipeline.setRescan(sink -> stored.forEach(sink), missingFiles -> {
+            removed.addAll(missingFiles);
+            return missingFiles.size();
+        });
+        ScanPipeline.Metrics metrics = pipeline.run(List.of(root), "mp3");
+
+        assertEquals(Set.of("track1.mp3", "new.mp3"), new HashSet<>(read));
+        assertEquals(2, committed.size());
+        MusicFile changed = committed.stream().filter(file -> file.getFilePath().equals(changedFile.toString()))
+            .findFirst().orElseThrow();
+        assertEquals(Long.valueOf(2), changed.getId());
+        assertTrue(committed.stream().anyMatch(file -> file.getFilePath().equals(newFile.toString())));
+        assertEquals(List.of(missing), removed);
+        assertEquals(new ScanPipeline.Changes(1, 1, 1, 4), metrics.changes());
+        assertEquals(6, metrics.discovery().items());
+        assertEquals(2, metrics.extraction().items());
+    }
+
+    @Test
+    @DisplayName("A rescan removes nothing under a root that is missing or was cancelled")
+    void testRescanKeepsFilesWhenWalkIsIncomplete() throws IOException {
+        createFiles(tempDir, 3);
+        List<DatabaseManager.FileState> stored = List.of(
+            new DatabaseManager.FileState(1, tempDir.resolve("unmounted/a.mp3").toString(), 1L, 1L),
+            new DatabaseManager.FileState(2, tempDir.resolve("deleted.mp3").toString(), 1L, 1L));
+        List<DatabaseManager.FileState> removed = Collections.synchronizedList(new ArrayList<>());
+
+        ScanPipeline missingRoot = new ScanPipeline(this::readTags, List::size);
+        missingRoot.setRescan(sink -> stored.forEach(sink), files -> {
+            removed.addAll(files);
+            return files.size();
+        });
+        missingRoot.run(List.of(tempDir.resolve("unmounted")), "mp3");
+        assertTrue(removed.isEmpty());
+
+        ScanPipeline cancelled = new ScanPipeline(this::readTags, List::size);
+        cancelled.setRescan(sink -> stored.forEach(sink), files -> {
+            removed.addAll(files);
+            return files.size();
+        });
+        cancelled.cancel();
+        ScanPipeline.Metrics metrics = cancelled.run(List.of(tempDir), "mp3");
+        assertTrue(metrics.cancelled());
+        assertTrue(removed.isEmpty());
+        assertEquals(0, metrics.changes().removed());
+    }
+
+    private Set<String> createFiles(Path directory, int count) throws IOException {
+        Files.createDirectories(directory);
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            paths.add(Files.createFile(directory.resolve("track" + i + ".mp3")).toString());
+        }
+        return paths;
+    }
+
+    private boolean readTags(MusicFile musicFile, File file) {
+        musicFile.setFilePath(file.getPath());
+        musicFile.setTitle(file.getName());
+        return !file.getName().startsWith("bad");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the persisted candidate-pair similarity graph and its threshold sweep.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@DisplayName("Similarity Graph Tests")
+public class SimilarityGraphTest {
+
+    private static final Random random = new Random(33);
+
+    @BeforeAll
+    static void setUp() {
+        DatabaseManager.initialize();
+        DatabaseManager.deleteAllMusicFiles();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        DatabaseManager.deleteAllMusicFiles();
+        DatabaseManager.shutdown();
+    }
+
+    @Test
+    @Order(1)
+    @DisplayName("Metadata sweep matches a direct recompute at every threshold")
+    void testMetadataSweep() {
+        save("/test/graph/a1.mp3", "Hotel California", "Eagles", "Hotel California", 390);
+        save("/test/graph/a2.mp3", "Hotel California (Live)", "The Eagles", "Hell Freezes Over", 420);
+        save("/test/graph/a3.mp3", "Hotel Californa", "Eagles", "Greatest Hits", 391);
+        save("/test/graph/b1.mp3", "Yesterday", "The Beatles", "Help!", 125);
+        save("/test/graph/b2.mp3", "Yesterdays", "Beatles", "Help", 127);
+        save("/test/graph/c1.mp3", "Take It Easy", "Eagles", "Eagles", 211);
+        save("/test/graph/c2.mp3", "Take It Easy", "Jackson Browne", "For Everyman", 230);
+        save("/test/graph/d1.mp3", "Something", "The Beatles", "Abbey Road", 182);
+
+        assertEquals(DuplicateIndex.Mode.METADATA, SimilarityGraph.refresh());
+        assertSweepMatchesRecompute();
+    }
+
+    @Test
+    @Order(2)
+    @DisplayName("Changes are applied to the graph incrementally")
+    void testIncrementalUpdates() {
+        MusicFile added = save("/test/graph/d2.mp3", "Something", "Beatles", "Abbey Road (Remaster)", 183);
+        assertFalse(DatabaseManager.getPendingSimilarityGraphChanges().fileIds().isEmpty());
+        SimilarityGraph.refresh();
+        assertTrue(DatabaseManager.getPendingSimilarityGraphChanges().fileIds().isEmpty());
+        assertTrue(DatabaseManager.getSimilarityGraphEdges().stream()
+            .anyMatch(e -> e.fileA() == added.getId() || e.fileB() == added.getId()));
+        assertSweepMatchesRecompute();
+
+        added.setTitle("Come Together");
+        added.setArtist("Nirvana");
+        added.setAlbum("Unplugged");
+        DatabaseManager.updateMusicFile(added);
+        assertSweepMatchesRecompute();
+
+        long addedId = added.getId();
+        DatabaseManager.deleteMusicFile(added);
+        assertTrue(DatabaseManager.getSimilarityGraphEdges().stream()
+            .noneMatch(e -> e.fileA() == addedId || e.fileB() == addedId));
+        assertSweepMatchesRecompute();
+    }
+
+    @Test
+    @Order(3)
+    @DisplayName("The duplicate index takes its edges from the graph")
+    void testDuplicateIndexUsesGraph() {
+        SimilarityGraph.refresh();
+        DuplicateIndex.rebuild();
+        assertTrue(DuplicateIndex.verify(false).consistent());
+        assertFalse(DuplicateIndex.getGroups().isEmpty());
+    }
+
+    @Test
+    @Order(4)
+    @DisplayName("Fingerprint sweep matches a direct recompute at every threshold")
+    void testFingerprintSweep() {
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+        int[] base = randomFingerprint();
+        double[] flipRates = { 0.0, 0.02, 0.05, 0.08, 0.12, 0.5 };
+        for (int i = 0; i < files.size(); i++) {
+            int[] fingerprint = i < flipRates.length ? mutate(base, flipRates[i]) : randomFingerprint();
+            assertTrue(DatabaseManager.updateFingerprint(files.get(i).getId(), fingerprint, 200));
+        }
+
+        assertEquals(DuplicateIndex.Mode.FINGERPRINT, SimilarityGraph.refresh());
+        List<SimilarityGraph.SweepPoint> points = SimilarityGraph.sweep(0.6, 0.95, 0.05);
+        assertEquals(8, points.size());
+        assertEquals(0.6, points.get(0).threshold(), 1e-9);
+
+        List<MusicFile> fingerprinted = DatabaseManager.getAllMusicFiles();
+        for (SimilarityGraph.SweepPoint point : points) {
+            List<DuplicateIndex.Edge> edges = new ArrayList<>();
+            for (int i = 0; i < fingerprinted.size(); i++) {
+                for (int j = i + 1; j < fingerprinted.size(); j++) {
+                    double similarity = FingerprintMatcher.calculateSimilarity(
+                        fingerprinted.get(i).getFingerprintSegments(), fingerprinted.get(j).getFingerprintSegments());
+                    if (similarity >= point.threshold()) {
+                        edges.add(new DuplicateIndex.Edge(fingerprinted.get(i).getId(),
+                            fingerprinted.get(j).getId(), similarity));
+                    }
+                }
+            }
+            assertPointMatches(point, DuplicateIndex.components(edges));
+        }
+        assertTrue(points.get(0).files() > points.get(points.size() - 1).files(),
+            "Lower thresholds group more files");
+    }
+
+    @Test
+    @Order(5)
+    @DisplayName("Thresholds below the floor are clamped to it")
+    void testClampedToFloor() {
+        List<SimilarityGraph.SweepPoint> points = SimilarityGraph.sweep(0.3, 0.6, 0.1);
+        assertTrue(points.stream().allMatch(p -> p.threshold() >= SimilarityGraph.FINGERPRINT_FLOOR));
+    }
+
+    private static void assertSweepMatchesRecompute() {
+        List<SimilarityGraph.SweepPoint> points = SimilarityGraph.sweep(0.6, 1.0, 0.05);
+        assertEquals(9, points.size());
+
+        List<MusicFile> files = DatabaseManager.getAllMusicFiles();
+        for (SimilarityGraph.SweepPoint point : points) {
+            FuzzySearchConfig config = new FuzzySearchConfig();
+            config.setTitleSimilarityThreshold(point.threshold() * 100);
+            config.setArtistSimilarityThreshold(point.threshold() * 100);
+            config.setAlbumSimilarityThreshold(point.threshold() * 100);
+
+            List<DuplicateIndex.Edge> edges = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                for (int j = i + 1; j < files.size(); j++) {
+                    if (FuzzyMatcher.fieldScores(files.get(i), files.get(j), config).matches(config)) {
+                        edges.add(new DuplicateIndex.Edge(files.get(i).getId(), files.get(j).getId(), null));
+                    }
+                }
+            }
+            assertPointMatches(point, DuplicateIndex.components(edges));
+        }
+    }
+
+    private static void assertPointMatches(SimilarityGraph.SweepPoint point, List<List<Long>> groups) {
+        String at = "threshold " + point.threshold();
+        assertEquals(groups.size(), point.groups(), at);
+        assertEquals(groups.stream().mapToInt(List::size).sum(), point.files(), at);
+        assertEquals(groups.stream().mapToInt(List::size).max().orElse(0), point.largestGroup(), at);
+    }
+
+    private static MusicFile save(String path, String title, String artist, String album, int duration) {
+        MusicFile file = new MusicFile();
+        file.setFilePath(path);
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum(album);
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        DatabaseManager.saveMusicFile(file);
+        assertNotNull(file.getId());
+        return file;
+    }
+
+    private static int[] randomFingerprint() {
+        int[] fingerprint = new int[120];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = random.nextInt();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Flips each bit of the fingerprint with the given probability.
+     */
+    private static int[] mutate(int[] fingerprint, double bitFlipRate) {
+        int[] copy = fingerprint.clone();
+        for (int i = 0; i < copy.length; i++) {
+            for (int bit = 0; bit < 32; bit++) {
+                if (random.nextDouble() < bitFlipRate) {
+                    copy[i] ^= 1 << bit;
+                }
+            }
+        }
+        return copy;
+    }
+}
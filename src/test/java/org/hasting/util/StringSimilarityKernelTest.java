@@ -0,0 +1,237 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the allocation-free string similarity kernels, against the original
+ * matrix-based implementations kept here as the reference.
+ */
+@DisplayName("String Similarity Kernel Tests")
+public class StringSimilarityKernelTest {
+
+    private static final String ALPHABET = "abcde fghAB";
+    private static final String WIDE_ALPHABET = "abcd\u00e9\u00fc\u00f1 \u00df\u00f8\u6f22\u5b57";
+    private static final int TITLE_STRINGS = 300;
+
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(2024);
+    }
+
+    @Test
+    @DisplayName("Jaro-Winkler matches the reference on both sides of 64 characters")
+    void testJaroWinklerMatchesReference() {
+        for (int run = 0; run < 20_000; run++) {
+            String s1 = randomString(randomLength(), run % 5 == 0 ? WIDE_ALPHABET : ALPHABET);
+            String s2 = run % 3 == 0 ? mutate(s1) : randomString(randomLength(), run % 5 == 0 ? WIDE_ALPHABET : ALPHABET);
+            assertEquals(referenceJaroWinkler(s1, s2), StringSimilarityKernel.jaroWinkler(s1, s2), 0.0,
+                () -> "'" + s1 + "' vs '" + s2 + "'");
+        }
+        assertEquals(1.0, StringSimilarityKernel.jaroWinkler("", ""), 0.0);
+        assertEquals(0.0, StringSimilarityKernel.jaroWinkler("", "abc"), 0.0);
+    }
+
+    @Test
+    @DisplayName("Levenshtein matches the reference on both sides of 64 characters")
+    void testLevenshteinMatchesReference() {
+        for (int run = 0; run < 20_000; run++) {
+            String s1 = randomString(randomLength(), run % 5 == 0 ? WIDE_ALPHABET : ALPHABET);
+            String s2 = run % 3 == 0 ? mutate(s1) : randomString(randomLength(), run % 5 == 0 ? WIDE_ALPHABET : ALPHABET);
+            assertEquals(referenceLevenshtein(s1, s2), StringSimilarityKernel.levenshtein(s1, s2),
+                () -> "'" + s1 + "' vs '" + s2 + "'");
+        }
+        String exactly64 = randomString(64, ALPHABET);
+        String other64 = mutate(exactly64).substring(0, Math.min(64, exactly64.length()));
+        assertEquals(referenceLevenshtein(exactly64, other64), StringSimilarityKernel.levenshtein(exactly64, other64));
+        assertEquals(3, StringSimilarityKernel.levenshtein("", "abc"));
+    }
+
+    @Test
+    @DisplayName("Bounded Jaro-Winkler is exact whenever it reaches the minimum")
+    void testBoundedJaroWinkler() {
+        double[] minimums = { 0, 50, 70, 82, 85, 90, 95, 100 };
+        for (int run = 0; run < 20_000; run++) {
+            String s1 = randomString(randomLength(), ALPHABET);
+            String s2 = run % 2 == 0 ? mutate(s1) : randomString(randomLength(), ALPHABET);
+            double expected = referenceJaroWinkler(s1, s2) * 100.0;
+            for (double minimum : minimums) {
+                double bounded = StringSimilarityKernel.jaroWinklerPercent(s1, s2, minimum);
+                if (expected >= minimum) {
+                    assertEquals(expected, bounded, 0.0, () -> "'" + s1 + "' vs '" + s2 + "' at " + minimum);
+                } else {
+                    assertTrue(bounded < minimum, () -> "'" + s1 + "' vs '" + s2 + "' at " + minimum);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Kernels match the reference over every pair of title-like strings")
+    void testTitlePairsMatchReference() {
+        String[] strings = new String[TITLE_STRINGS];
+        for (int i = 0; i < strings.length; i++) {
+            // Title-like strings: a few words, some of them near copies of each other
+            strings[i] = i % 4 == 0 || i < 4 ? randomString(12 + random.nextInt(30), ALPHABET) : mutate(strings[i - 1]);
+        }
+
+        assertEquals(runReferenceJaroWinkler(strings), runJaroWinkler(strings), 1e-6);
+        assertEquals(runReferenceLevenshtein(strings), runLevenshtein(strings));
+    }
+
+    private double runReferenceJaroWinkler(String[] strings) {
+        double total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            for (int j = i + 1; j < strings.length; j++) {
+                total += referenceJaroWinkler(strings[i], strings[j]);
+            }
+        }
+        return total;
+    }
+
+    private double runJaroWinkler(String[] strings) {
+        double total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            for (int j = i + 1; j < strings.length; j++) {
+                total += StringSimilarityKernel.jaroWinkler(strings[i], strings[j]);
+            }
+        }
+        return total;
+    }
+
+    private long runReferenceLevenshtein(String[] strings) {
+        long total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            for (int j = i + 1; j < strings.length; j++) {
+                total += referenceLevenshtein(strings[i], strings[j]);
+            }
+        }
+        return total;
+    }
+
+    private long runLevenshtein(String[] strings) {
+        long total = 0;
+        for (int i = 0; i < strings.length; i++) {
+            for (int j = i + 1; j < strings.length; j++) {
+                total += StringSimilarityKernel.levenshtein(strings[i], strings[j]);
+            }
+        }
+        return total;
+    }
+
+    private int randomLength() {
+        return random.nextInt(4) == 0 ? 60 + random.nextInt(80) : random.nextInt(40);
+    }
+
+    private String randomString(int length, String alphabet) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Applies a few random edits: substitutions, deletions, insertions and swaps.
+     */
+    private String mutate(String value) {
+        StringBuilder builder = new StringBuilder(value);
+        int edits = random.nextInt(4);
+        for (int e = 0; e < edits && builder.length() > 1; e++) {
+            int position = random.nextInt(builder.length() - 1);
+            switch (random.nextInt(4)) {
+                case 0 -> builder.setCharAt(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                case 1 -> builder.deleteCharAt(position);
+                case 2 -> builder.insert(position, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                default -> {
+                    char c = builder.charAt(position);
+                    builder.setCharAt(position, builder.charAt(position + 1));
+                    builder.setCharAt(position + 1, c);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The original Jaro-Winkler implementation, kept here as the reference.
+     */
+    private static double referenceJaroWinkler(String s1, String s2) {
+        double jaro = referenceJaro(s1, s2);
+        if (jaro < 0.7) return jaro;
+
+        int prefixLength = 0;
+        int maxPrefix = Math.min(4, Math.min(s1.length(), s2.length()));
+        for (int i = 0; i < maxPrefix; i++) {
+            if (s1.charAt(i) == s2.charAt(i)) {
+                prefixLength++;
+            } else {
+                break;
+            }
+        }
+        return jaro + (0.1 * prefixLength * (1.0 - jaro));
+    }
+
+    private static double referenceJaro(String s1, String s2) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+
+        if (len1 == 0 && len2 == 0) return 1.0;
+        if (len1 == 0 || len2 == 0) return 0.0;
+
+        int matchWindow = Math.max(len1, len2) / 2 - 1;
+        if (matchWindow < 0) matchWindow = 0;
+
+        boolean[] s1Matches = new boolean[len1];
+        boolean[] s2Matches = new boolean[len2];
+        int matches = 0;
+        for (int i = 0; i < len1; i++) {
+            int start = Math.max(0, i - matchWindow);
+            int end = Math.min(i + matchWindow + 1, len2);
+            for (int j = start; j < end; j++) {
+                if (s2Matches[j] || s1.charAt(i) != s2.charAt(j)) continue;
+                s1Matches[i] = true;
+                s2Matches[j] = true;
+                matches++;
+                break;
+            }
+        }
+        if (matches == 0) return 0.0;
+
+        int transpositions = 0;
+        int k = 0;
+        for (int i = 0; i < len1; i++) {
+            if (!s1Matches[i]) continue;
+            while (!s2Matches[k]) k++;
+            if (s1.charAt(i) != s2.charAt(k)) transpositions++;
+            k++;
+        }
+        return (matches / (double) len1 + matches / (double) len2 +
+                (matches - transpositions / 2.0) / matches) / 3.0;
+    }
+
+    /**
+     * The original full-matrix Levenshtein implementation, kept here as the reference.
+     */
+    private static int referenceLevenshtein(String s1, String s2) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        int[][] dp = new int[len1 + 1][len2 + 1];
+        for (int i = 0; i <= len1; i++) dp[i][0] = i;
+        for (int j = 0; j <= len2; j++) dp[0][j] = j;
+        for (int i = 1; i <= len1; i++) {
+            for (int j = 1; j <= len2; j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[len1][len2];
+    }
+}
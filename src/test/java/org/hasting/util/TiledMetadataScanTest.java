@@ -0,0 +1,184 @@
+package org.hasting.util;
+
+import org.hasting.model.MusicFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the tiled, parallel metadata duplicate scan.
+ */
+@DisplayName("Tiled Metadata Scan Tests")
+public class TiledMetadataScanTest {
+
+    private Random random;
+    private FuzzySearchConfig config;
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(13);
+        config = new FuzzySearchConfig();
+    }
+
+    @Test
+    @DisplayName("Groups match a union of all matching pairs")
+    void testMatchesPairwiseGroups() {
+        List<MusicFile> files = library(600);
+        List<int[]> expected = pairwiseGroups(files);
+        assertTrue(expected.size() > 30, "Library should contain many duplicates");
+
+        ConcurrentLinkedQueue<int[]> matches = new ConcurrentLinkedQueue<>();
+        TiledMetadataScan.Result result = TiledMetadataScan.run(files, config, new TiledMetadataScan.Listener() {
+            @Override
+            public void onMatch(int i, int j) {
+                matches.add(new int[] { i, j });
+            }
+        });
+
+        assertFalse(result.cancelled());
+        assertEquals((long) files.size() * (files.size() - 1) / 2, result.comparisons());
+        assertEquals(result.totalComparisons(), result.comparisons());
+        assertEquals(FuzzyMatcher.findDuplicatePairs(files, config).size(), matches.size());
+        assertGroupsEqual(expected, result.groups());
+    }
+
+    @Test
+    @DisplayName("Candidate lists limit the comparisons without changing the groups")
+    void testCandidateLists() {
+        config.setMinimumFieldsToMatch(4);
+        List<MusicFile> files = library(600);
+        DurationWindow.Candidates candidates = FuzzyMatcher.durationCandidates(files, config);
+        assertNotNull(candidates);
+
+        TiledMetadataScan.Result result = TiledMetadataScan.run(files, config, candidates::candidatesAfter, null, null);
+        assertEquals(candidates.pairCount(), result.comparisons());
+        assertFalse(result.groups().isEmpty());
+        assertGroupsEqual(pairwiseGroups(files), result.groups());
+    }
+
+    @Test
+    @DisplayName("Groups are streamed once each, before the scan finishes")
+    void testGroupsStreamAsTheySettle() {
+        List<MusicFile> files = library(600);
+        AtomicInteger batches = new AtomicInteger();
+        List<int[]> streamed = new ArrayList<>();
+        TiledMetadataScan.Result result = TiledMetadataScan.run(files, config, null, null,
+            new TiledMetadataScan.Listener() {
+                @Override
+                public void onGroupsSettled(List<int[]> groups) {
+                    batches.incrementAndGet();
+                    streamed.addAll(groups);
+                }
+            });
+
+        assertTrue(batches.get() > 1, "Groups should arrive in several batches");
+        assertEquals(result.groups().size(), streamed.size());
+        assertEquals(streamed.size(), streamed.stream().mapToInt(g -> g[0]).distinct().count());
+        assertGroupsEqual(pairwiseGroups(files), streamed);
+    }
+
+    @Test
+    @DisplayName("Cancellation stops the scan at a tile boundary")
+    void testCancellation() {
+        List<MusicFile> files = library(600);
+        AtomicInteger tiles = new AtomicInteger();
+        TiledMetadataScan.Result result = TiledMetadataScan.run(files, config, null, () -> tiles.get() >= 3,
+            new TiledMetadataScan.Listener() {
+                @Override
+                public void onTileCompleted(long comparisons, int settledFiles) {
+                    tiles.incrementAndGet();
+                }
+            });
+
+        assertTrue(result.cancelled());
+        assertTrue(result.comparisons() < result.totalComparisons());
+        assertTrue(result.comparisons() <= (long) tiles.get() * TiledMetadataScan.TILE_SIZE * TiledMetadataScan.TILE_SIZE,
+            "Only tiles that started before the cancellation are compared");
+    }
+
+    private List<int[]> pairwiseGroups(List<MusicFile> files) {
+        ConcurrentUnionFind unionFind = new ConcurrentUnionFind(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            for (int j = i + 1; j < files.size(); j++) {
+                if (FuzzyMatcher.areDuplicates(files.get(i), files.get(j), config)) {
+                    unionFind.union(i, j);
+                }
+            }
+        }
+        return unionFind.groups(2);
+    }
+
+    private static void assertGroupsEqual(List<int[]> expected, List<int[]> actual) {
+        List<int[]> sorted = new ArrayList<>(actual);
+        sorted.sort(Comparator.comparingInt(g -> g[0]));
+        assertEquals(expected.size(), sorted.size());
+        for (int g = 0; g < expected.size(); g++) {
+            assertArrayEquals(expected.get(g), sorted.get(g), "group " + g);
+        }
+    }
+
+    /**
+     * Builds a library of songs with a few variants each, spread over enough files
+     * to fill several tiles.
+     */
+    private List<MusicFile> library(int songs) {
+        List<MusicFile> files = new ArrayList<>();
+        String[] artists = new String[Math.max(1, songs / 8)];
+        for (int a = 0; a < artists.length; a++) {
+            artists[a] = capitalize(word()) + " " + capitalize(word());
+        }
+        List<MusicFile> variants = new ArrayList<>();
+        for (int s = 0; s < songs; s++) {
+            String title = capitalize(word()) + " " + word();
+            String artist = artists[random.nextInt(artists.length)];
+            String album = capitalize(word());
+            int duration = 150 + random.nextInt(200);
+            files.add(file(title, artist, album, duration));
+            if (random.nextInt(4) == 0) {
+                variants.add(file(title.toUpperCase(), artist, album, duration + 1));
+            }
+            if (random.nextInt(8) == 0) {
+                variants.add(file(title, "The " + artist, album + " (Deluxe Edition)", duration + 2));
+            }
+        }
+        // Spread the variants so matches cross tile boundaries
+        for (MusicFile variant : variants) {
+            files.add(random.nextInt(files.size() + 1), variant);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            files.get(i).setFilePath("/test/tiled/" + i + ".mp3");
+        }
+        return files;
+    }
+
+    private MusicFile file(String title, String artist, String album, int duration) {
+        MusicFile file = new MusicFile();
+        file.setTitle(title);
+        file.setArtist(artist);
+        file.setAlbum(album);
+        file.setDurationSeconds(duration);
+        file.setFileType("mp3");
+        return file;
+    }
+
+    private String word() {
+        char[] letters = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
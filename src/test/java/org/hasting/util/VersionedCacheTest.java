@@ -0,0 +1,129 @@
+package org.hasting.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the version-stamped, single-flight cache.
+ */
+@DisplayName("Versioned Cache Tests")
+public class VersionedCacheTest {
+
+    @Test
+    @DisplayName("The value is reused until the version changes or the cache is invalidated")
+    void testVersionStamp() {
+        AtomicLong version = new AtomicLong();
+        AtomicInteger counter = new AtomicInteger();
+        VersionedCache<Integer> cache = new VersionedCache<>(version::get);
+
+        assertEquals(1, cache.get(counter::incrementAndGet));
+        assertEquals(1, cache.get(counter::incrementAndGet));
+
+        version.incrementAndGet();
+        assertEquals(2, cache.get(counter::incrementAndGet));
+
+        cache.invalidate();
+        assertEquals(3, cache.get(counter::incrementAndGet));
+        assertEquals(3, cache.computations());
+
+        // A value stamped with an older version is stale at once
+        cache.put(99, version.get() - 1);
+        assertEquals(3, cache.get(counter::incrementAndGet));
+        cache.put(42, version.get());
+        assertEquals(42, cache.get(counter::incrementAndGet));
+
+        // Peeking never computes
+        assertEquals(42, cache.peek(false));
+        version.incrementAndGet();
+        assertNull(cache.peek(false));
+        assertEquals(42, cache.peek(true));
+        assertEquals(3, cache.computations());
+    }
+
+    @Test
+    @DisplayName("Concurrent misses run exactly one computation")
+    void testSingleFlight() throws Exception {
+        VersionedCache<Integer> cache = new VersionedCache<>(() -> 7);
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> cache.get(() -> {
+                    started.countDown();
+                    awaitQuietly(release);
+                    return counter.incrementAndGet();
+                })));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // Give the other callers time to find the computation in flight
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(1, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, counter.get());
+        assertEquals(1, cache.computations());
+    }
+
+    @Test
+    @DisplayName("Stale readers get the old value while the recompute runs")
+    void testStaleWhileRecomputing() throws Exception {
+        AtomicLong version = new AtomicLong();
+        VersionedCache<String> cache = new VersionedCache<>(version::get);
+        assertEquals("v0", cache.get(() -> "v0"));
+
+        version.incrementAndGet();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        assertEquals("v0", cache.get(() -> {
+            awaitQuietly(release);
+            finished.countDown();
+            return "v1";
+        }, true));
+        // The refresh is still blocked, so another stale reader joins it rather than starting one
+        assertEquals("v0", cache.get(() -> "unexpected", true));
+
+        release.countDown();
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals("v1", cache.get(() -> "unexpected"));
+        assertEquals(2, cache.computations());
+    }
+
+    @Test
+    @DisplayName("A failed computation reaches the caller and is retried on the next call")
+    void testFailureIsRetried() {
+        VersionedCache<String> cache = new VersionedCache<>(() -> 0);
+        assertThrows(IllegalStateException.class, () -> cache.get(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals("ok", cache.get(() -> "ok"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}